@@ -0,0 +1,132 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+
+import com.codahale.metrics.MetricRegistry;
+import org.javaswift.joss.client.factory.AccountFactory;
+import org.javaswift.joss.model.Account;
+import org.sonatype.nexus.blobstore.DefaultBlobIdLocationResolver;
+import org.sonatype.nexus.blobstore.api.Blob;
+import org.sonatype.nexus.blobstore.api.BlobMetrics;
+import org.sonatype.nexus.blobstore.api.BlobStoreConfiguration;
+import org.sonatype.nexus.blobstore.internal.PeriodicJobServiceImpl;
+import org.sonatype.nexus.common.node.NodeAccess;
+
+import org.joda.time.DateTime;
+
+import static org.sonatype.nexus.blobstore.api.BlobStore.BLOB_NAME_HEADER;
+import static org.sonatype.nexus.blobstore.api.BlobStore.CONTENT_TYPE_HEADER;
+import static org.sonatype.nexus.blobstore.api.BlobStore.CREATED_BY_HEADER;
+
+/**
+ * Builds what the benchmarks run against: swift is the in-memory account JOSS provides, so they measure the work of
+ * the blob store rather than the network.
+ */
+final class BenchmarkSupport
+{
+  static final String CONTAINER = "benchmark";
+
+  private BenchmarkSupport() {
+    // no instances
+  }
+
+  static Account mockAccount() {
+    return new AccountFactory().setMock(true).createAccount();
+  }
+
+  /**
+   * Returns the headers of a typical component blob.
+   */
+  static Map<String, String> headers(final int i) {
+    Map<String, String> headers = new HashMap<>();
+    headers.put(BLOB_NAME_HEADER, "org/sonatype/nexus/nexus-blobstore-swift/1.0." + i + "/nexus-blobstore-swift-1.0."
+        + i + ".jar");
+    headers.put(CREATED_BY_HEADER, "admin");
+    headers.put(CONTENT_TYPE_HEADER, "application/java-archive");
+    headers.put("Bucket.repo-name", "maven-releases");
+    return headers;
+  }
+
+  static SwiftBlobAttributes attributes(final Account swift, final int i) {
+    return new SwiftBlobAttributes(swift, CONTAINER, "content/vol-01/chap-02/" + i + ".properties", headers(i),
+        new BlobMetrics(new DateTime(1496358655289L), "eb4c2a5a1c04ca2d504c5e57e1f88cef08c75707", 1024L * i));
+  }
+
+  /**
+   * Returns a started blob store on an in-memory account, holding one blob for each element of {@code blobs}, which
+   * is filled in with them.
+   */
+  static SwiftBlobStore startedBlobStore(final Blob[] blobs) throws Exception {
+    BlobStoreConfiguration configuration = new BlobStoreConfiguration();
+    configuration.setName(CONTAINER);
+    configuration.setType(SwiftBlobStore.TYPE);
+    configuration.attributes(SwiftBlobStore.CONFIG_KEY).set(SwiftBlobStore.CONTAINER_KEY, CONTAINER);
+    configuration.attributes(SwiftBlobStore.CONFIG_KEY).set(SwiftBlobStore.TRIES_KEY, "1");
+    SwiftBlobStore blobStore = startedBlobStore(new MockSwiftClientFactory(), configuration);
+
+    byte[] content = new byte[1024];
+    for (int i = 0; i < blobs.length; i++) {
+      blobs[i] = blobStore.create(new ByteArrayInputStream(content), headers(i));
+    }
+    return blobStore;
+  }
+
+  /**
+   * Returns a started blob store of {@code configuration}, its scheduled jobs running as they do in Nexus.
+   */
+  static SwiftBlobStore startedBlobStore(final SwiftClientFactory swiftClientFactory,
+                                         final BlobStoreConfiguration configuration) throws Exception
+  {
+    NodeAccess nodeAccess = (NodeAccess) Proxy.newProxyInstance(NodeAccess.class.getClassLoader(),
+        new Class<?>[]{NodeAccess.class}, (proxy, method, args) -> "getId".equals(method.getName()) ? "benchmark" : null);
+    PeriodicJobServiceImpl jobService = new PeriodicJobServiceImpl();
+    SwiftBlobStore blobStore = new SwiftBlobStore(swiftClientFactory, new DefaultBlobIdLocationResolver(),
+        new SwiftBlobStoreMetricsStore(jobService, nodeAccess), new SwiftDeletionJournal(jobService, nodeAccess),
+        new MetricRegistry());
+    blobStore.init(configuration);
+    blobStore.start();
+    return blobStore;
+  }
+
+  /**
+   * Hands out the in-memory account instead of authenticating against swift. It has no token to keep valid.
+   */
+  private static class MockSwiftClientFactory
+      extends SwiftClientFactory
+  {
+    @Override
+    public SwiftHttpTransport createTransport(final BlobStoreConfiguration blobStoreConfiguration,
+                                              final SwiftRetryPolicy retryPolicy)
+    {
+      return new SwiftHttpTransport(1, 1, 1000, 1000, 30000, true, new SwiftTokenManager(0)
+      {
+        @Override
+        public synchronized void start(final ThreadFactory threadFactory) {
+          // nothing to refresh
+        }
+      }, retryPolicy, new SwiftEndpointBalancer(Collections.emptyList()));
+    }
+
+    @Override
+    public Account create(final BlobStoreConfiguration blobStoreConfiguration, final SwiftHttpTransport transport) {
+      return mockAccount();
+    }
+  }
+}
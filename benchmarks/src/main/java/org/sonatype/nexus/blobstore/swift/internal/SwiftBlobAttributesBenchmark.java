@@ -0,0 +1,69 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.javaswift.joss.model.Account;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static org.sonatype.nexus.blobstore.swift.internal.BenchmarkSupport.CONTAINER;
+
+/**
+ * Converting {@link SwiftBlobAttributes} from and to properties, as kept in the upload spool. The formats of sidecars
+ * and metadata are compared by {@link SwiftAttributeFormatBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SwiftBlobAttributesBenchmark
+{
+  private SwiftBlobAttributes attributes;
+
+  private SwiftBlobAttributes read;
+
+  private Properties properties;
+
+  @Setup
+  public void setUp() {
+    Account swift = BenchmarkSupport.mockAccount();
+    attributes = BenchmarkSupport.attributes(swift, 1);
+    read = new SwiftBlobAttributes(swift, CONTAINER, "content/vol-01/chap-02/1.properties");
+    properties = attributes.toProperties();
+  }
+
+  @Benchmark
+  public Properties writeProperties() {
+    return attributes.toProperties();
+  }
+
+  @Benchmark
+  public SwiftBlobAttributes readProperties() {
+    read.readProperties(properties);
+    return read;
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.nexus.blobstore.DefaultBlobIdLocationResolver;
+import org.sonatype.nexus.blobstore.api.Blob;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.BLOB_ATTRIBUTE_SUFFIX;
+import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.BLOB_CONTENT_SUFFIX;
+import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.CONTENT_PREFIX;
+
+/**
+ * Listing the blobs of a blob store: telling blob ids from listed paths alone, and the whole
+ * {@link SwiftBlobStore#getBlobIdStream()} against the in-memory account. Reported per blob store listed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SwiftBlobIdStreamBenchmark
+{
+  @Param("1000")
+  public int blobs;
+
+  private SwiftBlobStore blobStore;
+
+  private String[] paths;
+
+  @Setup
+  public void setUp() throws Exception {
+    Blob[] created = new Blob[blobs];
+    blobStore = BenchmarkSupport.startedBlobStore(created);
+
+    DefaultBlobIdLocationResolver resolver = new DefaultBlobIdLocationResolver();
+    paths = new String[blobs * 2];
+    for (int i = 0; i < blobs; i++) {
+      String location = CONTENT_PREFIX + "/" + resolver.getLocation(created[i].getId());
+      paths[2 * i] = location + BLOB_CONTENT_SUFFIX;
+      paths[2 * i + 1] = location + BLOB_ATTRIBUTE_SUFFIX;
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    blobStore.stop();
+  }
+
+  @Benchmark
+  public void parsePaths(final Blackhole blackhole) {
+    for (String path : paths) {
+      blackhole.consume(SwiftBlobStore.blobIdOf(path));
+    }
+  }
+
+  @Benchmark
+  public long listBlobIds() {
+    return blobStore.getBlobIdStream().count();
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.nexus.blobstore.api.Blob;
+import org.sonatype.nexus.blobstore.api.BlobId;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link SwiftBlobStore#get(BlobId)} of live blobs: looking them up in the blob store and checking whether their
+ * attributes need reloading. The blobs are held, as the callers of a blob store hold the blobs they read, so they stay
+ * live. {@link #getContended(Cursor)} has several threads read the same few blobs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SwiftBlobStoreGetBenchmark
+{
+  private static final int BLOBS = 1000;
+
+  private static final int HOT_BLOBS = 8;
+
+  private final Blob[] blobs = new Blob[BLOBS];
+
+  private final BlobId[] blobIds = new BlobId[BLOBS];
+
+  private SwiftBlobStore blobStore;
+
+  @Setup
+  public void setUp() throws Exception {
+    blobStore = BenchmarkSupport.startedBlobStore(blobs);
+    for (int i = 0; i < BLOBS; i++) {
+      blobIds[i] = blobs[i].getId();
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    blobStore.stop();
+  }
+
+  @State(Scope.Thread)
+  public static class Cursor
+  {
+    private int next;
+
+    int next(final int bound) {
+      next = next + 1 < bound ? next + 1 : 0;
+      return next;
+    }
+  }
+
+  @Benchmark
+  public Blob get(final Cursor cursor) {
+    return blobStore.get(blobIds[cursor.next(BLOBS)]);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Blob getContended(final Cursor cursor) {
+    return blobStore.get(blobIds[cursor.next(HOT_BLOBS)]);
+  }
+}
@@ -0,0 +1,312 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.blobstore.api.Blob;
+import org.sonatype.nexus.blobstore.api.BlobId;
+import org.sonatype.nexus.blobstore.api.BlobStoreConfiguration;
+import org.sonatype.nexus.blobstore.swift.internal.SwiftOperationMetrics.OperationStats;
+import org.sonatype.nexus.common.collect.NestedAttributesMap;
+
+import com.google.common.base.Splitter;
+import com.google.common.io.ByteStreams;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Drives a blob store against a {@link SwiftStandIn} with a mix of create, get, copy, delete and list operations from
+ * several threads, and reports the throughput and latency percentiles of each operation, and how many swift requests
+ * it takes.
+ *
+ * Arguments are {@code key=value} pairs: {@code threads} (16), {@code seconds} (30), {@code blobs} created before
+ * the run (1000), blob {@code size} in bytes (16384), the {@code mix} of operations by weight
+ * ({@code create:25,get:60,copy:5,delete:9,list:1}), the {@code latency} of swift in milliseconds (5) and its
+ * {@code errorRate} (0). Other keys configure the blob store, e.g. {@code tries=3} or {@code hedgeDelay=20}.
+ */
+public final class SwiftLoadTest
+{
+  enum Operation
+  {
+    CREATE, GET, COPY, DELETE, LIST
+  }
+
+  private static final String CONTAINER = "load-test";
+
+  // operations of each kind run alone to tell how many swift requests one of them takes
+  private static final int CALIBRATION_OPERATIONS = 20;
+
+  private final SwiftBlobStore blobStore;
+
+  private final SwiftStandIn standIn;
+
+  private final AtomicReferenceArray<BlobId> blobIds;
+
+  private final byte[] content;
+
+  private final Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+
+  private SwiftLoadTest(final SwiftBlobStore blobStore, final SwiftStandIn standIn, final int blobs, final int size) {
+    this.blobStore = blobStore;
+    this.standIn = standIn;
+    this.blobIds = new AtomicReferenceArray<>(Math.max(1, blobs * 2));
+    this.content = new byte[size];
+    ThreadLocalRandom.current().nextBytes(content);
+    for (Operation operation : Operation.values()) {
+      stats.put(operation, new Stats());
+    }
+  }
+
+  public static void main(final String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      int equals = arg.indexOf('=');
+      checkArgument(equals > 0, "Arguments are key=value pairs: %s", arg);
+      options.put(arg.substring(0, equals), arg.substring(equals + 1));
+    }
+    int threads = Integer.parseInt(option(options, "threads", "16"));
+    int seconds = Integer.parseInt(option(options, "seconds", "30"));
+    int blobs = Integer.parseInt(option(options, "blobs", "1000"));
+    int size = Integer.parseInt(option(options, "size", "16384"));
+    Map<Operation, Integer> mix = mix(option(options, "mix", "create:25,get:60,copy:5,delete:9,list:1"));
+    long latency = Long.parseLong(option(options, "latency", "5"));
+    double errorRate = Double.parseDouble(option(options, "errorRate", "0"));
+
+    try (SwiftStandIn standIn = new SwiftStandIn()) {
+      BlobStoreConfiguration configuration = new BlobStoreConfiguration();
+      configuration.setName(CONTAINER);
+      configuration.setType(SwiftBlobStore.TYPE);
+      NestedAttributesMap swift = configuration.attributes(SwiftBlobStore.CONFIG_KEY);
+      swift.set(SwiftBlobStore.CONTAINER_KEY, CONTAINER);
+      swift.set(SwiftBlobStore.AUTHURL_KEY, standIn.getAuthUrl());
+      swift.set(SwiftBlobStore.USERNAME_KEY, SwiftStandIn.USERNAME);
+      swift.set(SwiftBlobStore.PASSWORD_KEY, SwiftStandIn.PASSWORD);
+      swift.set(SwiftBlobStore.TRIES_KEY, "3");
+      swift.set(SwiftBlobStore.MAX_CONNECTIONS_KEY, Integer.toString(threads * 2));
+      swift.set(SwiftBlobStore.MAX_CONNECTIONS_PER_ROUTE_KEY, Integer.toString(threads * 2));
+      options.forEach(swift::set);
+
+      SwiftBlobStore blobStore = BenchmarkSupport.startedBlobStore(new SwiftClientFactory(), configuration);
+      try {
+        standIn.setLatency(latency);
+        SwiftLoadTest loadTest = new SwiftLoadTest(blobStore, standIn, blobs, size);
+        loadTest.populate(blobs, threads);
+        Map<Operation, Double> requests = loadTest.calibrate(mix);
+        standIn.setErrorRate(errorRate);
+        long elapsed = loadTest.run(mix, threads, seconds);
+        loadTest.report(requests, elapsed);
+      }
+      finally {
+        blobStore.stop();
+      }
+    }
+  }
+
+  private void populate(final int blobs, final int threads) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      Future<?>[] created = new Future<?>[blobs];
+      for (int i = 0; i < blobs; i++) {
+        int slot = i;
+        created[i] = executor.submit(() -> blobIds.set(slot, create()));
+      }
+      for (Future<?> future : created) {
+        future.get();
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  private Map<Operation, Double> calibrate(final Map<Operation, Integer> mix) throws Exception {
+    Map<Operation, Double> requests = new EnumMap<>(Operation.class);
+    for (Operation operation : mix.keySet()) {
+      if (mix.get(operation) == 0) {
+        continue;
+      }
+      long before = standIn.getRequestCount();
+      for (int i = 0; i < CALIBRATION_OPERATIONS; i++) {
+        perform(operation);
+      }
+      requests.put(operation, (double) (standIn.getRequestCount() - before) / CALIBRATION_OPERATIONS);
+    }
+    return requests;
+  }
+
+  /**
+   * Runs the mix of operations from {@code threads} threads for {@code seconds}, returns the nanoseconds it took.
+   */
+  private long run(final Map<Operation, Integer> mix, final int threads, final int seconds) throws Exception {
+    Operation[] weighted = mix.entrySet().stream()
+        .flatMap(entry -> Collections.nCopies(entry.getValue(), entry.getKey()).stream())
+        .toArray(Operation[]::new);
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      Future<?>[] workers = new Future<?>[threads];
+      for (int i = 0; i < threads; i++) {
+        workers[i] = executor.submit(() -> {
+          while (System.nanoTime() < deadline) {
+            Operation operation = weighted[ThreadLocalRandom.current().nextInt(weighted.length)];
+            long started = System.nanoTime();
+            boolean succeeded;
+            try {
+              succeeded = perform(operation);
+            }
+            catch (Exception e) {
+              succeeded = false;
+            }
+            stats.get(operation).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started), succeeded);
+          }
+          return null;
+        });
+      }
+      for (Future<?> worker : workers) {
+        worker.get();
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * Performs one operation, returns false when it found no live blob to work on.
+   */
+  private boolean perform(final Operation operation) throws Exception {
+    switch (operation) {
+      case CREATE:
+        blobIds.set(slot(), create());
+        return true;
+      case GET:
+        BlobId getId = pick(false);
+        Blob blob = getId != null ? blobStore.get(getId) : null;
+        if (blob == null) {
+          return false;
+        }
+        try (InputStream in = blob.getInputStream()) {
+          ByteStreams.exhaust(in);
+        }
+        return true;
+      case COPY:
+        BlobId copyId = pick(false);
+        if (copyId == null) {
+          return false;
+        }
+        blobIds.set(slot(), blobStore.copy(copyId, BenchmarkSupport.headers(slot())).getId());
+        return true;
+      case DELETE:
+        BlobId deleteId = pick(true);
+        return deleteId != null && blobStore.delete(deleteId, "load test");
+      case LIST:
+        blobStore.getBlobIdStream().count();
+        return true;
+      default:
+        throw new IllegalArgumentException("Unknown operation: " + operation);
+    }
+  }
+
+  private BlobId create() {
+    return blobStore.create(new ByteArrayInputStream(content), BenchmarkSupport.headers(slot())).getId();
+  }
+
+  private int slot() {
+    return ThreadLocalRandom.current().nextInt(blobIds.length());
+  }
+
+  /**
+   * Picks a live blob, taking it out of the live ones when {@code remove}.
+   */
+  @Nullable
+  private BlobId pick(final boolean remove) {
+    for (int i = 0; i < 8; i++) {
+      int slot = slot();
+      BlobId blobId = remove ? blobIds.getAndSet(slot, null) : blobIds.get(slot);
+      if (blobId != null) {
+        return blobId;
+      }
+    }
+    return null;
+  }
+
+  private void report(final Map<Operation, Double> requests, final long elapsed) {
+    double seconds = elapsed / 1e9;
+    System.out.printf("%-8s %10s %10s %10s %10s %10s %10s %12s%n", "", "ops", "ops/s", "p50 ms", "p99 ms",
+        "p999 ms", "failed", "requests/op");
+    long total = 0;
+    for (Entry<Operation, Stats> entry : stats.entrySet()) {
+      Stats operation = entry.getValue();
+      long count = operation.latency.getCount();
+      if (count == 0) {
+        continue;
+      }
+      total += count;
+      System.out.printf("%-8s %10d %10.1f %10.2f %10.2f %10.2f %10d %12.2f%n", entry.getKey(), count, count / seconds,
+          operation.latency.getPercentile(50) / 1000.0, operation.latency.getPercentile(99) / 1000.0,
+          operation.latency.getPercentile(99.9) / 1000.0, operation.failures.sum(), requests.get(entry.getKey()));
+    }
+    System.out.printf("%-8s %10d %10.1f%n%n", "TOTAL", total, total / seconds);
+    System.out.printf("swift requests: %d, injected errors: %d%n", standIn.getRequestCount(),
+        standIn.getInjectedErrorCount());
+    for (OperationStats operationStats : blobStore.getOperationMetrics().getOperationStats()) {
+      System.out.println(operationStats);
+    }
+  }
+
+  private static String option(final Map<String, String> options, final String key, final String defaultValue) {
+    String value = options.remove(key);
+    return value != null ? value : defaultValue;
+  }
+
+  private static Map<Operation, Integer> mix(final String mix) {
+    Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+    Splitter.on(',').trimResults().omitEmptyStrings().withKeyValueSeparator(':').split(mix)
+        .forEach((operation, weight) -> weights.put(Operation.valueOf(operation.toUpperCase()), Integer.valueOf(weight)));
+    checkArgument(weights.values().stream().allMatch(weight -> weight >= 0), "Weights must be >= 0: %s", mix);
+    checkArgument(weights.values().stream().anyMatch(weight -> weight > 0), "No operation in mix: %s", mix);
+    return weights;
+  }
+
+  private static class Stats
+  {
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final LongAdder failures = new LongAdder();
+
+    void record(final long micros, final boolean succeeded) {
+      latency.record(micros);
+      if (!succeeded) {
+        failures.increment();
+      }
+    }
+  }
+}
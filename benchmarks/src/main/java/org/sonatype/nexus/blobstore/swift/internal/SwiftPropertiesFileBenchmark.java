@@ -0,0 +1,79 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.javaswift.joss.model.Account;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static org.sonatype.nexus.blobstore.swift.internal.BenchmarkSupport.CONTAINER;
+
+/**
+ * Storing and loading a {@link SwiftPropertiesFile} holding the attributes of a blob, through the in-memory account.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SwiftPropertiesFileBenchmark
+{
+  private static final String NAME = "content/vol-01/chap-02/1.properties";
+
+  private Account swift;
+
+  private SwiftPropertiesFile propertiesFile;
+
+  @Setup
+  public void setUp() throws IOException {
+    swift = BenchmarkSupport.mockAccount();
+    swift.getContainer(CONTAINER).create();
+    propertiesFile = new SwiftPropertiesFile(swift, CONTAINER, null, NAME);
+    propertiesFile.putAll(BenchmarkSupport.attributes(swift, 1).toProperties());
+    propertiesFile.store();
+  }
+
+  @Benchmark
+  public SwiftPropertiesFile store() throws IOException {
+    propertiesFile.store();
+    return propertiesFile;
+  }
+
+  @Benchmark
+  public SwiftPropertiesFile load() throws IOException {
+    SwiftPropertiesFile loaded = new SwiftPropertiesFile(swift, CONTAINER, null, NAME);
+    loaded.loadIfExists();
+    return loaded;
+  }
+
+  /**
+   * Loading again through the same instance, which only transfers the file when it changed.
+   */
+  @Benchmark
+  public boolean reload() throws IOException {
+    return propertiesFile.loadIfExists();
+  }
+}
@@ -0,0 +1,669 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * An in-process HTTP server answering the part of the swift API the blob store uses, keeping objects in memory:
+ * basic auth (as tempauth does it), containers, object PUT (including server side copies), GET (including ranges and
+ * conditional requests), HEAD, POST and DELETE, and listings by prefix, delimiter and marker. Static large objects and
+ * bulk deletes are not answered.
+ *
+ * Every storage request can be held back by an injected latency and fail with a 503 at an injected error rate, so
+ * that the blob store is measured with its real request patterns, retries included.
+ *
+ * Connections are kept alive and served by a thread each. HTTP is spoken by hand rather than through the JDK's server,
+ * which changes the case of header names (JOSS reads object metadata case sensitively) and breaks the connections it
+ * answered a HEAD on.
+ */
+public class SwiftStandIn
+    implements Closeable
+{
+  public static final String USERNAME = "nexus";
+
+  public static final String PASSWORD = "nexus";
+
+  private static final String AUTH_PATH = "/auth/v1.0";
+
+  private static final String STORAGE_PATH = "/v1/AUTH_nexus";
+
+  private static final String META_PREFIX = "X-Object-Meta-";
+
+  private static final int DEFAULT_LIMIT = 10000;
+
+  private final String token = UUID.randomUUID().toString();
+
+  private final ConcurrentMap<String, NavigableMap<String, StoredObject>> containers = new ConcurrentHashMap<>();
+
+  private final ServerSocket serverSocket;
+
+  private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "swift-stand-in");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final LongAdder requests = new LongAdder();
+
+  private final LongAdder injectedErrors = new LongAdder();
+
+  private volatile long latencyMillis;
+
+  private volatile double errorRate;
+
+  /**
+   * Starts a stand-in on a free port of the loopback interface.
+   */
+  public SwiftStandIn() throws IOException {
+    serverSocket = new ServerSocket(0, 256, InetAddress.getLoopbackAddress());
+    executor.execute(this::accept);
+  }
+
+  public String getAuthUrl() {
+    return "http://" + host() + AUTH_PATH;
+  }
+
+  public String getStorageUrl() {
+    return "http://" + host() + STORAGE_PATH;
+  }
+
+  /**
+   * Holds back every storage request for between half and one and a half times {@code millis}.
+   */
+  public void setLatency(final long millis) {
+    checkArgument(millis >= 0, "Latency must be >= 0");
+    this.latencyMillis = millis;
+  }
+
+  /**
+   * Fails storage requests with a 503 at {@code errorRate}, between 0 and 1.
+   */
+  public void setErrorRate(final double errorRate) {
+    checkArgument(errorRate >= 0 && errorRate <= 1, "Error rate must be between 0 and 1");
+    this.errorRate = errorRate;
+  }
+
+  /**
+   * Returns the number of requests received, auth and failed ones included.
+   */
+  public long getRequestCount() {
+    return requests.sum();
+  }
+
+  public long getInjectedErrorCount() {
+    return injectedErrors.sum();
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+    executor.shutdownNow();
+  }
+
+  private String host() {
+    return serverSocket.getInetAddress().getHostAddress() + ":" + serverSocket.getLocalPort();
+  }
+
+  private void accept() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        socket.setTcpNoDelay(true);
+        executor.execute(() -> serve(socket));
+      }
+      catch (IOException e) {
+        // closed
+      }
+    }
+  }
+
+  private void serve(final Socket socket) {
+    try (Socket closing = socket;
+         InputStream in = new BufferedInputStream(socket.getInputStream());
+         OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+      Request request;
+      while ((request = Request.read(in, out)) != null) {
+        requests.increment();
+        Response response;
+        try {
+          response = handle(request);
+        }
+        catch (InterruptedException e) {
+          return;
+        }
+        catch (RuntimeException e) {
+          response = new Response(500);
+        }
+        response.write(out, "HEAD".equals(request.method));
+        if ("close".equalsIgnoreCase(request.headers.get("Connection"))) {
+          return;
+        }
+      }
+    }
+    catch (IOException e) {
+      // the client went away
+    }
+  }
+
+  private Response handle(final Request request) throws InterruptedException {
+    if (AUTH_PATH.equals(request.path)) {
+      return authenticate(request);
+    }
+    if (!request.path.equals(STORAGE_PATH) && !request.path.startsWith(STORAGE_PATH + "/")) {
+      return new Response(404);
+    }
+    if (!token.equals(request.headers.get("X-Auth-Token"))) {
+      return new Response(401);
+    }
+    long latency = latencyMillis;
+    if (latency > 0) {
+      Thread.sleep(latency / 2 + ThreadLocalRandom.current().nextLong(latency + 1));
+    }
+    if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+      injectedErrors.increment();
+      return new Response(503);
+    }
+    String[] names = request.path.substring(STORAGE_PATH.length()).split("/", 3);
+    String container = names.length > 1 && !names[1].isEmpty() ? decode(names[1]) : null;
+    String object = names.length > 2 && !names[2].isEmpty() ? decode(names[2]) : null;
+    if (container == null) {
+      return account(request);
+    }
+    if (object == null) {
+      return container(request, container);
+    }
+    return object(request, container, object);
+  }
+
+  private Response authenticate(final Request request) {
+    if (!USERNAME.equals(request.headers.get("X-Auth-User")) || !PASSWORD.equals(request.headers.get("X-Auth-Key"))) {
+      return new Response(401);
+    }
+    return new Response(204)
+        .header("X-Auth-Token", token)
+        .header("X-Storage-Url", getStorageUrl());
+  }
+
+  private Response account(final Request request) {
+    switch (request.method) {
+      case "HEAD":
+      case "GET":
+        return new Response(204).header("X-Account-Container-Count", Integer.toString(containers.size()));
+      default:
+        return new Response(405);
+    }
+  }
+
+  private Response container(final Request request, final String name) {
+    NavigableMap<String, StoredObject> objects = containers.get(name);
+    if (objects == null) {
+      boolean created = "PUT".equals(request.method) && containers.putIfAbsent(name, new ConcurrentSkipListMap<>()) == null;
+      return new Response(created ? 201 : 404);
+    }
+    switch (request.method) {
+      case "PUT":
+        return new Response(202);
+      case "POST":
+        return new Response(204);
+      case "HEAD":
+        long bytes = 0;
+        for (StoredObject object : objects.values()) {
+          bytes += object.content.length;
+        }
+        return new Response(204)
+            .header("X-Container-Object-Count", Integer.toString(objects.size()))
+            .header("X-Container-Bytes-Used", Long.toString(bytes));
+      case "GET":
+        return list(request, objects);
+      case "DELETE":
+        if (!objects.isEmpty()) {
+          return new Response(409);
+        }
+        containers.remove(name, objects);
+        return new Response(204);
+      default:
+        return new Response(405);
+    }
+  }
+
+  private Response list(final Request request, final NavigableMap<String, StoredObject> objects) {
+    String prefix = request.query.getOrDefault("prefix", "");
+    String delimiter = request.query.get("delimiter");
+    String marker = request.query.get("marker");
+    int limit = request.query.containsKey("limit") ? Integer.parseInt(request.query.get("limit")) : DEFAULT_LIMIT;
+    boolean json = "json".equals(request.query.get("format"));
+
+    StringBuilder listing = new StringBuilder(json ? "[" : "");
+    String lastSubdir = null;
+    int listed = 0;
+    NavigableMap<String, StoredObject> page = marker != null && marker.compareTo(prefix) >= 0 ?
+        objects.tailMap(marker, false) : objects.tailMap(prefix, true);
+    for (Entry<String, StoredObject> entry : page.entrySet()) {
+      String name = entry.getKey();
+      if (!name.startsWith(prefix) || listed == limit) {
+        break;
+      }
+      if (delimiter != null) {
+        int end = name.indexOf(delimiter, prefix.length());
+        if (end >= 0) {
+          String subdir = name.substring(0, end + delimiter.length());
+          if (!subdir.equals(lastSubdir) && (marker == null || subdir.compareTo(marker) > 0)) {
+            lastSubdir = subdir;
+            listed++;
+            if (json) {
+              listing.append(listed > 1 ? "," : "").append("{\"subdir\":\"").append(escape(subdir)).append("\"}");
+            }
+            else {
+              listing.append(subdir).append('\n');
+            }
+          }
+          continue;
+        }
+      }
+      listed++;
+      StoredObject object = entry.getValue();
+      if (json) {
+        listing.append(listed > 1 ? "," : "")
+            .append("{\"name\":\"").append(escape(name))
+            .append("\",\"hash\":\"").append(object.etag)
+            .append("\",\"bytes\":").append(object.content.length)
+            .append(",\"content_type\":\"").append(escape(object.contentType))
+            .append("\",\"last_modified\":\"").append(format("yyyy-MM-dd'T'HH:mm:ss.SSS'000'", object.lastModified))
+            .append("\"}");
+      }
+      else {
+        listing.append(name).append('\n');
+      }
+    }
+    if (json) {
+      listing.append(']');
+    }
+    byte[] body = listing.toString().getBytes(StandardCharsets.UTF_8);
+    return new Response(listed > 0 || json ? 200 : 204)
+        .header("Content-Type", json ? "application/json; charset=utf-8" : "text/plain; charset=utf-8")
+        .body(body, 0, body.length);
+  }
+
+  private Response object(final Request request, final String container, final String name) {
+    NavigableMap<String, StoredObject> objects = containers.get(container);
+    if (objects == null) {
+      return new Response(404);
+    }
+    String manifest = request.query.get("multipart-manifest");
+    if (manifest != null && !"delete".equals(manifest)) {
+      return new Response(501);
+    }
+    StoredObject object = objects.get(name);
+    switch (request.method) {
+      case "PUT":
+        return put(request, objects, name);
+      case "GET":
+      case "HEAD":
+        return object != null ? get(request, object) : new Response(404);
+      case "POST":
+        if (object == null) {
+          return new Response(404);
+        }
+        objects.put(name, new StoredObject(object.content, object.contentType, metadata(request, null)));
+        return new Response(202);
+      case "DELETE":
+        return new Response(objects.remove(name) != null ? 204 : 404);
+      default:
+        return new Response(405);
+    }
+  }
+
+  private Response put(final Request request, final NavigableMap<String, StoredObject> objects, final String name) {
+    String contentType = request.headers.get("Content-Type");
+    StoredObject stored;
+    String copyFrom = request.headers.get("X-Copy-From");
+    if (copyFrom != null) {
+      String[] source = copyFrom.replaceFirst("^/", "").split("/", 2);
+      NavigableMap<String, StoredObject> sourceObjects = containers.get(decode(source[0]));
+      StoredObject original = sourceObjects != null && source.length > 1 ? sourceObjects.get(decode(source[1])) : null;
+      if (original == null) {
+        return new Response(404);
+      }
+      boolean fresh = "true".equalsIgnoreCase(request.headers.get("X-Fresh-Metadata"));
+      stored = new StoredObject(original.content, contentType != null ? contentType : original.contentType,
+          metadata(request, fresh ? null : original.metadata));
+    }
+    else {
+      stored = new StoredObject(request.body, contentType != null ? contentType : "application/octet-stream",
+          metadata(request, null));
+      String expected = request.headers.get("ETag");
+      if (expected != null && !expected.replace("\"", "").equalsIgnoreCase(stored.etag)) {
+        return new Response(422);
+      }
+    }
+    objects.put(name, stored);
+    return new Response(201)
+        .header("ETag", stored.etag)
+        .header("Last-Modified", httpDate(stored.lastModified));
+  }
+
+  private Response get(final Request request, final StoredObject object) {
+    Response response = new Response(200)
+        .header("ETag", object.etag)
+        .header("Last-Modified", httpDate(object.lastModified))
+        .header("X-Timestamp", String.format(Locale.ENGLISH, "%d.%05d", object.lastModified / 1000,
+            object.lastModified % 1000 * 100))
+        .header("Accept-Ranges", "bytes");
+    object.metadata.forEach((key, value) -> response.header(META_PREFIX + key, value));
+
+    String ifNoneMatch = request.headers.get("If-None-Match");
+    if (ifNoneMatch != null && ifNoneMatch.replace("\"", "").equalsIgnoreCase(object.etag)) {
+      response.status = 304;
+      return response;
+    }
+    String ifMatch = request.headers.get("If-Match");
+    if (ifMatch != null && !ifMatch.replace("\"", "").equalsIgnoreCase(object.etag)) {
+      response.status = 412;
+      return response;
+    }
+    response.header("Content-Type", object.contentType);
+
+    int length = object.content.length;
+    int from = 0;
+    int to = length - 1;
+    String range = request.headers.get("Range");
+    if (range != null && range.startsWith("bytes=") && !range.contains(",")) {
+      String[] bounds = range.substring("bytes=".length()).split("-", -1);
+      if (bounds[0].isEmpty()) {
+        from = Math.max(0, length - Integer.parseInt(bounds[1]));
+      }
+      else {
+        from = Integer.parseInt(bounds[0]);
+        if (!bounds[1].isEmpty()) {
+          to = Math.min(to, Integer.parseInt(bounds[1]));
+        }
+      }
+      if (from >= length || from > to) {
+        response.status = 416;
+        return response.header("Content-Range", "bytes */" + length);
+      }
+      response.status = 206;
+      response.header("Content-Range", "bytes " + from + "-" + to + "/" + length);
+    }
+    return response.body(object.content, from, to - from + 1);
+  }
+
+  /**
+   * Returns the object metadata of a request, on top of {@code existing} when given.
+   */
+  private static Map<String, String> metadata(final Request request, @Nullable final Map<String, String> existing) {
+    Map<String, String> metadata = existing != null ? new TreeMap<>(existing) : new TreeMap<>();
+    request.headers.forEach((name, value) -> {
+      if (name.regionMatches(true, 0, META_PREFIX, 0, META_PREFIX.length())) {
+        metadata.put(name.substring(META_PREFIX.length()), value);
+      }
+    });
+    return metadata;
+  }
+
+  private static String decode(final String value) {
+    try {
+      return URLDecoder.decode(value.replace("+", "%2B"), "UTF-8");
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String escape(final String value) {
+    StringBuilder escaped = new StringBuilder(value.length());
+    for (char c : value.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        escaped.append('\\').append(c);
+      }
+      else if (c < 0x20) {
+        escaped.append(String.format("\\u%04x", (int) c));
+      }
+      else {
+        escaped.append(c);
+      }
+    }
+    return escaped.toString();
+  }
+
+  private static String httpDate(final long millis) {
+    return format("EEE, dd MMM yyyy HH:mm:ss 'GMT'", millis);
+  }
+
+  private static String format(final String pattern, final long millis) {
+    SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.ENGLISH);
+    format.setTimeZone(TimeZone.getTimeZone("GMT"));
+    return format.format(new Date(millis));
+  }
+
+  private static class StoredObject
+  {
+    private final byte[] content;
+
+    private final String etag;
+
+    private final String contentType;
+
+    private final Map<String, String> metadata;
+
+    private final long lastModified = System.currentTimeMillis();
+
+    StoredObject(final byte[] content, final String contentType, final Map<String, String> metadata) {
+      this.content = content;
+      this.etag = Hashing.md5().hashBytes(content).toString();
+      this.contentType = contentType;
+      this.metadata = metadata;
+    }
+  }
+
+  private static class Request
+  {
+    private String method;
+
+    private String path;
+
+    private final Map<String, String> query = new HashMap<>();
+
+    private final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    private byte[] body;
+
+    /**
+     * Reads the next request of a connection, null once the client closed it.
+     */
+    @Nullable
+    static Request read(final InputStream in, final OutputStream out) throws IOException {
+      String requestLine = readLine(in);
+      if (requestLine == null) {
+        return null;
+      }
+      String[] parts = requestLine.split(" ");
+      if (parts.length != 3) {
+        throw new SocketException("Malformed request line: " + requestLine);
+      }
+      Request request = new Request();
+      request.method = parts[0];
+      int question = parts[1].indexOf('?');
+      request.path = question < 0 ? parts[1] : parts[1].substring(0, question);
+      if (question >= 0) {
+        for (String parameter : parts[1].substring(question + 1).split("&")) {
+          int equals = parameter.indexOf('=');
+          request.query.put(decode(equals < 0 ? parameter : parameter.substring(0, equals)),
+              equals < 0 ? "" : URLDecoder.decode(parameter.substring(equals + 1), "UTF-8"));
+        }
+      }
+      for (String line = readLine(in); line != null && !line.isEmpty(); line = readLine(in)) {
+        int colon = line.indexOf(':');
+        if (colon > 0) {
+          request.headers.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+        }
+      }
+
+      if ("100-continue".equalsIgnoreCase(request.headers.get("Expect"))) {
+        out.write("HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+      }
+      if ("chunked".equalsIgnoreCase(request.headers.get("Transfer-Encoding"))) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (int size = chunkSize(in); size > 0; size = chunkSize(in)) {
+          byte[] chunk = new byte[size];
+          ByteStreams.readFully(in, chunk);
+          body.write(chunk);
+          readLine(in);
+        }
+        String trailer;
+        do {
+          trailer = readLine(in);
+        }
+        while (trailer != null && !trailer.isEmpty());
+        request.body = body.toByteArray();
+      }
+      else {
+        String contentLength = request.headers.get("Content-Length");
+        request.body = new byte[contentLength != null ? Integer.parseInt(contentLength) : 0];
+        ByteStreams.readFully(in, request.body);
+      }
+      return request;
+    }
+
+    private static int chunkSize(final InputStream in) throws IOException {
+      String line = readLine(in);
+      if (line == null) {
+        throw new EOFException();
+      }
+      int extension = line.indexOf(';');
+      return Integer.parseInt((extension < 0 ? line : line.substring(0, extension)).trim(), 16);
+    }
+
+    @Nullable
+    private static String readLine(final InputStream in) throws IOException {
+      StringBuilder line = new StringBuilder();
+      int c;
+      while ((c = in.read()) >= 0) {
+        if (c == '\n') {
+          int length = line.length();
+          return length > 0 && line.charAt(length - 1) == '\r' ? line.substring(0, length - 1) : line.toString();
+        }
+        line.append((char) c);
+      }
+      return line.length() > 0 ? line.toString() : null;
+    }
+  }
+
+  private static class Response
+  {
+    private static final Map<Integer, String> REASONS = new HashMap<>();
+
+    static {
+      REASONS.put(200, "OK");
+      REASONS.put(201, "Created");
+      REASONS.put(202, "Accepted");
+      REASONS.put(204, "No Content");
+      REASONS.put(206, "Partial Content");
+      REASONS.put(304, "Not Modified");
+      REASONS.put(401, "Unauthorized");
+      REASONS.put(404, "Not Found");
+      REASONS.put(405, "Method Not Allowed");
+      REASONS.put(409, "Conflict");
+      REASONS.put(412, "Precondition Failed");
+      REASONS.put(416, "Requested Range Not Satisfiable");
+      REASONS.put(422, "Unprocessable Entity");
+      REASONS.put(500, "Internal Server Error");
+      REASONS.put(501, "Not Implemented");
+      REASONS.put(503, "Service Unavailable");
+    }
+
+    private int status;
+
+    private final Map<String, String> headers = new LinkedHashMap<>();
+
+    private byte[] body = new byte[0];
+
+    private int offset;
+
+    private int length;
+
+    Response(final int status) {
+      this.status = status;
+    }
+
+    Response header(final String name, final String value) {
+      headers.put(name, value);
+      return this;
+    }
+
+    Response body(final byte[] body, final int offset, final int length) {
+      this.body = body;
+      this.offset = offset;
+      this.length = length;
+      return this;
+    }
+
+    void write(final OutputStream out, final boolean head) throws IOException {
+      boolean bodiless = status == 204 || status == 304;
+      StringBuilder response = new StringBuilder("HTTP/1.1 ").append(status).append(' ')
+          .append(REASONS.getOrDefault(status, "Unknown")).append("\r\n")
+          .append("Date: ").append(httpDate(System.currentTimeMillis())).append("\r\n");
+      headers.forEach((name, value) -> response.append(name).append(": ").append(value).append("\r\n"));
+      if (!bodiless) {
+        response.append("Content-Length: ").append(length).append("\r\n");
+      }
+      response.append("\r\n");
+      out.write(response.toString().getBytes(StandardCharsets.UTF_8));
+      if (!head && !bodiless) {
+        out.write(body, offset, length);
+      }
+      out.flush();
+    }
+  }
+}
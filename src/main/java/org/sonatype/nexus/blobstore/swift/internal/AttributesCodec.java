@@ -0,0 +1,234 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.sonatype.nexus.blobstore.api.BlobMetrics;
+
+import com.google.common.base.Utf8;
+import com.google.common.collect.Maps;
+import org.joda.time.DateTime;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Encodes blob attributes in a compact binary form, the {@code binary} attribute format.
+ *
+ * <pre>
+ * version    1 byte, 0x80 | {@value #VERSION}
+ * flags      1 byte, deleted 0x01, large object 0x02, binary SHA1 0x04
+ * sha1       20 bytes with the binary SHA1 flag, a string otherwise
+ * size       varint
+ * created    varint, milliseconds since the epoch
+ * headers    varint count, then a string name and a string value for each
+ * reason     a string, only when deleted
+ * </pre>
+ *
+ * Varints are unsigned LEB128, strings are a varint length followed by that many bytes of UTF-8. The high bit of the
+ * version byte tells the format from properties text, which {@link java.util.Properties#store} writes in ASCII.
+ */
+final class AttributesCodec {
+  static final int VERSION = 1;
+
+  private static final int MARKER = 0x80;
+
+  private static final int DELETED = 0x01;
+
+  private static final int LARGE_OBJECT = 0x02;
+
+  private static final int BINARY_SHA1 = 0x04;
+
+  private static final int SHA1_LENGTH = 20;
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private AttributesCodec() {
+  }
+
+  /**
+   * Returns true when the content is binary attributes rather than properties text.
+   */
+  static boolean isEncoded(final byte[] content) {
+    return content.length > 0 && (content[0] & MARKER) != 0;
+  }
+
+  static byte[] encode(final SwiftBlobAttributes attributes) {
+    BlobMetrics metrics = attributes.getMetrics();
+    String sha1 = metrics.getSha1Hash();
+    boolean binarySha1 = isHexSha1(sha1);
+    Writer out = new Writer();
+    out.writeByte(MARKER | VERSION);
+    out.writeByte((attributes.isDeleted() ? DELETED : 0)
+        | (attributes.isLargeObject() ? LARGE_OBJECT : 0)
+        | (binarySha1 ? BINARY_SHA1 : 0));
+    if (binarySha1) {
+      for (int i = 0; i < SHA1_LENGTH * 2; i += 2) {
+        out.writeByte(Character.digit(sha1.charAt(i), 16) << 4 | Character.digit(sha1.charAt(i + 1), 16));
+      }
+    }
+    else {
+      out.writeString(sha1);
+    }
+    out.writeVarLong(metrics.getContentSize());
+    out.writeVarLong(metrics.getCreationTime().getMillis());
+    Map<String, String> headers = attributes.getHeaders();
+    out.writeVarLong(headers.size());
+    for (Entry<String, String> header : headers.entrySet()) {
+      out.writeString(header.getKey());
+      out.writeString(header.getValue());
+    }
+    if (attributes.isDeleted()) {
+      out.writeString(attributes.getDeletedReason());
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Decodes the attributes into {@code attributes}, reading straight from the content.
+   *
+   * @throws IllegalArgumentException when the content is of an unknown version or cut short
+   */
+  static void decode(final byte[] content, final SwiftBlobAttributes attributes) {
+    Reader in = new Reader(content);
+    int version = in.readByte() & ~MARKER;
+    checkArgument(version == VERSION, "Unsupported attributes version: %s", version);
+    int flags = in.readByte();
+    String sha1 = (flags & BINARY_SHA1) != 0 ? in.readHex(SHA1_LENGTH) : in.readString();
+    long size = in.readVarLong();
+    long creationTime = in.readVarLong();
+    int count = in.readLength();
+    Map<String, String> headers = Maps.newHashMapWithExpectedSize(count);
+    for (int i = 0; i < count; i++) {
+      headers.put(in.readString(), in.readString());
+    }
+    boolean deleted = (flags & DELETED) != 0;
+    attributes.assign(headers, new BlobMetrics(new DateTime(creationTime), sha1, size), deleted,
+        deleted ? in.readString() : null, (flags & LARGE_OBJECT) != 0);
+  }
+
+  private static boolean isHexSha1(final String sha1) {
+    if (sha1.length() != SHA1_LENGTH * 2) {
+      return false;
+    }
+    for (int i = 0; i < sha1.length(); i++) {
+      char c = sha1.charAt(i);
+      if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static final class Writer {
+    private byte[] buffer = new byte[256];
+
+    private int length;
+
+    void writeByte(final int value) {
+      ensureCapacity(1);
+      buffer[length++] = (byte) value;
+    }
+
+    void writeVarLong(long value) {
+      ensureCapacity(10);
+      while ((value & ~0x7FL) != 0) {
+        buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buffer[length++] = (byte) value;
+    }
+
+    void writeString(final String value) {
+      int encodedLength = Utf8.encodedLength(value);
+      writeVarLong(encodedLength);
+      if (encodedLength == value.length()) {
+        // ASCII, as most headers are, is copied without encoding it into a byte[] of its own first
+        ensureCapacity(encodedLength);
+        for (int i = 0; i < encodedLength; i++) {
+          buffer[length++] = (byte) value.charAt(i);
+        }
+      }
+      else {
+        byte[] bytes = value.getBytes(UTF_8);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+      }
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buffer, length);
+    }
+
+    private void ensureCapacity(final int needed) {
+      if (length + needed > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + needed));
+      }
+    }
+  }
+
+  private static final class Reader {
+    private final byte[] content;
+
+    private int position;
+
+    Reader(final byte[] content) {
+      this.content = content;
+    }
+
+    int readByte() {
+      checkArgument(position < content.length, "Truncated attributes");
+      return content[position++] & 0xFF;
+    }
+
+    long readVarLong() {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        int b = readByte();
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IllegalArgumentException("Malformed varint in attributes");
+    }
+
+    int readLength() {
+      long length = readVarLong();
+      checkArgument(length >= 0 && length <= content.length - position, "Truncated attributes");
+      return (int) length;
+    }
+
+    String readString() {
+      int length = readLength();
+      String value = new String(content, position, length, UTF_8);
+      position += length;
+      return value;
+    }
+
+    String readHex(final int length) {
+      checkArgument(length <= content.length - position, "Truncated attributes");
+      char[] hex = new char[length * 2];
+      for (int i = 0; i < length; i++) {
+        int b = content[position++] & 0xFF;
+        hex[i * 2] = HEX_DIGITS[b >>> 4];
+        hex[i * 2 + 1] = HEX_DIGITS[b & 0x0F];
+      }
+      return new String(hex);
+    }
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Encodes blob attributes as {@code X-Object-Meta-*} metadata of the content object (layout {@code swift/2}).
+ *
+ * Swift metadata keys are case insensitive and values are limited in length and character set, so the attributes are
+ * url-encoded as a single form string which is split across numbered {@value #KEY_PREFIX}NN entries. Attributes in the
+ * {@link AttributesCodec binary} format are base64 encoded and split across {@value #BINARY_KEY_PREFIX}NN entries.
+ */
+final class AttributesMetadata {
+  static final String KEY_PREFIX = "Nexus-Attributes-";
+
+  static final String BINARY_KEY_PREFIX = "Nexus-Attrs-";
+
+  // swift defaults for max_meta_value_length and max_meta_overall_size
+  private static final int MAX_VALUE_LENGTH = 256;
+  private static final int MAX_OVERALL_SIZE = 4096;
+
+  private AttributesMetadata() {
+  }
+
+  /**
+   * Returns the metadata entries for the properties, null when they would exceed swift's metadata limits.
+   */
+  @Nullable
+  static Map<String, Object> encode(final Properties properties) {
+    StringBuilder form = new StringBuilder();
+    for (String name : properties.stringPropertyNames()) {
+      if (form.length() > 0) {
+        form.append('&');
+      }
+      form.append(urlEncode(name)).append('=').append(urlEncode(properties.getProperty(name)));
+    }
+    return split(KEY_PREFIX, form.toString());
+  }
+
+  /**
+   * Returns the metadata entries for binary attributes, null when they would exceed swift's metadata limits.
+   */
+  @Nullable
+  static Map<String, Object> encode(final byte[] attributes) {
+    return split(BINARY_KEY_PREFIX, Base64.getEncoder().encodeToString(attributes));
+  }
+
+  @Nullable
+  private static Map<String, Object> split(final String keyPrefix, final String encoded) {
+    Map<String, Object> metadata = new TreeMap<>();
+    int overallSize = 0;
+    for (int start = 0, index = 0; start < encoded.length(); start += MAX_VALUE_LENGTH, index++) {
+      String key = format("%s%02d", keyPrefix, index);
+      String value = encoded.substring(start, Math.min(encoded.length(), start + MAX_VALUE_LENGTH));
+      overallSize += key.length() + value.length();
+      if (overallSize > MAX_OVERALL_SIZE) {
+        return null;
+      }
+      metadata.put(key, value);
+    }
+    return metadata;
+  }
+
+  /**
+   * Decodes the attributes from the metadata into {@code properties}, returns false when the metadata holds none.
+   */
+  static boolean decode(final Map<String, Object> metadata, final Properties properties) {
+    String form = join(KEY_PREFIX, metadata);
+    if (form == null) {
+      return false;
+    }
+    for (String pair : form.split("&")) {
+      int separator = pair.indexOf('=');
+      if (separator > 0) {
+        properties.setProperty(urlDecode(pair.substring(0, separator)), urlDecode(pair.substring(separator + 1)));
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the binary attributes held in the metadata, null when it holds none.
+   */
+  @Nullable
+  static byte[] decodeBinary(final Map<String, Object> metadata) {
+    String encoded = join(BINARY_KEY_PREFIX, metadata);
+    return encoded == null ? null : Base64.getDecoder().decode(encoded);
+  }
+
+  @Nullable
+  private static String join(final String keyPrefix, final Map<String, Object> metadata) {
+    String prefix = keyPrefix.toLowerCase(Locale.ENGLISH);
+    Map<String, String> chunks = new TreeMap<>();
+    for (Entry<String, Object> entry : metadata.entrySet()) {
+      String key = entry.getKey().toLowerCase(Locale.ENGLISH);
+      if (key.startsWith(prefix)) {
+        chunks.put(key, String.valueOf(entry.getValue()));
+      }
+    }
+    if (chunks.isEmpty()) {
+      return null;
+    }
+    StringBuilder joined = new StringBuilder();
+    chunks.values().forEach(joined::append);
+    return joined.toString();
+  }
+
+  private static String urlEncode(final String value) {
+    try {
+      return URLEncoder.encode(value, UTF_8.name());
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String urlDecode(final String value) {
+    try {
+      return URLDecoder.decode(value, UTF_8.name());
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
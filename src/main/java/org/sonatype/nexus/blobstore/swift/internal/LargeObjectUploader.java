@@ -0,0 +1,305 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nullable;
+
+import org.javaswift.joss.instructions.UploadInstructions;
+import org.javaswift.joss.model.Account;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonatype.nexus.blobstore.swift.internal.SwiftApiClient.Segment;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.String.format;
+
+/**
+ * Uploads a stream as a swift Static Large Object: the stream is cut into fixed-size segments which are uploaded
+ * concurrently on a shared worker pool, each with its own retries, and then stitched together by a manifest.
+ *
+ * At most {@code maxInFlight} segments are held in memory, across all the uploads of the uploader; memory for a
+ * segment is reserved before it is read from the source, which blocks until a worker frees a slot.
+ */
+class LargeObjectUploader {
+  private static final Logger log = LoggerFactory.getLogger(LargeObjectUploader.class);
+
+  private final Account swift;
+  private final SwiftApiClient swiftApi;
+  private final ExecutorService executor;
+  private final int segmentSize;
+  private final int maxInFlight;
+  private final SwiftRetryPolicy retryPolicy;
+  // segments held in memory by all uploads
+  private final Semaphore memory;
+
+  LargeObjectUploader(final Account swift,
+                      final SwiftApiClient swiftApi,
+                      final ExecutorService executor,
+                      final int segmentSize,
+                      final int maxInFlight,
+                      final SwiftRetryPolicy retryPolicy)
+  {
+    checkArgument(segmentSize > 0, "segmentSize must be > 0");
+    checkArgument(maxInFlight > 0, "maxInFlight must be > 0");
+    this.swift = checkNotNull(swift);
+    this.swiftApi = checkNotNull(swiftApi);
+    this.executor = checkNotNull(executor);
+    this.segmentSize = segmentSize;
+    this.maxInFlight = maxInFlight;
+    this.retryPolicy = checkNotNull(retryPolicy);
+    this.memory = new Semaphore(maxInFlight);
+  }
+
+  int getSegmentSize() {
+    return segmentSize;
+  }
+
+  /**
+   * Reserves the memory of a segment, for content read ahead before it is known to be uploaded as segments. It is
+   * released with {@link #release()}, or handed over to {@link #upload(String, String, String, byte[], InputStream)}.
+   */
+  void reserve() throws InterruptedIOException {
+    try {
+      memory.acquire();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for segment memory");
+    }
+  }
+
+  void release() {
+    memory.release();
+  }
+
+  /**
+   * Reads the next segment, starting with {@code head}, from the stream, returns null at the end of the stream.
+   */
+  @Nullable
+  private byte[] readSegment(final byte[] head, final InputStream input) throws IOException {
+    byte[] segment = head.length == segmentSize ? head : Arrays.copyOf(head, segmentSize);
+    int length = head.length + ByteStreams.read(input, segment, head.length, segmentSize - head.length);
+    if (length == 0) {
+      return null;
+    }
+    return length < segmentSize ? Arrays.copyOf(segment, length) : segment;
+  }
+
+  /**
+   * Uploads {@code head} followed by {@code input} as segments under {@code segmentPrefix}, then writes the manifest
+   * to {@code destination}. Uploaded segments are removed again if the upload fails.
+   *
+   * The head, at most a segment long, must have been read within memory reserved with {@link #reserve()}, which the
+   * upload takes over.
+   */
+  void upload(final String container,
+              final String destination,
+              final String segmentPrefix,
+              final byte[] head,
+              final InputStream input) throws IOException
+  {
+    checkArgument(head.length <= segmentSize, "head must not exceed a segment");
+    upload(container, destination, segmentPrefix, memory, true, (index, path) -> {
+      byte[] segment = readSegment(index == 0 ? head : new byte[0], input);
+      return segment != null ? segmentUpload(container, path, segment) : null;
+    });
+  }
+
+  /**
+   * Uploads {@code file} as {@link #upload(String, String, String, InputStream)} does, reading each segment from the
+   * file again for each try rather than holding it in memory.
+   */
+  void upload(final String container,
+              final String destination,
+              final String segmentPrefix,
+              final Path file) throws IOException
+  {
+    long size = Files.size(file);
+    ByteSource content = com.google.common.io.Files.asByteSource(file.toFile());
+    // segments are read from the file rather than held in memory, the semaphore only bounds those queued
+    upload(container, destination, segmentPrefix, new Semaphore(maxInFlight), false, (index, path) -> {
+      long offset = (long) index * segmentSize;
+      if (offset >= size) {
+        return null;
+      }
+      return segmentUpload(container, path, content.slice(offset, Math.min(segmentSize, size - offset)));
+    });
+  }
+
+  /**
+   * Uploads the segments of {@code source}, each read once a slot of {@code inFlight} is acquired, the first one
+   * possibly {@code acquired} already by the caller.
+   */
+  private void upload(final String container,
+                      final String destination,
+                      final String segmentPrefix,
+                      final Semaphore inFlight,
+                      final boolean acquired,
+                      final SegmentSource source) throws IOException
+  {
+    List<Future<Segment>> pending = new ArrayList<>();
+    AtomicBoolean aborted = new AtomicBoolean();
+    boolean held = acquired;
+    try {
+      while (true) {
+        if (!held) {
+          inFlight.acquire();
+          held = true;
+        }
+        Callable<Segment> segment = source.next(pending.size(), segmentPath(segmentPrefix, pending.size()));
+        if (segment == null) {
+          break;
+        }
+        // the slot goes with the segment, freed once uploaded
+        held = false;
+        pending.add(submit(segment, inFlight, aborted));
+      }
+
+      List<Segment> segments = new ArrayList<>(pending.size());
+      for (Future<Segment> future : pending) {
+        segments.add(future.get());
+      }
+      log.debug("Writing manifest {} for {} segments", destination, segments.size());
+      swiftApi.putManifest(container, destination, segments);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      abort(container, segmentPrefix, pending, aborted);
+      throw new IOException("Interrupted uploading " + destination, e);
+    }
+    catch (ExecutionException e) {
+      abort(container, segmentPrefix, pending, aborted);
+      throw new IOException("Failed uploading segment of " + destination, e.getCause());
+    }
+    catch (IOException | RuntimeException e) {
+      abort(container, segmentPrefix, pending, aborted);
+      throw e;
+    }
+    finally {
+      if (held) {
+        inFlight.release();
+      }
+    }
+  }
+
+  private Future<Segment> submit(final Callable<Segment> segment,
+                                 final Semaphore inFlight,
+                                 final AtomicBoolean aborted)
+  {
+    try {
+      return executor.submit(() -> {
+        try {
+          // segments not sent yet when the upload failed are not sent at all
+          return aborted.get() ? null : segment.call();
+        }
+        finally {
+          inFlight.release();
+        }
+      });
+    }
+    catch (RuntimeException e) {
+      inFlight.release();
+      throw e;
+    }
+  }
+
+  private Callable<Segment> segmentUpload(final String container, final String path, final byte[] content) {
+    return () -> {
+      String etag = Hashing.md5().hashBytes(content).toString();
+      return retryPolicy.call(() -> {
+        swift.getContainer(container).getObject(path).uploadObject(new UploadInstructions(content).setMd5(etag));
+        return new Segment(path, etag, content.length);
+      });
+    };
+  }
+
+  private Callable<Segment> segmentUpload(final String container, final String path, final ByteSource content) {
+    return () -> {
+      String etag = content.hash(Hashing.md5()).toString();
+      long length = content.size();
+      return retryPolicy.call(() -> {
+        try (InputStream input = content.openStream()) {
+          swift.getContainer(container).getObject(path)
+              .uploadObject(new UploadInstructions(input, length).setMd5(etag));
+        }
+        return new Segment(path, etag, length);
+      });
+    };
+  }
+
+  private void abort(final String container,
+                     final String segmentPrefix,
+                     final List<Future<Segment>> pending,
+                     final AtomicBoolean aborted)
+  {
+    aborted.set(true);
+    // interrupting does not stop a PUT sent already, which is waited for so that it does not write its segment after
+    // the segment was deleted
+    for (Future<Segment> future : pending) {
+      try {
+        Uninterruptibles.getUninterruptibly(future);
+      }
+      catch (ExecutionException | CancellationException e) {
+        // failed segments are deleted all the same
+      }
+    }
+    for (int i = 0; i < pending.size(); i++) {
+      String path = segmentPath(segmentPrefix, i);
+      try {
+        swift.getContainer(container).getObject(path).delete();
+      }
+      catch (Exception e) {
+        log.debug("Unable to remove segment {}", path, e);
+      }
+    }
+  }
+
+  /**
+   * The segments of an upload, read one after another.
+   */
+  @FunctionalInterface
+  private interface SegmentSource
+  {
+    /**
+     * Returns the upload of segment {@code index} to {@code path}, null past the last segment.
+     */
+    @Nullable
+    Callable<Segment> next(int index, String path) throws IOException;
+  }
+
+  static String segmentPath(final String segmentPrefix, final int index) {
+    return format("%s/%08d", segmentPrefix, index);
+  }
+}
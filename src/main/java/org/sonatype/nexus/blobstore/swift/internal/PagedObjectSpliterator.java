@@ -0,0 +1,86 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+import javax.annotation.Nullable;
+
+import org.javaswift.joss.model.Container;
+import org.javaswift.joss.model.StoredObject;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Lazily lists the names of all objects under a prefix, without a delimiter, in pages of {@code marker}/{@code limit}
+ * queries.
+ *
+ * Only the current page is held in memory, the next one is requested once it is used up. The listing ends on the first
+ * empty page, as clusters may cap {@code limit} below the page size asked for. A listing may start after a given
+ * {@code marker} to resume where an earlier one left off.
+ */
+class PagedObjectSpliterator
+    extends Spliterators.AbstractSpliterator<String>
+{
+  private final Container container;
+  private final String prefix;
+  private final int pageSize;
+  private final SwiftRetryPolicy retryPolicy;
+
+  private Iterator<StoredObject> page = Collections.emptyIterator();
+  private String marker;
+  private boolean exhausted;
+
+  PagedObjectSpliterator(final Container container, final String prefix, final int pageSize, final SwiftRetryPolicy retryPolicy) {
+    this(container, prefix, null, pageSize, retryPolicy);
+  }
+
+  PagedObjectSpliterator(final Container container,
+                         final String prefix,
+                         @Nullable final String marker,
+                         final int pageSize,
+                         final SwiftRetryPolicy retryPolicy)
+  {
+    super(Long.MAX_VALUE, ORDERED | DISTINCT | NONNULL | IMMUTABLE);
+    checkArgument(pageSize > 0, "pageSize must be > 0");
+    this.container = checkNotNull(container);
+    this.prefix = checkNotNull(prefix);
+    this.pageSize = pageSize;
+    this.retryPolicy = checkNotNull(retryPolicy);
+    this.marker = marker;
+  }
+
+  @Override
+  public boolean tryAdvance(final Consumer<? super String> action) {
+    while (!page.hasNext()) {
+      if (exhausted) {
+        return false;
+      }
+      Collection<StoredObject> objects = list();
+      exhausted = objects.isEmpty();
+      page = objects.iterator();
+    }
+    marker = page.next().getName();
+    action.accept(marker);
+    return true;
+  }
+
+  private Collection<StoredObject> list() {
+    return retryPolicy.call(() -> container.list(prefix, marker, pageSize));
+  }
+}
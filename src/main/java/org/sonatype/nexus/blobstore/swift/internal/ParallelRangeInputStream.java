@@ -0,0 +1,205 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.javaswift.joss.exception.ModifiedException;
+import org.javaswift.joss.headers.object.conditional.IfMatch;
+import org.javaswift.joss.headers.object.range.AbstractRange;
+import org.javaswift.joss.instructions.DownloadInstructions;
+import org.javaswift.joss.model.StoredObject;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.String.format;
+
+/**
+ * Reads a swift object of known size as concurrent {@code Range} GETs, handing the chunks to the caller in order.
+ *
+ * At most {@code window} chunks are requested or buffered at any time. A new chunk is only requested when the
+ * caller has taken one, so a slow reader holds prefetching back and memory stays bounded at
+ * {@code window * chunkSize}.
+ *
+ * All ranges are requested {@code If-Match} the ETag the object had when the stream was first read from, so that an
+ * object replaced while being read fails the stream rather than handing out ranges of both versions.
+ */
+class ParallelRangeInputStream
+    extends InputStream
+{
+  private final StoredObject object;
+  private final long size;
+  private final int chunkSize;
+  private final int window;
+  private final ExecutorService executor;
+  private final SwiftRetryPolicy retryPolicy;
+  private final Deque<Future<byte[]>> prefetched = new ArrayDeque<>();
+
+  private String etag;
+  private long nextOffset;
+  private byte[] current;
+  private int position;
+  private boolean closed;
+
+  ParallelRangeInputStream(final StoredObject object,
+                           final long size,
+                           final int chunkSize,
+                           final int window,
+                           final ExecutorService executor,
+                           final SwiftRetryPolicy retryPolicy)
+  {
+    checkArgument(chunkSize > 0, "chunkSize must be > 0");
+    checkArgument(window > 0, "window must be > 0");
+    this.object = checkNotNull(object);
+    this.size = size;
+    this.chunkSize = chunkSize;
+    this.window = window;
+    this.executor = checkNotNull(executor);
+    this.retryPolicy = checkNotNull(retryPolicy);
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!fill()) {
+      return -1;
+    }
+    return current[position++] & 0xff;
+  }
+
+  @Override
+  public int read(final byte[] b, final int off, final int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!fill()) {
+      return -1;
+    }
+    int n = Math.min(len, current.length - position);
+    System.arraycopy(current, position, b, off, n);
+    position += n;
+    return n;
+  }
+
+  @Override
+  public int available() {
+    return current == null ? 0 : current.length - position;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    current = null;
+    for (Future<byte[]> future : prefetched) {
+      future.cancel(true);
+    }
+    prefetched.clear();
+  }
+
+  /**
+   * Makes sure there is something left to read in {@link #current}, returns false at the end of the object.
+   */
+  private boolean fill() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    if (current != null && position < current.length) {
+      return true;
+    }
+    if (etag == null) {
+      etag = fetchEtag();
+    }
+    prefetch();
+    Future<byte[]> next = prefetched.poll();
+    if (next == null) {
+      current = null;
+      return false;
+    }
+    try {
+      current = next.get();
+      position = 0;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      close();
+      throw new IOException("Interrupted reading " + object.getName(), e);
+    }
+    catch (ExecutionException e) {
+      close();
+      if (e.getCause() instanceof ModifiedException) {
+        throw new IOException(object.getName() + " changed while being read", e.getCause());
+      }
+      throw new IOException("Failed reading range of " + object.getName(), e.getCause());
+    }
+    prefetch();
+    return true;
+  }
+
+  private void prefetch() {
+    while (prefetched.size() < window && nextOffset < size) {
+      long from = nextOffset;
+      long to = Math.min(size, from + chunkSize) - 1;
+      prefetched.add(executor.submit(() -> download(from, to)));
+      nextOffset = to + 1;
+    }
+  }
+
+  private String fetchEtag() throws IOException {
+    try {
+      return retryPolicy.call(object::getEtag);
+    }
+    catch (RuntimeException e) {
+      throw new IOException("Failed reading " + object.getName(), e);
+    }
+  }
+
+  private byte[] download(final long from, final long to) throws IOException {
+    DownloadInstructions instructions = new DownloadInstructions()
+        .setRange(new ByteRange(from, to))
+        .setMatchConditional(new IfMatch(etag));
+    return retryPolicy.call(() -> {
+      byte[] chunk = object.downloadObject(instructions);
+      if (chunk.length != to - from + 1) {
+        throw new IOException(format("Expected %d bytes from range %d-%d of %s but got %d",
+            to - from + 1, from, to, object.getName(), chunk.length));
+      }
+      return chunk;
+    });
+  }
+
+  /**
+   * An inclusive byte range, JOSS' own ranges only take int offsets.
+   */
+  static class ByteRange
+      extends AbstractRange
+  {
+    ByteRange(final long from, final long to) {
+      super(from, to);
+    }
+
+    @Override
+    public long getFrom(final int byteArrayLength) {
+      return offset;
+    }
+
+    @Override
+    public long getTo(final int byteArrayLength) {
+      return length;
+    }
+  }
+}
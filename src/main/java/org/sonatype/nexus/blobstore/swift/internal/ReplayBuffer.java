@@ -0,0 +1,148 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Lets a one-shot upload stream be sent to swift more than once.
+ *
+ * Every {@link #newStream()} starts again from the first byte: bytes already pulled from the source are replayed
+ * from memory, the remainder continues from the source. Only the first {@code memoryLimit} bytes are retained; once
+ * the source was read past them the buffer lets go of them and the content cannot be replayed anymore, rather than
+ * being spooled to disk for a retry which rarely comes. When replay is disabled nothing is retained.
+ *
+ * Streams handed out ignore {@link InputStream#close()} (http client closes the entity once sent), only the most
+ * recent one may be read and the source is released by {@link #close()}.
+ */
+class ReplayBuffer
+    implements Closeable
+{
+  private static final int INITIAL_CAPACITY = 8 * 1024;
+
+  private final InputStream source;
+
+  private final int memoryLimit;
+
+  private final boolean replayable;
+
+  private byte[] memory = new byte[0];
+
+  private int memoryCount;
+
+  private boolean exceeded;
+
+  private int streams;
+
+  ReplayBuffer(final InputStream source, final int memoryLimit, final boolean replayable) {
+    checkArgument(memoryLimit >= 0, "memoryLimit must be >= 0");
+    this.source = checkNotNull(source);
+    this.memoryLimit = memoryLimit;
+    this.replayable = replayable;
+  }
+
+  /**
+   * Returns a stream positioned at the start of the content.
+   *
+   * @throws IllegalStateException when a stream was handed out already and the content cannot be replayed
+   */
+  InputStream newStream() {
+    checkState(replayable || streams == 0, "Upload stream cannot be replayed");
+    checkState(!exceeded, "Upload exceeded the replay window of %s bytes and cannot be retried", memoryLimit);
+    streams++;
+    return new ReplayStream(streams);
+  }
+
+  /**
+   * Returns true while the content read so far can be replayed.
+   */
+  boolean isReplayable() {
+    return replayable && !exceeded;
+  }
+
+  @Override
+  public void close() throws IOException {
+    memory = null;
+    source.close();
+  }
+
+  private void record(final byte[] b, final int off, final int len) {
+    if (!replayable || exceeded) {
+      return;
+    }
+    if (len > memoryLimit - memoryCount) {
+      // past the window, a retry would have to send the content again from the start
+      exceeded = true;
+      memory = null;
+      return;
+    }
+    if (memoryCount + len > memory.length) {
+      int capacity = Math.max(memoryCount + len, Math.max(INITIAL_CAPACITY, memory.length * 2));
+      memory = Arrays.copyOf(memory, Math.min(capacity, memoryLimit));
+    }
+    System.arraycopy(b, off, memory, memoryCount, len);
+    memoryCount += len;
+  }
+
+  private class ReplayStream
+      extends InputStream
+  {
+    private final int generation;
+
+    private final byte[] single = new byte[1];
+
+    private long position;
+
+    ReplayStream(final int generation) {
+      this.generation = generation;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int n = read(single, 0, 1);
+      return n == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      checkState(generation == streams, "Stream superseded by a newer replay");
+      if (len == 0) {
+        return 0;
+      }
+      if (position < memoryCount && !exceeded) {
+        int n = (int) Math.min(len, memoryCount - position);
+        System.arraycopy(memory, (int) position, b, off, n);
+        position += n;
+        return n;
+      }
+      int n = source.read(b, off, len);
+      if (n > 0) {
+        record(b, off, n);
+        position += n;
+      }
+      return n;
+    }
+
+    @Override
+    public void close() {
+      // the entity is closed once sent, the content stays available for a replay
+    }
+  }
+}
@@ -0,0 +1,239 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Throwables.throwIfUnchecked;
+
+/**
+ * Merges the listings of a number of shards (e.g. the volume/chapter prefixes of a container) into one ordered
+ * spliterator, listing up to {@code window} shards ahead concurrently on an executor.
+ *
+ * Like {@link ParallelRangeInputStream}, a shard is only requested when the consumer has taken one, so memory stays
+ * bounded at {@code window} shard listings. Shards which split into smaller ones are only split once reached, or
+ * to have something to hand off. {@link #trySplit()} hands the first half of the shards not yet requested to a new
+ * spliterator, which shares the executor, and {@link #cancel()} cancels the listings of every spliterator split off.
+ */
+class ShardedListingSpliterator
+    implements Spliterator<String>
+{
+  /**
+   * A shard of the listing.
+   */
+  @FunctionalInterface
+  interface Shard
+  {
+    List<String> list();
+  }
+
+  /**
+   * A shard which may split into smaller shards.
+   */
+  interface SplittableShard
+      extends Shard
+  {
+    /**
+     * Returns the shards this one splits into, in listing order, {@code null} when it is listed as a whole.
+     */
+    @Nullable
+    List<Shard> split();
+  }
+
+  private final Cancellation cancellation;
+  private final ExecutorService executor;
+  private final int window;
+
+  // not requested yet, in listing order
+  private Deque<Shard> pending;
+  private Deque<Future<List<String>>> prefetched = new ArrayDeque<>();
+  private Iterator<String> current = Collections.emptyIterator();
+
+  ShardedListingSpliterator(final List<Shard> shards, final ExecutorService executor, final int window) {
+    this(new ArrayDeque<>(shards), new Cancellation(), executor, window);
+  }
+
+  private ShardedListingSpliterator(final Deque<Shard> pending,
+                                    final Cancellation cancellation,
+                                    final ExecutorService executor,
+                                    final int window)
+  {
+    checkArgument(window > 0, "window must be > 0");
+    this.pending = checkNotNull(pending);
+    this.cancellation = checkNotNull(cancellation);
+    this.executor = checkNotNull(executor);
+    this.window = window;
+  }
+
+  @Override
+  public boolean tryAdvance(final Consumer<? super String> action) {
+    while (!current.hasNext()) {
+      if (cancellation.cancelled) {
+        return false;
+      }
+      prefetch();
+      Future<List<String>> shard = prefetched.poll();
+      if (shard == null) {
+        return false;
+      }
+      current = get(shard).iterator();
+      prefetch();
+    }
+    action.accept(current.next());
+    return true;
+  }
+
+  @Override
+  public Spliterator<String> trySplit() {
+    while (pending.size() == 1 && !cancellation.cancelled) {
+      List<Shard> parts = split(pending.peek());
+      if (parts == null) {
+        break;
+      }
+      pending.poll();
+      pending.addAll(parts);
+    }
+    if (pending.size() < 2 || cancellation.cancelled) {
+      return null;
+    }
+    // the shards already requested precede the ones left, so they go with the prefix
+    Deque<Shard> prefixShards = new ArrayDeque<>();
+    for (int i = pending.size() / 2; i > 0; i--) {
+      prefixShards.add(pending.poll());
+    }
+    ShardedListingSpliterator prefix = new ShardedListingSpliterator(prefixShards, cancellation, executor, window);
+    prefix.prefetched = prefetched;
+    prefix.current = current;
+    prefetched = new ArrayDeque<>();
+    current = Collections.emptyIterator();
+    return prefix;
+  }
+
+  @Override
+  public long estimateSize() {
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public int characteristics() {
+    return ORDERED | DISTINCT | NONNULL | IMMUTABLE;
+  }
+
+  /**
+   * Cancels the shard listings requested ahead by this spliterator and those split off from it, or it from.
+   */
+  void cancel() {
+    cancellation.cancel();
+  }
+
+  private void prefetch() {
+    Shard shard;
+    while (prefetched.size() < window && (shard = nextShard()) != null) {
+      Future<List<String>> listing = executor.submit(shard::list);
+      cancellation.track(listing);
+      prefetched.add(listing);
+    }
+  }
+
+  /**
+   * Takes the next shard to list, splitting the shards met on the way.
+   */
+  @Nullable
+  private Shard nextShard() {
+    while (!pending.isEmpty() && !cancellation.cancelled) {
+      Shard shard = pending.poll();
+      List<Shard> parts = split(shard);
+      if (parts == null) {
+        return shard;
+      }
+      for (ListIterator<Shard> part = parts.listIterator(parts.size()); part.hasPrevious(); ) {
+        pending.addFirst(part.previous());
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private static List<Shard> split(final Shard shard) {
+    return shard instanceof SplittableShard ? ((SplittableShard) shard).split() : null;
+  }
+
+  private List<String> get(final Future<List<String>> shard) {
+    try {
+      return shard.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      cancel();
+      throw new IllegalStateException("Interrupted listing shards", e);
+    }
+    catch (ExecutionException e) {
+      cancel();
+      throwIfUnchecked(e.getCause());
+      throw new IllegalStateException("Failed listing shard", e.getCause());
+    }
+    catch (CancellationException e) { // NOSONAR
+      // the listing was cancelled, which the consumer sees next
+      return Collections.emptyList();
+    }
+    finally {
+      cancellation.untrack(shard);
+    }
+  }
+
+  /**
+   * Shared by a spliterator and all those split off from it.
+   */
+  private static class Cancellation
+  {
+    private final Set<Future<List<String>>> requested = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean cancelled;
+
+    void track(final Future<List<String>> listing) {
+      requested.add(listing);
+      if (cancelled) {
+        listing.cancel(true);
+      }
+    }
+
+    void untrack(final Future<List<String>> listing) {
+      requested.remove(listing);
+    }
+
+    void cancel() {
+      cancelled = true;
+      for (Future<List<String>> listing : requested) {
+        listing.cancel(true);
+      }
+      requested.clear();
+    }
+  }
+}
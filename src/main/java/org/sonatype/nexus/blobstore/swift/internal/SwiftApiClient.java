@@ -0,0 +1,406 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.TypeReference;
+import org.javaswift.joss.exception.CommandExceptionError;
+import org.javaswift.joss.exception.HttpStatusExceptionUtil;
+import org.javaswift.joss.exception.NotFoundException;
+import org.javaswift.joss.headers.Metadata;
+import org.javaswift.joss.headers.object.ObjectMetadata;
+import org.javaswift.joss.model.Account;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.net.UrlEscapers.urlPathSegmentEscaper;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Issues the Openstack swift requests that JOSS does not model, authenticated with the token of the JOSS
+ * {@link Account} it accompanies.
+ */
+public class SwiftApiClient {
+  private static final Logger log = LoggerFactory.getLogger(SwiftApiClient.class);
+  private static final String AUTH_TOKEN_HEADER = "X-Auth-Token";
+  private static final String COPY_FROM_HEADER = "X-Copy-From";
+  private static final String FRESH_METADATA_HEADER = "X-Fresh-Metadata";
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  private final Account swift;
+  private final HttpClient httpClient;
+
+  public SwiftApiClient(final Account swift, final HttpClient httpClient) {
+    this.swift = checkNotNull(swift);
+    this.httpClient = checkNotNull(httpClient);
+  }
+
+  /**
+   * Writes a Static Large Object manifest stitching the given segments together at {@code path}.
+   */
+  public void putManifest(final String container, final String path, final List<Segment> segments) throws IOException {
+    List<Map<String, Object>> manifest = new ArrayList<>(segments.size());
+    for (Segment segment : segments) {
+      Map<String, Object> entry = new LinkedHashMap<>();
+      entry.put("path", "/" + container + "/" + segment.getPath());
+      entry.put("etag", segment.getEtag());
+      entry.put("size_bytes", segment.getSize());
+      manifest.add(entry);
+    }
+    HttpPut put = new HttpPut(objectUrl(container, path) + "?multipart-manifest=put");
+    put.setEntity(new ByteArrayEntity(mapper.writeValueAsBytes(manifest), ContentType.APPLICATION_JSON));
+    execute(put);
+  }
+
+  /**
+   * Reads the segments listed in the Static Large Object manifest at {@code path}.
+   */
+  public List<Segment> getManifest(final String container, final String path) throws IOException {
+    byte[] body = execute(new HttpGet(objectUrl(container, path) + "?multipart-manifest=get&format=raw"));
+    List<Map<String, Object>> manifest = mapper.readValue(body, new TypeReference<List<Map<String, Object>>>() { });
+    String containerPrefix = "/" + container + "/";
+    List<Segment> segments = new ArrayList<>(manifest.size());
+    for (Map<String, Object> entry : manifest) {
+      String segmentPath = String.valueOf(entry.get("path"));
+      if (segmentPath.startsWith(containerPrefix)) {
+        segmentPath = segmentPath.substring(containerPrefix.length());
+      }
+      segments.add(new Segment(segmentPath, String.valueOf(entry.get("etag")),
+          ((Number) entry.get("size_bytes")).longValue()));
+    }
+    return segments;
+  }
+
+  /**
+   * Deletes a Static Large Object manifest together with all of its segments, returns false when there is no object
+   * at {@code path}. Segments swift could not delete fail the request, although the manifest may be gone.
+   */
+  public boolean deleteLargeObject(final String container, final String path) throws IOException {
+    HttpDelete delete = new HttpDelete(objectUrl(container, path) + "?multipart-manifest=delete");
+    delete.setHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.getMimeType());
+    byte[] body;
+    try {
+      body = execute(delete);
+    }
+    catch (NotFoundException e) {
+      return false;
+    }
+    if (new String(body, UTF_8).trim().isEmpty()) {
+      return true;
+    }
+    // failures to delete segments come with a 200, as for a bulk delete
+    BulkDeleteResult result = readBulkDeleteResult(container, body);
+    if (!result.getErrors().isEmpty()) {
+      throw new IOException("Unable to delete segments of " + path + ": " + result.getErrors());
+    }
+    return result.getDeleted() > 0 || result.getNotFound() == 0;
+  }
+
+  /**
+   * Copies {@code sourcePath} to {@code destination} server side, giving the copy {@code metadata} instead of the
+   * metadata of the source.
+   */
+  public void copyObject(final String container,
+                         final String sourcePath,
+                         final String destination,
+                         final Map<String, Object> metadata) throws IOException
+  {
+    HttpPut put = new HttpPut(objectUrl(container, destination));
+    put.setHeader(COPY_FROM_HEADER, "/" + escapePath(container) + "/" + escapePath(sourcePath));
+    put.setHeader(FRESH_METADATA_HEADER, "true");
+    metadata.forEach((key, value) -> new ObjectMetadata(key, String.valueOf(value)).setHeader(put));
+    put.setEntity(new ByteArrayEntity(new byte[0]));
+    execute(put);
+  }
+
+  /**
+   * Opens the content of an object. The request can be aborted through {@code onAbort}, whether it is still waiting
+   * for swift to answer or the content is being read; closing the content before its end drops the connection rather
+   * than reading the rest of it.
+   */
+  public InputStream getObject(final String container,
+                               final String path,
+                               final Consumer<Runnable> onAbort) throws IOException
+  {
+    HttpGet get = new HttpGet(objectUrl(container, path));
+    HttpResponse response = execute(get, onAbort);
+    int status = response.getStatusLine().getStatusCode();
+    if (status < 200 || status >= 300 || response.getEntity() == null) {
+      EntityUtils.consumeQuietly(response.getEntity());
+      throw HttpStatusExceptionUtil.getException(status, CommandExceptionError.UNKNOWN);
+    }
+    return new FilterInputStream(response.getEntity().getContent())
+    {
+      @Override
+      public void close() throws IOException {
+        if (response instanceof CloseableHttpResponse) {
+          ((CloseableHttpResponse) response).close();
+        }
+        else {
+          get.abort();
+        }
+      }
+    };
+  }
+
+  /**
+   * Reads the metadata of an object in a HEAD, keyed by name without the {@code X-Object-Meta-} prefix as JOSS does,
+   * null when the object does not exist. The request can be aborted through {@code onAbort}.
+   */
+  @Nullable
+  public Map<String, Object> getMetadata(final String container,
+                                         final String path,
+                                         final Consumer<Runnable> onAbort) throws IOException
+  {
+    HttpResponse response = execute(new HttpHead(objectUrl(container, path)), onAbort);
+    try {
+      int status = response.getStatusLine().getStatusCode();
+      if (status == HttpStatus.SC_NOT_FOUND) {
+        return null;
+      }
+      if (status < 200 || status >= 300) {
+        throw HttpStatusExceptionUtil.getException(status, CommandExceptionError.UNKNOWN);
+      }
+      Map<String, Object> metadata = new TreeMap<>();
+      for (Metadata entry : ObjectMetadata.fromResponse(response).values()) {
+        metadata.put(entry.getName(), entry.getHeaderValue());
+      }
+      return metadata;
+    }
+    finally {
+      EntityUtils.consumeQuietly(response.getEntity());
+    }
+  }
+
+  /**
+   * Reads the content of an object in a single GET, conditional on the object not having the ETag
+   * {@code ifNoneMatch} when given. The request can be aborted through {@code onAbort}.
+   *
+   * @throws org.javaswift.joss.exception.NotModifiedException when the object has the ETag {@code ifNoneMatch}
+   * @throws org.javaswift.joss.exception.NotFoundException    when the object does not exist
+   */
+  public byte[] getObjectContent(final String container,
+                                 final String path,
+                                 @Nullable final String ifNoneMatch,
+                                 final Consumer<Runnable> onAbort) throws IOException
+  {
+    HttpGet get = new HttpGet(objectUrl(container, path));
+    if (ifNoneMatch != null) {
+      get.setHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+    }
+    HttpResponse response = execute(get, onAbort);
+    try {
+      int status = response.getStatusLine().getStatusCode();
+      if (status < 200 || status >= 300) {
+        throw HttpStatusExceptionUtil.getException(status, CommandExceptionError.UNKNOWN);
+      }
+      return response.getEntity() == null ? new byte[0] : EntityUtils.toByteArray(response.getEntity());
+    }
+    finally {
+      EntityUtils.consumeQuietly(response.getEntity());
+    }
+  }
+
+  /**
+   * Returns the most objects a single bulk delete may remove, 0 when the cluster does not advertise bulk delete in
+   * its {@code /info}.
+   */
+  public int getBulkDeleteLimit() {
+    try {
+      String infoUrl = URI.create(swift.getPublicURL()).resolve("/info").toString();
+      Map<String, Object> info = mapper.readValue(execute(new HttpGet(infoUrl)),
+          new TypeReference<Map<String, Object>>() { });
+      Object bulkDelete = info.get("bulk_delete");
+      if (bulkDelete instanceof Map) {
+        Object limit = ((Map<?, ?>) bulkDelete).get("max_deletes_per_request");
+        return limit instanceof Number ? ((Number) limit).intValue() : 0;
+      }
+      return 0;
+    }
+    catch (IOException | RuntimeException e) {
+      log.debug("Unable to read cluster info, assuming no bulk delete", e);
+      return 0;
+    }
+  }
+
+  /**
+   * Deletes the objects at {@code paths} of the container with a single bulk-delete request.
+   */
+  public BulkDeleteResult bulkDelete(final String container, final List<String> paths) throws IOException {
+    StringBuilder body = new StringBuilder();
+    for (String path : paths) {
+      body.append('/').append(escapePath(container)).append('/').append(escapePath(path)).append('\n');
+    }
+    HttpPost post = new HttpPost(swift.getPublicURL() + "?bulk-delete");
+    post.setHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.getMimeType());
+    post.setEntity(new StringEntity(body.toString(), ContentType.create("text/plain", UTF_8)));
+    // errors of single objects, or of the request as a whole once swift started responding, come with a 200
+    return readBulkDeleteResult(container, execute(post));
+  }
+
+  private static BulkDeleteResult readBulkDeleteResult(final String container, final byte[] body) throws IOException {
+    Map<String, Object> result = mapper.readValue(new String(body, UTF_8).trim(),
+        new TypeReference<Map<String, Object>>() { });
+
+    String containerPrefix = "/" + container + "/";
+    Map<String, String> errors = new LinkedHashMap<>();
+    Object reportedErrors = result.get("Errors");
+    if (reportedErrors instanceof List) {
+      for (Object error : (List<?>) reportedErrors) {
+        List<?> pathAndStatus = (List<?>) error;
+        String path = URLDecoder.decode(String.valueOf(pathAndStatus.get(0)), UTF_8.name());
+        if (path.startsWith(containerPrefix)) {
+          path = path.substring(containerPrefix.length());
+        }
+        errors.put(path, String.valueOf(pathAndStatus.get(1)));
+      }
+    }
+    String status = String.valueOf(result.get("Response Status"));
+    if (errors.isEmpty() && !status.startsWith("2")) {
+      throw new IOException("Bulk delete failed: " + status + " " + result.get("Response Body"));
+    }
+    return new BulkDeleteResult(count(result, "Number Deleted"), count(result, "Number Not Found"), errors);
+  }
+
+  private static int count(final Map<String, Object> result, final String key) {
+    Object value = result.get(key);
+    return value instanceof Number ? ((Number) value).intValue() : 0;
+  }
+
+  private static String escapePath(final String path) {
+    return Arrays.stream(path.split("/")).map(urlPathSegmentEscaper()::escape).collect(Collectors.joining("/"));
+  }
+
+  private String objectUrl(final String container, final String path) {
+    return swift.getContainer(container).getObject(path).getPublicURL();
+  }
+
+  /**
+   * Sends the request, which can be aborted through {@code onAbort} until it is answered and its response read.
+   */
+  private HttpResponse execute(final HttpRequestBase request, final Consumer<Runnable> onAbort) throws IOException {
+    onAbort.accept(request::abort);
+    log.debug("{} {}", request.getMethod(), request.getURI());
+    request.setHeader(AUTH_TOKEN_HEADER, swift.getAccess().getToken());
+    return httpClient.execute(request);
+  }
+
+  /**
+   * Sends the request, returning the response body of a successful response. A rejected token is replaced and the
+   * request replayed by the {@link SwiftHttpTransport}.
+   */
+  private byte[] execute(final HttpRequestBase request) throws IOException {
+    log.debug("{} {}", request.getMethod(), request.getURI());
+    request.setHeader(AUTH_TOKEN_HEADER, swift.getAccess().getToken());
+    HttpResponse response = httpClient.execute(request);
+    try {
+      int status = response.getStatusLine().getStatusCode();
+      if (status < 200 || status >= 300) {
+        throw HttpStatusExceptionUtil.getException(status, CommandExceptionError.UNKNOWN);
+      }
+      return response.getEntity() == null ? new byte[0] : EntityUtils.toByteArray(response.getEntity());
+    }
+    finally {
+      EntityUtils.consumeQuietly(response.getEntity());
+    }
+  }
+
+  /**
+   * The outcome of a bulk delete, objects which were not found count as deleted.
+   */
+  public static class BulkDeleteResult {
+    private final int deleted;
+    private final int notFound;
+    private final Map<String, String> errors;
+
+    public BulkDeleteResult(final int deleted, final int notFound, final Map<String, String> errors) {
+      this.deleted = deleted;
+      this.notFound = notFound;
+      this.errors = checkNotNull(errors);
+    }
+
+    public int getDeleted() {
+      return deleted;
+    }
+
+    public int getNotFound() {
+      return notFound;
+    }
+
+    /**
+     * Returns the status of each object that could not be deleted, by its path in the container.
+     */
+    public Map<String, String> getErrors() {
+      return errors;
+    }
+  }
+
+  /**
+   * A segment of a Static Large Object.
+   */
+  public static class Segment {
+    private final String path;
+    private final String etag;
+    private final long size;
+
+    public Segment(final String path, final String etag, final long size) {
+      this.path = checkNotNull(path);
+      this.etag = checkNotNull(etag);
+      this.size = size;
+    }
+
+    public String getPath() {
+      return path;
+    }
+
+    public String getEtag() {
+      return etag;
+    }
+
+    public long getSize() {
+      return size;
+    }
+  }
+}
@@ -12,12 +12,17 @@
  */
 package org.sonatype.nexus.blobstore.swift.internal;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 
+import javax.annotation.Nullable;
+
 import org.javaswift.joss.model.Account;
 import org.sonatype.nexus.blobstore.api.BlobAttributes;
 import org.sonatype.nexus.blobstore.api.BlobMetrics;
@@ -33,19 +38,28 @@ import static org.sonatype.nexus.blobstore.api.BlobAttributesConstants.HEADER_PR
 import static org.sonatype.nexus.blobstore.api.BlobAttributesConstants.SHA1_HASH_ATTRIBUTE;
 
 /**
- * A data holder for the content of each blob's .attribs.
+ * A data holder for the attributes of each blob, kept either as metadata of the content object (layout swift/2) or
+ * in a .properties sidecar (layout swift/1, or attributes too large for swift metadata). Both are written in the
+ * {@link AttributeFormat} of the blob store and read in either format.
  */
 public class SwiftBlobAttributes implements BlobAttributes {
+  public static final String LARGE_OBJECT_ATTRIBUTE = "largeObject";
+
   private Map<String, String> headers;
   private BlobMetrics metrics;
   private boolean deleted = false;
   private String deletedReason;
-  private final SwiftPropertiesFile propertiesFile;
+  private boolean largeObject = false;
+  private boolean inPropertiesFile = false;
+  private final Account swift;
+  private final String bucket;
+  private final String key;
+  private AttributesFile propertiesFile;
 
   public SwiftBlobAttributes(final Account swift, final String bucket, final String key) {
-    checkNotNull(key);
-    checkNotNull(swift);
-    this.propertiesFile = new SwiftPropertiesFile(swift, bucket, null, key);
+    this.key = checkNotNull(key);
+    this.swift = checkNotNull(swift);
+    this.bucket = bucket;
   }
 
   public SwiftBlobAttributes(final Account swift, final String bucket, final String key, final Map<String, String> headers, final BlobMetrics metrics) {
@@ -84,23 +98,160 @@ public class SwiftBlobAttributes implements BlobAttributes {
     return deletedReason != null ? deletedReason : "No reason supplied";
   }
 
+  /**
+   * Returns true when the content is stored as a Static Large Object (a manifest and its segments).
+   */
+  public boolean isLargeObject() {
+    return largeObject;
+  }
+
+  public void setLargeObject(final boolean largeObject) {
+    this.largeObject = largeObject;
+  }
+
+  /**
+   * Returns true when the attributes were loaded from or stored to the .properties sidecar.
+   */
+  public boolean isInPropertiesFile() {
+    return inPropertiesFile;
+  }
+
+  /**
+   * Loads the attributes from the .properties sidecar, returns false when there is none. Loading again through the
+   * same instance only transfers the sidecar when it changed.
+   */
   public boolean load() throws IOException {
-    if (!propertiesFile.exists()) {
+    return load(null, null);
+  }
+
+  /**
+   * As {@link #load()}, hedging the read of the sidecar with {@code hedger} through {@code swiftApi} when enabled.
+   */
+  public boolean load(@Nullable final SwiftReadHedger hedger, @Nullable final SwiftApiClient swiftApi)
+      throws IOException
+  {
+    AttributesFile file = propertiesFile();
+    if (!file.loadIfExists(hedger, swiftApi)) {
+      return false;
+    }
+    decode(file.content);
+    inPropertiesFile = true;
+    return true;
+  }
+
+  public void store(final AttributeFormat format) throws IOException {
+    AttributesFile file = propertiesFile();
+    file.content = encode(format);
+    file.store();
+    inPropertiesFile = true;
+  }
+
+  /**
+   * Removes the .properties sidecar, e.g. once its attributes moved into the metadata of the content object.
+   */
+  public void removePropertiesFile() throws IOException {
+    propertiesFile().remove();
+    inPropertiesFile = false;
+  }
+
+  /**
+   * Reads the attributes from the metadata of the content object, returns false when it holds none.
+   */
+  public boolean readMetadata(@Nullable final Map<String, Object> metadata) {
+    if (metadata == null) {
       return false;
     }
-    propertiesFile.load();
-    readFrom(propertiesFile);
+    byte[] encoded = AttributesMetadata.decodeBinary(metadata);
+    if (encoded != null) {
+      AttributesCodec.decode(encoded, this);
+    }
+    else {
+      Properties decoded = new Properties();
+      if (!AttributesMetadata.decode(metadata, decoded)) {
+        return false;
+      }
+      readFrom(decoded);
+    }
+    inPropertiesFile = false;
     return true;
   }
 
-  public void store() throws IOException {
-    writeTo(propertiesFile);
-    propertiesFile.store();
+  /**
+   * Returns the attributes as metadata of the content object, null when they exceed what swift accepts.
+   */
+  @Nullable
+  public Map<String, Object> toMetadata(final AttributeFormat format) {
+    if (format == AttributeFormat.BINARY) {
+      return AttributesMetadata.encode(AttributesCodec.encode(this));
+    }
+    return AttributesMetadata.encode(writeTo(new Properties()));
+  }
+
+  /**
+   * Reads the attributes from properties written by {@link #toProperties()}.
+   */
+  public void readProperties(final Properties properties) {
+    readFrom(properties);
+    inPropertiesFile = false;
+  }
+
+  /**
+   * Returns the attributes as properties, e.g. to keep them locally.
+   */
+  public Properties toProperties() {
+    return writeTo(new Properties());
   }
 
   @Override
   public Properties getProperties() {
-    return new Properties(propertiesFile);
+    return writeTo(new Properties());
+  }
+
+  /**
+   * Returns the attributes as the content of a .properties sidecar in the given format.
+   */
+  byte[] encode(final AttributeFormat format) throws IOException {
+    if (format == AttributeFormat.BINARY) {
+      return AttributesCodec.encode(this);
+    }
+    try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+      writeTo(new Properties()).store(out, null);
+      return out.toByteArray();
+    }
+  }
+
+  /**
+   * Reads the attributes from the content of a .properties sidecar in either format.
+   */
+  void decode(final byte[] content) throws IOException {
+    if (AttributesCodec.isEncoded(content)) {
+      AttributesCodec.decode(content, this);
+    }
+    else {
+      Properties properties = new Properties();
+      properties.load(new ByteArrayInputStream(content));
+      readFrom(properties);
+    }
+  }
+
+  void assign(final Map<String, String> headers,
+              final BlobMetrics metrics,
+              final boolean deleted,
+              @Nullable final String deletedReason,
+              final boolean largeObject)
+  {
+    this.headers = headers;
+    this.metrics = metrics;
+    this.deleted = deleted;
+    this.deletedReason = deletedReason;
+    this.largeObject = largeObject;
+  }
+
+  private AttributesFile propertiesFile() {
+    if (propertiesFile == null) {
+      propertiesFile = new AttributesFile(swift, bucket, key);
+    }
+    return propertiesFile;
   }
 
   @Override
@@ -127,6 +278,7 @@ public class SwiftBlobAttributes implements BlobAttributes {
 
     deleted = properties.containsKey(DELETED_ATTRIBUTE);
     deletedReason = properties.getProperty(DELETED_REASON_ATTRIBUTE);
+    largeObject = Boolean.parseBoolean(properties.getProperty(LARGE_OBJECT_ATTRIBUTE));
   }
 
   private Properties writeTo(final Properties properties) {
@@ -137,6 +289,9 @@ public class SwiftBlobAttributes implements BlobAttributes {
     properties.setProperty(SHA1_HASH_ATTRIBUTE, blobMetrics.getSha1Hash());
     properties.setProperty(CONTENT_SIZE_ATTRIBUTE, Long.toString(blobMetrics.getContentSize()));
     properties.setProperty(CREATION_TIME_ATTRIBUTE, Long.toString(blobMetrics.getCreationTime().getMillis()));
+    if (largeObject) {
+      properties.setProperty(LARGE_OBJECT_ATTRIBUTE, Boolean.toString(largeObject));
+    }
 
     if (deleted) {
       properties.put(DELETED_ATTRIBUTE, Boolean.toString(deleted));
@@ -144,4 +299,46 @@ public class SwiftBlobAttributes implements BlobAttributes {
     }
     return properties;
   }
+
+  /**
+   * How attributes are written, they are read in either.
+   */
+  public enum AttributeFormat
+  {
+    /**
+     * {@link Properties} text, url-encoded in the metadata of content objects.
+     */
+    PROPERTIES,
+
+    /**
+     * The compact {@link AttributesCodec binary} form, base64 encoded in the metadata of content objects.
+     */
+    BINARY;
+
+    public static AttributeFormat parse(final String value) {
+      return valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+    }
+  }
+
+  /**
+   * The .properties sidecar, whose content is kept as it is read or stored for {@link SwiftBlobAttributes} to decode
+   * or encode in either format.
+   */
+  private static class AttributesFile extends SwiftPropertiesFile {
+    private byte[] content;
+
+    AttributesFile(final Account swift, final String container, final String key) {
+      super(swift, container, null, key);
+    }
+
+    @Override
+    protected void read(final byte[] content) {
+      this.content = content;
+    }
+
+    @Override
+    protected byte[] write() {
+      return content;
+    }
+  }
 }
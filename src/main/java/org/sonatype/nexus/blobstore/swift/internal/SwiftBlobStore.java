@@ -12,12 +12,22 @@
  */
 package org.sonatype.nexus.blobstore.swift.internal;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Strings;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Iterators;
 import com.google.common.hash.HashCode;
-import org.apache.commons.io.FileUtils;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.RateLimiter;
+import org.apache.http.pool.PoolStats;
+import org.javaswift.joss.exception.NotFoundException;
+import org.javaswift.joss.headers.object.ObjectMetadata;
+import org.javaswift.joss.instructions.UploadInstructions;
 import org.javaswift.joss.model.Account;
+import org.javaswift.joss.model.Container;
 import org.javaswift.joss.model.Directory;
 import org.javaswift.joss.model.DirectoryOrObject;
 import org.javaswift.joss.model.StoredObject;
@@ -37,8 +47,16 @@ import org.sonatype.nexus.blobstore.api.BlobStoreConfiguration;
 import org.sonatype.nexus.blobstore.api.BlobStoreException;
 import org.sonatype.nexus.blobstore.api.BlobStoreMetrics;
 import org.sonatype.nexus.blobstore.api.BlobStoreUsageChecker;
+import org.sonatype.nexus.blobstore.swift.internal.SwiftApiClient.BulkDeleteResult;
+import org.sonatype.nexus.blobstore.swift.internal.SwiftApiClient.Segment;
+import org.sonatype.nexus.blobstore.swift.internal.SwiftBlobAttributes.AttributeFormat;
+import org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStoreMetricsStore.MetricsMode;
+import org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStoreMetricsStore.MetricsSnapshot;
+import org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStoreMetricsStore.ReconcileStart;
+import org.sonatype.nexus.blobstore.swift.internal.SwiftEndpointBalancer.EndpointStats;
 import org.sonatype.nexus.common.stateguard.Guarded;
 import org.sonatype.nexus.common.stateguard.StateGuardLifecycleSupport;
+import org.sonatype.nexus.thread.NexusThreadFactory;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -46,11 +64,36 @@ import javax.inject.Named;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -84,32 +127,105 @@ public class SwiftBlobStore extends StateGuardLifecycleSupport implements BlobSt
   public static final String TENANT_ID_KEY = "tenantId";
   public static final String TENANT_NAME_KEY = "tenantName";
   public static final String TRIES_KEY = "tries";
+  public static final String RETRY_DELAY_KEY = "retryDelay";
+  public static final String MAX_RETRY_DELAY_KEY = "maxRetryDelay";
+  public static final String RETRY_BUDGET_KEY = "retryBudget";
+  public static final String CIRCUIT_BREAKER_THRESHOLD_KEY = "circuitBreakerThreshold";
+  public static final String CIRCUIT_BREAKER_DELAY_KEY = "circuitBreakerDelay";
+  public static final String HEDGE_DELAY_KEY = "hedgeDelay";
+  public static final String HEDGE_BUDGET_KEY = "hedgeBudget";
+  public static final String LARGE_OBJECT_THRESHOLD_KEY = "largeObjectThreshold";
+  public static final String SEGMENT_SIZE_KEY = "segmentSize";
+  public static final String UPLOAD_THREADS_KEY = "uploadThreads";
+  public static final String RANGED_READ_THRESHOLD_KEY = "rangedReadThreshold";
+  public static final String DOWNLOAD_THREADS_KEY = "downloadThreads";
+  public static final String LISTING_PARALLELISM_KEY = "listingParallelism";
+  public static final String COMPACTION_THREADS_KEY = "compactionThreads";
+  public static final String COMPACTION_RATE_KEY = "compactionRate";
+  public static final String MAX_CONNECTIONS_KEY = "maxConnections";
+  public static final String MAX_CONNECTIONS_PER_ROUTE_KEY = "maxConnectionsPerRoute";
+  public static final String CONNECT_TIMEOUT_KEY = "connectTimeout";
+  public static final String IDLE_CONNECTION_TIMEOUT_KEY = "idleConnectionTimeout";
+  public static final String TCP_NO_DELAY_KEY = "tcpNoDelay";
+  public static final String TOKEN_LIFETIME_KEY = "tokenLifetime";
+  public static final String ENDPOINTS_KEY = "endpoints";
+  public static final String CACHE_DIRECTORY_KEY = "cacheDirectory";
+  public static final String CACHE_SIZE_KEY = "cacheSize";
+  public static final String SPOOL_DIRECTORY_KEY = "spoolDirectory";
+  public static final String SPOOL_SIZE_KEY = "spoolSize";
+  public static final String SPOOL_THREADS_KEY = "spoolThreads";
+  public static final String METRICS_MODE_KEY = "metricsMode";
+  public static final String ATTRIBUTE_FORMAT_KEY = "attributeFormat";
   public static final String METADATA_FILENAME = "metadata.properties";
+  public static final String COMPACTION_FILENAME = "compaction.properties";
   public static final String TYPE_KEY = "type";
   public static final String TYPE_V1 = "swift/1";
+  public static final String TYPE_V2 = "swift/2";
+  public static final String DELETION_JOURNAL_KEY = "deletionJournal";
+  public static final String ATTRIBUTE_SIDECARS_KEY = "attributeSidecars";
   public static final String CONTENT_PREFIX = "content";
   public static final String TEMPORARY_BLOB_ID_PREFIX = "tmp$";
+  public static final String SEGMENTS_PREFIX = "segments";
 
   private static final Directory CONTENT_DIRECTORY = new Directory(CONTENT_PREFIX, '/');
-  private static final int BUFFER_SIZE = 1024 * 1024 * 25;
+  private static final int REPLAY_BUFFER_SIZE = 1024 * 1024 * 8;
+  private static final int INLINE_UPLOAD_SIZE = 1024 * 1024;
+  private static final int MIN_SEGMENT_SIZE = 1024 * 1024;
+  private static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024 * 64;
+  private static final int DEFAULT_UPLOAD_THREADS = 4;
+  private static final int RANGE_SIZE = 1024 * 1024 * 8;
+  private static final int DEFAULT_DOWNLOAD_THREADS = 4;
+  private static final long DEFAULT_CACHE_SIZE_MB = 1024;
+  private static final long DEFAULT_SPOOL_SIZE_MB = 1024;
+  private static final int LIST_PAGE_SIZE = 10000;
+  private static final int VOLUME_CHAPTER_DEPTH = 2;
+  private static final int MAX_BULK_DELETE = 10000;
+  private static final int DEFAULT_COMPACTION_THREADS = 4;
+  private static final int COMPACTION_BATCH_SIZE = 1000;
+  private static final int RECONCILE_PROGRESS_BATCHES = 10;
+  private static final String COMPACTION_MARKER_KEY = "marker";
+  // metadata of content put before its attributes, replaced once they are stored
+  private static final String PENDING_METADATA_KEY = "Nexus-Pending";
+  private static final long PENDING_CONTENT_TIMEOUT = TimeUnit.HOURS.toMillis(1);
 
   private final SwiftClientFactory swiftClientFactory;
   private final BlobIdLocationResolver blobIdLocationResolver;
-  private final AtomicInteger tries = new AtomicInteger(1);
+  private volatile SwiftRetryPolicy retryPolicy = new SwiftRetryPolicy(1);
+  private SwiftReadHedger readHedger = new SwiftReadHedger(0, 0, 0);
+  private SwiftContentCache contentCache = new SwiftContentCache(null, 0);
+  private SwiftUploadSpool uploadSpool = new SwiftUploadSpool(null, 0, 1);
 
   private BlobStoreConfiguration blobStoreConfiguration;
   private SwiftBlobStoreMetricsStore storeMetrics;
+  private final SwiftDeletionJournal deletionJournal;
+  private final MetricRegistry metricRegistry;
   private LoadingCache<BlobId, SwiftBlob> liveBlobs;
+  private SwiftHttpTransport transport;
   private Account swift;
+  private SwiftApiClient swiftApi;
+  private long largeObjectThreshold;
+  private ExecutorService segmentExecutor;
+  private LargeObjectUploader largeObjectUploader;
+  private AttributeFormat attributeFormat = AttributeFormat.PROPERTIES;
+  private long rangedReadThreshold;
+  private int downloadThreads;
+  private ExecutorService rangeExecutor;
+  private int listingParallelism;
+  private ForkJoinPool listingPool;
+  private volatile Integer bulkDeleteLimit;
 
   @Inject
   public SwiftBlobStore(final SwiftClientFactory swiftClientFactory,
                         final BlobIdLocationResolver blobIdLocationResolver,
-                        final SwiftBlobStoreMetricsStore storeMetrics)
+                        final SwiftBlobStoreMetricsStore storeMetrics,
+                        final SwiftDeletionJournal deletionJournal,
+                        final MetricRegistry metricRegistry)
   {
     this.swiftClientFactory = checkNotNull(swiftClientFactory);
     this.blobIdLocationResolver = checkNotNull(blobIdLocationResolver);
     this.storeMetrics = checkNotNull(storeMetrics);
+    this.deletionJournal = checkNotNull(deletionJournal);
+    this.metricRegistry = checkNotNull(metricRegistry);
   }
 
   @Override
@@ -118,21 +234,89 @@ public class SwiftBlobStore extends StateGuardLifecycleSupport implements BlobSt
     try {
       // ensure blobstore is supported
       SwiftPropertiesFile metadata = new SwiftPropertiesFile(swift, getConfiguredContainer(), null, METADATA_FILENAME);
-      if (metadata.exists()) {
-        metadata.load();
+      if (metadata.loadIfExists()) {
         String type = metadata.getProperty(TYPE_KEY);
-        checkState(TYPE_V1.equals(type), "Unsupported blob store type/version: %s in %s", type, metadata);
+        checkState(TYPE_V1.equals(type) || TYPE_V2.equals(type), "Unsupported blob store type/version: %s in %s",
+            type, metadata);
+        if (TYPE_V1.equals(type)) {
+          // attributes move from the .properties sidecars into object metadata as blobs are read
+          log.info("Upgrading blob store {} from {} to {}", blobStoreConfiguration.getName(), TYPE_V1, TYPE_V2);
+          metadata.setProperty(TYPE_KEY, TYPE_V2);
+          metadata.setProperty(ATTRIBUTE_SIDECARS_KEY, Boolean.TRUE.toString());
+          metadata.store();
+        }
+        if (metadata.getProperty(DELETION_JOURNAL_KEY) == null) {
+          // blobs soft deleted before the journal was kept are only found by sweeping all content once
+          log.info("Blob store {} predates the deletion journal, its next compaction sweeps all content",
+              blobStoreConfiguration.getName());
+          new SwiftPropertiesFile(swift, getConfiguredContainer(), null, COMPACTION_FILENAME).store();
+          metadata.setProperty(DELETION_JOURNAL_KEY, Boolean.TRUE.toString());
+          metadata.store();
+        }
       } else {
         // assumes new blobstore, write out type
-        metadata.setProperty(TYPE_KEY, TYPE_V1);
+        metadata.setProperty(TYPE_KEY, TYPE_V2);
+        metadata.setProperty(DELETION_JOURNAL_KEY, Boolean.TRUE.toString());
         metadata.store();
       }
       liveBlobs = CacheBuilder.newBuilder().weakValues().build(from(SwiftBlob::new));
+      transport.startEviction(new NexusThreadFactory("swift-idle-connections", blobStoreConfiguration.getName()));
+      transport.getTokenManager().start(new NexusThreadFactory("swift-auth", blobStoreConfiguration.getName()));
+      readHedger.start(new NexusThreadFactory("swift-hedging", blobStoreConfiguration.getName()));
+      contentCache.start();
+      if (largeObjectThreshold > 0) {
+        int uploadThreads = (int) getConfiguredLong(UPLOAD_THREADS_KEY, DEFAULT_UPLOAD_THREADS);
+        long segmentSize = getConfiguredLong(SEGMENT_SIZE_KEY, DEFAULT_SEGMENT_SIZE);
+        checkArgument(segmentSize >= MIN_SEGMENT_SIZE && segmentSize <= Integer.MAX_VALUE,
+            "Segment size must be between %s and %s bytes", MIN_SEGMENT_SIZE, Integer.MAX_VALUE);
+        segmentExecutor = Executors.newFixedThreadPool(uploadThreads,
+            new NexusThreadFactory("swift-segments", blobStoreConfiguration.getName()));
+        largeObjectUploader = new LargeObjectUploader(swift, checkNotNull(swiftApi), segmentExecutor,
+            (int) segmentSize, uploadThreads, retryPolicy);
+      }
+      if (rangedReadThreshold > 0) {
+        downloadThreads = (int) getConfiguredLong(DOWNLOAD_THREADS_KEY, DEFAULT_DOWNLOAD_THREADS);
+        checkArgument(downloadThreads > 0, "Download threads must be > 0");
+        rangeExecutor = Executors.newFixedThreadPool(downloadThreads,
+            new NexusThreadFactory("swift-ranges", blobStoreConfiguration.getName()));
+      }
+      listingParallelism = (int) getConfiguredLong(LISTING_PARALLELISM_KEY, 1);
+      checkArgument(listingParallelism > 0, "Listing parallelism must be > 0");
+      if (listingParallelism > 1) {
+        listingPool = new ForkJoinPool(listingParallelism, listingThreadFactory(blobStoreConfiguration.getName()),
+            null, false);
+      }
       storeMetrics.setContainer(getConfiguredContainer());
       storeMetrics.setSwift(swift);
+      storeMetrics.setAttributeSidecars(Boolean.parseBoolean(metadata.getProperty(ATTRIBUTE_SIDECARS_KEY)));
       storeMetrics.start();
+      deletionJournal.setContainer(getConfiguredContainer());
+      deletionJournal.setSwift(swift);
+      deletionJournal.start();
+      if (deletionJournal.wasStoppedUncleanly()) {
+        // deletions held in memory when the node went down are only found by sweeping all content
+        log.warn("Deletion journal of blob store {} was not closed when this node last stopped, its next compaction "
+            + "sweeps all content", blobStoreConfiguration.getName());
+        new SwiftPropertiesFile(swift, getConfiguredContainer(), null, COMPACTION_FILENAME).store();
+      }
+      metricRegistry.registerAll(SwiftOperationMetrics.gauges(requestMetricsPrefix(), this::getOperationMetrics));
+      uploadSpool.start(new NexusThreadFactory("swift-spool", blobStoreConfiguration.getName()),
+          new SwiftUploadSpool.Uploader()
+          {
+            @Override
+            public void upload(final BlobId blobId, final Path content, final Properties attributes)
+                throws IOException
+            {
+              uploadSpooled(blobId, content, attributes);
+            }
+
+            @Override
+            public void delete(final BlobId blobId) throws IOException {
+              deleteObjects(blobId, loadAttributesForDeletion(blobId));
+            }
+          });
     } finally {
-      timerlog.debug("doStart() took: " + stopwatch);
+      timerlog.debug("doStart() took: {}", stopwatch);
     }
   }
 
@@ -140,13 +324,50 @@ public class SwiftBlobStore extends StateGuardLifecycleSupport implements BlobSt
   protected void doStop() throws Exception {
     Stopwatch stopwatch = Stopwatch.createStarted();
     try {
+      String requestMetrics = requestMetricsPrefix() + ".";
+      metricRegistry.removeMatching((name, metric) -> name.startsWith(requestMetrics));
+      uploadSpool.stop();
       liveBlobs = null;
+      largeObjectUploader = null;
+      if (segmentExecutor != null) {
+        segmentExecutor.shutdownNow();
+        segmentExecutor = null;
+      }
+      if (rangeExecutor != null) {
+        rangeExecutor.shutdownNow();
+        rangeExecutor = null;
+      }
+      if (listingPool != null) {
+        listingPool.shutdownNow();
+        listingPool = null;
+      }
+      deletionJournal.stop();
       storeMetrics.stop();
+      readHedger.stop();
+      transport.getTokenManager().stop();
+      transport.stopEviction();
+      // the transport itself is still needed to remove the blob store once stopped
+      transport.closeIdleConnections();
     } finally {
-      timerlog.debug("doStop() took: " + stopwatch);
+      timerlog.debug("doStop() took: {}", stopwatch);
     }
   }
 
+  /**
+   * Returns the prefix of the names the request metrics of this blob store are registered under.
+   */
+  private String requestMetricsPrefix() {
+    return MetricRegistry.name(SwiftBlobStore.class, blobStoreConfiguration.getName(), "requests");
+  }
+
+  private static ForkJoinWorkerThreadFactory listingThreadFactory(final String blobStoreName) {
+    return pool -> {
+      ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+      thread.setName("swift-listing-" + blobStoreName + "-" + thread.getPoolIndex());
+      return thread;
+    };
+  }
+
   /**
    * Returns path for blob-id content file relative to root directory.
    */
@@ -161,6 +382,13 @@ public class SwiftBlobStore extends StateGuardLifecycleSupport implements BlobSt
     return getLocation(id) + BLOB_ATTRIBUTE_SUFFIX;
   }
 
+  /**
+   * Returns the prefix under which the segments of a large object content file are stored.
+   */
+  private String segmentPrefix(final String contentPath) {
+    return SEGMENTS_PREFIX + "/" + contentPath;
+  }
+
   /**
    * Returns the location for a blob ID based on whether or not the blob ID is for a temporary or permanent blob.
    */
@@ -175,22 +403,142 @@ public class SwiftBlobStore extends StateGuardLifecycleSupport implements BlobSt
     try {
       checkNotNull(blobData);
 
-      return create(headers, destination -> {
-        File tempFile = File.createTempFile("nexus", "inflight");
-        tempFile.deleteOnExit();
-        try (MetricsInputStream input = new MetricsInputStream(blobData); Closeable ignored = () -> tempFile.delete()) {
-          FileUtils.copyInputStreamToFile(input, tempFile);
-          autoRetry(() -> {
-            swift.getContainer(getConfiguredContainer()).getObject(destination).uploadObject(tempFile);
-          });
-          return input.getMetrics();
-        } catch (Exception e) {
-          throw new BlobStoreException("error uploading blob", e, null);
+      if (uploadSpool.isEnabled()) {
+        return create(headers, (blobId, destination, attributes) -> {
+          try (MetricsInputStream input = new MetricsInputStream(blobData)) {
+            uploadSpool.spool(blobId, input, () -> attributes.apply(input.getMetrics()).toProperties());
+            return new IngestedContent(input.getMetrics(), false, true);
+          }
+        });
+      }
+      return create(headers, (blobId, destination, attributes) -> {
+        MetricsInputStream input = new MetricsInputStream(blobData);
+        if (largeObjectUploader != null) {
+          return ingestSegmented(input, destination, attributes);
         }
+        return ingestStreaming(input, destination, attributes);
       });
     } finally {
-      timerlog.debug("create(...) took: " + stopwatch);
+      timerlog.debug("create(...) took: {}", stopwatch);
+    }
+  }
+
+  /**
+   * Blobs that end within {@link #INLINE_UPLOAD_SIZE} are sent in a single PUT together with their attributes, larger
+   * ones are streamed straight to swift (chunked), only retaining what a retry would need to replay.
+   */
+  private IngestedContent ingestStreaming(final MetricsInputStream input,
+                                          final String destination,
+                                          final Function<StreamMetrics, SwiftBlobAttributes> attributes)
+  {
+    try (InputStream ignored = input) {
+      byte[] head = ByteStreams.toByteArray(ByteStreams.limit(input, INLINE_UPLOAD_SIZE + 1));
+      return ingestStreaming(input, head, head.length <= INLINE_UPLOAD_SIZE, destination, attributes);
+    } catch (Exception e) {
+      throw new BlobStoreException("error uploading blob", e, null);
+    }
+  }
+
+  /**
+   * Continues {@link #ingestStreaming(MetricsInputStream, String, Function)} with the {@code head} already read from
+   * the input, which is sent in a single PUT together with the attributes when the input {@code ended} within it.
+   */
+  private IngestedContent ingestStreaming(final MetricsInputStream input,
+                                          final byte[] head,
+                                          final boolean ended,
+                                          final String destination,
+                                          final Function<StreamMetrics, SwiftBlobAttributes> attributes)
+      throws IOException
+  {
+    if (ended) {
+      return putWithAttributes(destination, Collections.singletonList(head), input.getMetrics(), attributes);
+    }
+
+    InputStream content = new SequenceInputStream(new ByteArrayInputStream(head), input);
+    try (ReplayBuffer replayBuffer = new ReplayBuffer(content, REPLAY_BUFFER_SIZE, retryPolicy.getTries() > 1)) {
+      autoRetry(() -> {
+        UploadInstructions instructions = new UploadInstructions(replayBuffer.newStream());
+        addHeaders(instructions, null);
+        swift.getContainer(getConfiguredContainer()).getObject(destination).uploadObject(instructions);
+      });
+    }
+    return new IngestedContent(input.getMetrics(), false, false);
+  }
+
+  /**
+   * Reads no more than the large object threshold, or one segment when that is smaller, into memory. Blobs that end
+   * within it go on as {@link #ingestStreaming}, larger ones are uploaded as a Static Large Object starting with what
+   * was read.
+   */
+  private IngestedContent ingestSegmented(final MetricsInputStream input,
+                                          final String destination,
+                                          final Function<StreamMetrics, SwiftBlobAttributes> attributes)
+  {
+    try (InputStream ignored = input) {
+      long limit = largeObjectLimit();
+      byte[] head;
+      int next;
+      // the head is read within the segment memory of the blob store, handed over to the upload when it is large
+      largeObjectUploader.reserve();
+      try {
+        head = ByteStreams.toByteArray(ByteStreams.limit(input, limit));
+        next = input.read();
+      }
+      catch (IOException | RuntimeException e) {
+        largeObjectUploader.release();
+        throw e;
+      }
+      if (next < 0) {
+        largeObjectUploader.release();
+        return ingestStreaming(input, head, true, destination, attributes);
+      }
+
+      PushbackInputStream rest = new PushbackInputStream(input);
+      rest.unread(next);
+      largeObjectUploader.upload(getConfiguredContainer(), destination, segmentPrefix(destination), head, rest);
+      return new IngestedContent(input.getMetrics(), true, false);
+    } catch (Exception e) {
+      throw new BlobStoreException("error uploading blob", e, null);
+    }
+  }
+
+  /**
+   * Returns the size above which content is uploaded as a large object, the threshold or one segment when smaller.
+   */
+  private long largeObjectLimit() {
+    return Math.min(largeObjectThreshold, largeObjectUploader.getSegmentSize());
+  }
+
+  /**
+   * Uploads content held in memory, carrying its attributes as object metadata of the same PUT when they fit.
+   */
+  private IngestedContent putWithAttributes(final String destination,
+                                            final List<byte[]> content,
+                                            final StreamMetrics metrics,
+                                            final Function<StreamMetrics, SwiftBlobAttributes> attributes)
+      throws IOException
+  {
+    Map<String, Object> metadata = attributes.apply(metrics).toMetadata(attributeFormat);
+    autoRetry(() -> {
+      InputStream input = new SequenceInputStream(Collections.enumeration(
+          content.stream().map(ByteArrayInputStream::new).collect(Collectors.toList())));
+      UploadInstructions instructions = new UploadInstructions(input, metrics.getSize());
+      addHeaders(instructions, metadata);
+      swift.getContainer(getConfiguredContainer()).getObject(destination).uploadObject(instructions);
+    });
+    return new IngestedContent(metrics, false, metadata != null);
+  }
+
+  /**
+   * Adds the attributes as metadata to a PUT, or marks the content as pending its attributes when they are stored
+   * separately.
+   */
+  private static void addHeaders(final UploadInstructions instructions, @Nullable final Map<String, Object> metadata) {
+    if (metadata == null) {
+      instructions.addHeader(new ObjectMetadata(PENDING_METADATA_KEY, "true"));
+      return;
     }
+    metadata.forEach((key, value) -> instructions.addHeader(new ObjectMetadata(key, String.valueOf(value))));
   }
 
   @Override
@@ -215,12 +563,20 @@ public class SwiftBlobStore extends StateGuardLifecycleSupport implements BlobSt
     try {
       log.debug("Writing blob {} to {}", blobId, blobPath);
 
-      final StreamMetrics streamMetrics = ingester.ingestTo(blobPath);
-      final BlobMetrics metrics = new BlobMetrics(new DateTime(), streamMetrics.getSha1(), streamMetrics.getSize());
-      blob.refresh(headers, metrics);
+      final DateTime creationTime = new DateTime();
+      final Function<StreamMetrics, SwiftBlobAttributes> attributes = streamMetrics -> new SwiftBlobAttributes(swift,
+          getConfiguredContainer(), attributePath, headers,
+          new BlobMetrics(creationTime, streamMetrics.getSha1(), streamMetrics.getSize()));
 
-      SwiftBlobAttributes blobAttributes = new SwiftBlobAttributes(swift, getConfiguredContainer(), attributePath, headers, metrics);
-      autoRetry(() -> blobAttributes.store());
+      final IngestedContent content = ingester.ingestTo(blobId, blobPath, attributes);
+      final SwiftBlobAttributes blobAttributes = attributes.apply(content.metrics);
+      blobAttributes.setLargeObject(content.largeObject);
+      if (!content.attributesStored) {
+        storeAttributes(blobAttributes, blobPath);
+      }
+      blob.refresh(headers, blobAttributes.getMetrics());
+      blob.setLargeObject(content.largeObject);
+      blob.setAttributes(blobAttributes);
       storeMetrics.recordAddition(blobAttributes.getMetrics().getContentSize());
 
       return blob;
@@ -229,6 +585,10 @@ public class SwiftBlobStore extends StateGuardLifecycleSupport implements BlobSt
       deleteQuietly(attributePath);
       deleteQuietly(blobPath);
       throw new BlobStoreException(e, blobId);
+    } catch (RuntimeException e) {
+      deleteQuietly(attributePath);
+      deleteQuietly(blobPath);
+      throw e;
     } finally {
       lock.unlock();
     }
@@ -239,17 +599,63 @@ public class SwiftBlobStore extends StateGuardLifecycleSupport implements BlobSt
   public Blob copy(final BlobId blobId, final Map<String, String> headers) {
     Stopwatch stopwatch = Stopwatch.createStarted();
     try {
-      Blob sourceBlob = checkNotNull(get(blobId));
+      InputStream spooled = uploadSpool.getContent(blobId);
+      if (spooled != null) {
+        // not uploaded yet, there is nothing to copy server side
+        try {
+          return create(spooled, headers);
+        }
+        finally {
+          Closeables.closeQuietly(spooled);
+        }
+      }
+      SwiftBlob sourceBlob = (SwiftBlob) checkNotNull(get(blobId));
       String sourcePath = contentPath(sourceBlob.getId());
-      return create(headers, destination -> this.<StreamMetrics, IOException>autoRetry(() -> {
-        try (InputStream source = new BufferedInputStream(swift.getContainer(getConfiguredContainer()).getObject(sourcePath).downloadObjectAsInputStream(), BUFFER_SIZE)) {
-          swift.getContainer(getConfiguredContainer()).getObject(destination).uploadObject(source);
-          BlobMetrics metrics = sourceBlob.getMetrics();
-          return new StreamMetrics(metrics.getContentSize(), metrics.getSha1Hash());
+      BlobMetrics metrics = sourceBlob.getMetrics();
+      StreamMetrics sourceMetrics = new StreamMetrics(metrics.getContentSize(), metrics.getSha1Hash());
+      boolean largeObject = sourceBlob.isLargeObject();
+      // copied server side, the content never passes through nexus
+      return create(headers, (copyId, destination, attributes) -> {
+        Container container = swift.getContainer(getConfiguredContainer());
+        if (largeObject) {
+          copyLargeObject(container, sourcePath, destination);
+          return new IngestedContent(sourceMetrics, true, false);
         }
-      }));
+        // replaces the attributes of the source with those of the copy in the same request
+        Map<String, Object> metadata = attributes.apply(sourceMetrics).toMetadata(attributeFormat);
+        if (metadata != null) {
+          autoRetry(() -> swiftApi.copyObject(getConfiguredContainer(), sourcePath, destination, metadata));
+        }
+        else {
+          autoRetry(() -> container.getObject(sourcePath).copyObject(container, container.getObject(destination)));
+        }
+        return new IngestedContent(sourceMetrics, false, metadata != null);
+      });
     } finally {
-      timerlog.debug("copy() took: " + stopwatch);
+      timerlog.debug("copy() took: {}", stopwatch);
+    }
+  }
+
+  /**
+   * Copies each segment of a Static Large Object server side and writes a manifest of its own for the copies, so
+   * that deleting either blob leaves the other intact.
+   */
+  private void copyLargeObject(final Container container, final String sourcePath, final String destination)
+      throws IOException
+  {
+    List<Segment> sourceSegments = autoRetry(() -> swiftApi.getManifest(container.getName(), sourcePath));
+    List<Segment> segments = new ArrayList<>(sourceSegments.size());
+    try {
+      for (Segment source : sourceSegments) {
+        String path = LargeObjectUploader.segmentPath(segmentPrefix(destination), segments.size());
+        autoRetry(() -> container.getObject(source.getPath()).copyObject(container, container.getObject(path)));
+        segments.add(new Segment(path, source.getEtag(), source.getSize()));
+      }
+      autoRetry(() -> swiftApi.putManifest(container.getName(), destination, segments));
+    }
+    catch (IOException | RuntimeException e) {
+      segments.forEach(segment -> deleteQuietly(segment.getPath()));
+      throw e;
     }
   }
 
@@ -273,12 +679,15 @@ public class SwiftBlobStore extends StateGuardLifecycleSupport implements BlobSt
         Lock lock = blob.lock();
         try {
           if (blob.isStale()) {
-            SwiftBlobAttributes blobAttributes = new SwiftBlobAttributes(swift, getConfiguredContainer(), attributePath(blobId));
-            boolean loaded = blobAttributes.load();
-            if (!loaded) {
-              log.warn("Attempt to access non-existent blob {} ({})", blobId, blobAttributes);
+            SwiftBlobAttributes blobAttributes = blob.getAttributes();
+            if (blobAttributes == null) {
+              blobAttributes = new SwiftBlobAttributes(swift, getConfiguredContainer(), attributePath(blobId));
+            }
+            if (!loadAttributes(blobId, blobAttributes, true)) {
+              log.warn("Attempt to access non-existent blob {}", blobId);
               return null;
             }
+            blob.setAttributes(blobAttributes);
 
             if (blobAttributes.isDeleted() && !includeDeleted) {
               log.warn("Attempt to access soft-deleted blob {} ({})", blobId, blobAttributes);
@@ -286,6 +695,7 @@ public class SwiftBlobStore extends StateGuardLifecycleSupport implements BlobSt
             }
 
             blob.refresh(blobAttributes.getHeaders(), blobAttributes.getMetrics());
+            blob.setLargeObject(blobAttributes.isLargeObject());
           }
         } catch (IOException e) {
           throw new BlobStoreException(e, blobId);
@@ -299,7 +709,7 @@ public class SwiftBlobStore extends StateGuardLifecycleSupport implements BlobSt
 
       return blob;
     } finally {
-      timerlog.trace("get(...) took: " + stopwatch);
+      timerlog.trace("get(...) took: {}", stopwatch);
     }
   }
 
@@ -316,9 +726,8 @@ public class SwiftBlobStore extends StateGuardLifecycleSupport implements BlobSt
       try {
         log.debug("Soft deleting blob {}", blobId);
 
-        SwiftBlobAttributes blobAttributes = new SwiftBlobAttributes(swift, getConfiguredContainer(), attributePath(blobId).toString());
-        boolean loaded = autoRetry(() -> blobAttributes.load());
-        if (!loaded) {
+        SwiftBlobAttributes blobAttributes = loadAttributes(blobId);
+        if (blobAttributes == null) {
           // This could happen under some concurrent situations (two threads try to delete the same blob)
           // but it can also occur if the deleted index refers to a manually-deleted blob.
           log.warn("Attempt to mark-for-delete non-existent blob {}", blobId);
@@ -331,9 +740,12 @@ public class SwiftBlobStore extends StateGuardLifecycleSupport implements BlobSt
 
         blobAttributes.setDeleted(true);
         blobAttributes.setDeletedReason(reason);
-        autoRetry(blobAttributes::store);
-        delete(contentPath(blobId));
+        // the content stays until the blob is hard deleted, its metadata carries the deleted flag
+        storeAttributes(blobId, blobAttributes);
+        blob.setAttributes(blobAttributes);
         blob.markStale();
+        contentCache.invalidate(blobId);
+        deletionJournal.append(blobId);
 
         return true;
       } catch (Exception e) {
@@ -342,7 +754,7 @@ public class SwiftBlobStore extends StateGuardLifecycleSupport implements BlobSt
         lock.unlock();
       }
     } finally {
-      timerlog.debug("delete(...) took: " + stopwatch);
+      timerlog.debug("delete(...) took: {}", stopwatch);
     }
   }
 
@@ -356,14 +768,16 @@ public class SwiftBlobStore extends StateGuardLifecycleSupport implements BlobSt
       try {
         log.debug("Hard deleting blob {}", blobId);
 
-        String attributePath = attributePath(blobId);
-        SwiftBlobAttributes blobAttributes = new SwiftBlobAttributes(swift, getConfiguredContainer(), attributePath);
-        Long contentSize = getContentSizeForDeletion(blobAttributes);
-
-        String blobPath = contentPath(blobId);
+        Properties spooled = uploadSpool.discard(blobId);
+        if (spooled != null) {
+          // never uploaded
+          storeMetrics.recordDeletion(spooledAttributes(blobId, spooled).getMetrics().getContentSize());
+          return true;
+        }
+        SwiftBlobAttributes blobAttributes = loadAttributesForDeletion(blobId);
+        Long contentSize = blobAttributes != null ? blobAttributes.getMetrics().getContentSize() : null;
 
-        boolean blobDeleted = autoRetry(() -> delete(blobPath));
-        autoRetry(() -> delete(attributePath));
+        boolean blobDeleted = deleteObjects(blobId, blobAttributes);
 
         if (blobDeleted && contentSize != null) {
           storeMetrics.recordDeletion(contentSize);
@@ -376,24 +790,375 @@ public class SwiftBlobStore extends StateGuardLifecycleSupport implements BlobSt
       }
       finally {
         liveBlobs.invalidate(blobId);
+        contentCache.invalidate(blobId);
       }
     } finally {
-      timerlog.debug("deleteHard(...) took: " + stopwatch);
+      timerlog.debug("deleteHard(...) took: {}", stopwatch);
+    }
+  }
+
+  /**
+   * Deletes the content of a blob and its .properties sidecar, returns false when the content was already gone.
+   */
+  private boolean deleteObjects(final BlobId blobId, @Nullable final SwiftBlobAttributes blobAttributes)
+      throws IOException
+  {
+    boolean largeObject = blobAttributes != null && blobAttributes.isLargeObject();
+    String blobPath = contentPath(blobId);
+    boolean blobDeleted = autoRetry(() -> deleteContent(blobPath, largeObject));
+    if (blobAttributes == null || blobAttributes.isInPropertiesFile()) {
+      String attributePath = attributePath(blobId);
+      autoRetry(() -> delete(attributePath));
+    }
+    return blobDeleted;
+  }
+
+  /**
+   * Hard deletes a stream of blobs, removing their objects in bulk-delete requests of up to the cluster's limit, or
+   * one request per object when the cluster does not advertise bulk delete. Metrics are updated once per request.
+   *
+   * @return the number of blobs deleted
+   */
+  @Guarded(by = STARTED)
+  public long deleteHard(final Stream<BlobId> blobIds) {
+    return deleteHard(blobIds, null);
+  }
+
+  /**
+   * As {@link #deleteHard(Stream)}, adding the blobs whose objects could not be deleted to {@code failed} when given.
+   */
+  private long deleteHard(final Stream<BlobId> blobIds, @Nullable final Collection<BlobId> failed) {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    try {
+      int batchSize = getBulkDeleteLimit();
+      List<PendingDeletion> batch = new ArrayList<>();
+      int batchPaths = 0;
+      long deleted = 0;
+      for (Iterator<BlobId> iterator = blobIds.iterator(); iterator.hasNext(); ) {
+        PendingDeletion pending = prepareDeletion(iterator.next());
+        if (!batch.isEmpty() && batchPaths + pending.paths.size() > Math.max(1, batchSize)) {
+          deleted += deleteBatch(batch, batchSize > 0, failed);
+          batch.clear();
+          batchPaths = 0;
+        }
+        batch.add(pending);
+        batchPaths += pending.paths.size();
+      }
+      if (!batch.isEmpty()) {
+        deleted += deleteBatch(batch, batchSize > 0, failed);
+      }
+      return deleted;
+    }
+    catch (IOException e) {
+      throw new BlobStoreException(e, null);
+    }
+    finally {
+      timerlog.debug("deleteHard(Stream) took: {}", stopwatch);
+    }
+  }
+
+  /**
+   * Works out the objects to delete for a blob. Large objects are deleted right away, a bulk delete would leave their
+   * segments behind.
+   */
+  private PendingDeletion prepareDeletion(final BlobId blobId) throws IOException {
+    Properties spooled = uploadSpool.discard(blobId);
+    if (spooled != null) {
+      // never uploaded
+      PendingDeletion pending = new PendingDeletion(blobId,
+          spooledAttributes(blobId, spooled).getMetrics().getContentSize());
+      pending.contentDeleted = true;
+      return pending;
+    }
+    SwiftBlobAttributes blobAttributes = loadAttributesForDeletion(blobId);
+    PendingDeletion pending = new PendingDeletion(blobId,
+        blobAttributes != null ? blobAttributes.getMetrics().getContentSize() : null);
+    if (blobAttributes != null && blobAttributes.isLargeObject()) {
+      pending.contentDeleted = autoRetry(() -> deleteContent(contentPath(blobId), true));
+    }
+    else {
+      pending.contentPath = contentPath(blobId);
+      pending.paths.add(pending.contentPath);
+      pending.contentFound = blobAttributes != null && !blobAttributes.isInPropertiesFile();
+    }
+    if (blobAttributes == null || blobAttributes.isInPropertiesFile()) {
+      pending.paths.add(attributePath(blobId));
+    }
+    return pending;
+  }
+
+  private long deleteBatch(final List<PendingDeletion> batch,
+                           final boolean bulk,
+                           @Nullable final Collection<BlobId> failed) throws IOException
+  {
+    List<String> paths = batch.stream().flatMap(pending -> pending.paths.stream()).collect(Collectors.toList());
+    Map<String, String> errors;
+    // objects already gone, null when a bulk delete only told how many were
+    Set<String> notFound = null;
+    boolean anyNotFound = false;
+    if (bulk) {
+      BulkDeleteResult result = autoRetry(() -> swiftApi.bulkDelete(getConfiguredContainer(), paths));
+      log.debug("Bulk deleted {} objects, {} not found, {} failed", result.getDeleted(), result.getNotFound(),
+          result.getErrors().size());
+      errors = result.getErrors();
+      anyNotFound = result.getNotFound() > 0;
+    }
+    else {
+      errors = new HashMap<>();
+      notFound = new HashSet<>();
+      for (String path : paths) {
+        try {
+          if (!autoRetry(() -> delete(path))) {
+            notFound.add(path);
+          }
+        }
+        catch (RuntimeException e) {
+          errors.put(path, e.getMessage());
+        }
+      }
+    }
+    errors.forEach((path, status) -> log.warn("Unable to delete {}: {}", path, status));
+
+    long deleted = 0;
+    long recordedCount = 0;
+    long recordedSize = 0;
+    for (PendingDeletion pending : batch) {
+      liveBlobs.invalidate(pending.blobId);
+      contentCache.invalidate(pending.blobId);
+      if (failed != null && pending.paths.stream().anyMatch(errors::containsKey)) {
+        failed.add(pending.blobId);
+      }
+      if (pending.contentDeleted || isContentDeleted(pending, errors, notFound, anyNotFound)) {
+        deleted++;
+        if (pending.contentSize != null) {
+          recordedCount++;
+          recordedSize += pending.contentSize;
+        }
+      }
+    }
+    if (recordedCount > 0) {
+      storeMetrics.recordDeletions(recordedCount, recordedSize);
     }
+    return deleted;
+  }
+
+  /**
+   * Returns true when the content object of a blob was deleted by the batch rather than already gone, as a single
+   * hard delete would count it. A bulk delete only tells how many objects were not found, so when some were, only
+   * content seen when the attributes were loaded is counted.
+   */
+  private static boolean isContentDeleted(final PendingDeletion pending,
+                                          final Map<String, String> errors,
+                                          @Nullable final Set<String> notFound,
+                                          final boolean anyNotFound)
+  {
+    if (pending.contentPath == null || errors.containsKey(pending.contentPath)) {
+      return false;
+    }
+    if (notFound != null) {
+      return !notFound.contains(pending.contentPath);
+    }
+    return !anyNotFound || pending.contentFound;
+  }
+
+  /**
+   * Returns the number of objects a bulk delete may remove, 0 when bulk delete is not available.
+   */
+  private int getBulkDeleteLimit() {
+    Integer limit = bulkDeleteLimit;
+    if (limit == null) {
+      limit = Math.min(swiftApi.getBulkDeleteLimit(), MAX_BULK_DELETE);
+      log.info("Bulk delete {} for blob store {}", limit > 0 ? "limited to " + limit + " objects" : "not available",
+          blobStoreConfiguration.getName());
+      bulkDeleteLimit = limit;
+    }
+    return limit;
   }
 
   @Nullable
-  private Long getContentSizeForDeletion(final SwiftBlobAttributes blobAttributes) {
+  private SwiftBlobAttributes loadAttributesForDeletion(final BlobId blobId) {
+    try {
+      // no point migrating attributes about to be deleted
+      SwiftBlobAttributes blobAttributes = new SwiftBlobAttributes(swift, getConfiguredContainer(), attributePath(blobId));
+      return loadAttributes(blobId, blobAttributes, false) ? blobAttributes : null;
+    }
+    catch (Exception e) {
+      log.warn("Unable to load attributes of {}, delete will not be added to metrics.", blobId, e);
+      return null;
+    }
+  }
+
+  /**
+   * Loads the attributes of a blob from the metadata of its content object. Attributes still kept in a swift/1
+   * .properties sidecar are moved into that metadata on the way.
+   */
+  @Nullable
+  private SwiftBlobAttributes loadAttributes(final BlobId blobId) throws IOException {
+    SwiftBlobAttributes blobAttributes = new SwiftBlobAttributes(swift, getConfiguredContainer(), attributePath(blobId));
+    return loadAttributes(blobId, blobAttributes, true) ? blobAttributes : null;
+  }
+
+  /**
+   * Loads into attributes loaded before, attributes that were found in a sidecar are looked for there first as an
+   * unchanged sidecar costs a bodiless 304.
+   */
+  private boolean loadAttributes(final BlobId blobId, final SwiftBlobAttributes blobAttributes, final boolean migrate)
+      throws IOException
+  {
+    Properties spooled = uploadSpool.getAttributes(blobId);
+    if (spooled != null) {
+      blobAttributes.readProperties(spooled);
+      return true;
+    }
+    if (blobAttributes.isInPropertiesFile() && autoRetry(() -> blobAttributes.load(readHedger, swiftApi))) {
+      return true;
+    }
+    String path = contentPath(blobId);
+    // hedged HEADs go through the api client, so that the one which did not answer first is aborted; otherwise each
+    // read gets an object of its own, as JOSS objects keep what they read
+    Map<String, Object> metadata = autoRetry(() -> readHedger.isEnabled()
+        ? readHedger.read(onCancel -> swiftApi.getMetadata(getConfiguredContainer(), path, onCancel))
+        : getMetadata(swift.getContainer(getConfiguredContainer()).getObject(path)));
+    if (blobAttributes.readMetadata(metadata)) {
+      return true;
+    }
+    if (!autoRetry(() -> blobAttributes.load(readHedger, swiftApi))) {
+      return false;
+    }
+    if (migrate && metadata != null) {
+      migrateAttributes(swift.getContainer(getConfiguredContainer()).getObject(path), blobAttributes);
+    }
+    return true;
+  }
+
+  /**
+   * Moves attributes read from a .properties sidecar into the metadata of the content object, failures leave the
+   * sidecar in place to be migrated on a later read.
+   */
+  private void migrateAttributes(final StoredObject content, final SwiftBlobAttributes blobAttributes) {
+    Map<String, Object> metadata = blobAttributes.toMetadata(attributeFormat);
+    if (metadata == null) {
+      log.debug("Attributes of {} exceed the swift metadata limits, keeping {}", content.getName(), blobAttributes);
+      return;
+    }
     try {
-      blobAttributes.load();
-      return blobAttributes.getMetrics() != null ? blobAttributes.getMetrics().getContentSize() : null;
+      autoRetry(() -> content.setMetadata(metadata));
+      autoRetry(blobAttributes::removePropertiesFile);
+      log.debug("Migrated attributes of {} into its metadata", content.getName());
     }
     catch (Exception e) {
-      log.warn("Unable to load attributes {}, delete will not be added to metrics.", blobAttributes, e);
+      log.warn("Unable to migrate attributes of {} into its metadata", content.getName(), e);
+    }
+  }
+
+  /**
+   * Stores the attributes of a blob with its content, in the upload spool when the blob was not uploaded yet.
+   */
+  private void storeAttributes(final BlobId blobId, final SwiftBlobAttributes blobAttributes) throws IOException {
+    if (!uploadSpool.updateAttributes(blobId, blobAttributes.toProperties())) {
+      storeAttributes(blobAttributes, contentPath(blobId));
+    }
+  }
+
+  /**
+   * Writes the attributes into the metadata of the content object. Attributes too large for swift metadata, or
+   * whose content object is gone, are kept in the .properties sidecar instead.
+   */
+  private void storeAttributes(final SwiftBlobAttributes blobAttributes, final String contentPath) throws IOException {
+    StoredObject content = swift.getContainer(getConfiguredContainer()).getObject(contentPath);
+    Map<String, Object> metadata =
+        blobAttributes.isInPropertiesFile() ? null : blobAttributes.toMetadata(attributeFormat);
+    if (metadata != null) {
+      autoRetry(() -> content.setMetadata(metadata));
+      return;
+    }
+    boolean wasInMetadata = !blobAttributes.isInPropertiesFile();
+    autoRetry(() -> blobAttributes.store(attributeFormat));
+    if (wasInMetadata) {
+      // stale attributes in the metadata would take precedence over the sidecar
+      autoRetry(() -> content.setMetadata(Collections.emptyMap()));
+    }
+  }
+
+  /**
+   * Returns the metadata of an object in a single HEAD, null when the object does not exist.
+   */
+  @Nullable
+  private Map<String, Object> getMetadata(final StoredObject object) {
+    try {
+      return object.getMetadata();
+    }
+    catch (NotFoundException e) {
       return null;
     }
   }
 
+  /**
+   * Returns the number of connections to swift leased, available in the pool, and of requests waiting for one.
+   */
+  public PoolStats getConnectionPoolStats() {
+    return transport.getPoolStats();
+  }
+
+  /**
+   * Returns the retry policy, which counts the retries and the requests failed fast while swift is unavailable.
+   */
+  public SwiftRetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  /**
+   * Returns the read hedger, which counts the reads hedged and the hedges which answered first.
+   */
+  public SwiftReadHedger getReadHedger() {
+    return readHedger;
+  }
+
+  /**
+   * Returns the manager of the auth token, which counts the token refreshes and re-authentications and times them.
+   */
+  public SwiftTokenManager getTokenManager() {
+    return transport.getTokenManager();
+  }
+
+  /**
+   * Returns the local cache of blob content, which counts hits, misses, bytes not read from swift and evictions.
+   */
+  public SwiftContentCache getContentCache() {
+    return contentCache;
+  }
+
+  /**
+   * Returns the spool of blobs not uploaded yet, which tells how many wait and for how long the oldest has.
+   */
+  public SwiftUploadSpool getUploadSpool() {
+    return uploadSpool;
+  }
+
+  /**
+   * Returns the latency percentiles, bytes, outcomes and retries of the requests sent to swift, by operation and kind
+   * of object.
+   */
+  public SwiftOperationMetrics getOperationMetrics() {
+    return transport.getOperationMetrics();
+  }
+
+  /**
+   * Returns the latency, outstanding requests, failures and ejection of each swift proxy storage requests are spread
+   * over, none when they all go to the storage URL swift returned.
+   */
+  public List<EndpointStats> getEndpointStats() {
+    return transport.getEndpointBalancer().getEndpointStats();
+  }
+
+  /**
+   * Returns the blob count and total size of all nodes together with how old the figures of the other nodes are.
+   */
+  @Guarded(by = STARTED)
+  public MetricsSnapshot getMetricsSnapshot() {
+    return autoRetry(() -> storeMetrics.getMetricsSnapshot());
+  }
+
   @Override
   @Guarded(by = STARTED)
   public BlobStoreMetrics getMetrics() {
@@ -406,10 +1171,370 @@ public class SwiftBlobStore extends StateGuardLifecycleSupport implements BlobSt
     compact(null);
   }
 
+  /**
+   * Hard deletes the soft-deleted blobs that {@code inUseChecker} does not find in use, those it finds in use are
+   * undeleted. The blobs checked are those in the segments of the {@link SwiftDeletionJournal}, so the work done is
+   * proportional to the deletions since the last compaction. Each batch of blobs has its attributes loaded
+   * concurrently by up to {@value #COMPACTION_THREADS_KEY} workers at no more than {@value #COMPACTION_RATE_KEY}
+   * requests a second, and a segment is deleted once replayed. Blobs that could not be checked or deleted are written
+   * back to the journal first, so a later compaction tries them again.
+   *
+   * Blob stores which predate the journal sweep all of their content once instead, in listing order. The last object
+   * of each batch swept is checkpointed in {@value #COMPACTION_FILENAME}, an interrupted sweep resumes after it. The
+   * checkpoint is removed once the sweep completes.
+   */
   @Override
   @Guarded(by = STARTED)
   public synchronized void compact(@Nullable final BlobStoreUsageChecker inUseChecker) {
-      // no-op
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    int threads = (int) getConfiguredLong(COMPACTION_THREADS_KEY, DEFAULT_COMPACTION_THREADS);
+    checkArgument(threads > 0, "Compaction threads must be > 0");
+    long rate = getConfiguredLong(COMPACTION_RATE_KEY, 0);
+    RateLimiter rateLimiter = rate > 0 ? RateLimiter.create(rate) : null;
+    ExecutorService workers = Executors.newFixedThreadPool(threads,
+        new NexusThreadFactory("swift-compaction", blobStoreConfiguration.getName()));
+    try {
+      long deleted = replayJournal(inUseChecker, workers, rateLimiter);
+      SwiftPropertiesFile checkpoint = new SwiftPropertiesFile(swift, getConfiguredContainer(), null,
+          COMPACTION_FILENAME);
+      if (autoRetry(() -> checkpoint.loadIfExists())) {
+        deleted += sweepContent(checkpoint, inUseChecker, workers, rateLimiter);
+      }
+      log.info("Compaction of blob store {} hard deleted {} blobs", blobStoreConfiguration.getName(), deleted);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.info("Compaction of blob store {} interrupted", blobStoreConfiguration.getName());
+    }
+    catch (IOException e) {
+      throw new BlobStoreException(e, null);
+    }
+    finally {
+      workers.shutdownNow();
+      timerlog.debug("compact(...) took: {}", stopwatch);
+    }
+  }
+
+  /**
+   * Compacts the blobs recorded in the deletion journal, including those this node has not rolled into a segment yet.
+   */
+  private long replayJournal(@Nullable final BlobStoreUsageChecker inUseChecker,
+                             final ExecutorService workers,
+                             @Nullable final RateLimiter rateLimiter) throws IOException, InterruptedException
+  {
+    deletionJournal.roll();
+    long deleted = 0;
+    int segments = 0;
+    // listed up front, segments written back for unresolved blobs are left to the next compaction
+    List<String> replayed = deletionJournal.segments(retryPolicy).collect(Collectors.toList());
+    for (String segment : replayed) {
+      List<BlobId> blobIds = autoRetry(() -> deletionJournal.read(segment));
+      Set<BlobId> unresolved = ConcurrentHashMap.newKeySet();
+      deleted += deleteUnused(findUnused(blobIds, inUseChecker, workers, rateLimiter, unresolved), rateLimiter,
+          unresolved);
+      if (!recordUnresolved(unresolved)) {
+        continue;
+      }
+      autoRetry(() -> deletionJournal.delete(segment));
+      segments++;
+    }
+    log.debug("Compaction of blob store {} replayed {} journal segments", blobStoreConfiguration.getName(), segments);
+    return deleted;
+  }
+
+  /**
+   * Writes the blobs a compaction could not resolve to the journal, returns false when they could not be written.
+   */
+  private boolean recordUnresolved(final Collection<BlobId> unresolved) {
+    if (unresolved.isEmpty()) {
+      return true;
+    }
+    try {
+      deletionJournal.record(unresolved);
+      log.info("Compaction of blob store {} left {} blobs to the next compaction", blobStoreConfiguration.getName(),
+          unresolved.size());
+      return true;
+    }
+    catch (IOException e) {
+      log.warn("Unable to record {} blobs left to the next compaction of blob store {}", unresolved.size(),
+          blobStoreConfiguration.getName(), e);
+      return false;
+    }
+  }
+
+  /**
+   * Compacts all content, resuming after the marker of the checkpoint.
+   */
+  private long sweepContent(final SwiftPropertiesFile checkpoint,
+                            @Nullable final BlobStoreUsageChecker inUseChecker,
+                            final ExecutorService workers,
+                            @Nullable final RateLimiter rateLimiter) throws IOException, InterruptedException
+  {
+    String marker = checkpoint.getProperty(COMPACTION_MARKER_KEY);
+    log.info("{} sweeping blob store {}{}", marker != null ? "Resuming" : "Starting",
+        blobStoreConfiguration.getName(), marker != null ? " after " + marker : "");
+
+    Container container = swift.getContainer(getConfiguredContainer());
+    Stream<String> paths = StreamSupport.stream(
+        new PagedObjectSpliterator(container, CONTENT_PREFIX + "/", marker, LIST_PAGE_SIZE, retryPolicy), false)
+        .filter(new SidecarFilter());
+    long swept = 0;
+    long deleted = 0;
+    for (Iterator<List<String>> batches = Iterators.partition(paths.iterator(), COMPACTION_BATCH_SIZE);
+         batches.hasNext(); ) {
+      List<String> batch = batches.next();
+      List<BlobId> blobIds = batch.stream()
+          .map(SwiftBlobStore::blobIdOf)
+          .filter(Objects::nonNull)
+          .collect(Collectors.toList());
+      Set<BlobId> unresolved = ConcurrentHashMap.newKeySet();
+      deleted += deleteUnused(findUnused(blobIds, inUseChecker, workers, rateLimiter, unresolved), rateLimiter,
+          unresolved);
+      if (!recordUnresolved(unresolved)) {
+        throw new IOException("Unable to record the blobs left to the next compaction");
+      }
+      swept += batch.size();
+      marker = batch.get(batch.size() - 1);
+      checkpoint.setProperty(COMPACTION_MARKER_KEY, marker);
+      autoRetry(checkpoint::store);
+      log.debug("Sweep of blob store {} passed {} objects up to {}", blobStoreConfiguration.getName(), swept, marker);
+    }
+    autoRetry(() -> {
+      try {
+        checkpoint.remove();
+      }
+      catch (NotFoundException e) {
+        // removed by the sweep of another node
+      }
+    });
+    log.info("Sweep of blob store {} passed {} objects", blobStoreConfiguration.getName(), swept);
+    return deleted;
+  }
+
+  private long deleteUnused(final List<BlobId> unused,
+                            @Nullable final RateLimiter rateLimiter,
+                            final Collection<BlobId> unresolved)
+  {
+    if (unused.isEmpty()) {
+      return 0;
+    }
+    if (rateLimiter != null) {
+      rateLimiter.acquire();
+    }
+    return deleteHard(unused.stream(), unresolved);
+  }
+
+  /**
+   * Loads the attributes of a batch of blobs on the workers, returning the soft-deleted blobs not in use. Blobs that
+   * could not be checked are added to {@code unresolved}.
+   */
+  private List<BlobId> findUnused(final List<BlobId> blobIds,
+                                  @Nullable final BlobStoreUsageChecker inUseChecker,
+                                  final ExecutorService workers,
+                                  @Nullable final RateLimiter rateLimiter,
+                                  final Collection<BlobId> unresolved) throws InterruptedException
+  {
+    List<Future<BlobId>> candidates = new ArrayList<>();
+    for (BlobId blobId : blobIds) {
+      candidates.add(workers.submit(unusedChecker(blobId, inUseChecker, rateLimiter, unresolved)));
+    }
+    List<BlobId> unused = new ArrayList<>();
+    try {
+      for (Future<BlobId> candidate : candidates) {
+        BlobId blobId = candidate.get();
+        if (blobId != null) {
+          unused.add(blobId);
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      candidates.forEach(candidate -> candidate.cancel(true));
+      throw e;
+    }
+    catch (ExecutionException e) {
+      throw new BlobStoreException("Unable to compact " + blobIds.get(0), e.getCause(), null);
+    }
+    return unused;
+  }
+
+  /**
+   * Returns true for content still marked as pending its attributes well after it was put, left behind by a create
+   * which failed in between putting the content and storing the attributes.
+   */
+  private boolean isAbandoned(final BlobId blobId) throws IOException {
+    StoredObject content = swift.getContainer(getConfiguredContainer()).getObject(contentPath(blobId));
+    Map<String, Object> metadata = autoRetry(() -> getMetadata(content));
+    if (metadata == null || metadata.keySet().stream().noneMatch(PENDING_METADATA_KEY::equalsIgnoreCase)) {
+      return false;
+    }
+    if (System.currentTimeMillis() - content.getLastModifiedAsDate().getTime() < PENDING_CONTENT_TIMEOUT) {
+      return false;
+    }
+    log.info("Removing content {} left without attributes by a failed create", content.getName());
+    return true;
+  }
+
+  private java.util.concurrent.Callable<BlobId> unusedChecker(final BlobId blobId,
+                                                              @Nullable final BlobStoreUsageChecker inUseChecker,
+                                                              @Nullable final RateLimiter rateLimiter,
+                                                              final Collection<BlobId> unresolved)
+  {
+    return () -> checkUnused(blobId, inUseChecker, rateLimiter, unresolved);
+  }
+
+  /**
+   * Returns the blob when it is soft deleted and not in use, undeleting it when it is in use, or when a failed create
+   * abandoned its content. Blobs that cannot be checked are added to {@code unresolved}.
+   */
+  @Nullable
+  private BlobId checkUnused(final BlobId blobId,
+                             @Nullable final BlobStoreUsageChecker inUseChecker,
+                             @Nullable final RateLimiter rateLimiter,
+                             final Collection<BlobId> unresolved)
+  {
+    try {
+      if (rateLimiter != null) {
+        rateLimiter.acquire();
+      }
+      SwiftBlobAttributes blobAttributes = new SwiftBlobAttributes(swift, getConfiguredContainer(),
+          attributePath(blobId));
+      if (!loadAttributes(blobId, blobAttributes, false)) {
+        return isAbandoned(blobId) ? blobId : null;
+      }
+      if (!blobAttributes.isDeleted()) {
+        return null;
+      }
+      String blobName = blobAttributes.getHeaders().get(BLOB_NAME_HEADER);
+      if (inUseChecker == null || !inUseChecker.test(this, blobId, blobName)) {
+        return blobId;
+      }
+      log.debug("Undeleting blob {} ({}) which is still in use", blobId, blobName);
+      SwiftBlob blob = liveBlobs.getUnchecked(blobId);
+      Lock lock = blob.lock();
+      try {
+        blobAttributes.setDeleted(false);
+        blobAttributes.setDeletedReason(null);
+        storeAttributes(blobId, blobAttributes);
+        blob.setAttributes(blobAttributes);
+        blob.markStale();
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+    catch (Exception e) {
+      log.warn("Unable to compact blob {}", blobId, e);
+      unresolved.add(blobId);
+    }
+    return null;
+  }
+
+  /**
+   * Recomputes the blob count and total size from the attributes of all blobs and makes them the metrics of the blob
+   * store, superseding the counts the nodes kept up to the start of the walk, what they count during it is carried
+   * over. The content is listed page by page and each batch of blobs has its attributes loaded by up to
+   * {@value #COMPACTION_THREADS_KEY} workers at no more than {@value #COMPACTION_RATE_KEY} requests a second, as for
+   * compaction. Nothing is written when a blob cannot be read. Blobs created or deleted while the walk passes them may
+   * still be counted twice or missed.
+   */
+  @Guarded(by = STARTED)
+  public synchronized void reconcileMetrics() {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    int threads = (int) getConfiguredLong(COMPACTION_THREADS_KEY, DEFAULT_COMPACTION_THREADS);
+    checkArgument(threads > 0, "Compaction threads must be > 0");
+    long rate = getConfiguredLong(COMPACTION_RATE_KEY, 0);
+    RateLimiter rateLimiter = rate > 0 ? RateLimiter.create(rate) : null;
+    ExecutorService workers = Executors.newFixedThreadPool(threads,
+        new NexusThreadFactory("swift-reconcile", blobStoreConfiguration.getName()));
+    LongAdder blobCount = new LongAdder();
+    LongAdder totalSize = new LongAdder();
+    try {
+      log.info("Reconciling metrics of blob store {}", blobStoreConfiguration.getName());
+      ReconcileStart start = storeMetrics.startReconcile();
+      // blobs of this node not uploaded yet are not listed
+      blobCount.add(uploadSpool.getQueueDepth());
+      totalSize.add(uploadSpool.getSpooledBytes());
+      Container container = swift.getContainer(getConfiguredContainer());
+      Stream<String> paths = StreamSupport.stream(
+          new PagedObjectSpliterator(container, CONTENT_PREFIX + "/", LIST_PAGE_SIZE, retryPolicy), false)
+          .filter(new SidecarFilter());
+      long walked = 0;
+      int batchCount = 0;
+      for (Iterator<List<String>> batches = Iterators.partition(paths.iterator(), COMPACTION_BATCH_SIZE);
+           batches.hasNext(); ) {
+        List<Future<Boolean>> loads = new ArrayList<>();
+        for (String path : batches.next()) {
+          BlobId blobId = blobIdOf(path);
+          if (blobId != null) {
+            loads.add(workers.submit(liveCounter(blobId, blobCount, totalSize, rateLimiter)));
+          }
+        }
+        await(loads);
+        walked += loads.size();
+        if (++batchCount % RECONCILE_PROGRESS_BATCHES == 0) {
+          log.info("Reconcile of blob store {} walked {} blobs in {}, {} live", blobStoreConfiguration.getName(),
+              walked, stopwatch, blobCount.sum());
+        }
+      }
+      storeMetrics.reconcile(start, blobCount.sum(), totalSize.sum());
+      log.info("Reconciled metrics of blob store {}: {} blobs of {} bytes, {} blobs walked in {}",
+          blobStoreConfiguration.getName(), blobCount.sum(), totalSize.sum(), walked, stopwatch);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.info("Reconcile of blob store {} interrupted", blobStoreConfiguration.getName());
+    }
+    catch (IOException e) {
+      throw new BlobStoreException(e, null);
+    }
+    finally {
+      workers.shutdownNow();
+      timerlog.debug("reconcileMetrics() took: {}", stopwatch);
+    }
+  }
+
+  private java.util.concurrent.Callable<Boolean> liveCounter(final BlobId blobId,
+                                                             final LongAdder blobCount,
+                                                             final LongAdder totalSize,
+                                                             @Nullable final RateLimiter rateLimiter)
+  {
+    return () -> countLive(blobId, blobCount, totalSize, rateLimiter);
+  }
+
+  /**
+   * Adds the blob to the counts when it is live, returns whether it was.
+   */
+  private boolean countLive(final BlobId blobId,
+                            final LongAdder blobCount,
+                            final LongAdder totalSize,
+                            @Nullable final RateLimiter rateLimiter) throws IOException
+  {
+    if (rateLimiter != null) {
+      rateLimiter.acquire();
+    }
+    SwiftBlobAttributes blobAttributes = new SwiftBlobAttributes(swift, getConfiguredContainer(), attributePath(blobId));
+    if (!loadAttributes(blobId, blobAttributes, false) || blobAttributes.isDeleted()) {
+      return false;
+    }
+    blobCount.increment();
+    totalSize.add(blobAttributes.getMetrics().getContentSize());
+    return true;
+  }
+
+  private static void await(final List<? extends Future<?>> futures) throws InterruptedException {
+    try {
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    }
+    catch (InterruptedException e) {
+      futures.forEach(future -> future.cancel(true));
+      throw e;
+    }
+    catch (ExecutionException e) {
+      futures.forEach(future -> future.cancel(true));
+      throw new BlobStoreException("Unable to reconcile metrics", e.getCause(), null);
+    }
   }
 
   @Override
@@ -420,9 +1545,40 @@ public class SwiftBlobStore extends StateGuardLifecycleSupport implements BlobSt
   @Override
   public void init(final BlobStoreConfiguration configuration) {
     this.blobStoreConfiguration = configuration;
-    tries.set(Integer.valueOf(String.valueOf(blobStoreConfiguration.attributes(CONFIG_KEY).get(TRIES_KEY))));
+    retryPolicy = new SwiftRetryPolicy(
+        Integer.valueOf(String.valueOf(blobStoreConfiguration.attributes(CONFIG_KEY).get(TRIES_KEY))),
+        getConfiguredLong(RETRY_DELAY_KEY, SwiftRetryPolicy.DEFAULT_RETRY_DELAY),
+        getConfiguredLong(MAX_RETRY_DELAY_KEY, SwiftRetryPolicy.DEFAULT_MAX_RETRY_DELAY),
+        (int) getConfiguredLong(RETRY_BUDGET_KEY, SwiftRetryPolicy.DEFAULT_RETRY_BUDGET),
+        (int) getConfiguredLong(CIRCUIT_BREAKER_THRESHOLD_KEY, SwiftRetryPolicy.DEFAULT_CIRCUIT_BREAKER_THRESHOLD),
+        getConfiguredLong(CIRCUIT_BREAKER_DELAY_KEY, SwiftRetryPolicy.DEFAULT_CIRCUIT_BREAKER_DELAY));
+    readHedger = SwiftReadHedger.forDelay(blobStoreConfiguration.attributes(CONFIG_KEY).get(HEDGE_DELAY_KEY, String.class),
+        (int) getConfiguredLong(HEDGE_BUDGET_KEY, SwiftReadHedger.DEFAULT_HEDGE_BUDGET));
+    String cacheDirectory = blobStoreConfiguration.attributes(CONFIG_KEY).get(CACHE_DIRECTORY_KEY, String.class);
+    // a directory of its own under the one configured, as the cache empties it on start
+    contentCache = new SwiftContentCache(
+        Strings.isNullOrEmpty(cacheDirectory) ? null
+            : Paths.get(cacheDirectory.trim()).resolve(blobStoreConfiguration.getName()),
+        getConfiguredLong(CACHE_SIZE_KEY, DEFAULT_CACHE_SIZE_MB) * 1024 * 1024);
+    String spoolDirectory = blobStoreConfiguration.attributes(CONFIG_KEY).get(SPOOL_DIRECTORY_KEY, String.class);
+    uploadSpool = new SwiftUploadSpool(
+        Strings.isNullOrEmpty(spoolDirectory) ? null : Paths.get(spoolDirectory.trim()),
+        getConfiguredLong(SPOOL_SIZE_KEY, DEFAULT_SPOOL_SIZE_MB) * 1024 * 1024,
+        (int) getConfiguredLong(SPOOL_THREADS_KEY, SwiftUploadSpool.DEFAULT_UPLOAD_THREADS));
+    largeObjectThreshold = getConfiguredLong(LARGE_OBJECT_THRESHOLD_KEY, 0);
+    rangedReadThreshold = getConfiguredLong(RANGED_READ_THRESHOLD_KEY, 0);
+    String metricsMode = blobStoreConfiguration.attributes(CONFIG_KEY).get(METRICS_MODE_KEY, String.class);
+    storeMetrics.setMode(Strings.isNullOrEmpty(metricsMode) ? MetricsMode.COUNTERS : MetricsMode.parse(metricsMode));
+    String format = blobStoreConfiguration.attributes(CONFIG_KEY).get(ATTRIBUTE_FORMAT_KEY, String.class);
+    attributeFormat = Strings.isNullOrEmpty(format) ? AttributeFormat.PROPERTIES : AttributeFormat.parse(format);
+    if (transport != null) {
+      // initialized again with a new configuration, the connections of the previous one are not used anymore
+      closeTransport();
+    }
     try {
-      this.swift = swiftClientFactory.create(configuration);
+      this.transport = swiftClientFactory.createTransport(configuration, retryPolicy);
+      this.swift = swiftClientFactory.create(configuration, transport);
+      this.swiftApi = swiftClientFactory.createApiClient(swift, transport);
       autoRetry(() -> {
         if (!swift.getContainer(getConfiguredContainer()).exists()) {
           swift.getContainer(getConfiguredContainer()).create();
@@ -434,14 +1590,70 @@ public class SwiftBlobStore extends StateGuardLifecycleSupport implements BlobSt
     }
   }
 
+  /**
+   * Uploads a blob from the spool as {@link #create(InputStream, Map)} would have, reading its content from the spool
+   * file again for each try.
+   */
+  private void uploadSpooled(final BlobId blobId, final Path content, final Properties spooled) throws IOException {
+    SwiftBlobAttributes blobAttributes = spooledAttributes(blobId, spooled);
+    String destination = contentPath(blobId);
+    boolean largeObject = largeObjectUploader != null && Files.size(content) > largeObjectLimit();
+    boolean attributesStored = false;
+    if (largeObject) {
+      largeObjectUploader.upload(getConfiguredContainer(), destination, segmentPrefix(destination), content);
+    }
+    else {
+      Map<String, Object> metadata = blobAttributes.toMetadata(attributeFormat);
+      autoRetry(() -> {
+        UploadInstructions instructions = new UploadInstructions(content.toFile());
+        addHeaders(instructions, metadata);
+        swift.getContainer(getConfiguredContainer()).getObject(destination).uploadObject(instructions);
+      });
+      attributesStored = metadata != null;
+    }
+    blobAttributes.setLargeObject(largeObject);
+    if (!attributesStored) {
+      storeAttributes(blobAttributes, destination);
+    }
+    SwiftBlob blob = liveBlobs != null ? liveBlobs.getIfPresent(blobId) : null;
+    if (blob != null) {
+      blob.setLargeObject(largeObject);
+    }
+  }
+
+  private SwiftBlobAttributes spooledAttributes(final BlobId blobId, final Properties spooled) {
+    SwiftBlobAttributes blobAttributes = new SwiftBlobAttributes(swift, getConfiguredContainer(), attributePath(blobId));
+    blobAttributes.readProperties(spooled);
+    return blobAttributes;
+  }
+
   private boolean delete(final String path) throws IOException {
-    swift.getContainer(getConfiguredContainer()).getObject(path).delete();
-    // note: no info returned from swift
-    return true;
+    try {
+      swift.getContainer(getConfiguredContainer()).getObject(path).delete();
+      return true;
+    }
+    catch (NotFoundException e) {
+      return false;
+    }
+  }
+
+  private boolean deleteContent(final String path, final boolean largeObject) throws IOException {
+    if (largeObject) {
+      return swiftApi.deleteLargeObject(getConfiguredContainer(), path);
+    }
+    return delete(path);
   }
 
   private void deleteQuietly(final String path) {
-    swift.getContainer(getConfiguredContainer()).getObject(path).delete();
+    try {
+      swift.getContainer(getConfiguredContainer()).getObject(path).delete();
+    }
+    catch (NotFoundException e) { // NOSONAR
+      // never written
+    }
+    catch (RuntimeException e) {
+      log.warn("Unable to remove {} of a blob which could not be created", path, log.isDebugEnabled() ? e : null);
+    }
   }
 
   private void setConfiguredContainer(final String container) {
@@ -452,6 +1664,18 @@ public class SwiftBlobStore extends StateGuardLifecycleSupport implements BlobSt
     return blobStoreConfiguration.attributes(CONFIG_KEY).require(CONTAINER_KEY).toString();
   }
 
+  /**
+   * Returns an optional numeric setting, settings of stores created before the setting existed fall back to the
+   * default.
+   */
+  private long getConfiguredLong(final String key, final long defaultValue) {
+    Object value = blobStoreConfiguration.attributes(CONFIG_KEY).get(key);
+    if (value == null || value.toString().trim().isEmpty()) {
+      return defaultValue;
+    }
+    return Long.parseLong(value.toString().trim());
+  }
+
   /**
    * Delete files known to be part of the SwiftBlobStore implementation if the content directory is empty.
    */
@@ -467,6 +1691,7 @@ public class SwiftBlobStore extends StateGuardLifecycleSupport implements BlobSt
             SwiftPropertiesFile metadata = new SwiftPropertiesFile(swift, getConfiguredContainer(), null, METADATA_FILENAME);
             metadata.remove();
             storeMetrics.remove();
+            deletionJournal.remove();
             swift.getContainer(getConfiguredContainer()).delete();
           } else {
             log.warn("Unable to delete non-empty blob store content directory in bucket {}", getConfiguredContainer());
@@ -474,57 +1699,283 @@ public class SwiftBlobStore extends StateGuardLifecycleSupport implements BlobSt
         });
       } catch (IOException e) {
           throw new BlobStoreException(e, null);
+      } finally {
+        closeTransport();
       }
     } finally {
-      timerlog.debug("remove(...) took: " + stopwatch);
+      timerlog.debug("remove(...) took: {}", stopwatch);
+    }
+  }
+
+  private void closeTransport() {
+    try {
+      transport.close();
+    }
+    catch (IOException e) {
+      log.debug("Unable to close the connections of blob store {}", blobStoreConfiguration.getName(), e);
     }
   }
 
   class SwiftBlob extends BlobSupport {
+    private volatile boolean largeObject;
+    private volatile SwiftBlobAttributes attributes;
+
     SwiftBlob(final BlobId blobId) {
       super(blobId);
     }
 
+    boolean isLargeObject() {
+      return largeObject;
+    }
+
+    void setLargeObject(final boolean largeObject) {
+      this.largeObject = largeObject;
+    }
+
+    /**
+     * Returns the attributes last loaded or stored for the blob, reused to make reloading them conditional.
+     */
+    @Nullable
+    SwiftBlobAttributes getAttributes() {
+      return attributes;
+    }
+
+    void setAttributes(final SwiftBlobAttributes attributes) {
+      this.attributes = attributes;
+    }
+
     @Override
     public InputStream getInputStream() {
+      InputStream spooled = uploadSpool.getContent(getId());
+      if (spooled != null) {
+        return spooled;
+      }
+      BlobMetrics metrics = getMetrics();
+      if (metrics == null) {
+        return download(null);
+      }
+      InputStream cached = contentCache.get(getId(), metrics.getSha1Hash());
+      if (cached != null) {
+        return cached;
+      }
+      return contentCache.populate(getId(), metrics.getSha1Hash(), metrics.getContentSize(), download(metrics));
+    }
+
+    private InputStream download(@Nullable final BlobMetrics metrics) {
       StoredObject object = swift.getContainer(getConfiguredContainer()).getObject(contentPath(getId()));
+      ExecutorService executor = rangeExecutor;
+      if (executor != null && metrics != null && metrics.getContentSize() > rangedReadThreshold) {
+        return new ParallelRangeInputStream(object, metrics.getContentSize(), RANGE_SIZE, downloadThreads, executor,
+            retryPolicy);
+      }
+      if (readHedger.isEnabled()) {
+        String path = contentPath(getId());
+        try {
+          return autoRetry(() -> readHedger.read(
+              onCancel -> swiftApi.getObject(getConfiguredContainer(), path, onCancel), Closeables::closeQuietly));
+        }
+        catch (IOException e) {
+          throw new BlobStoreException("Unable to read blob content", e, getId());
+        }
+      }
       return autoRetry(() -> object.downloadObjectAsInputStream());
     }
   }
 
   private interface BlobIngester {
-    StreamMetrics ingestTo(final String destination) throws IOException;
+    /**
+     * Writes the content to {@code destination}, {@code attributes} gives the attributes for the content's metrics
+     * should they be written in the same request.
+     */
+    IngestedContent ingestTo(final BlobId blobId,
+                             final String destination,
+                             final Function<StreamMetrics, SwiftBlobAttributes> attributes) throws IOException;
+  }
+
+  private static class PendingDeletion {
+    private final BlobId blobId;
+    private final Long contentSize;
+    private final List<String> paths = new ArrayList<>(2);
+    private String contentPath;
+    // the content object was seen when the attributes were loaded
+    private boolean contentFound;
+    private boolean contentDeleted;
+
+    PendingDeletion(final BlobId blobId, @Nullable final Long contentSize) {
+      this.blobId = blobId;
+      this.contentSize = contentSize;
+    }
+  }
+
+  private static class IngestedContent {
+    private final StreamMetrics metrics;
+    private final boolean largeObject;
+    private final boolean attributesStored;
+
+    IngestedContent(final StreamMetrics metrics, final boolean largeObject, final boolean attributesStored) {
+      this.metrics = metrics;
+      this.largeObject = largeObject;
+      this.attributesStored = attributesStored;
+    }
   }
 
   @Override
   public Stream<BlobId> getBlobIdStream() {
-    Collection<DirectoryOrObject> summaries = autoRetry(() -> swift.getContainer(getConfiguredContainer()).listDirectory(CONTENT_DIRECTORY));
-    return blobIdStream(summaries);
+    return blobIdStream(CONTENT_PREFIX + "/", VOLUME_CHAPTER_DEPTH);
   }
 
   @Override
   public Stream<BlobId> getDirectPathBlobIdStream(final String prefix) {
-    String subpath = format("%s/%s/%s", CONTENT_PREFIX, DIRECT_PATH_ROOT, prefix);
-    Collection<DirectoryOrObject> summaries = autoRetry(() -> swift.getContainer(getConfiguredContainer()).listDirectory(new Directory(subpath, '/')));
-    return blobIdStream(summaries);
+    return blobIdStream(format("%s/%s/%s", CONTENT_PREFIX, DIRECT_PATH_ROOT, prefix), 1);
+  }
+
+  /**
+   * Lazily lists every blob under the prefix, however deeply nested, one page at a time. Blobs are listed by their
+   * content objects, and by the .properties sidecars of soft-deleted swift/1 blobs whose content is already gone.
+   *
+   * With a listing pool the directories {@code shardDepth} levels down are listed concurrently on it instead, the
+   * stream splits along them when made parallel.
+   */
+  private Stream<BlobId> blobIdStream(final String prefix, final int shardDepth) {
+    Stream<String> paths;
+    ForkJoinPool pool = listingPool;
+    if (pool == null) {
+      paths = StreamSupport.stream(listing(prefix), false).filter(new SidecarFilter());
+    }
+    else {
+      ShardedListingSpliterator listing = new ShardedListingSpliterator(
+          Collections.singletonList(new DirectoryShard(prefix, shardDepth)), pool, listingParallelism);
+      paths = StreamSupport.stream(listing, false).onClose(listing::cancel);
+    }
+    // blobs not uploaded yet are listed from the spool, and not again should they be uploaded while listing
+    Set<BlobId> spooled = new HashSet<>();
+    for (BlobId blobId : uploadSpool.getBlobIds()) {
+      String path = contentPath(blobId);
+      if (path.startsWith(prefix) && blobIdOf(path) != null) {
+        spooled.add(blobId);
+      }
+    }
+    Stream<BlobId> listed = paths
+            .map(SwiftBlobStore::blobIdOf)
+            .filter(Objects::nonNull);
+    if (spooled.isEmpty()) {
+      return listed;
+    }
+    return Stream.concat(spooled.stream(), listed.filter(blobId -> !spooled.contains(blobId)));
+  }
+
+  /**
+   * Returns the blob a listed object belongs to, null for objects of temporary blobs and other objects.
+   */
+  @Nullable
+  static BlobId blobIdOf(final String path) {
+    String filename = path.substring(path.lastIndexOf('/') + 1, path.length());
+    if (filename.startsWith(TEMPORARY_BLOB_ID_PREFIX)) {
+      return null;
+    }
+    String name = blobIdName(filename);
+    return name != null ? new BlobId(name) : null;
+  }
+
+  @Nullable
+  private static String blobIdName(final String filename) {
+    if (filename.endsWith(BLOB_CONTENT_SUFFIX)) {
+      return filename.substring(0, filename.length() - BLOB_CONTENT_SUFFIX.length());
+    }
+    if (filename.endsWith(BLOB_ATTRIBUTE_SUFFIX)) {
+      return filename.substring(0, filename.length() - BLOB_ATTRIBUTE_SUFFIX.length());
+    }
+    return null;
   }
 
-  private Stream<BlobId> blobIdStream(Collection<DirectoryOrObject> summaries) {
-    return summaries.stream()
-            .filter(element -> element.isObject())
-            .map(DirectoryOrObject::getAsObject)
-            .map(StoredObject::getPath)
-            .map(path -> path.substring(path.lastIndexOf('/') + 1, path.length()))
-            .filter(filename -> filename.endsWith(BLOB_ATTRIBUTE_SUFFIX) && !filename.startsWith(TEMPORARY_BLOB_ID_PREFIX))
-            .map(filename -> filename.substring(0, filename.length() - BLOB_ATTRIBUTE_SUFFIX.length()))
-            .map(BlobId::new);
+  private PagedObjectSpliterator listing(final String prefix) {
+    Container container = swift.getContainer(getConfiguredContainer());
+    return new PagedObjectSpliterator(container, prefix, LIST_PAGE_SIZE, retryPolicy);
+  }
+
+  /**
+   * The listing of a prefix, which splits into a shard per directory {@code depth} levels down, and a shard for the
+   * objects met on the way there. Each level is listed with a delimiter once the shard is split.
+   */
+  private class DirectoryShard
+      implements ShardedListingSpliterator.SplittableShard
+  {
+    private final String prefix;
+
+    private final int depth;
+
+    DirectoryShard(final String prefix, final int depth) {
+      this.prefix = prefix;
+      this.depth = depth;
+    }
+
+    @Override
+    public List<String> list() {
+      return StreamSupport.stream(listing(prefix), false)
+          .filter(new SidecarFilter())
+          .collect(Collectors.toList());
+    }
+
+    @Nullable
+    @Override
+    public List<ShardedListingSpliterator.Shard> split() {
+      if (depth == 0) {
+        return null;
+      }
+      Container container = swift.getContainer(getConfiguredContainer());
+      List<String> objects = new ArrayList<>();
+      List<ShardedListingSpliterator.Shard> shards = new ArrayList<>();
+      String marker = null;
+      Collection<DirectoryOrObject> page;
+      do {
+        String pageMarker = marker;
+        page = autoRetry(() -> container.listDirectory(prefix, '/', pageMarker, LIST_PAGE_SIZE));
+        for (DirectoryOrObject entry : page) {
+          if (entry.isDirectory()) {
+            String directory = entry.getAsDirectory().getName();
+            shards.add(new DirectoryShard(directory, depth - 1));
+            // continue past everything below the directory
+            marker = directory.substring(0, directory.length() - 1) + (char) ('/' + 1);
+          }
+          else {
+            marker = entry.getAsObject().getName();
+            objects.add(marker);
+          }
+        }
+      }
+      while (!page.isEmpty());
+
+      if (!objects.isEmpty()) {
+        shards.add(0, () -> objects.stream().filter(new SidecarFilter()).collect(Collectors.toList()));
+      }
+      return shards;
+    }
+  }
+
+  /**
+   * Drops the .properties sidecar of a blob whose content object was already listed. A sidecar is listed shortly after
+   * its content object, so only the sidecars the listing has not yet passed are remembered.
+   */
+  private static class SidecarFilter
+      implements Predicate<String>
+  {
+    private final NavigableSet<String> expected = new TreeSet<>();
+
+    @Override
+    public boolean test(final String path) {
+      expected.headSet(path, false).clear();
+      if (path.endsWith(BLOB_CONTENT_SUFFIX)) {
+        expected.add(path.substring(0, path.length() - BLOB_CONTENT_SUFFIX.length()) + BLOB_ATTRIBUTE_SUFFIX);
+        return true;
+      }
+      return !expected.remove(path);
+    }
   }
 
   @Override
   public BlobAttributes getBlobAttributes(final BlobId blobId) {
     try {
-      SwiftBlobAttributes blobAttributes = new SwiftBlobAttributes(swift, getConfiguredContainer(), attributePath(blobId));
-      return autoRetry(() -> blobAttributes.load()) ? blobAttributes : null;
+      return loadAttributes(blobId);
     } catch (IOException e) {
       log.error("Unable to load S3BlobAttributes for blob id: {}", blobId, e);
       return null;
@@ -536,7 +1987,7 @@ public class SwiftBlobStore extends StateGuardLifecycleSupport implements BlobSt
     try {
       SwiftBlobAttributes swiftBlobAttributes = (SwiftBlobAttributes) getBlobAttributes(blobId);
       swiftBlobAttributes.updateFrom(blobAttributes);
-      autoRetry(swiftBlobAttributes::store);
+      storeAttributes(blobId, swiftBlobAttributes);
     }
     catch (Exception e) {
       log.error("Unable to set BlobAttributes for blob id: {}, exception: {}",
@@ -554,28 +2005,17 @@ public class SwiftBlobStore extends StateGuardLifecycleSupport implements BlobSt
     Type call() throws T;
   }
 
+  /**
+   * Runs the action, retrying it as the {@link SwiftRetryPolicy} of the blob store allows.
+   */
   protected <Thrown extends Exception> void autoRetry(Runnable<Thrown> action) throws Thrown {
-    int tries = this.tries.get();
-    for(int i = 0; i < tries-1; i++) {
-      try {
-        action.run();
-        return;
-      } catch (Throwable e) {
-        log.debug("Operation failed (try: "+i+")", e);
-      }
-    }
-    action.run();
+    retryPolicy.call(() -> {
+      action.run();
+      return null;
+    });
   }
 
   protected <Type, Thrown extends Exception> Type autoRetry(Callable<Type, Thrown> action) throws Thrown {
-    int tries = this.tries.get();
-    for(int i = 0; i < tries-1; i++) {
-      try {
-        return action.call();
-      } catch (Throwable e) {
-        log.debug("Operation failed (try: "+i+")", e);
-      }
-    }
-    return action.call();
+    return retryPolicy.call(action::call);
   }
 }
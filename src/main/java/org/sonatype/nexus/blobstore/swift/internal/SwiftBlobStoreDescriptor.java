@@ -93,6 +93,180 @@ public class SwiftBlobStoreDescriptor implements BlobStoreDescriptor {
 
     @DefaultMessage("Times to try any operation against swift >=1")
     String triesHelp();
+
+    @DefaultMessage("Retry delay")
+    String retryDelayLabel();
+
+    @DefaultMessage("Milliseconds the first retry waits for at most, doubled for each further retry")
+    String retryDelayHelp();
+
+    @DefaultMessage("Max retry delay")
+    String maxRetryDelayLabel();
+
+    @DefaultMessage("Milliseconds a retry waits for at most, unless swift asks for longer with Retry-After")
+    String maxRetryDelayHelp();
+
+    @DefaultMessage("Retry budget")
+    String retryBudgetLabel();
+
+    @DefaultMessage("Retries allowed as a percentage of requests, 0 for no limit")
+    String retryBudgetHelp();
+
+    @DefaultMessage("Circuit breaker threshold")
+    String circuitBreakerThresholdLabel();
+
+    @DefaultMessage("Failures in a row after which requests fail fast, 0 to never fail fast")
+    String circuitBreakerThresholdHelp();
+
+    @DefaultMessage("Circuit breaker delay")
+    String circuitBreakerDelayLabel();
+
+    @DefaultMessage("Milliseconds requests fail fast for before one is let through to swift")
+    String circuitBreakerDelayHelp();
+
+    @DefaultMessage("Hedge delay")
+    String hedgeDelayLabel();
+
+    @DefaultMessage("Milliseconds, or a percentile of recent read latencies such as p95, after which a slow read is sent again; empty to not hedge reads")
+    String hedgeDelayHelp();
+
+    @DefaultMessage("Hedge budget")
+    String hedgeBudgetLabel();
+
+    @DefaultMessage("Reads hedged at most, as a percentage of reads, 0 for no limit")
+    String hedgeBudgetHelp();
+
+    @DefaultMessage("Large object threshold")
+    String largeObjectThresholdLabel();
+
+    @DefaultMessage("Blobs larger than this many bytes, or than one segment when that is smaller, are uploaded as segmented Static Large Objects, 0 disables")
+    String largeObjectThresholdHelp();
+
+    @DefaultMessage("Segment size")
+    String segmentSizeLabel();
+
+    @DefaultMessage("Size in bytes of each segment of a large object, at least 1048576")
+    String segmentSizeHelp();
+
+    @DefaultMessage("Upload threads")
+    String uploadThreadsLabel();
+
+    @DefaultMessage("Number of segments uploaded concurrently")
+    String uploadThreadsHelp();
+
+    @DefaultMessage("Ranged read threshold")
+    String rangedReadThresholdLabel();
+
+    @DefaultMessage("Blobs larger than this many bytes are read as concurrent range requests, 0 disables")
+    String rangedReadThresholdHelp();
+
+    @DefaultMessage("Download threads")
+    String downloadThreadsLabel();
+
+    @DefaultMessage("Number of ranges of a blob fetched concurrently")
+    String downloadThreadsHelp();
+
+    @DefaultMessage("Listing parallelism")
+    String listingParallelismLabel();
+
+    @DefaultMessage("Number of volume/chapter prefixes listed concurrently when walking all blobs, 1 lists sequentially")
+    String listingParallelismHelp();
+
+    @DefaultMessage("Compaction threads")
+    String compactionThreadsLabel();
+
+    @DefaultMessage("Number of blobs whose attributes are checked concurrently when compacting")
+    String compactionThreadsHelp();
+
+    @DefaultMessage("Compaction rate")
+    String compactionRateLabel();
+
+    @DefaultMessage("Most requests a second made when compacting, 0 does not limit them")
+    String compactionRateHelp();
+
+    @DefaultMessage("Max connections")
+    String maxConnectionsLabel();
+
+    @DefaultMessage("Most connections to swift held open at once")
+    String maxConnectionsHelp();
+
+    @DefaultMessage("Max connections per route")
+    String maxConnectionsPerRouteLabel();
+
+    @DefaultMessage("Most connections held open to a single swift endpoint")
+    String maxConnectionsPerRouteHelp();
+
+    @DefaultMessage("Connect timeout")
+    String connectTimeoutLabel();
+
+    @DefaultMessage("Milliseconds to wait for a connection to swift to be established, defaults to the socket timeout")
+    String connectTimeoutHelp();
+
+    @DefaultMessage("Idle connection timeout")
+    String idleConnectionTimeoutLabel();
+
+    @DefaultMessage("Milliseconds after which an unused pooled connection is closed, 0 keeps them open")
+    String idleConnectionTimeoutHelp();
+
+    @DefaultMessage("TCP no delay")
+    String tcpNoDelayLabel();
+
+    @DefaultMessage("Set TCP_NODELAY on connections to swift (true or false)")
+    String tcpNoDelayHelp();
+
+    @DefaultMessage("Token lifetime")
+    String tokenLifetimeLabel();
+
+    @DefaultMessage("Seconds an auth token is valid for when the auth service does not tell, 0 to renew tokens only once rejected")
+    String tokenLifetimeHelp();
+
+    @DefaultMessage("Endpoints")
+    String endpointsLabel();
+
+    @DefaultMessage("Comma separated URLs of swift proxies to spread storage requests over, empty to use the storage URL returned on authentication")
+    String endpointsHelp();
+
+    @DefaultMessage("Cache directory")
+    String cacheDirectoryLabel();
+
+    @DefaultMessage("Local directory to cache recently read blob content in, empty to always read content from swift")
+    String cacheDirectoryHelp();
+
+    @DefaultMessage("Cache size")
+    String cacheSizeLabel();
+
+    @DefaultMessage("Megabytes of blob content cached at most")
+    String cacheSizeHelp();
+
+    @DefaultMessage("Spool directory")
+    String spoolDirectoryLabel();
+
+    @DefaultMessage("Local directory new blobs are written to and uploaded to swift from in the background, empty to upload blobs as they are created")
+    String spoolDirectoryHelp();
+
+    @DefaultMessage("Spool size")
+    String spoolSizeLabel();
+
+    @DefaultMessage("Megabytes of blobs waiting to be uploaded before new blobs wait for uploads")
+    String spoolSizeHelp();
+
+    @DefaultMessage("Spool upload threads")
+    String spoolThreadsLabel();
+
+    @DefaultMessage("Number of blobs uploaded from the spool at once")
+    String spoolThreadsHelp();
+
+    @DefaultMessage("Metrics mode")
+    String metricsModeLabel();
+
+    @DefaultMessage("Where blob count and total size come from: counters kept by the nodes, or container for the object count and bytes used swift keeps")
+    String metricsModeHelp();
+
+    @DefaultMessage("Attribute format")
+    String attributeFormatLabel();
+
+    @DefaultMessage("How blob attributes are written: properties, or binary for a compact form read by this version and later only")
+    String attributeFormatHelp();
   }
 
   private static final Messages messages = I18N.create(Messages.class);
@@ -106,6 +280,35 @@ public class SwiftBlobStoreDescriptor implements BlobStoreDescriptor {
   private final FormField tenantName;
   private final FormField socketTimeout;
   private final FormField tries;
+  private final FormField retryDelay;
+  private final FormField maxRetryDelay;
+  private final FormField retryBudget;
+  private final FormField circuitBreakerThreshold;
+  private final FormField circuitBreakerDelay;
+  private final FormField hedgeDelay;
+  private final FormField hedgeBudget;
+  private final FormField largeObjectThreshold;
+  private final FormField segmentSize;
+  private final FormField uploadThreads;
+  private final FormField rangedReadThreshold;
+  private final FormField downloadThreads;
+  private final FormField listingParallelism;
+  private final FormField compactionThreads;
+  private final FormField compactionRate;
+  private final FormField maxConnections;
+  private final FormField maxConnectionsPerRoute;
+  private final FormField connectTimeout;
+  private final FormField idleConnectionTimeout;
+  private final FormField tcpNoDelay;
+  private final FormField tokenLifetime;
+  private final FormField endpoints;
+  private final FormField cacheDirectory;
+  private final FormField cacheSize;
+  private final FormField spoolDirectory;
+  private final FormField spoolSize;
+  private final FormField spoolThreads;
+  private final FormField metricsMode;
+  private final FormField attributeFormat;
 
   public SwiftBlobStoreDescriptor() {
     this.container = new StringTextFormField(
@@ -162,6 +365,180 @@ public class SwiftBlobStoreDescriptor implements BlobStoreDescriptor {
         messages.triesHelp(),
         FormField.MANDATORY
     ).withInitialValue("2");
+    this.retryDelay = new StringTextFormField(
+        SwiftBlobStore.RETRY_DELAY_KEY,
+        messages.retryDelayLabel(),
+        messages.retryDelayHelp(),
+        FormField.OPTIONAL
+    ).withInitialValue("100");
+    this.maxRetryDelay = new StringTextFormField(
+        SwiftBlobStore.MAX_RETRY_DELAY_KEY,
+        messages.maxRetryDelayLabel(),
+        messages.maxRetryDelayHelp(),
+        FormField.OPTIONAL
+    ).withInitialValue("5000");
+    this.retryBudget = new StringTextFormField(
+        SwiftBlobStore.RETRY_BUDGET_KEY,
+        messages.retryBudgetLabel(),
+        messages.retryBudgetHelp(),
+        FormField.OPTIONAL
+    ).withInitialValue("20");
+    this.circuitBreakerThreshold = new StringTextFormField(
+        SwiftBlobStore.CIRCUIT_BREAKER_THRESHOLD_KEY,
+        messages.circuitBreakerThresholdLabel(),
+        messages.circuitBreakerThresholdHelp(),
+        FormField.OPTIONAL
+    ).withInitialValue("20");
+    this.circuitBreakerDelay = new StringTextFormField(
+        SwiftBlobStore.CIRCUIT_BREAKER_DELAY_KEY,
+        messages.circuitBreakerDelayLabel(),
+        messages.circuitBreakerDelayHelp(),
+        FormField.OPTIONAL
+    ).withInitialValue("30000");
+    this.hedgeDelay = new StringTextFormField(
+        SwiftBlobStore.HEDGE_DELAY_KEY,
+        messages.hedgeDelayLabel(),
+        messages.hedgeDelayHelp(),
+        FormField.OPTIONAL
+    );
+    this.hedgeBudget = new StringTextFormField(
+        SwiftBlobStore.HEDGE_BUDGET_KEY,
+        messages.hedgeBudgetLabel(),
+        messages.hedgeBudgetHelp(),
+        FormField.OPTIONAL
+    ).withInitialValue("5");
+    this.largeObjectThreshold = new StringTextFormField(
+        SwiftBlobStore.LARGE_OBJECT_THRESHOLD_KEY,
+        messages.largeObjectThresholdLabel(),
+        messages.largeObjectThresholdHelp(),
+        FormField.OPTIONAL
+    ).withInitialValue("0");
+    this.segmentSize = new StringTextFormField(
+        SwiftBlobStore.SEGMENT_SIZE_KEY,
+        messages.segmentSizeLabel(),
+        messages.segmentSizeHelp(),
+        FormField.OPTIONAL
+    ).withInitialValue("67108864");
+    this.uploadThreads = new StringTextFormField(
+        SwiftBlobStore.UPLOAD_THREADS_KEY,
+        messages.uploadThreadsLabel(),
+        messages.uploadThreadsHelp(),
+        FormField.OPTIONAL
+    ).withInitialValue("4");
+    this.rangedReadThreshold = new StringTextFormField(
+        SwiftBlobStore.RANGED_READ_THRESHOLD_KEY,
+        messages.rangedReadThresholdLabel(),
+        messages.rangedReadThresholdHelp(),
+        FormField.OPTIONAL
+    ).withInitialValue("0");
+    this.downloadThreads = new StringTextFormField(
+        SwiftBlobStore.DOWNLOAD_THREADS_KEY,
+        messages.downloadThreadsLabel(),
+        messages.downloadThreadsHelp(),
+        FormField.OPTIONAL
+    ).withInitialValue("4");
+    this.listingParallelism = new StringTextFormField(
+        SwiftBlobStore.LISTING_PARALLELISM_KEY,
+        messages.listingParallelismLabel(),
+        messages.listingParallelismHelp(),
+        FormField.OPTIONAL
+    ).withInitialValue("1");
+    this.compactionThreads = new StringTextFormField(
+        SwiftBlobStore.COMPACTION_THREADS_KEY,
+        messages.compactionThreadsLabel(),
+        messages.compactionThreadsHelp(),
+        FormField.OPTIONAL
+    ).withInitialValue("4");
+    this.compactionRate = new StringTextFormField(
+        SwiftBlobStore.COMPACTION_RATE_KEY,
+        messages.compactionRateLabel(),
+        messages.compactionRateHelp(),
+        FormField.OPTIONAL
+    ).withInitialValue("0");
+    this.maxConnections = new StringTextFormField(
+        SwiftBlobStore.MAX_CONNECTIONS_KEY,
+        messages.maxConnectionsLabel(),
+        messages.maxConnectionsHelp(),
+        FormField.OPTIONAL
+    ).withInitialValue("50");
+    this.maxConnectionsPerRoute = new StringTextFormField(
+        SwiftBlobStore.MAX_CONNECTIONS_PER_ROUTE_KEY,
+        messages.maxConnectionsPerRouteLabel(),
+        messages.maxConnectionsPerRouteHelp(),
+        FormField.OPTIONAL
+    ).withInitialValue("25");
+    this.connectTimeout = new StringTextFormField(
+        SwiftBlobStore.CONNECT_TIMEOUT_KEY,
+        messages.connectTimeoutLabel(),
+        messages.connectTimeoutHelp(),
+        FormField.OPTIONAL
+    );
+    this.idleConnectionTimeout = new StringTextFormField(
+        SwiftBlobStore.IDLE_CONNECTION_TIMEOUT_KEY,
+        messages.idleConnectionTimeoutLabel(),
+        messages.idleConnectionTimeoutHelp(),
+        FormField.OPTIONAL
+    ).withInitialValue("30000");
+    this.tcpNoDelay = new StringTextFormField(
+        SwiftBlobStore.TCP_NO_DELAY_KEY,
+        messages.tcpNoDelayLabel(),
+        messages.tcpNoDelayHelp(),
+        FormField.OPTIONAL
+    ).withInitialValue("true");
+    this.tokenLifetime = new StringTextFormField(
+        SwiftBlobStore.TOKEN_LIFETIME_KEY,
+        messages.tokenLifetimeLabel(),
+        messages.tokenLifetimeHelp(),
+        FormField.OPTIONAL
+    ).withInitialValue("3600");
+    this.endpoints = new StringTextFormField(
+        SwiftBlobStore.ENDPOINTS_KEY,
+        messages.endpointsLabel(),
+        messages.endpointsHelp(),
+        FormField.OPTIONAL
+    );
+    this.cacheDirectory = new StringTextFormField(
+        SwiftBlobStore.CACHE_DIRECTORY_KEY,
+        messages.cacheDirectoryLabel(),
+        messages.cacheDirectoryHelp(),
+        FormField.OPTIONAL
+    );
+    this.cacheSize = new StringTextFormField(
+        SwiftBlobStore.CACHE_SIZE_KEY,
+        messages.cacheSizeLabel(),
+        messages.cacheSizeHelp(),
+        FormField.OPTIONAL
+    ).withInitialValue("1024");
+    this.spoolDirectory = new StringTextFormField(
+        SwiftBlobStore.SPOOL_DIRECTORY_KEY,
+        messages.spoolDirectoryLabel(),
+        messages.spoolDirectoryHelp(),
+        FormField.OPTIONAL
+    );
+    this.spoolSize = new StringTextFormField(
+        SwiftBlobStore.SPOOL_SIZE_KEY,
+        messages.spoolSizeLabel(),
+        messages.spoolSizeHelp(),
+        FormField.OPTIONAL
+    ).withInitialValue("1024");
+    this.spoolThreads = new StringTextFormField(
+        SwiftBlobStore.SPOOL_THREADS_KEY,
+        messages.spoolThreadsLabel(),
+        messages.spoolThreadsHelp(),
+        FormField.OPTIONAL
+    ).withInitialValue("4");
+    this.metricsMode = new StringTextFormField(
+        SwiftBlobStore.METRICS_MODE_KEY,
+        messages.metricsModeLabel(),
+        messages.metricsModeHelp(),
+        FormField.OPTIONAL
+    ).withInitialValue("counters");
+    this.attributeFormat = new StringTextFormField(
+        SwiftBlobStore.ATTRIBUTE_FORMAT_KEY,
+        messages.attributeFormatLabel(),
+        messages.attributeFormatHelp(),
+        FormField.OPTIONAL
+    ).withInitialValue("binary");
   }
 
   @Override
@@ -171,6 +548,11 @@ public class SwiftBlobStoreDescriptor implements BlobStoreDescriptor {
 
   @Override
   public List<FormField> getFormFields() {
-      return Arrays.asList(container, username, password, authUrl, authMethod, tenantId, tenantName, socketTimeout, tries);
+      return Arrays.asList(container, username, password, authUrl, authMethod, tenantId, tenantName, socketTimeout, tries,
+          retryDelay, maxRetryDelay, retryBudget, circuitBreakerThreshold, circuitBreakerDelay, hedgeDelay, hedgeBudget,
+          largeObjectThreshold, segmentSize, uploadThreads, rangedReadThreshold, downloadThreads,
+          listingParallelism, compactionThreads, compactionRate, maxConnections, maxConnectionsPerRoute, connectTimeout,
+          idleConnectionTimeout, tcpNoDelay, tokenLifetime, endpoints, cacheDirectory, cacheSize,
+          spoolDirectory, spoolSize, spoolThreads, metricsMode, attributeFormat);
   }
 }
@@ -13,16 +13,28 @@
 package org.sonatype.nexus.blobstore.swift.internal;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 
 import org.javaswift.joss.model.Account;
+import org.javaswift.joss.model.Container;
 import org.javaswift.joss.model.Directory;
+import org.javaswift.joss.model.DirectoryOrObject;
+import org.javaswift.joss.model.StoredObject;
 import org.sonatype.nexus.blobstore.AccumulatingBlobStoreMetrics;
 import org.sonatype.nexus.blobstore.api.BlobStoreMetrics;
 import org.sonatype.nexus.blobstore.PeriodicJobService;
@@ -34,19 +46,48 @@ import org.sonatype.nexus.common.stateguard.StateGuardLifecycleSupport;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static java.lang.Long.parseLong;
+import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.BLOB_ATTRIBUTE_SUFFIX;
+import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.CONTENT_PREFIX;
+import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.SEGMENTS_PREFIX;
 import static org.sonatype.nexus.common.stateguard.StateGuardLifecycleSupport.State.STARTED;
 
 /**
  * A {@link BlobStoreMetricsStore} implementation that retains blobstore metrics in memory, periodically
  * writing them out to AWS S3.
+ *
+ * The metrics of the other nodes are summed up in a snapshot refreshed in the background, so reading the metrics does
+ * not send a request. A refresh lists the top of the container for the directories of the nodes and loads their
+ * metrics files conditionally on the ETag last read, so unchanged files are answered without content.
+ *
+ * In {@link MetricsMode#CONTAINER} mode the metrics are instead derived from the object count and bytes used swift
+ * keeps for the container, read with a HEAD in the background every {@value #CONTAINER_METRICS_TTL_SECONDS} seconds
+ * and served from the last read in between. The objects which are not blobs are taken off: everything outside the
+ * content directory, found by listing it along with the HEAD, and the {@code .properties} sidecars of blobs not
+ * migrated from layout swift/1, counted in the background soon after start and every
+ * {@value #SIDECAR_RECOUNT_PERIOD_SECONDS} seconds until none is left. Segments of large objects are taken off the
+ * object count only, their bytes are the content of the blobs.
+ *
+ * A {@link #reconcile(ReconcileStart, long, long) reconcile} writes the recomputed metrics to
+ * {@value #BASELINE_FILENAME} under a new generation, in a single request. The counts of the nodes are changes on top
+ * of the baseline of their generation: the metrics files of earlier generations are left out of the sum, and once its
+ * refresh finds the new generation each node carries over what it counted since the reconcile
+ * {@link #startReconcile() started}, recorded in the baseline along with the metrics.
  */
 @Named
 public class SwiftBlobStoreMetricsStore extends StateGuardLifecycleSupport {
   private static final String METRICS_SUFFIX = "metrics";
   private static final String METRICS_EXTENSION = ".properties";
+  static final String METRICS_FILENAME = METRICS_SUFFIX + METRICS_EXTENSION;
   private static final String TOTAL_SIZE_PROP_NAME = "totalSize";
   private static final String BLOB_COUNT_PROP_NAME = "blobCount";
+  private static final String GENERATION_PROP_NAME = "generation";
+  private static final String START_PREFIX = "start.";
+  static final String BASELINE_FILENAME = "metrics-baseline.properties";
   private static final int METRICS_FLUSH_PERIOD_SECONDS = 2;
+  private static final int METRICS_REFRESH_PERIOD_SECONDS = 10;
+  private static final int LIST_PAGE_SIZE = 1000;
+  private static final int CONTAINER_METRICS_TTL_SECONDS = 30;
+  private static final int SIDECAR_RECOUNT_PERIOD_SECONDS = 3600;
 
   private final PeriodicJobService jobService;
   private AtomicLong blobCount;
@@ -55,6 +96,24 @@ public class SwiftBlobStoreMetricsStore extends StateGuardLifecycleSupport {
   private AtomicBoolean dirty;
   private AtomicReference<Directory> directory;
   private PeriodicJob metricsWritingJob;
+  private PeriodicJob metricsRefreshJob;
+  // metrics files of the other nodes by directory, and the directories found to hold none
+  private final Map<String, SwiftPropertiesFile> nodeFiles = new ConcurrentHashMap<>();
+  private final Set<String> otherDirectories = ConcurrentHashMap.newKeySet();
+  private volatile MetricsSnapshot snapshot;
+  private SwiftPropertiesFile baselineFile;
+  // the generation of the baseline the counts of this node are on top of
+  private volatile long generation;
+
+  private MetricsMode mode = MetricsMode.COUNTERS;
+  private boolean attributeSidecars;
+  private PeriodicJob sidecarCountingJob;
+  private PeriodicJob containerReadingJob;
+  private volatile MetricsSnapshot containerSnapshot;
+  // sidecars of blobs not migrated from layout swift/1 as of the last count, none until counted
+  private volatile long sidecarCount;
+  private volatile long sidecarSize;
+  private long sidecarsCountedAt;
   private String container;
   private SwiftPropertiesFile propertiesFile;
 
@@ -73,10 +132,10 @@ public class SwiftBlobStoreMetricsStore extends StateGuardLifecycleSupport {
     dirty = new AtomicBoolean();
     directory = new AtomicReference(new Directory(nodeAccess.getId(), '/'));
 
-    propertiesFile = new SwiftPropertiesFile(swift, container, directory.get(), METRICS_SUFFIX + METRICS_EXTENSION);
-    if (propertiesFile.exists()) {
-      log.info("Loading blob store metrics file {}", propertiesFile);
-      propertiesFile.load();
+    baselineFile = new SwiftPropertiesFile(swift, container, null, BASELINE_FILENAME);
+    propertiesFile = new SwiftPropertiesFile(swift, container, directory.get(), METRICS_FILENAME);
+    if (propertiesFile.loadIfExists()) {
+      log.info("Loaded blob store metrics file {}", propertiesFile);
       readProperties();
     }
     else {
@@ -99,14 +158,84 @@ public class SwiftBlobStoreMetricsStore extends StateGuardLifecycleSupport {
         log.error("Cannot write blob store metrics", e);
       }
     }, METRICS_FLUSH_PERIOD_SECONDS);
+
+    if (mode == MetricsMode.CONTAINER) {
+      if (attributeSidecars) {
+        sidecarCountingJob = jobService.schedule(() -> {
+          try {
+            if (System.currentTimeMillis() - sidecarsCountedAt >= SIDECAR_RECOUNT_PERIOD_SECONDS * 1000L) {
+              countSidecars();
+            }
+          }
+          catch (Exception e) {
+            // Don't propagate, as this stops subsequent executions
+            log.warn("Cannot count the attribute sidecars of {}", container, e);
+          }
+        }, CONTAINER_METRICS_TTL_SECONDS);
+      }
+      try {
+        readContainer();
+      }
+      catch (Exception e) {
+        log.warn("Cannot read the blob store metrics of container {}, reading them on demand", container, e);
+      }
+      containerReadingJob = jobService.schedule(() -> {
+        try {
+          readContainer();
+        }
+        catch (Exception e) {
+          // Don't propagate, as this stops subsequent executions
+          log.warn("Cannot read the blob store metrics of container {}, keeping those of {}", container,
+              containerSnapshot, e);
+        }
+      }, CONTAINER_METRICS_TTL_SECONDS);
+      return;
+    }
+    try {
+      refresh();
+    }
+    catch (Exception e) {
+      log.warn("Cannot read the blob store metrics of the other nodes, reading them on demand", e);
+    }
+    metricsRefreshJob = jobService.schedule(() -> {
+      try {
+        refresh();
+      }
+      catch (Exception e) {
+        // Don't propagate, as this stops subsequent executions
+        log.warn("Cannot refresh blob store metrics, keeping those of {}", snapshot, e);
+      }
+    }, METRICS_REFRESH_PERIOD_SECONDS);
   }
 
   @Override
   protected void doStop() throws Exception {
     metricsWritingJob.cancel();
     metricsWritingJob = null;
+    if (metricsRefreshJob != null) {
+      metricsRefreshJob.cancel();
+      metricsRefreshJob = null;
+    }
+    if (sidecarCountingJob != null) {
+      sidecarCountingJob.cancel();
+      sidecarCountingJob = null;
+    }
+    if (containerReadingJob != null) {
+      containerReadingJob.cancel();
+      containerReadingJob = null;
+    }
     jobService.stopUsing();
 
+    snapshot = null;
+    baselineFile = null;
+    generation = 0;
+    containerSnapshot = null;
+    sidecarCount = 0;
+    sidecarSize = 0;
+    sidecarsCountedAt = 0;
+    nodeFiles.clear();
+    otherDirectories.clear();
+
     blobCount = null;
     totalSize = null;
     dirty = null;
@@ -126,25 +255,272 @@ public class SwiftBlobStoreMetricsStore extends StateGuardLifecycleSupport {
     this.swift = swift;
   }
 
+  public void setMode(final MetricsMode mode) {
+    this.mode = checkNotNull(mode);
+  }
+
+  /**
+   * Tells whether blobs may still have {@code .properties} sidecars, for the container mode to count them.
+   */
+  public void setAttributeSidecars(final boolean attributeSidecars) {
+    this.attributeSidecars = attributeSidecars;
+  }
+
+  /**
+   * Returns the metrics of the last snapshot, with the counts of this node as they are now.
+   */
   @Guarded(by = STARTED)
   public BlobStoreMetrics getMetrics() {
-    Stream<SwiftPropertiesFile> blobStoreMetricsFiles = backingFiles();
-    return getCombinedMetrics(blobStoreMetricsFiles);
+    MetricsSnapshot metrics = getMetricsSnapshot();
+    return new AccumulatingBlobStoreMetrics(metrics.getBlobCount(), metrics.getTotalSize(), -1, true);
   }
 
-  private BlobStoreMetrics getCombinedMetrics(final Stream<SwiftPropertiesFile> blobStoreMetricsFiles) {
-    AccumulatingBlobStoreMetrics blobStoreMetrics = new AccumulatingBlobStoreMetrics(0, 0, -1, true);
+  /**
+   * Returns the blob count and total size of all nodes, those of the other nodes as of the last refresh, which is only
+   * waited for when none has succeeded yet. In container mode the last read of the container is returned as is.
+   */
+  @Guarded(by = STARTED)
+  public MetricsSnapshot getMetricsSnapshot() {
+    if (mode == MetricsMode.CONTAINER) {
+      MetricsSnapshot cached = containerSnapshot;
+      return cached != null ? cached : readContainer();
+    }
+    MetricsSnapshot others = snapshot;
+    if (others == null) {
+      try {
+        others = refresh();
+      }
+      catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return new MetricsSnapshot(others.blobCount + blobCount.get(), others.totalSize + totalSize.get(),
+        others.nodes + 1, others.refreshedAt);
+  }
 
-    blobStoreMetricsFiles.forEach(metricsFile -> {
-        try {
-          metricsFile.load();
-          blobStoreMetrics.addBlobCount(parseLong(metricsFile.getProperty(BLOB_COUNT_PROP_NAME, "0")));
-          blobStoreMetrics.addTotalSize(parseLong(metricsFile.getProperty(TOTAL_SIZE_PROP_NAME, "0")));
-        } catch (IOException e) {
-          throw new RuntimeException(e);
+  /**
+   * Sums up the metrics files of the other nodes. A directory at the top of the container belongs to a node when it
+   * holds a metrics file; the other directories are remembered and not looked into again.
+   */
+  private synchronized MetricsSnapshot refresh() throws IOException {
+    long refreshedAt = System.currentTimeMillis();
+    long baselineCount = 0;
+    long baselineSize = 0;
+    if (baselineFile.loadIfExists()) {
+      adoptGeneration(baselineFile);
+      baselineCount = parseLong(baselineFile.getProperty(BLOB_COUNT_PROP_NAME, "0"));
+      baselineSize = parseLong(baselineFile.getProperty(TOTAL_SIZE_PROP_NAME, "0"));
+    }
+    Container swiftContainer = swift.getContainer(container);
+    String ownDirectory = directory.get().getBareName() + "/";
+    Set<String> directories = new HashSet<>();
+    for (DirectoryOrObject entry : listTop(swiftContainer)) {
+      if (entry.isDirectory()) {
+        directories.add(entry.getName());
+      }
+    }
+
+    nodeFiles.keySet().retainAll(directories);
+    long otherCount = baselineCount;
+    long otherSize = baselineSize;
+    int nodes = 0;
+    for (String nodeDirectory : directories) {
+      if (nodeDirectory.equals(ownDirectory) || otherDirectories.contains(nodeDirectory)) {
+        continue;
+      }
+      SwiftPropertiesFile metricsFile = nodeFiles.computeIfAbsent(nodeDirectory,
+          name -> new SwiftPropertiesFile(swift, container, null, name + METRICS_FILENAME));
+      if (metricsFile.loadIfExists()) {
+        // the counts of a node which has not moved to the current generation yet are part of the baseline
+        if (parseLong(metricsFile.getProperty(GENERATION_PROP_NAME, "0")) == generation) {
+          otherCount += parseLong(metricsFile.getProperty(BLOB_COUNT_PROP_NAME, "0"));
+          otherSize += parseLong(metricsFile.getProperty(TOTAL_SIZE_PROP_NAME, "0"));
         }
+        nodes++;
+      }
+      else {
+        nodeFiles.remove(nodeDirectory);
+        otherDirectories.add(nodeDirectory);
+      }
+    }
+    MetricsSnapshot refreshed = new MetricsSnapshot(otherCount, otherSize, nodes, refreshedAt);
+    log.trace("Refreshed blob store metrics of the other nodes: {}", refreshed);
+    snapshot = refreshed;
+    return refreshed;
+  }
+
+  /**
+   * Reads the object count and bytes used of the container and takes off the objects which are not blobs. Run in the
+   * background, or on demand when no read has succeeded yet.
+   */
+  private synchronized MetricsSnapshot readContainer() {
+    long readAt = System.currentTimeMillis();
+    Container swiftContainer = swift.getContainer(container);
+    // JOSS containers keep what they read, the HEAD is sent again
+    swiftContainer.reload();
+    long objectCount = swiftContainer.getCount();
+    long bytesUsed = swiftContainer.getBytesUsed();
+
+    long[] other = new long[2];
+    Set<String> nodes = new HashSet<>();
+    String contentDirectory = CONTENT_PREFIX + "/";
+    String segmentsDirectory = SEGMENTS_PREFIX + "/";
+    for (DirectoryOrObject entry : listTop(swiftContainer)) {
+      if (!entry.isDirectory()) {
+        other[0]++;
+        other[1] += entry.getAsObject().getContentLength();
+      }
+      else if (!entry.getName().equals(contentDirectory)) {
+        boolean segments = entry.getName().equals(segmentsDirectory);
+        forEachObject(swiftContainer, entry.getName(), object -> {
+          other[0]++;
+          if (!segments) {
+            other[1] += object.getContentLength();
+          }
+          if (object.getName().endsWith("/" + METRICS_FILENAME)) {
+            nodes.add(entry.getName());
+          }
+        });
+      }
+    }
+    MetricsSnapshot read = new MetricsSnapshot(Math.max(0, objectCount - other[0] - sidecarCount),
+        Math.max(0, bytesUsed - other[1] - sidecarSize), Math.max(1, nodes.size()), readAt);
+    log.trace("Read blob store metrics of container {} holding {} objects of {} bytes: {}", container, objectCount,
+        bytesUsed, read);
+    containerSnapshot = read;
+    return read;
+  }
+
+  /**
+   * Counts the {@code .properties} sidecars left in the content directory, until there are none.
+   */
+  private void countSidecars() {
+    long[] sidecars = new long[2];
+    forEachObject(swift.getContainer(container), CONTENT_PREFIX + "/", object -> {
+      if (object.getName().endsWith(BLOB_ATTRIBUTE_SUFFIX)) {
+        sidecars[0]++;
+        sidecars[1] += object.getContentLength();
+      }
     });
-    return blobStoreMetrics;
+    log.debug("Counted {} attribute sidecars of {} bytes in {}", sidecars[0], sidecars[1], container);
+    sidecarCount = sidecars[0];
+    sidecarSize = sidecars[1];
+    sidecarsCountedAt = System.currentTimeMillis();
+    readContainer();
+    if (sidecars[0] == 0 && sidecarCountingJob != null) {
+      sidecarCountingJob.cancel();
+      sidecarCountingJob = null;
+    }
+  }
+
+  private static Collection<DirectoryOrObject> listTop(final Container swiftContainer) {
+    Collection<DirectoryOrObject> entries = new ArrayList<>();
+    String marker = null;
+    Collection<DirectoryOrObject> page;
+    do {
+      page = swiftContainer.listDirectory("", '/', marker, LIST_PAGE_SIZE);
+      for (DirectoryOrObject entry : page) {
+        entries.add(entry);
+        marker = entry.getName();
+        if (entry.isDirectory()) {
+          // continue past everything below the directory
+          marker = marker.substring(0, marker.length() - 1) + (char) ('/' + 1);
+        }
+      }
+    }
+    while (!page.isEmpty());
+    return entries;
+  }
+
+  private static void forEachObject(final Container swiftContainer,
+                                    final String prefix,
+                                    final Consumer<StoredObject> action)
+  {
+    String marker = null;
+    Collection<StoredObject> page;
+    do {
+      page = swiftContainer.list(prefix, marker, LIST_PAGE_SIZE);
+      for (StoredObject object : page) {
+        action.accept(object);
+        marker = object.getName();
+      }
+    }
+    while (!page.isEmpty());
+  }
+
+  /**
+   * Records the counts of every node as a reconcile starts walking the blobs, so that what they count during the walk
+   * is carried over into the new generation. Those of the other nodes are as of their last metrics file, a few seconds
+   * behind.
+   */
+  @Guarded(by = STARTED)
+  public synchronized ReconcileStart startReconcile() throws IOException {
+    Map<String, long[]> counts = new HashMap<>();
+    if (mode == MetricsMode.COUNTERS) {
+      refresh();
+      nodeFiles.forEach((nodeDirectory, metricsFile) -> {
+        if (parseLong(metricsFile.getProperty(GENERATION_PROP_NAME, "0")) == generation) {
+          counts.put(nodeDirectory.substring(0, nodeDirectory.length() - 1), new long[]{
+              parseLong(metricsFile.getProperty(BLOB_COUNT_PROP_NAME, "0")),
+              parseLong(metricsFile.getProperty(TOTAL_SIZE_PROP_NAME, "0"))});
+        }
+      });
+    }
+    counts.put(directory.get().getBareName(), new long[]{blobCount.get(), totalSize.get()});
+    return new ReconcileStart(generation, counts);
+  }
+
+  /**
+   * Makes {@code blobCount} and {@code totalSize}, counted from {@code start} on, the metrics of the blob store,
+   * replacing the counts of all nodes but what they counted since.
+   *
+   * Blobs added or deleted while the walk passes them, and those a node counted in the few seconds before its metrics
+   * file was read by {@link #startReconcile()}, may still be counted twice or missed.
+   */
+  @Guarded(by = STARTED)
+  public synchronized void reconcile(final ReconcileStart start, final long blobCount, final long totalSize)
+      throws IOException
+  {
+    long nextGeneration = Math.max(System.currentTimeMillis(), generation + 1);
+    baselineFile.clear();
+    baselineFile.setProperty(GENERATION_PROP_NAME, Long.toString(nextGeneration));
+    baselineFile.setProperty(BLOB_COUNT_PROP_NAME, Long.toString(blobCount));
+    baselineFile.setProperty(TOTAL_SIZE_PROP_NAME, Long.toString(totalSize));
+    // counts of a generation replaced during the walk cannot be carried over
+    if (start.generation == generation) {
+      baselineFile.setProperty(START_PREFIX + GENERATION_PROP_NAME, Long.toString(start.generation));
+      start.counts.forEach((node, counts) -> {
+        baselineFile.setProperty(START_PREFIX + node + "." + BLOB_COUNT_PROP_NAME, Long.toString(counts[0]));
+        baselineFile.setProperty(START_PREFIX + node + "." + TOTAL_SIZE_PROP_NAME, Long.toString(counts[1]));
+      });
+    }
+    baselineFile.store();
+    adoptGeneration(baselineFile);
+    if (mode == MetricsMode.COUNTERS) {
+      refresh();
+    }
+  }
+
+  /**
+   * Counts on top of a new baseline, from what this node counted since the reconcile started, or from zero when it was
+   * counting on top of another generation then.
+   */
+  private void adoptGeneration(final SwiftPropertiesFile baseline) {
+    long baselineGeneration = parseLong(baseline.getProperty(GENERATION_PROP_NAME, "0"));
+    if (baselineGeneration != generation) {
+      log.info("Blob store metrics of {} reconciled, counting on top of generation {}", container, baselineGeneration);
+      String node = START_PREFIX + directory.get().getBareName() + ".";
+      if (Long.toString(generation).equals(baseline.getProperty(START_PREFIX + GENERATION_PROP_NAME))) {
+        this.blobCount.addAndGet(-parseLong(baseline.getProperty(node + BLOB_COUNT_PROP_NAME, "0")));
+        this.totalSize.addAndGet(-parseLong(baseline.getProperty(node + TOTAL_SIZE_PROP_NAME, "0")));
+      }
+      else {
+        this.blobCount.set(0);
+        this.totalSize.set(0);
+      }
+      generation = baselineGeneration;
+      dirty.set(true);
+    }
   }
 
   @Guarded(by = STARTED)
@@ -161,7 +537,26 @@ public class SwiftBlobStoreMetricsStore extends StateGuardLifecycleSupport {
     dirty.set(true);
   }
 
+  /**
+   * Records the deletion of {@code count} blobs of {@code totalSize} bytes in all as a single update.
+   */
+  @Guarded(by = STARTED)
+  public void recordDeletions(final long count, final long totalSize) {
+    blobCount.addAndGet(-count);
+    this.totalSize.addAndGet(-totalSize);
+    dirty.set(true);
+  }
+
   public void remove() {
+    SwiftPropertiesFile baseline = new SwiftPropertiesFile(swift, container, null, BASELINE_FILENAME);
+    try {
+      if (baseline.exists()) {
+        baseline.remove();
+      }
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
     backingFiles().forEach(metricsFile -> {
         try {
           metricsFile.remove();
@@ -186,6 +581,7 @@ public class SwiftBlobStoreMetricsStore extends StateGuardLifecycleSupport {
   private void updateProperties() {
     propertiesFile.setProperty(TOTAL_SIZE_PROP_NAME, totalSize.toString());
     propertiesFile.setProperty(BLOB_COUNT_PROP_NAME, blobCount.toString());
+    propertiesFile.setProperty(GENERATION_PROP_NAME, Long.toString(generation));
   }
 
   private void readProperties() {
@@ -198,5 +594,92 @@ public class SwiftBlobStoreMetricsStore extends StateGuardLifecycleSupport {
     if (count != null) {
       blobCount.set(parseLong(count));
     }
+
+    generation = parseLong(propertiesFile.getProperty(GENERATION_PROP_NAME, "0"));
+  }
+
+  /**
+   * Blob count and total size summed up over nodes, as of a point in time.
+   */
+  public static class MetricsSnapshot
+  {
+    private final long blobCount;
+
+    private final long totalSize;
+
+    private final int nodes;
+
+    private final long refreshedAt;
+
+    MetricsSnapshot(final long blobCount, final long totalSize, final int nodes, final long refreshedAt) {
+      this.blobCount = blobCount;
+      this.totalSize = totalSize;
+      this.nodes = nodes;
+      this.refreshedAt = refreshedAt;
+    }
+
+    public long getBlobCount() {
+      return blobCount;
+    }
+
+    public long getTotalSize() {
+      return totalSize;
+    }
+
+    public int getNodes() {
+      return nodes;
+    }
+
+    /**
+     * Returns when the metrics files of the other nodes were read, in milliseconds since the epoch.
+     */
+    public long getRefreshedAt() {
+      return refreshedAt;
+    }
+
+    public long getAgeMillis() {
+      return System.currentTimeMillis() - refreshedAt;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("{blobCount=%d, totalSize=%d, nodes=%d, age=%dms}", blobCount, totalSize, nodes,
+          getAgeMillis());
+    }
+  }
+
+  /**
+   * The counts of the nodes as a reconcile started, by node id.
+   */
+  public static class ReconcileStart
+  {
+    private final long generation;
+
+    private final Map<String, long[]> counts;
+
+    ReconcileStart(final long generation, final Map<String, long[]> counts) {
+      this.generation = generation;
+      this.counts = counts;
+    }
+  }
+
+  /**
+   * Where the blob count and total size come from.
+   */
+  public enum MetricsMode
+  {
+    /**
+     * The counts every node keeps of the blobs it adds and deletes, summed up over the nodes.
+     */
+    COUNTERS,
+
+    /**
+     * The object count and bytes used swift keeps for the container.
+     */
+    CONTAINER;
+
+    public static MetricsMode parse(final String value) {
+      return valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+    }
   }
 }
@@ -12,6 +12,7 @@
  */
 package org.sonatype.nexus.blobstore.swift.internal;
 
+import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import org.javaswift.joss.client.factory.AccountFactory;
 import org.javaswift.joss.client.factory.AuthenticationMethod;
@@ -24,10 +25,17 @@ import javax.inject.Named;
 import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.AUTHURL_KEY;
 import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.AUTH_METHOD;
 import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.CONFIG_KEY;
+import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.CONNECT_TIMEOUT_KEY;
+import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.ENDPOINTS_KEY;
+import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.IDLE_CONNECTION_TIMEOUT_KEY;
+import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.MAX_CONNECTIONS_KEY;
+import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.MAX_CONNECTIONS_PER_ROUTE_KEY;
 import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.PASSWORD_KEY;
 import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.SOCKET_TIMEOUT_KEY;
+import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.TCP_NO_DELAY_KEY;
 import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.TENANT_ID_KEY;
 import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.TENANT_NAME_KEY;
+import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.TOKEN_LIFETIME_KEY;
 import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.USERNAME_KEY;
 
 /**
@@ -37,8 +45,41 @@ import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.USERNAM
 public class SwiftClientFactory {
 
   private static final int DEFAULT_SOCKET_TIMEOUT = 5000;
+  // the pool JOSS creates for itself
+  private static final int DEFAULT_MAX_CONNECTIONS = 50;
+  private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 25;
+  private static final int DEFAULT_IDLE_CONNECTION_TIMEOUT = 30000;
+  // the lifetime keystone gives tokens by default
+  private static final int DEFAULT_TOKEN_LIFETIME_SECONDS = 3600;
 
-  public Account create(final BlobStoreConfiguration blobStoreConfiguration) {
+  /**
+   * Creates the pooled HTTP client which the clients of a blob store share, telling the retry policy when swift asks
+   * for requests to be held back and spreading storage requests over the configured swift proxies.
+   */
+  public SwiftHttpTransport createTransport(final BlobStoreConfiguration blobStoreConfiguration,
+                                            final SwiftRetryPolicy retryPolicy)
+  {
+    NestedAttributesMap config = blobStoreConfiguration.attributes(CONFIG_KEY);
+    int socketTimeout = parseSocketTimeout(config.get(SOCKET_TIMEOUT_KEY, String.class));
+    return new SwiftHttpTransport(
+        parseInt(config.get(MAX_CONNECTIONS_KEY, String.class), DEFAULT_MAX_CONNECTIONS),
+        parseInt(config.get(MAX_CONNECTIONS_PER_ROUTE_KEY, String.class), DEFAULT_MAX_CONNECTIONS_PER_ROUTE),
+        parseInt(config.get(CONNECT_TIMEOUT_KEY, String.class), socketTimeout),
+        socketTimeout,
+        parseInt(config.get(IDLE_CONNECTION_TIMEOUT_KEY, String.class), DEFAULT_IDLE_CONNECTION_TIMEOUT),
+        !"false".equalsIgnoreCase(Strings.nullToEmpty(config.get(TCP_NO_DELAY_KEY, String.class)).trim()),
+        new SwiftTokenManager(
+            parseInt(config.get(TOKEN_LIFETIME_KEY, String.class), DEFAULT_TOKEN_LIFETIME_SECONDS) * 1000L),
+        retryPolicy,
+        new SwiftEndpointBalancer(Splitter.on(',').trimResults().omitEmptyStrings()
+            .splitToList(Strings.nullToEmpty(config.get(ENDPOINTS_KEY, String.class)))));
+  }
+
+  /**
+   * Creates the authenticated {@link Account} of a blob store, whose token is kept valid by the token manager of
+   * its transport.
+   */
+  public Account create(final BlobStoreConfiguration blobStoreConfiguration, final SwiftHttpTransport transport) {
     NestedAttributesMap config = blobStoreConfiguration.attributes(CONFIG_KEY);
     String socketTimeout = config.get(SOCKET_TIMEOUT_KEY, String.class);
     String username = config.get(USERNAME_KEY, String.class);
@@ -46,6 +87,7 @@ public class SwiftClientFactory {
     String authUrl = config.get(AUTHURL_KEY, String.class);
     AccountFactory factory = new AccountFactory()
             .setSocketTimeout(parseSocketTimeout(socketTimeout))
+            .setHttpClient(transport.getHttpClient())
             .setUsername(username)
             .setPassword(password)
             .setAuthUrl(authUrl);
@@ -63,14 +105,32 @@ public class SwiftClientFactory {
       }
     }
 
-    return factory.createAccount();
+    Account account = factory.createAccount();
+    transport.getTokenManager().bind(account);
+    transport.setStorageUrl(account.getPublicURL());
+    return account;
+  }
+
+  /**
+   * Creates the client for the swift requests JOSS does not cover, sharing the authentication of {@code swift} and
+   * the connections of its transport.
+   */
+  public SwiftApiClient createApiClient(final Account swift, final SwiftHttpTransport transport) {
+    return new SwiftApiClient(swift, transport.getHttpClient());
   }
 
   private int parseSocketTimeout(String socketTimeout) {
+    return parseInt(socketTimeout, DEFAULT_SOCKET_TIMEOUT);
+  }
+
+  private int parseInt(final String value, final int defaultValue) {
+    if (Strings.isNullOrEmpty(value)) {
+      return defaultValue;
+    }
     try {
-      return Integer.parseInt(socketTimeout);
+      return Integer.parseInt(value.trim());
     } catch (NumberFormatException e) {
-      return DEFAULT_SOCKET_TIMEOUT;
+      return defaultValue;
     }
   }
 
@@ -0,0 +1,428 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal;
+
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.blobstore.api.BlobId;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Keeps the content of recently read blobs in a local directory, so that reading them again does not go to swift.
+ *
+ * Content is cached as it is read from swift, and only once it was read to its end with the size and SHA1 the blob
+ * metrics give; a cached blob is only served for the SHA1 it was cached with. Blobs larger than an eighth of the cache
+ * are not cached.
+ *
+ * The cache is a segmented LRU bounded by bytes: blobs enter a probation segment, and move to a protected segment of
+ * 80% of the cache when read again. The least recently read blobs of the protected segment drop back to probation, and
+ * those of probation are evicted, so blobs read once do not push out those read again and again.
+ */
+public class SwiftContentCache {
+  private static final Logger log = LoggerFactory.getLogger(SwiftContentCache.class);
+
+  private static final String TEMP_SUFFIX = ".tmp";
+  private static final int PROTECTED_PERCENT = 80;
+  private static final int MAX_ENTRY_FRACTION = 8;
+
+  private final Path directory;
+  private final long maxBytes;
+
+  // least recently read first
+  private final LinkedHashMap<BlobId, Entry> probation = new LinkedHashMap<>();
+  private final LinkedHashMap<BlobId, Entry> protectedSegment = new LinkedHashMap<>();
+  private long probationBytes;
+  private long protectedBytes;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong bytesSaved = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong tempFiles = new AtomicLong();
+
+  /**
+   * @param directory where to keep cached content, owned by the cache as its content is removed on start, {@code null}
+   *                  to not cache
+   * @param maxBytes bytes of content cached at most, 0 to not cache
+   */
+  public SwiftContentCache(@Nullable final Path directory, final long maxBytes) {
+    checkArgument(maxBytes >= 0, "Cache size must be >= 0");
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+  }
+
+  public boolean isEnabled() {
+    return directory != null && maxBytes > 0;
+  }
+
+  /**
+   * Creates the cache directory and removes the content cached before, which may since have been deleted. Anything
+   * but files, which the cache never creates, is left alone.
+   */
+  public synchronized void start() throws IOException {
+    if (!isEnabled()) {
+      return;
+    }
+    Files.createDirectories(directory);
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        if (Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+          Files.deleteIfExists(file);
+        }
+      }
+    }
+    probation.clear();
+    protectedSegment.clear();
+    probationBytes = 0;
+    protectedBytes = 0;
+  }
+
+  /**
+   * Returns the cached content of a blob, {@code null} when it is not cached with the given SHA1. The stream is a
+   * {@link FileInputStream}, whose channel may be taken to transfer the content.
+   */
+  @Nullable
+  public InputStream get(final BlobId blobId, @Nullable final String sha1) {
+    if (!isEnabled()) {
+      return null;
+    }
+    Entry entry;
+    synchronized (this) {
+      entry = remove(blobId);
+      if (entry != null && entry.sha1.equals(sha1)) {
+        // re-inserted as the most recently read
+        protectedSegment.put(blobId, entry);
+        protectedBytes += entry.size;
+        demoteProtected();
+      }
+    }
+    if (entry == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    if (!entry.sha1.equals(sha1)) {
+      // the blob changed since it was cached
+      deleteQuietly(file(blobId));
+      misses.incrementAndGet();
+      return null;
+    }
+    try {
+      InputStream content = new FileInputStream(file(blobId).toFile());
+      hits.incrementAndGet();
+      bytesSaved.addAndGet(entry.size);
+      return content;
+    }
+    catch (IOException e) {
+      log.debug("Unable to read cached content of blob {}", blobId, e);
+      invalidate(blobId);
+      misses.incrementAndGet();
+      return null;
+    }
+  }
+
+  /**
+   * Returns a stream over the content of a blob read from swift which caches the content as it is read.
+   */
+  public InputStream populate(final BlobId blobId,
+                              @Nullable final String sha1,
+                              final long size,
+                              final InputStream content)
+  {
+    if (!isEnabled() || sha1 == null || size < 0 || size > maxBytes / MAX_ENTRY_FRACTION) {
+      return content;
+    }
+    Path temp = directory.resolve(blobId.asUniqueString() + "." + tempFiles.incrementAndGet() + TEMP_SUFFIX);
+    OutputStream out;
+    try {
+      out = Files.newOutputStream(temp);
+    }
+    catch (IOException e) {
+      log.debug("Unable to cache content of blob {}", blobId, e);
+      return content;
+    }
+    return new PopulatingInputStream(content, out, temp, blobId, sha1, size);
+  }
+
+  /**
+   * Drops the cached content of a blob.
+   */
+  public void invalidate(final BlobId blobId) {
+    if (!isEnabled()) {
+      return;
+    }
+    Entry entry;
+    synchronized (this) {
+      entry = remove(blobId);
+    }
+    if (entry != null) {
+      deleteQuietly(file(blobId));
+    }
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /**
+   * Returns the share of reads served from the cache, 0 before any read.
+   */
+  public double getHitRatio() {
+    long hitCount = hits.get();
+    long total = hitCount + misses.get();
+    return total == 0 ? 0 : (double) hitCount / total;
+  }
+
+  /**
+   * Returns the bytes of content served from the cache rather than read from swift.
+   */
+  public long getBytesSaved() {
+    return bytesSaved.get();
+  }
+
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  /**
+   * Returns the bytes of content cached.
+   */
+  public synchronized long getSize() {
+    return probationBytes + protectedBytes;
+  }
+
+  private Path file(final BlobId blobId) {
+    return directory.resolve(blobId.asUniqueString());
+  }
+
+  private void admit(final BlobId blobId, final String sha1, final long size, final Path temp) throws IOException {
+    synchronized (this) {
+      Files.move(temp, file(blobId), StandardCopyOption.REPLACE_EXISTING);
+      remove(blobId);
+      probation.put(blobId, new Entry(sha1, size));
+      probationBytes += size;
+      while (probationBytes + protectedBytes > maxBytes) {
+        LinkedHashMap<BlobId, Entry> segment = probation.isEmpty() ? protectedSegment : probation;
+        Iterator<Map.Entry<BlobId, Entry>> eldest = segment.entrySet().iterator();
+        Map.Entry<BlobId, Entry> evicted = eldest.next();
+        eldest.remove();
+        if (segment == probation) {
+          probationBytes -= evicted.getValue().size;
+        }
+        else {
+          protectedBytes -= evicted.getValue().size;
+        }
+        evictions.incrementAndGet();
+        deleteQuietly(file(evicted.getKey()));
+      }
+    }
+  }
+
+  // with the lock held
+  private void demoteProtected() {
+    long protectedMax = maxBytes * PROTECTED_PERCENT / 100;
+    Iterator<Map.Entry<BlobId, Entry>> eldest = protectedSegment.entrySet().iterator();
+    while (protectedBytes > protectedMax && eldest.hasNext()) {
+      Map.Entry<BlobId, Entry> demoted = eldest.next();
+      eldest.remove();
+      protectedBytes -= demoted.getValue().size;
+      probation.put(demoted.getKey(), demoted.getValue());
+      probationBytes += demoted.getValue().size;
+    }
+  }
+
+  // with the lock held
+  @Nullable
+  private Entry remove(final BlobId blobId) {
+    Entry entry = probation.remove(blobId);
+    if (entry != null) {
+      probationBytes -= entry.size;
+      return entry;
+    }
+    entry = protectedSegment.remove(blobId);
+    if (entry != null) {
+      protectedBytes -= entry.size;
+    }
+    return entry;
+  }
+
+  private static void deleteQuietly(final Path file) {
+    try {
+      Files.deleteIfExists(file);
+    }
+    catch (NoSuchFileException e) { // NOSONAR
+      // already gone
+    }
+    catch (IOException e) {
+      log.debug("Unable to delete cached content {}", file, e);
+    }
+  }
+
+  private static class Entry
+  {
+    private final String sha1;
+
+    private final long size;
+
+    Entry(final String sha1, final long size) {
+      this.sha1 = sha1;
+      this.size = size;
+    }
+  }
+
+  /**
+   * Copies the content read into a temporary file, cached once the content was read to its end intact.
+   */
+  private class PopulatingInputStream
+      extends FilterInputStream
+  {
+    private final OutputStream out;
+
+    private final Path temp;
+
+    private final BlobId blobId;
+
+    private final String sha1;
+
+    private final long size;
+
+    private final Hasher hasher = Hashing.sha1().newHasher();
+
+    private long copied;
+
+    private boolean eof;
+
+    private boolean failed;
+
+    private boolean closed;
+
+    PopulatingInputStream(final InputStream in,
+                          final OutputStream out,
+                          final Path temp,
+                          final BlobId blobId,
+                          final String sha1,
+                          final long size)
+    {
+      super(in);
+      this.out = checkNotNull(out);
+      this.temp = temp;
+      this.blobId = blobId;
+      this.sha1 = sha1;
+      this.size = size;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b == -1) {
+        eof = true;
+      }
+      else {
+        copy(new byte[]{(byte) b}, 0, 1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n == -1) {
+        eof = true;
+      }
+      else {
+        copy(b, off, n);
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+      // skipped content cannot be cached
+      failed = true;
+      return super.skip(n);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    private void copy(final byte[] b, final int off, final int len) {
+      if (failed) {
+        return;
+      }
+      try {
+        out.write(b, off, len);
+        hasher.putBytes(b, off, len);
+        copied += len;
+      }
+      catch (IOException e) {
+        log.debug("Unable to cache content of blob {}", blobId, e);
+        failed = true;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        super.close();
+      }
+      finally {
+        boolean cached = false;
+        try {
+          out.close();
+          if (eof && !failed && copied == size && sha1.equals(hasher.hash().toString())) {
+            admit(blobId, sha1, size, temp);
+            cached = true;
+          }
+        }
+        catch (IOException e) {
+          log.debug("Unable to cache content of blob {}", blobId, e);
+        }
+        if (!cached) {
+          deleteQuietly(temp);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,262 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.javaswift.joss.exception.NotFoundException;
+import org.javaswift.joss.model.Account;
+import org.javaswift.joss.model.StoredObject;
+import org.sonatype.nexus.blobstore.PeriodicJobService;
+import org.sonatype.nexus.blobstore.PeriodicJobService.PeriodicJob;
+import org.sonatype.nexus.blobstore.api.BlobId;
+import org.sonatype.nexus.common.node.NodeAccess;
+import org.sonatype.nexus.common.stateguard.Guarded;
+import org.sonatype.nexus.common.stateguard.StateGuardLifecycleSupport;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.sonatype.nexus.common.stateguard.StateGuardLifecycleSupport.State.STARTED;
+
+/**
+ * An append-only journal of the blobs soft deleted by this node, kept as segment objects under
+ * {@code journal/<node id>/} in the container.
+ *
+ * Deletions are held in memory and rolled into a new segment once {@value #MAX_SEGMENT_ENTRIES} have been appended, or
+ * every {@value #ROLL_PERIOD_SECONDS} seconds. Segments are never rewritten; they are deleted once replayed, so the
+ * journal holds exactly the deletions that were not compacted yet.
+ *
+ * While started, the node keeps an {@value #OPEN_MARKER} object next to its segments, removed once the deletions
+ * held in memory are rolled on stop. Finding it on start means deletions may have been lost with the memory of a node
+ * that went down, see {@link #wasStoppedUncleanly()}.
+ */
+@Named
+public class SwiftDeletionJournal extends StateGuardLifecycleSupport {
+  static final String JOURNAL_PREFIX = "journal";
+  private static final String SEGMENT_EXTENSION = ".journal";
+  private static final String OPEN_MARKER = "open";
+  private static final int MAX_SEGMENT_ENTRIES = 1000;
+  private static final int ROLL_PERIOD_SECONDS = 10;
+  private static final int LIST_PAGE_SIZE = 1000;
+
+  private final PeriodicJobService jobService;
+  private final NodeAccess nodeAccess;
+  private final AtomicLong sequence = new AtomicLong();
+  private List<String> pending = new ArrayList<>();
+  private PeriodicJob rollingJob;
+  private boolean stoppedUncleanly;
+  private String container;
+  private Account swift;
+
+  @Inject
+  public SwiftDeletionJournal(final PeriodicJobService jobService, final NodeAccess nodeAccess) {
+    this.jobService = checkNotNull(jobService);
+    this.nodeAccess = checkNotNull(nodeAccess);
+  }
+
+  @Override
+  protected void doStart() throws Exception {
+    StoredObject marker = openMarker();
+    stoppedUncleanly = marker.exists();
+    marker.uploadObject(new byte[0]);
+    jobService.startUsing();
+    rollingJob = jobService.schedule(() -> {
+      try {
+        roll();
+      }
+      catch (Exception e) {
+        // Don't propagate, as this stops subsequent executions
+        log.error("Cannot write deletion journal segment", e);
+      }
+    }, ROLL_PERIOD_SECONDS);
+  }
+
+  @Override
+  protected void doStop() throws Exception {
+    rollingJob.cancel();
+    rollingJob = null;
+    try {
+      roll();
+      openMarker().delete();
+    }
+    finally {
+      jobService.stopUsing();
+    }
+  }
+
+  public void setContainer(final String container) {
+    checkState(this.container == null, "Do not initialize twice");
+    checkNotNull(container);
+    this.container = container;
+  }
+
+  public void setSwift(final Account swift) {
+    checkState(this.swift == null, "Do not initialize twice");
+    checkNotNull(swift);
+    this.swift = swift;
+  }
+
+  /**
+   * Returns true when this node did not stop cleanly since it last started the journal, deletions it held in memory
+   * then may never have been written.
+   */
+  public boolean wasStoppedUncleanly() {
+    return stoppedUncleanly;
+  }
+
+  /**
+   * Records the soft deletion of a blob, rolling a segment when the one being filled is full. Deletions of a segment
+   * that could not be written are kept for the next one.
+   */
+  @Guarded(by = STARTED)
+  public void append(final BlobId blobId) {
+    List<String> segment = null;
+    synchronized (this) {
+      pending.add(blobId.asUniqueString());
+      if (pending.size() >= MAX_SEGMENT_ENTRIES) {
+        segment = pending;
+        pending = new ArrayList<>();
+      }
+    }
+    if (segment != null) {
+      try {
+        writeOrKeep(segment);
+      }
+      catch (IOException e) {
+        log.warn("Cannot write deletion journal segment, retrying with the next one", e);
+      }
+    }
+  }
+
+  /**
+   * Writes the deletions appended since the last segment out as a new segment.
+   */
+  public void roll() throws IOException {
+    List<String> segment;
+    synchronized (this) {
+      if (pending.isEmpty()) {
+        return;
+      }
+      segment = pending;
+      pending = new ArrayList<>();
+    }
+    writeOrKeep(segment);
+  }
+
+  /**
+   * Writes the blobs out as a new segment right away, e.g. those a compaction could not resolve, for the next
+   * compaction to replay.
+   */
+  public void record(final Collection<BlobId> blobIds) throws IOException {
+    if (!blobIds.isEmpty()) {
+      write(blobIds.stream().map(BlobId::asUniqueString).collect(Collectors.toList()));
+    }
+  }
+
+  /**
+   * Lists the segments of all nodes, oldest first for each node.
+   */
+  public Stream<String> segments(final SwiftRetryPolicy retryPolicy) {
+    if (swift == null) {
+      return Stream.empty();
+    }
+    return StreamSupport.stream(new PagedObjectSpliterator(swift.getContainer(container), JOURNAL_PREFIX + "/",
+        LIST_PAGE_SIZE, retryPolicy), false)
+        .filter(name -> name.endsWith(SEGMENT_EXTENSION));
+  }
+
+  /**
+   * Reads the blobs recorded in a segment, none when the segment was deleted in the meantime.
+   */
+  public List<BlobId> read(final String segment) {
+    byte[] content;
+    try {
+      content = swift.getContainer(container).getObject(segment).downloadObject();
+    }
+    catch (NotFoundException e) {
+      return Collections.emptyList();
+    }
+    return Arrays.stream(new String(content, UTF_8).split("\n"))
+        .map(String::trim)
+        .filter(line -> !line.isEmpty())
+        .map(BlobId::new)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Deletes a segment once it has been replayed.
+   */
+  public void delete(final String segment) {
+    try {
+      swift.getContainer(container).getObject(segment).delete();
+    }
+    catch (NotFoundException e) {
+      log.debug("Journal segment {} already deleted", segment);
+    }
+  }
+
+  /**
+   * Deletes the segments of all nodes.
+   */
+  public void remove() {
+    segments(new SwiftRetryPolicy(1)).forEach(this::delete);
+  }
+
+  private StoredObject openMarker() {
+    String name = format("%s/%s/%s", JOURNAL_PREFIX, nodeAccess.getId(), OPEN_MARKER);
+    return swift.getContainer(container).getObject(name);
+  }
+
+  private void writeOrKeep(final List<String> segment) throws IOException {
+    try {
+      write(segment);
+    }
+    catch (IOException e) {
+      // keep the deletions for the next segment rather than losing them
+      synchronized (this) {
+        pending.addAll(0, segment);
+      }
+      throw e;
+    }
+  }
+
+  private void write(final List<String> segment) throws IOException {
+    // named after the time rolled, the sequence tells apart segments rolled within the same millisecond
+    String name = format("%s/%s/%013d-%06d%s", JOURNAL_PREFIX, nodeAccess.getId(), System.currentTimeMillis(),
+        sequence.incrementAndGet() % 1000000, SEGMENT_EXTENSION);
+    StringBuilder content = new StringBuilder();
+    segment.forEach(blobId -> content.append(blobId).append('\n'));
+    try {
+      StoredObject object = swift.getContainer(container).getObject(name);
+      object.uploadObject(content.toString().getBytes(UTF_8));
+      log.debug("Rolled deletion journal segment {} of {} blobs", name, segment.size());
+    }
+    catch (RuntimeException e) {
+      throw new IOException("Unable to write deletion journal segment " + name, e);
+    }
+  }
+}
@@ -0,0 +1,293 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.execchain.ClientExecChain;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Spreads the storage requests of a blob store over several swift proxies.
+ *
+ * Requests to the storage URL swift returned on authentication are sent to one of the configured endpoints instead,
+ * keeping their path. Of two endpoints picked at random, the one with the lower product of its latency (an
+ * exponentially weighted moving average) and its outstanding requests is taken, so slow or busy proxies get less
+ * traffic without all requests rushing to the fastest one.
+ *
+ * An endpoint failing {@value #MAX_CONSECUTIVE_FAILURES} requests in a row with an I/O error, a 502, 503 or 504 is
+ * ejected for {@value #EJECTION_MILLIS} ms. It is then on probation: a single further failure ejects it again, a
+ * success reinstates it. Should all endpoints be ejected, the one ejected longest ago is used.
+ */
+public class SwiftEndpointBalancer {
+  private static final Logger log = LoggerFactory.getLogger(SwiftEndpointBalancer.class);
+
+  private static final int MAX_CONSECUTIVE_FAILURES = 5;
+  private static final long EJECTION_MILLIS = 30000;
+  // weight of the latest latency in the moving average
+  private static final double EWMA_WEIGHT = 0.3;
+
+  private final List<Endpoint> endpoints;
+  private volatile HttpHost storageHost;
+
+  /**
+   * @param endpoints base URLs of the swift proxies, none to send requests where swift tells
+   */
+  public SwiftEndpointBalancer(final List<String> endpoints) {
+    this.endpoints = Collections.unmodifiableList(checkNotNull(endpoints).stream()
+        .map(url -> new Endpoint(host(url)))
+        .collect(Collectors.toList()));
+  }
+
+  public boolean isEnabled() {
+    return !endpoints.isEmpty();
+  }
+
+  /**
+   * Sets the storage URL whose requests are balanced, as swift returned it on authentication.
+   */
+  public void setStorageUrl(final String storageUrl) {
+    storageHost = host(storageUrl);
+  }
+
+  /**
+   * Returns the state of each endpoint.
+   */
+  public List<EndpointStats> getEndpointStats() {
+    return endpoints.stream().map(Endpoint::stats).collect(Collectors.toList());
+  }
+
+  /**
+   * Decorates an exec chain to send the storage requests it is given to a balanced endpoint instead.
+   */
+  ClientExecChain balancing(final ClientExecChain exec) {
+    if (!isEnabled()) {
+      return exec;
+    }
+    return (route, request, context, execAware) -> {
+      if (route.getProxyHost() != null || !route.getTargetHost().equals(storageHost)) {
+        return exec.execute(route, request, context, execAware);
+      }
+      Endpoint endpoint = choose();
+      HttpRoute balanced = new HttpRoute(endpoint.host, route.getLocalAddress(), endpoint.isSecure());
+      endpoint.outstanding.incrementAndGet();
+      long start = System.nanoTime();
+      try {
+        CloseableHttpResponse response = exec.execute(balanced, request, context, execAware);
+        int status = response.getStatusLine().getStatusCode();
+        if (status == 502 || status == 503 || status == 504) {
+          endpoint.failed();
+        }
+        else {
+          endpoint.succeeded(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        }
+        return response;
+      }
+      catch (IOException | HttpException | RuntimeException e) {
+        if (!Thread.currentThread().isInterrupted()) {
+          endpoint.failed();
+        }
+        throw e;
+      }
+      finally {
+        endpoint.outstanding.decrementAndGet();
+      }
+    };
+  }
+
+  /**
+   * Picks the less loaded of two healthy endpoints.
+   */
+  Endpoint choose() {
+    long now = System.currentTimeMillis();
+    List<Endpoint> healthy = new ArrayList<>(endpoints.size());
+    for (Endpoint endpoint : endpoints) {
+      if (endpoint.isAvailable(now)) {
+        healthy.add(endpoint);
+      }
+    }
+    if (healthy.isEmpty()) {
+      return endpoints.stream().min((a, b) -> Long.compare(a.ejectedUntil, b.ejectedUntil)).get();
+    }
+    if (healthy.size() == 1) {
+      return healthy.get(0);
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int first = random.nextInt(healthy.size());
+    int second = random.nextInt(healthy.size() - 1);
+    if (second >= first) {
+      second++;
+    }
+    Endpoint a = healthy.get(first);
+    Endpoint b = healthy.get(second);
+    return a.load() <= b.load() ? a : b;
+  }
+
+  /**
+   * Returns the scheme, host and port of a URL, the port resolved from the scheme when not given.
+   */
+  static HttpHost host(final String url) {
+    URI uri = URI.create(url.trim());
+    checkArgument(uri.getHost() != null, "Not a URL: %s", url);
+    String scheme = uri.getScheme() == null ? "http" : uri.getScheme().toLowerCase();
+    int port = uri.getPort() != -1 ? uri.getPort() : "https".equals(scheme) ? 443 : 80;
+    return new HttpHost(uri.getHost(), port, scheme);
+  }
+
+  /**
+   * The state of an endpoint.
+   */
+  public static class EndpointStats
+  {
+    private final String url;
+
+    private final double latencyMillis;
+
+    private final int outstanding;
+
+    private final long requests;
+
+    private final long failures;
+
+    private final boolean ejected;
+
+    EndpointStats(final String url,
+                  final double latencyMillis,
+                  final int outstanding,
+                  final long requests,
+                  final long failures,
+                  final boolean ejected)
+    {
+      this.url = url;
+      this.latencyMillis = latencyMillis;
+      this.outstanding = outstanding;
+      this.requests = requests;
+      this.failures = failures;
+      this.ejected = ejected;
+    }
+
+    public String getUrl() {
+      return url;
+    }
+
+    /**
+     * Returns the moving average of the time until swift answered, in milliseconds.
+     */
+    public double getLatencyMillis() {
+      return latencyMillis;
+    }
+
+    public int getOutstanding() {
+      return outstanding;
+    }
+
+    public long getRequests() {
+      return requests;
+    }
+
+    public long getFailures() {
+      return failures;
+    }
+
+    public boolean isEjected() {
+      return ejected;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s{latency=%.1fms, outstanding=%d, requests=%d, failures=%d, ejected=%s}", url,
+          latencyMillis, outstanding, requests, failures, ejected);
+    }
+  }
+
+  static class Endpoint
+  {
+    private final HttpHost host;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    // microseconds
+    private double latency;
+
+    private int consecutiveFailures;
+
+    private boolean probation;
+
+    private long ejectedUntil;
+
+    Endpoint(final HttpHost host) {
+      this.host = host;
+    }
+
+    boolean isSecure() {
+      return "https".equals(host.getSchemeName());
+    }
+
+    synchronized boolean isAvailable(final long now) {
+      return ejectedUntil <= now;
+    }
+
+    synchronized double load() {
+      return (latency + 1) * (outstanding.get() + 1);
+    }
+
+    synchronized void succeeded(final long micros) {
+      requests.incrementAndGet();
+      latency = latency == 0 ? micros : EWMA_WEIGHT * micros + (1 - EWMA_WEIGHT) * latency;
+      consecutiveFailures = 0;
+      if (probation) {
+        log.info("Swift endpoint {} answers again, reinstating it", host.toURI());
+        probation = false;
+      }
+    }
+
+    synchronized void failed() {
+      requests.incrementAndGet();
+      failures.incrementAndGet();
+      consecutiveFailures++;
+      if (probation || consecutiveFailures >= MAX_CONSECUTIVE_FAILURES) {
+        log.warn("Swift endpoint {} failed {} requests in a row, ejecting it for {} ms", host.toURI(),
+            consecutiveFailures, EJECTION_MILLIS);
+        ejectedUntil = System.currentTimeMillis() + EJECTION_MILLIS;
+        probation = true;
+        consecutiveFailures = 0;
+      }
+    }
+
+    synchronized EndpointStats stats() {
+      return new EndpointStats(host.toURI(), latency / 1000, outstanding.get(), requests.get(), failures.get(),
+          ejectedUntil > System.currentTimeMillis());
+    }
+  }
+}
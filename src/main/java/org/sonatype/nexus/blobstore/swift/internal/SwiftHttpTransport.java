@@ -0,0 +1,344 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.concurrent.ThreadFactory;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.blobstore.swift.internal.SwiftOperationMetrics.Outcome;
+
+import com.google.common.base.Strings;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.execchain.ClientExecChain;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The pooled HTTP client shared by the JOSS {@link org.javaswift.joss.model.Account} and the {@link SwiftApiClient} of
+ * a blob store.
+ *
+ * Connections idle for longer than the idle timeout are closed by an evictor thread while the blob store is started,
+ * and are not kept alive for longer than that even when swift allows it.
+ *
+ * Requests go out with the current token of the {@link SwiftTokenManager}, whatever token JOSS or the API client
+ * set. A request rejected with a 401 has its token replaced once for all requests rejected with it, and is sent
+ * again unless its entity cannot be repeated.
+ *
+ * A {@code Retry-After} swift sends along with a 429, 498 or 503 is passed on to the {@link SwiftRetryPolicy}, as JOSS
+ * does not keep the headers of failed responses.
+ *
+ * Storage requests are spread over the swift proxies of the {@link SwiftEndpointBalancer}, if any were configured.
+ *
+ * Each request sent, replays included, is recorded in the {@link SwiftOperationMetrics}.
+ */
+public class SwiftHttpTransport
+    implements Closeable
+{
+  private static final Logger log = LoggerFactory.getLogger(SwiftHttpTransport.class);
+  static final String AUTH_TOKEN_HEADER = "X-Auth-Token";
+
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final SwiftTokenManager tokenManager;
+  private final SwiftRetryPolicy retryPolicy;
+  private final SwiftEndpointBalancer endpointBalancer;
+  private final SwiftOperationMetrics operationMetrics = new SwiftOperationMetrics();
+  private volatile String storagePath;
+  private final CloseableHttpClient httpClient;
+  private final long idleTimeout;
+  private IdleConnectionEvictor evictor;
+
+  public SwiftHttpTransport(final int maxConnections,
+                            final int maxConnectionsPerRoute,
+                            final int connectTimeout,
+                            final int socketTimeout,
+                            final long idleTimeout,
+                            final boolean tcpNoDelay,
+                            final SwiftTokenManager tokenManager,
+                            final SwiftRetryPolicy retryPolicy,
+                            final SwiftEndpointBalancer endpointBalancer)
+  {
+    checkArgument(maxConnections > 0, "Max connections must be > 0");
+    checkArgument(maxConnectionsPerRoute > 0, "Max connections per route must be > 0");
+    checkArgument(idleTimeout >= 0, "Idle connection timeout must be >= 0");
+    this.idleTimeout = idleTimeout;
+    this.tokenManager = checkNotNull(tokenManager);
+    this.retryPolicy = checkNotNull(retryPolicy);
+    this.endpointBalancer = checkNotNull(endpointBalancer);
+    connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(maxConnections);
+    connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+    connectionManager.setDefaultSocketConfig(SocketConfig.custom()
+        .setSoTimeout(socketTimeout)
+        .setTcpNoDelay(tcpNoDelay)
+        .build());
+    // as JOSS does, a request waits for a pooled connection no longer than for a response
+    RequestConfig requestConfig = RequestConfig.custom()
+        .setConnectTimeout(connectTimeout)
+        .setConnectionRequestTimeout(socketTimeout)
+        .setSocketTimeout(socketTimeout)
+        .build();
+    httpClient = new HttpClientBuilder()
+        {
+          @Override
+          protected ClientExecChain decorateProtocolExec(final ClientExecChain protocolExec) {
+            return renewingRejectedTokens(recordingRetryAfter(recordingMetrics(endpointBalancer.balancing(protocolExec))));
+          }
+        }
+        .useSystemProperties()
+        .setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(requestConfig)
+        .setKeepAliveStrategy((response, context) -> {
+          long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+          if (idleTimeout == 0) {
+            return keepAlive;
+          }
+          return keepAlive > 0 ? Math.min(keepAlive, idleTimeout) : idleTimeout;
+        })
+        .addInterceptorLast((HttpRequestInterceptor) (request, context) -> {
+          String token = tokenManager.getToken();
+          if (token != null && request.containsHeader(AUTH_TOKEN_HEADER)) {
+            request.setHeader(AUTH_TOKEN_HEADER, token);
+          }
+        })
+        .build();
+  }
+
+  private ClientExecChain renewingRejectedTokens(final ClientExecChain protocolExec) {
+    return (route, request, context, execAware) -> {
+      CloseableHttpResponse response = protocolExec.execute(route, request, context, execAware);
+      Header rejected = request.getFirstHeader(AUTH_TOKEN_HEADER);
+      if (response.getStatusLine().getStatusCode() != 401 || rejected == null) {
+        return response;
+      }
+      // release the connection first, authenticating may need it when the pool is exhausted
+      response.close();
+      try {
+        tokenManager.reauthenticate(rejected.getValue());
+      }
+      catch (RuntimeException e) {
+        log.warn("Unable to authenticate after a token was rejected", e);
+        return response;
+      }
+      HttpEntity entity = request instanceof HttpEntityEnclosingRequest ?
+          ((HttpEntityEnclosingRequest) request).getEntity() : null;
+      if (entity != null && !entity.isRepeatable()) {
+        // the caller fails on the 401, its retry goes out with the new token
+        return response;
+      }
+      return protocolExec.execute(route, request, context, execAware);
+    };
+  }
+
+  private ClientExecChain recordingRetryAfter(final ClientExecChain protocolExec) {
+    return (route, request, context, execAware) -> {
+      CloseableHttpResponse response = protocolExec.execute(route, request, context, execAware);
+      int status = response.getStatusLine().getStatusCode();
+      Header retryAfter = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+      if (retryAfter != null && (status == 429 || status == 498 || status == 503)) {
+        long millis = retryAfterMillis(retryAfter.getValue());
+        if (millis >= 0) {
+          retryPolicy.retryAfter(millis);
+        }
+      }
+      return response;
+    };
+  }
+
+  private ClientExecChain recordingMetrics(final ClientExecChain protocolExec) {
+    return (route, request, context, execAware) -> {
+      boolean retry = SwiftRetryPolicy.isRetrying();
+      HttpEntity entity = request instanceof HttpEntityEnclosingRequest ?
+          ((HttpEntityEnclosingRequest) request).getEntity() : null;
+      CountingEntity counting = null;
+      if (entity != null && entity.getContentLength() < 0) {
+        counting = new CountingEntity(entity);
+        ((HttpEntityEnclosingRequest) request).setEntity(counting);
+      }
+      long start = System.nanoTime();
+      try {
+        CloseableHttpResponse response = protocolExec.execute(route, request, context, execAware);
+        HttpEntity responseEntity = response.getEntity();
+        long responseBytes = responseEntity != null ? Math.max(0, responseEntity.getContentLength()) : 0;
+        record(request, Outcome.of(response.getStatusLine().getStatusCode()), start,
+            requestBytes(entity, counting) + responseBytes, retry);
+        return response;
+      }
+      catch (IOException | HttpException | RuntimeException e) {
+        record(request, Outcome.IO_ERROR, start, requestBytes(entity, counting), retry);
+        throw e;
+      }
+      finally {
+        if (counting != null) {
+          // a replay counts its bytes afresh
+          ((HttpEntityEnclosingRequest) request).setEntity(entity);
+        }
+      }
+    };
+  }
+
+  private void record(final HttpRequestWrapper request,
+                      final Outcome outcome,
+                      final long start,
+                      final long bytes,
+                      final boolean retry)
+  {
+    URI uri = request.getURI();
+    String path = uri.getRawPath();
+    operationMetrics.record(request.getMethod(), path != null ? path : "", storagePath, outcome,
+        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start), bytes, retry);
+  }
+
+  private static long requestBytes(@Nullable final HttpEntity entity, @Nullable final CountingEntity counting) {
+    if (counting != null) {
+      return counting.count;
+    }
+    return entity != null ? Math.max(0, entity.getContentLength()) : 0;
+  }
+
+  /**
+   * Parses a {@code Retry-After} given in seconds or as a date, returns -1 when it is neither.
+   */
+  static long retryAfterMillis(final String value) {
+    try {
+      return Math.max(0, Long.parseLong(value.trim())) * 1000;
+    }
+    catch (NumberFormatException e) {
+      Date date = DateUtils.parseDate(value);
+      return date == null ? -1 : Math.max(0, date.getTime() - System.currentTimeMillis());
+    }
+  }
+
+  public HttpClient getHttpClient() {
+    return httpClient;
+  }
+
+  public SwiftTokenManager getTokenManager() {
+    return tokenManager;
+  }
+
+  public SwiftEndpointBalancer getEndpointBalancer() {
+    return endpointBalancer;
+  }
+
+  public SwiftOperationMetrics getOperationMetrics() {
+    return operationMetrics;
+  }
+
+  /**
+   * Sets the storage URL swift returned on authentication, to tell storage requests from others.
+   */
+  public void setStorageUrl(final String storageUrl) {
+    endpointBalancer.setStorageUrl(storageUrl);
+    String path = Strings.nullToEmpty(URI.create(storageUrl).getRawPath());
+    storagePath = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+  }
+
+  /**
+   * Returns the number of connections leased, available in the pool, and of requests waiting for one.
+   */
+  public PoolStats getPoolStats() {
+    return connectionManager.getTotalStats();
+  }
+
+  /**
+   * Starts closing idle connections, unless the idle timeout is 0.
+   */
+  public synchronized void startEviction(final ThreadFactory threadFactory) {
+    if (idleTimeout > 0 && evictor == null) {
+      evictor = new IdleConnectionEvictor(connectionManager, threadFactory, idleTimeout, TimeUnit.MILLISECONDS,
+          idleTimeout, TimeUnit.MILLISECONDS);
+      evictor.start();
+    }
+  }
+
+  public synchronized void stopEviction() {
+    if (evictor != null) {
+      evictor.shutdown();
+      evictor = null;
+    }
+  }
+
+  /**
+   * Closes the connections idle in the pool, those leased are closed once released. The transport stays usable.
+   */
+  public void closeIdleConnections() {
+    connectionManager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Counts the bytes of an entity of unknown length as it is written.
+   */
+  private static class CountingEntity
+      extends HttpEntityWrapper
+  {
+    private long count;
+
+    CountingEntity(final HttpEntity entity) {
+      super(entity);
+    }
+
+    @Override
+    public void writeTo(final OutputStream out) throws IOException {
+      super.writeTo(new FilterOutputStream(out)
+      {
+        @Override
+        public void write(final int b) throws IOException {
+          out.write(b);
+          count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+          out.write(b, off, len);
+          count += len;
+        }
+      });
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    tokenManager.stop();
+    stopEviction();
+    httpClient.close();
+  }
+}
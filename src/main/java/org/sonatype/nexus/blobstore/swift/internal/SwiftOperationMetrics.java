@@ -0,0 +1,331 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.BLOB_ATTRIBUTE_SUFFIX;
+import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.BLOB_CONTENT_SUFFIX;
+import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.CONTENT_PREFIX;
+import static org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.SEGMENTS_PREFIX;
+
+/**
+ * Latency, bytes, outcomes and retries of the requests a blob store sends to swift, by operation and kind of object.
+ *
+ * Requests are recorded by the {@link SwiftHttpTransport} they go through, so whatever sends them, JOSS or the
+ * {@link SwiftApiClient}, is covered. Latency is the time until swift answered with the response headers, bytes are
+ * those of request and response entities. Recording takes no locks and allocates nothing.
+ */
+public class SwiftOperationMetrics {
+
+  public enum Operation
+  {
+    GET, HEAD, PUT, POST, DELETE, COPY, LIST, OTHER
+  }
+
+  public enum ObjectKind
+  {
+    /** the content of a blob */
+    CONTENT,
+    /** the .properties sidecar of a blob */
+    ATTRIBUTES,
+    /** a segment of a large object */
+    SEGMENT,
+    /** the blob store metrics */
+    METRICS,
+    /** the deletion journal */
+    JOURNAL,
+    /** other objects, such as the blob store metadata */
+    OBJECT,
+    CONTAINER,
+    ACCOUNT,
+    /** requests outside the storage URL, such as to the auth service */
+    AUTH
+  }
+
+  public enum Outcome
+  {
+    SUCCESS, REDIRECTION, CLIENT_ERROR, SERVER_ERROR, IO_ERROR;
+
+    static Outcome of(final int status) {
+      if (status >= 500) {
+        return SERVER_ERROR;
+      }
+      if (status >= 400) {
+        return CLIENT_ERROR;
+      }
+      return status >= 300 ? REDIRECTION : SUCCESS;
+    }
+  }
+
+  private static final Operation[] OPERATIONS = Operation.values();
+  private static final ObjectKind[] KINDS = ObjectKind.values();
+
+  private final OperationStats[] stats = new OperationStats[OPERATIONS.length * KINDS.length];
+
+  public SwiftOperationMetrics() {
+    for (Operation operation : OPERATIONS) {
+      for (ObjectKind kind : KINDS) {
+        stats[index(operation, kind)] = new OperationStats(operation, kind);
+      }
+    }
+  }
+
+  /**
+   * Records a request answered by swift.
+   */
+  public void record(final Operation operation,
+                     final ObjectKind kind,
+                     final Outcome outcome,
+                     final long micros,
+                     final long bytes,
+                     final boolean retry)
+  {
+    stats[index(operation, kind)].record(outcome, micros, bytes, retry);
+  }
+
+  public OperationStats get(final Operation operation, final ObjectKind kind) {
+    return stats[index(operation, kind)];
+  }
+
+  /**
+   * Returns the operations sent at least once.
+   */
+  public List<OperationStats> getOperationStats() {
+    List<OperationStats> sent = new ArrayList<>();
+    for (OperationStats operationStats : stats) {
+      if (operationStats.getCount() > 0) {
+        sent.add(operationStats);
+      }
+    }
+    return sent;
+  }
+
+  /**
+   * Records a request answered by swift, telling its operation and kind of object from its method and path.
+   *
+   * @param storagePath path of the storage URL, {@code null} while not authenticated
+   */
+  public void record(final String method,
+                     final String path,
+                     @Nullable final String storagePath,
+                     final Outcome outcome,
+                     final long micros,
+                     final long bytes,
+                     final boolean retry)
+  {
+    if (storagePath == null || !path.startsWith(storagePath)) {
+      record(operation(method, false), ObjectKind.AUTH, outcome, micros, bytes, retry);
+      return;
+    }
+    int container = storagePath.length() + 1;
+    if (path.length() <= container) {
+      record(operation(method, true), ObjectKind.ACCOUNT, outcome, micros, bytes, retry);
+      return;
+    }
+    int slash = path.indexOf('/', container);
+    if (slash < 0 || slash == path.length() - 1) {
+      record(operation(method, true), ObjectKind.CONTAINER, outcome, micros, bytes, retry);
+      return;
+    }
+    record(operation(method, false), kind(path, slash + 1), outcome, micros, bytes, retry);
+  }
+
+  /**
+   * Returns gauges of the requests of each operation on each kind of object, named
+   * {@code <prefix>.<operation>.<kind>.<stat>}, which read the metrics {@code metrics} returns at the time.
+   */
+  public static MetricSet gauges(final String prefix, final Supplier<SwiftOperationMetrics> metrics) {
+    Map<String, Metric> gauges = new LinkedHashMap<>();
+    for (Operation operation : OPERATIONS) {
+      for (ObjectKind kind : KINDS) {
+        addGauges(gauges, name(prefix, operation.name().toLowerCase(Locale.ENGLISH),
+            kind.name().toLowerCase(Locale.ENGLISH)), stats(metrics, operation, kind));
+      }
+    }
+    return () -> gauges;
+  }
+
+  private static Supplier<OperationStats> stats(final Supplier<SwiftOperationMetrics> metrics,
+                                                final Operation operation,
+                                                final ObjectKind kind)
+  {
+    return () -> metrics.get().get(operation, kind);
+  }
+
+  private static void addGauges(final Map<String, Metric> gauges,
+                                final String prefix,
+                                final Supplier<OperationStats> stats)
+  {
+    gauges.put(name(prefix, "count"), gauge(stats, OperationStats::getCount));
+    gauges.put(name(prefix, "bytes"), gauge(stats, OperationStats::getBytes));
+    gauges.put(name(prefix, "retries"), gauge(stats, OperationStats::getRetryCount));
+    gauges.put(name(prefix, "client-errors"), gauge(stats, s -> s.getCount(Outcome.CLIENT_ERROR)));
+    gauges.put(name(prefix, "server-errors"), gauge(stats, s -> s.getCount(Outcome.SERVER_ERROR)));
+    gauges.put(name(prefix, "io-errors"), gauge(stats, s -> s.getCount(Outcome.IO_ERROR)));
+    gauges.put(name(prefix, "latency", "p50"), gauge(stats, OperationStats::getP50Millis));
+    gauges.put(name(prefix, "latency", "p99"), gauge(stats, OperationStats::getP99Millis));
+    gauges.put(name(prefix, "latency", "p999"), gauge(stats, OperationStats::getP999Millis));
+  }
+
+  private static <T> Gauge<T> gauge(final Supplier<OperationStats> stats, final Function<OperationStats, T> value) {
+    return () -> value.apply(stats.get());
+  }
+
+  private static Operation operation(final String method, final boolean listing) {
+    switch (method) {
+      case "GET":
+        return listing ? Operation.LIST : Operation.GET;
+      case "HEAD":
+        return Operation.HEAD;
+      case "PUT":
+        return Operation.PUT;
+      case "POST":
+        return Operation.POST;
+      case "DELETE":
+        return Operation.DELETE;
+      case "COPY":
+        return Operation.COPY;
+      default:
+        return Operation.OTHER;
+    }
+  }
+
+  /**
+   * Tells the kind of object from its path below the container, starting at {@code from}.
+   */
+  static ObjectKind kind(final String path, final int from) {
+    if (path.startsWith(SEGMENTS_PREFIX + "/", from)) {
+      return ObjectKind.SEGMENT;
+    }
+    if (path.startsWith(CONTENT_PREFIX + "/", from)) {
+      if (path.endsWith(BLOB_CONTENT_SUFFIX)) {
+        return ObjectKind.CONTENT;
+      }
+      if (path.endsWith(BLOB_ATTRIBUTE_SUFFIX)) {
+        return ObjectKind.ATTRIBUTES;
+      }
+    }
+    if (path.startsWith(SwiftDeletionJournal.JOURNAL_PREFIX + "/", from)) {
+      return ObjectKind.JOURNAL;
+    }
+    if (path.endsWith(SwiftBlobStoreMetricsStore.METRICS_FILENAME)) {
+      return ObjectKind.METRICS;
+    }
+    return ObjectKind.OBJECT;
+  }
+
+  private static int index(final Operation operation, final ObjectKind kind) {
+    return operation.ordinal() * KINDS.length + kind.ordinal();
+  }
+
+  /**
+   * The requests of one operation on one kind of object.
+   */
+  public static class OperationStats
+  {
+    private final Operation operation;
+
+    private final ObjectKind kind;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final AtomicLongArray outcomes = new AtomicLongArray(Outcome.values().length);
+
+    private final LongAdder bytes = new LongAdder();
+
+    private final LongAdder retries = new LongAdder();
+
+    OperationStats(final Operation operation, final ObjectKind kind) {
+      this.operation = operation;
+      this.kind = kind;
+    }
+
+    void record(final Outcome outcome, final long micros, final long bytes, final boolean retry) {
+      latency.record(micros);
+      outcomes.incrementAndGet(outcome.ordinal());
+      if (bytes > 0) {
+        this.bytes.add(bytes);
+      }
+      if (retry) {
+        retries.increment();
+      }
+    }
+
+    public Operation getOperation() {
+      return operation;
+    }
+
+    public ObjectKind getKind() {
+      return kind;
+    }
+
+    public long getCount() {
+      long count = 0;
+      for (int i = 0; i < outcomes.length(); i++) {
+        count += outcomes.get(i);
+      }
+      return count;
+    }
+
+    public long getCount(final Outcome outcome) {
+      return outcomes.get(outcome.ordinal());
+    }
+
+    /**
+     * Returns the number of requests which were retries of a failed one.
+     */
+    public long getRetryCount() {
+      return retries.sum();
+    }
+
+    public long getBytes() {
+      return bytes.sum();
+    }
+
+    public double getP50Millis() {
+      return latency.getPercentile(50) / 1000.0;
+    }
+
+    public double getP99Millis() {
+      return latency.getPercentile(99) / 1000.0;
+    }
+
+    public double getP999Millis() {
+      return latency.getPercentile(99.9) / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s %s{count=%d, p50=%.1fms, p99=%.1fms, p999=%.1fms, bytes=%d, clientErrors=%d, "
+              + "serverErrors=%d, ioErrors=%d, retries=%d}", operation, kind, getCount(), getP50Millis(),
+          getP99Millis(), getP999Millis(), getBytes(), getCount(Outcome.CLIENT_ERROR),
+          getCount(Outcome.SERVER_ERROR), getCount(Outcome.IO_ERROR), getRetryCount());
+    }
+  }
+}
@@ -18,7 +18,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Properties;
 
+import javax.annotation.Nullable;
+
 import com.google.common.base.Stopwatch;
+import com.google.common.hash.Hashing;
+import org.javaswift.joss.exception.NotFoundException;
+import org.javaswift.joss.exception.NotModifiedException;
+import org.javaswift.joss.headers.object.conditional.IfNoneMatch;
+import org.javaswift.joss.instructions.DownloadInstructions;
 import org.javaswift.joss.model.Account;
 import org.javaswift.joss.model.Directory;
 import org.javaswift.joss.model.StoredObject;
@@ -36,6 +43,7 @@ public class SwiftPropertiesFile extends Properties {
   private final Account swift;
   private final String container;
   private final String key;
+  private volatile String etag;
 
   public SwiftPropertiesFile(final Account swift, final String container, Directory directory, final String name) {
     this.swift = checkNotNull(swift);
@@ -56,22 +64,89 @@ public class SwiftPropertiesFile extends Properties {
         load(inputStream);
       }
     } finally {
-      timerlog.trace("load() took: " + stopwatch);
+      timerlog.trace("load() took: {}", stopwatch);
     }
   }
 
+  /**
+   * Loads the properties in a single GET, returns false when the object does not exist. Once loaded or stored, the
+   * GET is conditional on the ETag of the object so that an unchanged object is answered with a bodiless 304 and the
+   * properties held are kept.
+   */
+  public boolean loadIfExists() throws IOException {
+    return loadIfExists(null, null);
+  }
+
+  /**
+   * As {@link #loadIfExists()}, hedging the GET with {@code hedger} when it is enabled. Hedged GETs are sent through
+   * {@code swiftApi}, so that the one which did not answer first is aborted.
+   */
+  public boolean loadIfExists(@Nullable final SwiftReadHedger hedger, @Nullable final SwiftApiClient swiftApi)
+      throws IOException
+  {
+    log.debug("Loading: {}/{} (etag: {})", container, key, etag);
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    try {
+      String ifNoneMatch = etag;
+      byte[] content;
+      try {
+        content = hedger != null && hedger.isEnabled() && swiftApi != null
+            ? hedger.read(onCancel -> swiftApi.getObjectContent(container, key, ifNoneMatch, onCancel))
+            : download(ifNoneMatch);
+      }
+      catch (NotModifiedException e) {
+        return true;
+      }
+      catch (NotFoundException e) {
+        etag = null;
+        return false;
+      }
+      read(content);
+      etag = etag(content);
+      return true;
+    } finally {
+      timerlog.trace("loadIfExists() took: {}", stopwatch);
+    }
+  }
+
+  private byte[] download(@Nullable final String ifNoneMatch) {
+    DownloadInstructions instructions = new DownloadInstructions();
+    if (ifNoneMatch != null) {
+      instructions.setMatchConditional(new IfNoneMatch(ifNoneMatch));
+    }
+    return swift.getContainer(container).getObject(key).downloadObject(instructions);
+  }
+
   public void store() throws IOException {
     log.debug("Storing: {}/{}", container, key);
     Stopwatch stopwatch = Stopwatch.createStarted();
-    try(ByteArrayOutputStream bufferStream = new ByteArrayOutputStream()) {
-      store(bufferStream, null);
-      byte[] buffer = bufferStream.toByteArray();
+    try {
+      byte[] buffer = write();
 
       StoredObject object = swift.getContainer(container).getObject(key);
       object.setContentLength(buffer.length);
       object.uploadObject(buffer);
+      etag = etag(buffer);
     } finally {
-      timerlog.trace("store() took: " + stopwatch);
+      timerlog.trace("store() took: {}", stopwatch);
+    }
+  }
+
+  /**
+   * Replaces the properties held with those in the content of the object.
+   */
+  protected void read(final byte[] content) throws IOException {
+    clear();
+    load(new ByteArrayInputStream(content));
+  }
+
+  /**
+   * Returns the content of the object for the properties held.
+   */
+  protected byte[] write() throws IOException {
+    try (ByteArrayOutputStream bufferStream = new ByteArrayOutputStream()) {
+      store(bufferStream, null);
+      return bufferStream.toByteArray();
     }
   }
 
@@ -80,9 +155,17 @@ public class SwiftPropertiesFile extends Properties {
   }
 
   public void remove() throws IOException {
+    etag = null;
     swift.getContainer(container).getObject(key).delete();
   }
 
+  /**
+   * The ETag swift gives an object (not a large object) is the MD5 of its content, so it is known without a HEAD.
+   */
+  private static String etag(final byte[] content) {
+    return Hashing.md5().hashBytes(content).toString();
+  }
+
   public String toString() {
     return getClass().getSimpleName() + "{" +
         "container=" + container +
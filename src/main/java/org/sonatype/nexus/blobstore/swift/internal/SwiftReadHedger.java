@@ -0,0 +1,403 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Sends a second, identical read when the first one has not answered within the hedge delay, and takes whichever
+ * answers first. The other read is cancelled, or discarded should it answer all the same.
+ *
+ * The hedge delay is either fixed, or adapts to a percentile of the latencies of recent reads, in which case reads are
+ * only hedged once enough of them were timed. Hedges are paid from a budget which each read tops up by a share of a
+ * hedge, so reads are hedged no more often than that share once the hedges saved up are spent.
+ *
+ * Reads are sent on the calling thread, only hedges are sent on hedging threads, as many as hedges can be saved up. A
+ * hedge due while they are all busy is sent once one is free, unless the read answered in the meantime.
+ */
+public class SwiftReadHedger {
+  private static final Logger log = LoggerFactory.getLogger(SwiftReadHedger.class);
+
+  public static final int DEFAULT_HEDGE_BUDGET = 5;
+  // hedges saved up at most, and hedges sent at once at most
+  private static final int HEDGE_BUDGET_CAPACITY = 10;
+  private static final int IDLE_SECONDS = 60;
+  private static final int LATENCY_SAMPLES = 1024;
+  // latencies timed before the percentile is taken, and in between taking it again
+  private static final int MIN_LATENCY_SAMPLES = 100;
+  private static final int PERCENTILE_INTERVAL = 64;
+  private static final Consumer<Runnable> NO_CANCELLATION = cancellation -> { };
+
+  /**
+   * A read which may be sent twice at once.
+   */
+  @FunctionalInterface
+  public interface Read<T>
+  {
+    /**
+     * @param onCancel takes what stops this read early should the other one win
+     */
+    T call(Consumer<Runnable> onCancel) throws IOException;
+  }
+
+  private final long fixedDelay;
+  private final int percentile;
+  // in hundredths of a hedge
+  private final int hedgeBudgetShare;
+
+  private final AtomicLong hedges = new AtomicLong();
+  private final AtomicLong hedgesWon = new AtomicLong();
+  private final long[] latencies = new long[LATENCY_SAMPLES];
+  private long latencyCount;
+  private volatile long adaptiveDelay = -1;
+  private long hedgeBudget = HEDGE_BUDGET_CAPACITY * 100;
+  private ScheduledExecutorService executor;
+
+  /**
+   * @param fixedDelay milliseconds after which a read is hedged, ignored when a percentile is given
+   * @param percentile percentile of recent read latencies after which a read is hedged, 0 for a fixed delay
+   * @param hedgeBudget reads hedged at most, as a percentage of reads, 0 for no limit
+   */
+  public SwiftReadHedger(final long fixedDelay, final int percentile, final int hedgeBudget) {
+    checkArgument(fixedDelay >= 0, "Hedge delay must be >= 0");
+    checkArgument(percentile >= 0 && percentile < 100, "Hedge percentile must be between 1 and 99");
+    checkArgument(hedgeBudget >= 0, "Hedge budget must be >= 0");
+    this.fixedDelay = fixedDelay;
+    this.percentile = percentile;
+    this.hedgeBudgetShare = hedgeBudget;
+  }
+
+  /**
+   * Parses a hedge delay given in milliseconds, or as a percentile such as {@code p95}; reads are not hedged when it
+   * is empty or 0.
+   */
+  public static SwiftReadHedger forDelay(@Nullable final String delay, final int hedgeBudget) {
+    String value = Strings.nullToEmpty(delay).trim();
+    if (value.startsWith("p") || value.startsWith("P")) {
+      return new SwiftReadHedger(0, Integer.parseInt(value.substring(1)), hedgeBudget);
+    }
+    return new SwiftReadHedger(value.isEmpty() ? 0 : Long.parseLong(value), 0, hedgeBudget);
+  }
+
+  public boolean isEnabled() {
+    return fixedDelay > 0 || percentile > 0;
+  }
+
+  public synchronized void start(final ThreadFactory threadFactory) {
+    if (isEnabled() && executor == null) {
+      ScheduledThreadPoolExecutor hedgingExecutor = new ScheduledThreadPoolExecutor(HEDGE_BUDGET_CAPACITY,
+          threadFactory);
+      hedgingExecutor.setRemoveOnCancelPolicy(true);
+      hedgingExecutor.setKeepAliveTime(IDLE_SECONDS, TimeUnit.SECONDS);
+      hedgingExecutor.allowCoreThreadTimeOut(true);
+      executor = hedgingExecutor;
+    }
+  }
+
+  public synchronized void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  /**
+   * Returns the number of reads which were hedged.
+   */
+  public long getHedgeCount() {
+    return hedges.get();
+  }
+
+  /**
+   * Returns the number of hedged reads the hedge answered first.
+   */
+  public long getHedgeWinCount() {
+    return hedgesWon.get();
+  }
+
+  public <T> T read(final Read<T> read) throws IOException {
+    return read(read, result -> { });
+  }
+
+  /**
+   * Reads on the calling thread, hedging the read on a hedging thread when it is slow to answer. A read which answers
+   * after the other one won, or after the caller gave up, is handed to {@code discard}. Fails only when all reads sent
+   * failed, with the failure of the first one.
+   */
+  public <T> T read(final Read<T> read, final Consumer<? super T> discard) throws IOException {
+    ScheduledExecutorService executor = this.executor;
+    long delay = delay();
+    if (executor == null || delay < 0) {
+      return timed(read, NO_CANCELLATION);
+    }
+    depositHedgeShare();
+    Race<T> race = new Race<>(read, discard);
+    Future<?> hedging;
+    try {
+      hedging = executor.schedule(race::hedge, delay, TimeUnit.MILLISECONDS);
+    }
+    catch (RejectedExecutionException e) {
+      // stopped in the meantime
+      return timed(read, NO_CANCELLATION);
+    }
+    try {
+      return race.run();
+    }
+    finally {
+      hedging.cancel(false);
+      race.close();
+    }
+  }
+
+  private <T> T timed(final Read<T> read, final Consumer<Runnable> onCancel) throws IOException {
+    long start = System.nanoTime();
+    T result = read.call(onCancel);
+    if (percentile > 0) {
+      recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+    return result;
+  }
+
+  /**
+   * Returns the delay after which a read is hedged, -1 when it is not hedged.
+   */
+  long delay() {
+    if (percentile > 0) {
+      return adaptiveDelay;
+    }
+    return fixedDelay > 0 ? fixedDelay : -1;
+  }
+
+  synchronized void recordLatency(final long millis) {
+    latencies[(int) (latencyCount++ % LATENCY_SAMPLES)] = millis;
+    if (latencyCount >= MIN_LATENCY_SAMPLES && latencyCount % PERCENTILE_INTERVAL == 0) {
+      long[] sorted = Arrays.copyOf(latencies, (int) Math.min(latencyCount, LATENCY_SAMPLES));
+      Arrays.sort(sorted);
+      adaptiveDelay = Math.max(1, sorted[(int) Math.min(sorted.length - 1L, sorted.length * percentile / 100L)]);
+    }
+  }
+
+  private synchronized void depositHedgeShare() {
+    hedgeBudget = Math.min(HEDGE_BUDGET_CAPACITY * 100, hedgeBudget + hedgeBudgetShare);
+  }
+
+  private synchronized boolean withdrawHedge() {
+    if (hedgeBudgetShare == 0) {
+      return true;
+    }
+    if (hedgeBudget < 100) {
+      return false;
+    }
+    hedgeBudget -= 100;
+    return true;
+  }
+
+  /**
+   * The reads sent for one read, the first to succeed wins.
+   */
+  private class Race<T>
+  {
+    private final Read<T> read;
+
+    private final Consumer<? super T> discard;
+
+    private final Attempt<T> primary = new Attempt<>();
+
+    private final CountDownLatch hedgeDone = new CountDownLatch(1);
+
+    private Attempt<T> hedge;
+
+    private Attempt<T> winner;
+
+    private Attempt<T> returned;
+
+    private boolean closed;
+
+    Race(final Read<T> read, final Consumer<? super T> discard) {
+      this.read = read;
+      this.discard = discard;
+    }
+
+    /**
+     * Sends the first read and waits for the hedge only when the first read failed while the hedge was sent.
+     */
+    T run() throws IOException {
+      attempt(primary, onCancel -> timed(read, onCancel));
+      Attempt<T> won = winner();
+      if (won == null && !stopHedging()) {
+        // the hedge may still succeed
+        try {
+          hedgeDone.await();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted waiting for a read");
+        }
+        won = winner();
+      }
+      if (won == null) {
+        return primary.outcome();
+      }
+      synchronized (this) {
+        returned = won;
+      }
+      return won.result;
+    }
+
+    /**
+     * Sends the hedge, unless the race is over or the budget is spent.
+     */
+    void hedge() {
+      try {
+        Attempt<T> attempt;
+        synchronized (this) {
+          if (closed || winner != null || !withdrawHedge()) {
+            return;
+          }
+          attempt = hedge = new Attempt<>();
+        }
+        hedges.incrementAndGet();
+        log.trace("Read not answered within the hedge delay, hedging");
+        attempt(attempt, read);
+      }
+      finally {
+        hedgeDone.countDown();
+      }
+    }
+
+    /**
+     * Stops whatever the hedge which did not win is blocked on, and discards a winner the caller gave up on. A read
+     * answering all the same is discarded.
+     */
+    void close() {
+      Attempt<T> won;
+      Attempt<T> hedged;
+      Attempt<T> taken;
+      synchronized (this) {
+        closed = true;
+        won = winner;
+        hedged = hedge;
+        taken = returned;
+      }
+      if (hedged != null && hedged != won) {
+        hedged.cancel();
+      }
+      if (won != null && won != taken) {
+        discard.accept(won.result);
+      }
+    }
+
+    /**
+     * Keeps the hedge from being sent, returns false when it was sent already.
+     */
+    private synchronized boolean stopHedging() {
+      if (hedge == null) {
+        closed = true;
+        return true;
+      }
+      return false;
+    }
+
+    private synchronized Attempt<T> winner() {
+      return winner;
+    }
+
+    private void attempt(final Attempt<T> attempt, final Read<T> call) {
+      try {
+        attempt.result = call.call(attempt.cancellations::add);
+      }
+      catch (Throwable e) { // NOSONAR
+        attempt.failure = e;
+      }
+      if (attempt.failure == null && !claim(attempt)) {
+        discard.accept(attempt.result);
+      }
+    }
+
+    private boolean claim(final Attempt<T> attempt) {
+      Attempt<T> other;
+      synchronized (this) {
+        if (closed || winner != null) {
+          return false;
+        }
+        winner = attempt;
+        other = attempt == primary ? hedge : primary;
+      }
+      if (attempt != primary) {
+        hedgesWon.incrementAndGet();
+      }
+      if (other != null) {
+        // the first read is cancelled for the calling thread to pick up the hedge
+        other.cancel();
+      }
+      return true;
+    }
+  }
+
+  private static class Attempt<T>
+  {
+    private final List<Runnable> cancellations = new CopyOnWriteArrayList<>();
+
+    private volatile T result;
+
+    private volatile Throwable failure;
+
+    T outcome() throws IOException {
+      if (failure == null) {
+        return result;
+      }
+      if (failure instanceof IOException) {
+        throw (IOException) failure;
+      }
+      if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      }
+      if (failure instanceof Error) {
+        throw (Error) failure;
+      }
+      throw new IOException(failure);
+    }
+
+    void cancel() {
+      for (Runnable cancellation : cancellations) {
+        try {
+          cancellation.run();
+        }
+        catch (RuntimeException e) {
+          log.debug("Unable to cancel read", e);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,374 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.javaswift.joss.exception.CommandException;
+import org.javaswift.joss.exception.Md5ChecksumException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Decides whether, and when, a failed swift request of a blob store is tried again.
+ *
+ * Only failures which may pass are retried: connection failures, timeouts, 5xx responses and rate limiting (429 and
+ * 498). A retry waits for an exponentially growing, jittered delay, or for as long as swift asked with a
+ * {@code Retry-After} header. Retries are paid from a budget which each request tops up by a share of a retry, so that
+ * an unhealthy swift is not sent more than that share of extra requests.
+ *
+ * Once swift failed {@code circuitBreakerThreshold} requests in a row with connection failures, timeouts or 5xx
+ * responses, requests fail fast with a {@link CircuitOpenException} for {@code circuitBreakerDelay} milliseconds. A
+ * single request is then let through, its outcome decides whether requests go out again.
+ */
+public class SwiftRetryPolicy {
+  private static final Logger log = LoggerFactory.getLogger(SwiftRetryPolicy.class);
+
+  public static final long DEFAULT_RETRY_DELAY = 100;
+  public static final long DEFAULT_MAX_RETRY_DELAY = 5000;
+  public static final int DEFAULT_RETRY_BUDGET = 20;
+  public static final int DEFAULT_CIRCUIT_BREAKER_THRESHOLD = 20;
+  public static final long DEFAULT_CIRCUIT_BREAKER_DELAY = 30000;
+  // retries saved up while swift is healthy, spent once it is not
+  private static final int RETRY_BUDGET_CAPACITY = 100;
+  // waits asked for beyond this fail the request rather than hold on to its thread
+  private static final long MAX_RETRY_AFTER = 60000;
+  // whether the attempt the current thread runs is a retry, in an array to set it without boxing
+  private static final ThreadLocal<int[]> RETRYING = ThreadLocal.withInitial(() -> new int[1]);
+
+  /**
+   * What a failed request ran into.
+   */
+  public enum Failure
+  {
+    CONNECT(true, true),
+    TIMEOUT(true, true),
+    SERVER_ERROR(true, true),
+    THROTTLED(true, false),
+    IO(true, false),
+    PERMANENT(false, false);
+
+    private final boolean retryable;
+
+    private final boolean outage;
+
+    Failure(final boolean retryable, final boolean outage) {
+      this.retryable = retryable;
+      this.outage = outage;
+    }
+
+    public boolean isRetryable() {
+      return retryable;
+    }
+
+    /**
+     * Whether the failure hints at swift being unavailable, as opposed to swift answering.
+     */
+    public boolean isOutage() {
+      return outage;
+    }
+  }
+
+  @FunctionalInterface
+  public interface Attempt<Type, T extends Exception>
+  {
+    Type call() throws T;
+  }
+
+  private enum Circuit
+  {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final int tries;
+  private final long retryDelay;
+  private final long maxRetryDelay;
+  // in hundredths of a retry
+  private final int retryBudgetShare;
+  private final int circuitBreakerThreshold;
+  private final long circuitBreakerDelay;
+
+  private final AtomicLong retries = new AtomicLong();
+  private final AtomicLong budgetExhausted = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private long retryBudget = RETRY_BUDGET_CAPACITY * 100;
+  private volatile long throttledUntil;
+  private Circuit circuit = Circuit.CLOSED;
+  private int consecutiveOutages;
+  private long openedAt;
+
+  /**
+   * A policy trying requests up to {@code tries} times with the default delays and budget, and no circuit breaker.
+   */
+  public SwiftRetryPolicy(final int tries) {
+    this(tries, DEFAULT_RETRY_DELAY, DEFAULT_MAX_RETRY_DELAY, DEFAULT_RETRY_BUDGET, 0, DEFAULT_CIRCUIT_BREAKER_DELAY);
+  }
+
+  /**
+   * @param tries                   times a request is sent at most
+   * @param retryDelay              milliseconds the first retry waits for at most, doubled for each further retry
+   * @param maxRetryDelay           milliseconds a retry waits for at most, unless swift asks for longer
+   * @param retryBudget             retries allowed as a percentage of requests, 0 for no limit
+   * @param circuitBreakerThreshold failures in a row opening the circuit, 0 to never open it
+   * @param circuitBreakerDelay     milliseconds requests fail fast for once the circuit opened
+   */
+  public SwiftRetryPolicy(final int tries,
+                          final long retryDelay,
+                          final long maxRetryDelay,
+                          final int retryBudget,
+                          final int circuitBreakerThreshold,
+                          final long circuitBreakerDelay)
+  {
+    checkArgument(tries > 0, "Tries must be > 0");
+    checkArgument(retryDelay >= 0, "Retry delay must be >= 0");
+    checkArgument(maxRetryDelay >= retryDelay, "Max retry delay must be >= retry delay");
+    checkArgument(retryBudget >= 0, "Retry budget must be >= 0");
+    checkArgument(circuitBreakerThreshold >= 0, "Circuit breaker threshold must be >= 0");
+    checkArgument(circuitBreakerDelay >= 0, "Circuit breaker delay must be >= 0");
+    this.tries = tries;
+    this.retryDelay = retryDelay;
+    this.maxRetryDelay = maxRetryDelay;
+    this.retryBudgetShare = retryBudget;
+    this.circuitBreakerThreshold = circuitBreakerThreshold;
+    this.circuitBreakerDelay = circuitBreakerDelay;
+  }
+
+  public int getTries() {
+    return tries;
+  }
+
+  /**
+   * Calls the attempt until it succeeds, fails with a failure not worth retrying, or the tries or retry budget are
+   * used up, in which case the last failure is thrown.
+   */
+  public <Type, T extends Exception> Type call(final Attempt<Type, T> attempt) throws T {
+    depositRetryShare();
+    for (int i = 1; ; i++) {
+      admit();
+      int[] retrying = RETRYING.get();
+      int outer = retrying[0];
+      retrying[0] = i > 1 ? 1 : outer;
+      try {
+        Type result = attempt.call();
+        recordOutcome(null);
+        return result;
+      }
+      catch (Exception e) {
+        Failure failure = classify(e);
+        recordOutcome(failure);
+        if (!failure.isRetryable() || i >= tries || Thread.currentThread().isInterrupted()) {
+          throw e;
+        }
+        long delay = delay(i);
+        if (delay > MAX_RETRY_AFTER) {
+          log.debug("Swift asked to wait for {} ms, failing the request", delay);
+          throw e;
+        }
+        if (!withdrawRetry()) {
+          log.debug("Retry budget exhausted, not retrying {} failure", failure);
+          throw e;
+        }
+        log.debug("Operation failed with {} (try: {}), retrying in {} ms", failure, i, delay, e);
+        try {
+          Thread.sleep(delay);
+        }
+        catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          throw e;
+        }
+        retries.incrementAndGet();
+      }
+      finally {
+        retrying[0] = outer;
+      }
+    }
+  }
+
+  /**
+   * Returns true when the current thread sends requests to retry a failed attempt.
+   */
+  static boolean isRetrying() {
+    return RETRYING.get()[0] != 0;
+  }
+
+  /**
+   * Records that swift asked for requests to be held back for {@code millis}, retries wait for at least as long.
+   */
+  public void retryAfter(final long millis) {
+    long until = System.currentTimeMillis() + Math.max(0, millis);
+    if (until > throttledUntil) {
+      throttledUntil = until;
+    }
+  }
+
+  /**
+   * Returns the number of requests sent again after a failure.
+   */
+  public long getRetryCount() {
+    return retries.get();
+  }
+
+  /**
+   * Returns the number of failed requests which were not retried for lack of retry budget.
+   */
+  public long getBudgetExhaustedCount() {
+    return budgetExhausted.get();
+  }
+
+  /**
+   * Returns the number of requests failed fast while the circuit was open.
+   */
+  public long getRejectedCount() {
+    return rejected.get();
+  }
+
+  public synchronized boolean isCircuitOpen() {
+    return circuit != Circuit.CLOSED;
+  }
+
+  /**
+   * Tells what a request failed with, walking the causes of the failures JOSS wraps.
+   */
+  static Failure classify(final Throwable failure) {
+    for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+      if (cause instanceof CircuitOpenException) {
+        return Failure.PERMANENT;
+      }
+      if (cause instanceof Md5ChecksumException) {
+        // content corrupted on the way
+        return Failure.IO;
+      }
+      if (cause instanceof CommandException && ((CommandException) cause).getHttpStatusCode() > 0) {
+        return classify(((CommandException) cause).getHttpStatusCode());
+      }
+      if (cause instanceof ConnectionPoolTimeoutException) {
+        // the pool of this node ran dry, says nothing about swift
+        return Failure.IO;
+      }
+      if (cause instanceof ConnectException || cause instanceof ConnectTimeoutException
+          || cause instanceof NoRouteToHostException || cause instanceof UnknownHostException) {
+        return Failure.CONNECT;
+      }
+      if (cause instanceof SocketTimeoutException) {
+        return Failure.TIMEOUT;
+      }
+      if (cause instanceof InterruptedIOException || cause instanceof InterruptedException) {
+        return Failure.PERMANENT;
+      }
+      if (cause instanceof IOException) {
+        return Failure.IO;
+      }
+    }
+    return Failure.PERMANENT;
+  }
+
+  private static Failure classify(final int status) {
+    if (status == 429 || status == 498) {
+      return Failure.THROTTLED;
+    }
+    if (status == 408) {
+      return Failure.TIMEOUT;
+    }
+    if (status >= 500 && status != 501 && status != 505) {
+      return Failure.SERVER_ERROR;
+    }
+    return Failure.PERMANENT;
+  }
+
+  /**
+   * Waits half of the backoff plus a random share of the other half, so that requests failed together do not retry
+   * together, or for as long as swift asked.
+   */
+  private long delay(final int retry) {
+    long backoff = Math.min(maxRetryDelay, retryDelay << Math.min(retry - 1, 30));
+    long jittered = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    return Math.max(jittered, throttledUntil - System.currentTimeMillis());
+  }
+
+  private synchronized void depositRetryShare() {
+    retryBudget = Math.min(RETRY_BUDGET_CAPACITY * 100, retryBudget + retryBudgetShare);
+  }
+
+  private synchronized boolean withdrawRetry() {
+    if (retryBudgetShare == 0) {
+      return true;
+    }
+    if (retryBudget < 100) {
+      budgetExhausted.incrementAndGet();
+      return false;
+    }
+    retryBudget -= 100;
+    return true;
+  }
+
+  private synchronized void admit() {
+    if (circuit == Circuit.CLOSED) {
+      return;
+    }
+    if (System.currentTimeMillis() - openedAt >= circuitBreakerDelay) {
+      // let a single request find out whether swift is back, another one should it not tell
+      circuit = Circuit.HALF_OPEN;
+      openedAt = System.currentTimeMillis();
+      return;
+    }
+    rejected.incrementAndGet();
+    throw new CircuitOpenException();
+  }
+
+  private synchronized void recordOutcome(final Failure failure) {
+    if (circuitBreakerThreshold == 0) {
+      return;
+    }
+    if (failure != null && failure.isOutage()) {
+      consecutiveOutages++;
+      if (circuit == Circuit.HALF_OPEN || (circuit == Circuit.CLOSED && consecutiveOutages >= circuitBreakerThreshold)) {
+        if (circuit == Circuit.CLOSED) {
+          log.warn("Swift failed {} requests in a row, failing requests fast for {} ms", consecutiveOutages,
+              circuitBreakerDelay);
+        }
+        circuit = Circuit.OPEN;
+        openedAt = System.currentTimeMillis();
+      }
+    }
+    else if (failure == null || failure == Failure.PERMANENT || circuit == Circuit.HALF_OPEN) {
+      // swift answered
+      if (circuit != Circuit.CLOSED) {
+        log.info("Swift is answering requests again, closing the circuit");
+      }
+      circuit = Circuit.CLOSED;
+      consecutiveOutages = 0;
+    }
+  }
+
+  /**
+   * Thrown instead of sending a request while swift is considered unavailable.
+   */
+  public static class CircuitOpenException
+      extends CommandException
+  {
+    public CircuitOpenException() {
+      super("Swift is unavailable, failing fast until the circuit breaker lets requests through again");
+    }
+  }
+}
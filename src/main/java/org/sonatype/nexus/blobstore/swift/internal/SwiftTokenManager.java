@@ -0,0 +1,212 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Stopwatch;
+import org.javaswift.joss.command.shared.identity.access.AbstractAccess;
+import org.javaswift.joss.model.Access;
+import org.javaswift.joss.model.Account;
+import org.joda.time.format.ISODateTimeFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Keeps the auth token of a JOSS {@link Account} valid, so that requests do not wait for a re-authentication.
+ *
+ * The token is refreshed in the background once 80% of its validity has passed. Its expiry is taken from the Keystone
+ * v2 auth response, other auth methods do not report it and are assumed to issue tokens valid for the configured
+ * lifetime. A token rejected all the same is replaced by {@link #reauthenticate(String)}, which authenticates once for
+ * all the requests rejected with that token.
+ */
+public class SwiftTokenManager {
+  private static final Logger log = LoggerFactory.getLogger(SwiftTokenManager.class);
+  private static final long RETRY_DELAY_MILLIS = 30000;
+
+  private final long tokenLifetime;
+  private final AtomicLong refreshes = new AtomicLong();
+  private final AtomicLong reauthentications = new AtomicLong();
+  private final AtomicLong authenticationMillis = new AtomicLong();
+  private volatile long lastAuthenticationMillis;
+  private volatile String token;
+  private volatile long issuedAt;
+  private volatile long expiresAt;
+  private Account swift;
+  private ScheduledExecutorService scheduler;
+
+  /**
+   * @param tokenLifetime milliseconds a token is assumed to be valid for when the auth response does not tell, 0 to
+   *                      only replace tokens once rejected
+   */
+  public SwiftTokenManager(final long tokenLifetime) {
+    checkArgument(tokenLifetime >= 0, "Token lifetime must be >= 0");
+    this.tokenLifetime = tokenLifetime;
+  }
+
+  /**
+   * Takes over the token of an account which has authenticated, JOSS no longer re-authenticates it itself.
+   */
+  public synchronized void bind(final Account swift) {
+    checkState(this.swift == null, "Do not initialize twice");
+    this.swift = checkNotNull(swift);
+    swift.setAllowReauthenticate(false);
+    tokenIssued(swift.getAccess());
+  }
+
+  /**
+   * Returns the current token, null before an account is bound.
+   */
+  @Nullable
+  public String getToken() {
+    return token;
+  }
+
+  /**
+   * Replaces a token swift rejected and returns the token to retry with. Requests rejected with the same token
+   * while it is replaced wait for, and share, the one authentication.
+   */
+  public synchronized String reauthenticate(final String rejectedToken) {
+    if (token != null && !token.equals(rejectedToken)) {
+      return token;
+    }
+    log.debug("Auth token rejected, authenticating");
+    reauthentications.incrementAndGet();
+    authenticate();
+    return token;
+  }
+
+  public synchronized void start(final ThreadFactory threadFactory) {
+    checkState(swift != null, "No account bound");
+    if (scheduler == null) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+      scheduleRefresh(refreshDelay(System.currentTimeMillis()));
+    }
+  }
+
+  public synchronized void stop() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+  }
+
+  /**
+   * Returns the number of tokens refreshed ahead of their expiry.
+   */
+  public long getRefreshCount() {
+    return refreshes.get();
+  }
+
+  /**
+   * Returns the number of authentications caused by a rejected token.
+   */
+  public long getReauthenticationCount() {
+    return reauthentications.get();
+  }
+
+  /**
+   * Returns the time spent authenticating since start up, in milliseconds.
+   */
+  public long getAuthenticationMillis() {
+    return authenticationMillis.get();
+  }
+
+  /**
+   * Returns the time the last authentication took, in milliseconds.
+   */
+  public long getLastAuthenticationMillis() {
+    return lastAuthenticationMillis;
+  }
+
+  /**
+   * Returns the delay until the current token is refreshed, -1 when it is only replaced once rejected.
+   */
+  long refreshDelay(final long now) {
+    if (expiresAt <= 0) {
+      return -1;
+    }
+    long refreshAt = expiresAt - (expiresAt - issuedAt) / 5;
+    return Math.max(0, refreshAt - now);
+  }
+
+  private void refresh() {
+    try {
+      synchronized (this) {
+        log.debug("Refreshing auth token ahead of its expiry");
+        authenticate();
+        refreshes.incrementAndGet();
+      }
+      scheduleRefresh(refreshDelay(System.currentTimeMillis()));
+    }
+    catch (RuntimeException e) {
+      log.warn("Unable to refresh auth token, retrying in {} ms", RETRY_DELAY_MILLIS, e);
+      scheduleRefresh(RETRY_DELAY_MILLIS);
+    }
+  }
+
+  private synchronized void scheduleRefresh(final long delay) {
+    if (scheduler != null && delay >= 0) {
+      scheduler.schedule(this::refresh, delay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void authenticate() {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    Access access = swift.authenticate();
+    long elapsed = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+    lastAuthenticationMillis = elapsed;
+    authenticationMillis.addAndGet(elapsed);
+    log.debug("Authenticated in {} ms", elapsed);
+    tokenIssued(access);
+  }
+
+  private void tokenIssued(final Access access) {
+    long now = System.currentTimeMillis();
+    token = access.getToken();
+    issuedAt = now;
+    Long expires = expiry(access);
+    if (expires != null) {
+      expiresAt = expires;
+    }
+    else {
+      expiresAt = tokenLifetime > 0 ? now + tokenLifetime : 0;
+    }
+  }
+
+  @Nullable
+  private static Long expiry(final Access access) {
+    if (access instanceof AbstractAccess) {
+      AbstractAccess keystoneAccess = (AbstractAccess) access;
+      if (keystoneAccess.token != null && keystoneAccess.token.expires != null) {
+        try {
+          return ISODateTimeFormat.dateTimeParser().parseMillis(keystoneAccess.token.expires);
+        }
+        catch (IllegalArgumentException e) {
+          log.debug("Unable to parse token expiry {}", keystoneAccess.token.expires, e);
+        }
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,492 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.blobstore.api.BlobId;
+
+import com.google.common.io.ByteStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Holds the content and attributes of new blobs in a local directory until uploaded to swift in the background.
+ *
+ * A blob is spooled once its content and attributes were written and synced to disk, and stays readable from the
+ * spool until it was uploaded. Blobs left in the spool when the blob store stopped are uploaded once it starts again.
+ * Uploads which fail are tried again after {@value #RETRY_DELAY} ms. Spooling waits while the spool holds more than
+ * its size, so writes slow down to the pace of the uploads rather than filling the disk.
+ */
+public class SwiftUploadSpool {
+  private static final Logger log = LoggerFactory.getLogger(SwiftUploadSpool.class);
+
+  public static final int DEFAULT_UPLOAD_THREADS = 4;
+  private static final long RETRY_DELAY = 10000;
+  private static final String CONTENT_SUFFIX = ".content";
+  private static final String ATTRIBUTES_SUFFIX = ".properties";
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  /**
+   * Uploads spooled blobs to swift.
+   */
+  public interface Uploader
+  {
+    void upload(BlobId blobId, Path content, Properties attributes) throws IOException;
+
+    /**
+     * Deletes what an upload of a blob discarded from the spool while it was under way left in swift.
+     */
+    void delete(BlobId blobId) throws IOException;
+  }
+
+  private final Path directory;
+  private final long maxBytes;
+  private final int uploadThreads;
+
+  // oldest first
+  private final LinkedHashMap<BlobId, Entry> entries = new LinkedHashMap<>();
+  private long spooledBytes;
+
+  private final AtomicLong uploads = new AtomicLong();
+  private final AtomicLong uploadFailures = new AtomicLong();
+  private final AtomicLong tempFiles = new AtomicLong();
+  private ScheduledExecutorService executor;
+  private Uploader uploader;
+
+  /**
+   * @param directory where to spool blobs, {@code null} to upload blobs as they are created
+   * @param maxBytes bytes spooled before spooling waits for uploads
+   * @param uploadThreads concurrent uploads
+   */
+  public SwiftUploadSpool(@Nullable final Path directory, final long maxBytes, final int uploadThreads) {
+    checkArgument(maxBytes >= 0, "Spool size must be >= 0");
+    checkArgument(uploadThreads > 0, "Spool upload threads must be > 0");
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    this.uploadThreads = uploadThreads;
+  }
+
+  public boolean isEnabled() {
+    return directory != null;
+  }
+
+  /**
+   * Starts uploading, beginning with the blobs left in the spool.
+   */
+  public synchronized void start(final ThreadFactory threadFactory, final Uploader uploader) throws IOException {
+    if (!isEnabled() || executor != null) {
+      return;
+    }
+    this.uploader = checkNotNull(uploader);
+    Files.createDirectories(directory);
+    List<Entry> replayed = replay();
+    if (!replayed.isEmpty()) {
+      log.info("Uploading {} blobs ({} bytes) left in spool {}", replayed.size(), spooledBytes, directory);
+    }
+    executor = new ScheduledThreadPoolExecutor(uploadThreads, threadFactory);
+    replayed.forEach(entry -> schedule(entry, 0));
+  }
+
+  /**
+   * Stops uploading, blobs not uploaded yet stay in the spool.
+   */
+  public synchronized void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  /**
+   * Writes a blob to the spool, waiting while the spool is full, and schedules its upload. The attributes are taken
+   * once the content was read to its end.
+   */
+  public void spool(final BlobId blobId, final InputStream content, final Supplier<Properties> attributes)
+      throws IOException
+  {
+    awaitCapacity();
+    Path contentTemp = tempFile(blobId, CONTENT_SUFFIX);
+    Path attributesTemp = tempFile(blobId, ATTRIBUTES_SUFFIX);
+    try {
+      long size;
+      try (FileChannel channel = FileChannel.open(contentTemp, StandardOpenOption.CREATE_NEW,
+          StandardOpenOption.WRITE)) {
+        size = ByteStreams.copy(content, Channels.newOutputStream(channel));
+        channel.force(true);
+      }
+      Properties properties = attributes.get();
+      writeSynced(attributesTemp, properties);
+      Files.move(contentTemp, contentFile(blobId), StandardCopyOption.ATOMIC_MOVE);
+      // the attributes file marks the blob as spooled
+      Files.move(attributesTemp, attributesFile(blobId), StandardCopyOption.ATOMIC_MOVE);
+      syncDirectory();
+      Entry entry = new Entry(blobId, size, System.currentTimeMillis(), properties);
+      synchronized (this) {
+        entries.put(blobId, entry);
+        spooledBytes += size;
+        schedule(entry, 0);
+      }
+    }
+    finally {
+      Files.deleteIfExists(contentTemp);
+      Files.deleteIfExists(attributesTemp);
+    }
+  }
+
+  /**
+   * Returns the attributes of a blob not uploaded yet, {@code null} when it is not in the spool.
+   */
+  @Nullable
+  public Properties getAttributes(final BlobId blobId) {
+    Entry entry = entry(blobId);
+    return entry != null ? entry.attributes : null;
+  }
+
+  /**
+   * Returns the content of a blob not uploaded yet, {@code null} when it is not in the spool.
+   */
+  @Nullable
+  public InputStream getContent(final BlobId blobId) {
+    if (entry(blobId) == null) {
+      return null;
+    }
+    try {
+      return new FileInputStream(contentFile(blobId).toFile());
+    }
+    catch (FileNotFoundException e) {
+      // uploaded meanwhile
+      return null;
+    }
+  }
+
+  /**
+   * Replaces the attributes of a blob not uploaded yet, returns false when it is not in the spool. A blob whose upload
+   * is under way is uploaded again with the new attributes.
+   */
+  public boolean updateAttributes(final BlobId blobId, final Properties attributes) throws IOException {
+    Entry entry = entry(blobId);
+    if (entry == null) {
+      return false;
+    }
+    synchronized (entry) {
+      if (entry.removed) {
+        return false;
+      }
+      Path temp = tempFile(blobId, ATTRIBUTES_SUFFIX);
+      try {
+        writeSynced(temp, attributes);
+        Files.move(temp, attributesFile(blobId), StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      }
+      finally {
+        Files.deleteIfExists(temp);
+      }
+      entry.attributes = attributes;
+      return true;
+    }
+  }
+
+  /**
+   * Drops a blob not uploaded yet from the spool, returning its attributes, {@code null} when it is not in the spool.
+   * A blob whose upload is under way is dropped all the same, what the upload leaves in swift is deleted once it is
+   * over.
+   */
+  @Nullable
+  public Properties discard(final BlobId blobId) {
+    Entry entry = entry(blobId);
+    if (entry == null) {
+      return null;
+    }
+    synchronized (entry) {
+      if (entry.removed) {
+        return null;
+      }
+      remove(entry);
+      return entry.attributes;
+    }
+  }
+
+  /**
+   * Returns the blobs not uploaded yet.
+   */
+  public synchronized Set<BlobId> getBlobIds() {
+    return new HashSet<>(entries.keySet());
+  }
+
+  /**
+   * Returns the number of blobs waiting to be uploaded.
+   */
+  public synchronized int getQueueDepth() {
+    return entries.size();
+  }
+
+  /**
+   * Returns the bytes of content waiting to be uploaded.
+   */
+  public synchronized long getSpooledBytes() {
+    return spooledBytes;
+  }
+
+  /**
+   * Returns the milliseconds since the oldest blob waiting to be uploaded was spooled, 0 when none is waiting.
+   */
+  public synchronized long getUploadLag() {
+    return entries.isEmpty() ? 0 :
+        Math.max(0, System.currentTimeMillis() - entries.values().iterator().next().spooledAt);
+  }
+
+  public long getUploadCount() {
+    return uploads.get();
+  }
+
+  public long getUploadFailureCount() {
+    return uploadFailures.get();
+  }
+
+  private synchronized void awaitCapacity() throws IOException {
+    boolean waited = false;
+    while (spooledBytes >= maxBytes && !entries.isEmpty()) {
+      if (!waited) {
+        log.debug("Spool {} holds {} bytes, waiting for uploads", directory, spooledBytes);
+        waited = true;
+      }
+      try {
+        wait();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting for spool capacity");
+      }
+    }
+  }
+
+  // with the lock held
+  private void schedule(final Entry entry, final long delay) {
+    if (executor != null) {
+      executor.schedule(() -> upload(entry), delay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Uploads a blob without holding its entry lock, so that the blob can be discarded or updated meanwhile.
+   */
+  private void upload(final Entry entry) {
+    Properties attributes;
+    synchronized (entry) {
+      if (entry.removed) {
+        return;
+      }
+      attributes = entry.attributes;
+    }
+    boolean uploaded = false;
+    try {
+      uploader.upload(entry.blobId, contentFile(entry.blobId), attributes);
+      uploaded = true;
+    }
+    catch (Exception e) {
+      if (Thread.currentThread().isInterrupted()) {
+        // stopping, the blob is uploaded on the next start
+        return;
+      }
+      uploadFailures.incrementAndGet();
+      log.warn("Unable to upload spooled blob {}, trying again in {} ms", entry.blobId, RETRY_DELAY,
+          log.isDebugEnabled() ? e : null);
+    }
+    boolean discarded;
+    synchronized (entry) {
+      discarded = entry.removed;
+      if (!discarded) {
+        if (!uploaded) {
+          synchronized (this) {
+            schedule(entry, RETRY_DELAY);
+          }
+        }
+        else if (entry.attributes != attributes) {
+          // updated while uploading
+          synchronized (this) {
+            schedule(entry, 0);
+          }
+        }
+        else {
+          uploads.incrementAndGet();
+          remove(entry);
+        }
+      }
+    }
+    if (discarded) {
+      try {
+        uploader.delete(entry.blobId);
+      }
+      catch (Exception e) {
+        log.warn("Unable to delete blob {} uploaded while it was discarded from the spool", entry.blobId, e);
+      }
+    }
+  }
+
+  // with the entry lock held
+  private void remove(final Entry entry) {
+    entry.removed = true;
+    try {
+      // the attributes file goes first, a content file without one is not replayed
+      Files.deleteIfExists(attributesFile(entry.blobId));
+      Files.deleteIfExists(contentFile(entry.blobId));
+    }
+    catch (IOException e) {
+      log.warn("Unable to remove spooled blob {}", entry.blobId, e);
+    }
+    synchronized (this) {
+      entries.remove(entry.blobId);
+      spooledBytes -= entry.size;
+      notifyAll();
+    }
+  }
+
+  @Nullable
+  private synchronized Entry entry(final BlobId blobId) {
+    return entries.get(blobId);
+  }
+
+  /**
+   * Reads the blobs spooled before, removing what spooling left unfinished.
+   */
+  private List<Entry> replay() throws IOException {
+    List<Path> attributeFiles = new ArrayList<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(TEMP_SUFFIX)) {
+          Files.deleteIfExists(file);
+        }
+        else if (name.endsWith(ATTRIBUTES_SUFFIX)) {
+          attributeFiles.add(file);
+        }
+        else if (name.endsWith(CONTENT_SUFFIX) && !Files.exists(directory.resolve(
+            name.substring(0, name.length() - CONTENT_SUFFIX.length()) + ATTRIBUTES_SUFFIX))) {
+          Files.deleteIfExists(file);
+        }
+      }
+    }
+    List<Entry> replayed = new ArrayList<>();
+    for (Path file : attributeFiles) {
+      String name = file.getFileName().toString();
+      BlobId blobId = new BlobId(name.substring(0, name.length() - ATTRIBUTES_SUFFIX.length()));
+      Path content = contentFile(blobId);
+      if (!Files.exists(content)) {
+        log.warn("Spooled blob {} has no content, dropping it", blobId);
+        Files.deleteIfExists(file);
+        continue;
+      }
+      Properties properties = new Properties();
+      try (InputStream in = Files.newInputStream(file)) {
+        properties.load(in);
+      }
+      Entry entry = new Entry(blobId, Files.size(content), Files.getLastModifiedTime(file).toMillis(), properties);
+      replayed.add(entry);
+    }
+    replayed.sort((a, b) -> Long.compare(a.spooledAt, b.spooledAt));
+    synchronized (this) {
+      entries.clear();
+      spooledBytes = 0;
+      for (Entry entry : replayed) {
+        entries.put(entry.blobId, entry);
+        spooledBytes += entry.size;
+      }
+    }
+    return replayed;
+  }
+
+  private Path contentFile(final BlobId blobId) {
+    return directory.resolve(blobId.asUniqueString() + CONTENT_SUFFIX);
+  }
+
+  private Path attributesFile(final BlobId blobId) {
+    return directory.resolve(blobId.asUniqueString() + ATTRIBUTES_SUFFIX);
+  }
+
+  private Path tempFile(final BlobId blobId, final String suffix) {
+    return directory.resolve(blobId.asUniqueString() + suffix + "." + tempFiles.incrementAndGet() + TEMP_SUFFIX);
+  }
+
+  private static void writeSynced(final Path file, final Properties properties) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      OutputStream out = Channels.newOutputStream(channel);
+      properties.store(out, null);
+      out.flush();
+      channel.force(true);
+    }
+  }
+
+  /**
+   * Syncs the renames into the spool, where the platform allows opening a directory.
+   */
+  private void syncDirectory() {
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    }
+    catch (IOException e) { // NOSONAR
+      // not supported on this platform
+    }
+  }
+
+  private static class Entry
+  {
+    private final BlobId blobId;
+
+    private final long size;
+
+    private final long spooledAt;
+
+    private volatile Properties attributes;
+
+    // guarded by the entry lock
+    private boolean removed;
+
+    Entry(final BlobId blobId, final long size, final long spooledAt, final Properties attributes) {
+      this.blobId = blobId;
+      this.size = size;
+      this.spooledAt = spooledAt;
+      this.attributes = attributes;
+    }
+  }
+}
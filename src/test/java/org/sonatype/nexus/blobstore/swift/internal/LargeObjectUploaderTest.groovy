@@ -0,0 +1,87 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+import org.javaswift.joss.model.Account
+import org.javaswift.joss.model.Container
+import org.javaswift.joss.model.StoredObject
+import spock.lang.Specification
+
+/**
+ * {@link LargeObjectUploader} tests.
+ */
+class LargeObjectUploaderTest
+    extends Specification
+{
+
+  def executor = Executors.newFixedThreadPool(2)
+
+  def events = Collections.synchronizedList([])
+
+  def firstSegmentSent = new CountDownLatch(1)
+
+  // not mocks, as a mock answers one call at a time
+  Container container = [getObject: { String path -> object(path) }] as Container
+
+  Account swift = [getContainer: { String name -> container }] as Account
+
+  def cleanup() {
+    executor.shutdownNow()
+  }
+
+  def "A failed upload waits for the segments being sent before deleting them"() {
+    given:
+      SwiftApiClient swiftApi = Mock()
+      def uploader = new LargeObjectUploader(swift, swiftApi, executor, 4, 2, new SwiftRetryPolicy(1))
+      def rest = new SequenceInputStream(new ByteArrayInputStream([5, 6, 7, 8] as byte[]), new InputStream() {
+        @Override
+        int read() throws IOException {
+          throw new IOException('Client disconnected')
+        }
+      })
+      Thread.start {
+        sleep(200)
+        firstSegmentSent.countDown()
+      }
+
+    when:
+      uploader.reserve()
+      uploader.upload('myContainer', 'content/a.bytes', 'segments/a', [1, 2, 3, 4] as byte[], rest)
+
+    then:
+      IOException e = thrown()
+      e.message == 'Client disconnected'
+      events == ['put segments/a/00000001', 'put segments/a/00000000',
+                 'delete segments/a/00000000', 'delete segments/a/00000001']
+      0 * swiftApi.putManifest(*_)
+
+    and: 'the segment memory is released'
+      uploader.memory.availablePermits() == 2
+  }
+
+  private StoredObject object(final String path) {
+    [
+        uploadObject: { instructions ->
+          if (path.endsWith('00000000')) {
+            firstSegmentSent.await(5, TimeUnit.SECONDS)
+          }
+          events << "put ${path}".toString()
+        },
+        delete      : { -> events << "delete ${path}".toString() }
+    ] as StoredObject
+  }
+}
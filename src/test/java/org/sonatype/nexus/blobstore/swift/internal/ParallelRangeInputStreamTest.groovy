@@ -0,0 +1,94 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal
+
+import java.util.concurrent.Executors
+
+import org.javaswift.joss.exception.CommandException
+import org.javaswift.joss.exception.CommandExceptionError
+import org.javaswift.joss.exception.ModifiedException
+import org.javaswift.joss.instructions.DownloadInstructions
+import org.javaswift.joss.model.StoredObject
+import spock.lang.Specification
+
+/**
+ * {@link ParallelRangeInputStream} tests.
+ */
+class ParallelRangeInputStreamTest
+    extends Specification
+{
+
+  def executor = Executors.newFixedThreadPool(3)
+
+  byte[] content = (0..<1000).collect { (byte) it }.toArray(new byte[0]) as byte[]
+
+  def cleanup() {
+    executor.shutdownNow()
+  }
+
+  def "Reassembles ranges in order"() {
+    given:
+      StoredObject object = Mock()
+      def stream = new ParallelRangeInputStream(object, content.length, 64, 3, executor, new SwiftRetryPolicy(1))
+
+    when:
+      def read = stream.bytes
+
+    then:
+      read == content
+      1 * object.etag >> 'abc'
+      16 * object.downloadObject(_ as DownloadInstructions) >> { DownloadInstructions instructions ->
+        assert instructions.matchConditional.headerValue == 'abc'
+        def range = instructions.range
+        content[range.getFrom(0)..range.getTo(0)] as byte[]
+      }
+  }
+
+  def "Retries a failed range"() {
+    given:
+      StoredObject object = Mock()
+      def failures = 1
+      object.downloadObject(_ as DownloadInstructions) >> { DownloadInstructions instructions ->
+        if (failures-- > 0) {
+          throw new CommandException('Unable to execute the HTTP call', new SocketTimeoutException())
+        }
+        def range = instructions.range
+        content[range.getFrom(0)..range.getTo(0)] as byte[]
+      }
+      def stream = new ParallelRangeInputStream(object, content.length, 500, 1, executor, new SwiftRetryPolicy(2))
+
+    expect:
+      stream.bytes == content
+  }
+
+  def "Fails when the object changes while being read"() {
+    given:
+      StoredObject object = Mock()
+      object.etag >> 'abc'
+      object.downloadObject(_ as DownloadInstructions) >> { DownloadInstructions instructions ->
+        def range = instructions.range
+        if (range.getFrom(0) > 0) {
+          throw new ModifiedException(412, CommandExceptionError.UNKNOWN)
+        }
+        content[range.getFrom(0)..range.getTo(0)] as byte[]
+      }
+      def stream = new ParallelRangeInputStream(object, content.length, 500, 1, executor, new SwiftRetryPolicy(2))
+
+    when:
+      stream.bytes
+
+    then:
+      IOException e = thrown()
+      e.cause instanceof ModifiedException
+  }
+}
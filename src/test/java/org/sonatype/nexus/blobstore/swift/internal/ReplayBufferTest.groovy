@@ -0,0 +1,75 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal
+
+import spock.lang.Specification
+
+/**
+ * {@link ReplayBuffer} tests.
+ */
+class ReplayBufferTest
+    extends Specification
+{
+
+  byte[] content = (0..<1000).collect { (byte) it }.toArray(new byte[0]) as byte[]
+
+  def "Replays a partially consumed upload from memory"() {
+    given:
+      def buffer = new ReplayBuffer(new ByteArrayInputStream(content), 4096, true)
+
+    when: 'the first attempt fails half-way'
+      def first = buffer.newStream()
+      first.read(new byte[500])
+      def replayed = buffer.newStream().bytes
+
+    then:
+      replayed == content
+      buffer.isReplayable()
+
+    cleanup:
+      buffer.close()
+  }
+
+  def "Refuses to replay once read past the memory window"() {
+    given:
+      def buffer = new ReplayBuffer(new ByteArrayInputStream(content), 100, true)
+
+    when:
+      def streamed = buffer.newStream().bytes
+      buffer.newStream()
+
+    then:
+      streamed == content
+      !buffer.isReplayable()
+      thrown(IllegalStateException)
+
+    cleanup:
+      buffer.close()
+  }
+
+  def "Refuses to replay when disabled"() {
+    given:
+      def buffer = new ReplayBuffer(new ByteArrayInputStream(content), 4096, false)
+
+    when:
+      def streamed = buffer.newStream().bytes
+      buffer.newStream()
+
+    then:
+      streamed == content
+      thrown(IllegalStateException)
+
+    cleanup:
+      buffer.close()
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal
+
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.stream.Collectors
+import java.util.stream.StreamSupport
+
+import spock.lang.Specification
+
+/**
+ * {@link ShardedListingSpliterator} tests.
+ */
+class ShardedListingSpliteratorTest
+    extends Specification
+{
+
+  def executor = Executors.newFixedThreadPool(3)
+
+  List<ShardedListingSpliterator.Shard> shards = (1..9).collect { shard ->
+    { -> (1..3).collect { "shard-$shard/object-$it".toString() } } as ShardedListingSpliterator.Shard
+  }
+
+  def cleanup() {
+    executor.shutdownNow()
+  }
+
+  def "Merges the shards in order"() {
+    given:
+      def spliterator = new ShardedListingSpliterator(shards, executor, 2)
+
+    expect:
+      StreamSupport.stream(spliterator, false).collect(Collectors.toList()) == shards*.list().flatten()
+  }
+
+  def "Splits into a prefix and the remaining shards"() {
+    given:
+      def spliterator = new ShardedListingSpliterator(shards, executor, 2)
+      def first = []
+      spliterator.tryAdvance { first << it }
+
+    when:
+      def prefix = spliterator.trySplit()
+      def parts = [prefix, spliterator].collect { part ->
+        StreamSupport.stream(part, false).collect(Collectors.toList())
+      }
+
+    then: 'the prefix continues the shards already requested'
+      first + parts[0] + parts[1] == shards*.list().flatten()
+      parts[1].first() == 'shard-7/object-1'
+
+    and: 'a parallel stream visits every name once'
+      StreamSupport.stream(new ShardedListingSpliterator(shards, executor, 2), true)
+          .collect(Collectors.toList()) == shards*.list().flatten()
+  }
+
+  def "Shards are split once reached, and cancelling stops every split off listing"() {
+    given: 'two volumes of three chapters'
+      def splits = new AtomicInteger()
+      def volumes = (1..2).collect { volume ->
+        [
+            list : { -> [] },
+            split: { ->
+              splits.incrementAndGet()
+              (1..3).collect { chapter ->
+                { -> ["vol-$volume/chap-$chapter/object".toString()] } as ShardedListingSpliterator.Shard
+              }
+            }
+        ] as ShardedListingSpliterator.SplittableShard
+      }
+      def spliterator = new ShardedListingSpliterator(volumes, executor, 1)
+      def first = []
+
+    when: 'the first name is taken'
+      spliterator.tryAdvance { first << it }
+
+    then: 'only the first volume was split'
+      first == ['vol-1/chap-1/object']
+      splits.get() == 1
+
+    when: 'a part is split off and the listing cancelled'
+      def prefix = spliterator.trySplit()
+      spliterator.cancel()
+      def rest = []
+      while (prefix.tryAdvance { rest << it }) { }
+      while (spliterator.tryAdvance { rest << it }) { }
+
+    then: 'neither part lists further shards'
+      rest.size() <= 1
+      splits.get() == 1
+  }
+}
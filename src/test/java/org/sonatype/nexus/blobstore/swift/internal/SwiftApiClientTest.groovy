@@ -0,0 +1,169 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal
+
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Consumer
+
+import com.google.common.base.Stopwatch
+import org.apache.http.HttpResponse
+import org.apache.http.HttpVersion
+import org.apache.http.client.HttpClient
+import org.apache.http.client.methods.HttpDelete
+import org.apache.http.client.methods.HttpGet
+import org.apache.http.client.methods.HttpHead
+import org.apache.http.client.methods.HttpPost
+import org.apache.http.entity.StringEntity
+import org.apache.http.message.BasicHttpResponse
+import org.apache.http.util.EntityUtils
+import org.javaswift.joss.model.Access
+import org.javaswift.joss.model.Account
+import org.javaswift.joss.model.Container
+import org.javaswift.joss.model.StoredObject
+import spock.lang.Specification
+
+/**
+ * {@link SwiftApiClient} tests.
+ */
+class SwiftApiClientTest
+    extends Specification
+{
+
+  Account swift = Mock()
+
+  HttpClient httpClient = Mock()
+
+  SwiftApiClient swiftApi = new SwiftApiClient(swift, httpClient)
+
+  def setup() {
+    Access access = Mock()
+    access.getToken() >> 'token'
+    swift.getAccess() >> access
+    swift.getPublicURL() >> 'https://swift.example.com/v1/AUTH_test'
+  }
+
+  def "Reads the bulk delete limit from the cluster info"() {
+    when:
+      def limit = swiftApi.bulkDeleteLimit
+
+    then:
+      1 * httpClient.execute({ it instanceof HttpGet && it.URI.toString() == 'https://swift.example.com/info' }) >>
+          response(200, '{"swift": {}, "bulk_delete": {"max_deletes_per_request": 10000, "max_failed_deletes": 1000}}')
+      limit == 10000
+  }
+
+  def "No bulk delete limit without bulk delete in the cluster info"() {
+    when:
+      def limit = swiftApi.bulkDeleteLimit
+
+    then:
+      1 * httpClient.execute(_) >> response(200, '{"swift": {}}')
+      limit == 0
+  }
+
+  def "Bulk delete reports the objects it could not delete"() {
+    given:
+      def body = null
+
+    when:
+      def result = swiftApi.bulkDelete('myContainer', ['content/a.bytes', 'content/b c.properties'])
+
+    then:
+      1 * httpClient.execute({ it instanceof HttpPost }) >> { HttpPost post ->
+        body = EntityUtils.toString(post.entity)
+        response(200, '''
+            {"Number Not Found": 1, "Response Status": "400 Bad Request", "Response Body": "",
+             "Errors": [["/myContainer/content/b%20c.properties", "409 Conflict"]], "Number Deleted": 0}''')
+      }
+      body == '/myContainer/content/a.bytes\n/myContainer/content/b%20c.properties\n'
+      result.notFound == 1
+      result.errors == ['content/b c.properties': '409 Conflict']
+  }
+
+  def "Deleting a large object reports a missing one and fails on segments left behind"() {
+    given:
+      Container container = Mock()
+      swift.getContainer('myContainer') >> container
+      container.getObject('content/a.bytes') >> Mock(StoredObject) {
+        getPublicURL() >> 'https://swift.example.com/v1/AUTH_test/myContainer/content/a.bytes'
+      }
+
+    when: 'there is no such object'
+      def deleted = swiftApi.deleteLargeObject('myContainer', 'content/a.bytes')
+
+    then:
+      !deleted
+      1 * httpClient.execute({ it instanceof HttpDelete }) >> response(404, '')
+
+    when: 'a segment cannot be deleted'
+      swiftApi.deleteLargeObject('myContainer', 'content/a.bytes')
+
+    then:
+      IOException e = thrown()
+      e.message.contains('segments/a/00000001')
+      1 * httpClient.execute({ it instanceof HttpDelete }) >> response(200, '''
+          {"Number Not Found": 0, "Response Status": "200 OK", "Response Body": "",
+           "Errors": [["/myContainer/segments/a/00000001", "503 Service Unavailable"]], "Number Deleted": 2}''')
+  }
+
+  def "A hedged HEAD answered by the hedge aborts the first one rather than waiting for it"() {
+    given:
+      Container container = Mock()
+      StoredObject object = Mock()
+      swift.getContainer('myContainer') >> container
+      container.getObject('content/a.bytes') >> object
+      object.getPublicURL() >> 'https://swift.example.com/v1/AUTH_test/myContainer/content/a.bytes'
+      def hedger = new SwiftReadHedger(50, 0, 0)
+      hedger.start(Executors.defaultThreadFactory())
+      def heads = new AtomicInteger()
+      // not a mock, as a mock answers one call at a time
+      def swiftApi = new SwiftApiClient(swift, { HttpHead head ->
+        if (heads.incrementAndGet() == 1) {
+          // the first HEAD only answers after 10 seconds, unless aborted
+          def stopwatch = Stopwatch.createStarted()
+          while (!head.aborted && stopwatch.elapsed(TimeUnit.SECONDS) < 10) {
+            sleep(10)
+          }
+          if (head.aborted) {
+            throw new IOException('Aborted')
+          }
+        }
+        def response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, 'OK')
+        response.addHeader('X-Object-Meta-Nexus-Pending', 'true')
+        response
+      } as HttpClient)
+      def stopwatch = Stopwatch.createStarted()
+
+    when:
+      def metadata = hedger.read({ Consumer<Runnable> onCancel ->
+        swiftApi.getMetadata('myContainer', 'content/a.bytes', onCancel)
+      } as SwiftReadHedger.Read<Map<String, Object>>)
+
+    then:
+      metadata.values() as List == ['true']
+      heads.get() == 2
+      hedger.hedgeWinCount == 1
+      stopwatch.elapsed(TimeUnit.SECONDS) < 5
+
+    cleanup:
+      hedger.stop()
+  }
+
+  private static HttpResponse response(int status, String body) {
+    def response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, 'status')
+    response.entity = new StringEntity(body)
+    response
+  }
+}
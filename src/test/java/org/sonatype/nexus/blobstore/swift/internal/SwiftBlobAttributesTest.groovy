@@ -0,0 +1,101 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal
+
+import org.sonatype.nexus.blobstore.api.BlobMetrics
+import org.sonatype.nexus.blobstore.swift.internal.SwiftBlobAttributes.AttributeFormat
+
+import org.javaswift.joss.client.factory.AccountFactory
+import org.javaswift.joss.model.Account
+import org.joda.time.DateTime
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * {@link SwiftBlobAttributes} tests.
+ */
+class SwiftBlobAttributesTest
+    extends Specification
+{
+  static final String KEY = 'content/vol-01/chap-02/1.properties'
+
+  Account swift = new AccountFactory().setMock(true).createAccount()
+
+  def setup() {
+    swift.getContainer('test').create()
+  }
+
+  def 'Binary attributes round trip through the metadata of the content object'() {
+    given:
+      def attributes = attributes('eb4c2a5a1c04ca2d504c5e57e1f88cef08c75707')
+      attributes.deleted = true
+      attributes.deletedReason = 'gone'
+      attributes.largeObject = true
+      def read = new SwiftBlobAttributes(swift, 'test', KEY)
+
+    when:
+      def metadata = attributes.toMetadata(AttributeFormat.BINARY)
+
+    then:
+      metadata.keySet().every { it.startsWith(AttributesMetadata.BINARY_KEY_PREFIX) }
+      read.readMetadata(metadata)
+      read.headers == attributes.headers
+      read.metrics.sha1Hash == 'eb4c2a5a1c04ca2d504c5e57e1f88cef08c75707'
+      read.metrics.contentSize == 1024L
+      read.metrics.creationTime.millis == 1496358655289L
+      read.deleted
+      read.deletedReason == 'gone'
+      read.largeObject
+  }
+
+  @Unroll
+  def 'Sidecars written as #format are read back'() {
+    given:
+      def attributes = attributes('not a sha1')
+      def read = new SwiftBlobAttributes(swift, 'test', KEY)
+
+    when:
+      attributes.store(format)
+
+    then:
+      read.load()
+      read.inPropertiesFile
+      read.headers == attributes.headers
+      read.metrics.sha1Hash == 'not a sha1'
+      !read.deleted
+      AttributesCodec.isEncoded(swift.getContainer('test').getObject(KEY).downloadObject()) == binary
+
+    where:
+      format                     | binary
+      AttributeFormat.PROPERTIES | false
+      AttributeFormat.BINARY     | true
+  }
+
+  def 'Binary attributes of an unknown version are rejected'() {
+    given:
+      def content = attributes('eb4c2a5a1c04ca2d504c5e57e1f88cef08c75707').encode(AttributeFormat.BINARY)
+      content[0] = (byte) (0x80 | AttributesCodec.VERSION + 1)
+
+    when:
+      new SwiftBlobAttributes(swift, 'test', KEY).decode(content)
+
+    then:
+      thrown(IllegalArgumentException)
+  }
+
+  private SwiftBlobAttributes attributes(String sha1) {
+    new SwiftBlobAttributes(swift, 'test', KEY,
+        ['BlobStore.blob-name': 'résumé.txt', 'BlobStore.created-by': 'admin'],
+        new BlobMetrics(new DateTime(1496358655289L), sha1, 1024L))
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal
+
+import org.javaswift.joss.client.factory.AccountFactory
+import org.javaswift.joss.model.Account
+import org.sonatype.nexus.blobstore.PeriodicJobService
+import org.sonatype.nexus.common.node.NodeAccess
+import spock.lang.Specification
+
+/**
+ * {@link SwiftBlobStoreMetricsStore} tests.
+ */
+class SwiftBlobStoreMetricsStoreTest
+    extends Specification
+{
+
+  PeriodicJobService jobService = Mock()
+  PeriodicJobService.PeriodicJob job = Mock()
+  NodeAccess nodeAccess = Mock()
+  Account swift = new AccountFactory().setMock(true).createAccount()
+  List<Runnable> jobs = []
+  SwiftBlobStoreMetricsStore metricsStore = new SwiftBlobStoreMetricsStore(jobService, nodeAccess)
+
+  def setup() {
+    nodeAccess.getId() >> 'node-a'
+    jobService.schedule(_, _) >> { Runnable runnable, int period -> jobs << runnable; job }
+    swift.getContainer('myContainer').create()
+    swift.getContainer('myContainer').getObject('content/vol-01/chap-01/blob.bytes').uploadObject(new byte[1])
+    storeNodeMetrics('node-b', 3, 300)
+    metricsStore.setContainer('myContainer')
+    metricsStore.setSwift(swift)
+  }
+
+  def cleanup() {
+    metricsStore.stop()
+  }
+
+  def 'Metrics add the snapshot of the other nodes to the counts of this node'() {
+    when:
+      metricsStore.start()
+      metricsStore.recordAddition(10)
+      def snapshot = metricsStore.getMetricsSnapshot()
+      def metrics = metricsStore.getMetrics()
+
+    then:
+      snapshot.blobCount == 4
+      snapshot.totalSize == 310
+      snapshot.nodes == 2
+      snapshot.ageMillis >= 0
+      metrics.blobCount == 4
+      metrics.totalSize == 310
+  }
+
+  def 'The metrics of the other nodes are read again only on refresh'() {
+    given:
+      metricsStore.start()
+
+    when: 'another node writes its metrics'
+      storeNodeMetrics('node-b', 5, 500)
+      storeNodeMetrics('node-c', 1, 100)
+
+    then: 'the snapshot is unchanged'
+      metricsStore.getMetricsSnapshot().blobCount == 3
+
+    when: 'the snapshot is refreshed'
+      jobs[1].run()
+      def snapshot = metricsStore.getMetricsSnapshot()
+
+    then:
+      snapshot.blobCount == 6
+      snapshot.totalSize == 600
+      snapshot.nodes == 3
+  }
+
+  def 'Container metrics take off the objects which are not blobs'() {
+    given:
+      metricsStore.setMode(SwiftBlobStoreMetricsStore.MetricsMode.CONTAINER)
+      metricsStore.setAttributeSidecars(true)
+      upload('content/vol-02/chap-02/large.bytes', 10)
+      upload('segments/content/vol-02/chap-02/large.bytes/000001', 100)
+      upload('content/vol-03/chap-03/old.bytes', 1000)
+      upload('content/vol-03/chap-03/old.properties', 7)
+      upload('journal/node-b/1.journal', 5)
+      upload('metadata.properties', 3)
+      metricsStore.start()
+
+    when: 'the sidecars are not counted yet'
+      def snapshot = metricsStore.getMetricsSnapshot()
+
+    then:
+      snapshot.blobCount == 4
+      snapshot.totalSize == 1 + 10 + 100 + 1000 + 7
+      snapshot.nodes == 2
+
+    when: 'another blob is added'
+      upload('content/vol-04/chap-04/new.bytes', 1)
+
+    then: 'the metrics read are kept'
+      metricsStore.getMetrics().blobCount == 4
+
+    when: 'the container is read again in the background'
+      jobs[2].run()
+
+    then:
+      metricsStore.getMetrics().blobCount == 5
+
+    when: 'the sidecars are counted'
+      jobs[1].run()
+      snapshot = metricsStore.getMetricsSnapshot()
+
+    then:
+      snapshot.blobCount == 4
+      snapshot.totalSize == 1 + 10 + 100 + 1000 + 1
+  }
+
+  def 'Reconciled metrics replace the counts of all nodes but what they counted during the walk'() {
+    given:
+      metricsStore.start()
+      metricsStore.recordAddition(10)
+
+    when: 'the nodes count on while the blobs are walked'
+      def start = metricsStore.startReconcile()
+      metricsStore.recordAddition(1)
+      storeNodeMetrics('node-b', 5, 500)
+      metricsStore.reconcile(start, 50, 5000)
+      def snapshot = metricsStore.getMetricsSnapshot()
+
+    then: 'the counts of the nodes before are left out'
+      snapshot.blobCount == 51
+      snapshot.totalSize == 5001
+
+    when: 'the other node carries over what it counted on top of the new generation'
+      def baseline = new SwiftPropertiesFile(swift, 'myContainer', null, 'metrics-baseline.properties')
+      baseline.load()
+      storeNodeMetrics('node-b', 5 - (baseline.getProperty('start.node-b.blobCount') as long),
+          500 - (baseline.getProperty('start.node-b.totalSize') as long), baseline.getProperty('generation'))
+      jobs[1].run()
+      snapshot = metricsStore.getMetricsSnapshot()
+
+    then:
+      snapshot.blobCount == 53
+      snapshot.totalSize == 5201
+  }
+
+  private void upload(final String name, final int size) {
+    swift.getContainer('myContainer').getObject(name).uploadObject(new byte[size])
+  }
+
+  private void storeNodeMetrics(final String node, final long blobCount, final long totalSize,
+                                final String generation = '0')
+  {
+    def metricsFile = new SwiftPropertiesFile(swift, 'myContainer', null, "$node/metrics.properties")
+    metricsFile.setProperty('generation', generation)
+    metricsFile.setProperty('blobCount', blobCount as String)
+    metricsFile.setProperty('totalSize', totalSize as String)
+    metricsFile.store()
+  }
+}
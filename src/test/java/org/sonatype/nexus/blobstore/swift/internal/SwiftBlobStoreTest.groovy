@@ -12,15 +12,27 @@
  */
 package org.sonatype.nexus.blobstore.swift.internal
 
+import java.util.concurrent.TimeUnit
+import java.util.stream.Collectors
+import java.util.stream.Stream
+
+import com.codahale.metrics.MetricRegistry
+import org.javaswift.joss.exception.CommandExceptionError
+import org.javaswift.joss.exception.NotFoundException
+import org.javaswift.joss.instructions.DownloadInstructions
+import org.javaswift.joss.instructions.UploadInstructions
 import org.javaswift.joss.model.Account
 import org.javaswift.joss.model.Container
+import org.javaswift.joss.model.Directory
 import org.javaswift.joss.model.StoredObject
 import org.sonatype.nexus.blobstore.BlobIdLocationResolver
 import org.sonatype.nexus.blobstore.api.BlobId
 import org.sonatype.nexus.blobstore.api.BlobStoreConfiguration
+import org.sonatype.nexus.blobstore.api.BlobStoreUsageChecker
 import spock.lang.Specification
 
 import static java.util.UUID.randomUUID
+import static org.sonatype.nexus.blobstore.api.BlobAttributesConstants.DELETED_ATTRIBUTE
 
 /**
  * {@link SwiftBlobStore} tests.
@@ -32,8 +44,16 @@ class SwiftBlobStoreTest
   SwiftClientFactory swiftClientFactory = Mock()
   BlobIdLocationResolver locationResolver = Mock()
   SwiftBlobStoreMetricsStore storeMetrics = Mock()
+  SwiftDeletionJournal deletionJournal = Mock()
   Account swift = Mock()
-  SwiftBlobStore blobStore = new SwiftBlobStore(swiftClientFactory, locationResolver, storeMetrics)
+  MetricRegistry metricRegistry = new MetricRegistry()
+  SwiftOperationMetrics operationMetrics = new SwiftOperationMetrics()
+  SwiftHttpTransport transport = Mock {
+    getTokenManager() >> Mock(SwiftTokenManager)
+    getOperationMetrics() >> operationMetrics
+  }
+  SwiftBlobStore blobStore = new SwiftBlobStore(swiftClientFactory, locationResolver, storeMetrics, deletionJournal,
+      metricRegistry)
 
   def config = new BlobStoreConfiguration()
 
@@ -54,7 +74,8 @@ class SwiftBlobStoreTest
 
   def setup() {
     locationResolver.getLocation(_) >> { args -> args[0].toString() }
-    swiftClientFactory.create(_) >> swift
+    swiftClientFactory.createTransport(_, _) >> transport
+    swiftClientFactory.create(_, _) >> swift
     config.attributes = [swift: [container: 'myContainer', tries: '1']]
   }
 
@@ -69,6 +90,8 @@ class SwiftBlobStoreTest
       container.getObject('content/test.properties') >> attributesSwiftObject
       container.getObject('content/test.bytes') >> contentSwiftObject
 
+      contentSwiftObject.getMetadata() >> [:]
+
     when: 'An existing blob is read'
       blobStore.init(config)
       blobStore.doStart()
@@ -76,6 +99,75 @@ class SwiftBlobStoreTest
 
     then: 'The contents are read from swift'
       blob.inputStream.text == 'hello world'
+
+    and: 'the attributes of the swift/1 blob move into the metadata of its content'
+      1 * contentSwiftObject.setMetadata({ it.keySet().every { it.startsWith(AttributesMetadata.KEY_PREFIX) } })
+      1 * attributesSwiftObject.delete()
+  }
+
+  def 'Request metrics are registered while started'() {
+    given:
+      def container = mockContainer('myContainer')
+      swift.getContainer('myContainer') >> container
+      container.getObject('metadata.properties') >> mockSwiftObject()
+      config.name = 'swift'
+      def prefix = 'org.sonatype.nexus.blobstore.swift.internal.SwiftBlobStore.swift.requests.get.content'
+
+    when:
+      blobStore.init(config)
+      blobStore.doStart()
+      operationMetrics.record(SwiftOperationMetrics.Operation.GET, SwiftOperationMetrics.ObjectKind.CONTENT,
+          SwiftOperationMetrics.Outcome.SUCCESS, 2000, 11, false)
+
+    then:
+      metricRegistry.gauges["${prefix}.count" as String].value == 1L
+      metricRegistry.gauges["${prefix}.bytes" as String].value == 11L
+      metricRegistry.gauges["${prefix}.latency.p50" as String].value > 0
+
+    when:
+      blobStore.doStop()
+
+    then:
+      metricRegistry.names.empty
+  }
+
+  def 'Initializing again closes the connections of the previous configuration'() {
+    given:
+      swift.getContainer('myContainer') >> mockContainer('myContainer')
+
+    when:
+      blobStore.init(config)
+
+    then:
+      0 * transport.close()
+
+    when:
+      blobStore.init(config)
+
+    then:
+      1 * transport.close()
+  }
+
+  def 'Get blob with attributes in metadata'() {
+    given: 'A mocked SWIFT setup'
+      def container = mockContainer('myContainer')
+      swift.getContainer('myContainer') >> container
+      container.getObject('metadata.properties') >> mockSwiftObject()
+      def properties = new Properties()
+      properties.load(new StringReader(attributesContents))
+      def contentSwiftObject = mockSwiftObject('hello world')
+      contentSwiftObject.getMetadata() >> AttributesMetadata.encode(properties)
+      container.getObject('content/test.bytes') >> contentSwiftObject
+
+    when: 'An existing blob is read'
+      blobStore.init(config)
+      blobStore.doStart()
+      def blob = blobStore.get(new BlobId('test'))
+
+    then: 'the attributes come from a single HEAD'
+      blob.metrics.sha1Hash == 'eb4c2a5a1c04ca2d504c5e57e1f88cef08c75707'
+      blob.headers['BlobStore.blob-name'] == 'test'
+      0 * container.getObject('content/test.properties')
   }
 
   def 'Put blob'() {
@@ -93,18 +185,92 @@ class SwiftBlobStoreTest
       locationResolver.fromHeaders(_) >> new BlobId("blob-id")
       def targetObject = mockSwiftObject()
       1 * container.getObject("content/blob-id.bytes") >> targetObject
-      1 * targetObject.uploadObject(_)
-      def targetPropertiesObject = mockSwiftObject()
-      1 * container.getObject("content/blob-id.properties") >> targetPropertiesObject
-      1 * targetPropertiesObject.uploadObject(_)
+      1 * targetObject.uploadObject({ UploadInstructions instructions ->
+        instructions.headers.keySet().any { it.startsWith('X-Object-Meta-Nexus-Attributes-') }
+      })
+      0 * container.getObject("content/blob-id.properties")
 
     when: 'blob is added'
       def blob = blobStore.create(new ByteArrayInputStream(blobContent.bytes), headers)
 
-    then: 'blob is created'
+    then: 'blob is created with its attributes in the same request'
       blob != null
   }
 
+  def 'Put large blob as segments'() {
+    given: 'A mocked SWIFT setup with large objects enabled'
+      SwiftApiClient swiftApi = Mock()
+      swiftClientFactory.createApiClient(swift, _) >> swiftApi
+      config.attributes = [swift: [container: 'myContainer', tries: '1', largeObjectThreshold: '1048576',
+                                   segmentSize: '1048576', uploadThreads: '2']]
+      def container = mockContainer('myContainer')
+      swift.getContainer('myContainer') >> container
+      container.getObject('metadata.properties') >> mockSwiftObject()
+      blobStore.init(config)
+      blobStore.doStart()
+      def headers = ['BlobStore.blob-name': 'bigBlob', 'BlobStore.created-by': 'test-admin']
+      locationResolver.fromHeaders(_) >>> [new BlobId('big'), new BlobId('small')]
+      def segmentObject = mockSwiftObject()
+      container.getObject({ it.startsWith('segments/content/big.bytes/') }) >> segmentObject
+      def manifestObject = mockSwiftObject()
+      container.getObject('content/big.bytes') >> manifestObject
+      def smallObject = mockSwiftObject()
+      container.getObject('content/small.bytes') >> smallObject
+
+    when: 'a blob of two and a half segments is added'
+      def blob = blobStore.create(new ByteArrayInputStream(new byte[1024 * 1024 * 5 / 2]), headers)
+
+    then: 'three segments and a manifest are written'
+      3 * segmentObject.uploadObject(_)
+      1 * swiftApi.putManifest('myContainer', 'content/big.bytes', { it.size() == 3 })
+      1 * manifestObject.setMetadata(_)
+      blob.metrics.contentSize == 1024 * 1024 * 5 / 2
+
+    when: 'a blob within the threshold is added'
+      blobStore.create(new ByteArrayInputStream(new byte[1024]), headers)
+
+    then: 'it is put in a single request together with its attributes'
+      1 * smallObject.uploadObject({ UploadInstructions instructions ->
+        instructions.headers.keySet().any { it.startsWith('X-Object-Meta-Nexus-Attributes-') }
+      })
+      0 * smallObject.setMetadata(_)
+      0 * segmentObject.uploadObject(_)
+
+    cleanup:
+      blobStore.doStop()
+  }
+
+  def 'Copy blob server side'() {
+    given: 'A mocked SWIFT setup with an existing blob'
+      SwiftApiClient swiftApi = Mock()
+      swiftClientFactory.createApiClient(swift, _) >> swiftApi
+      def container = mockContainer('myContainer')
+      swift.getContainer('myContainer') >> container
+      container.getObject('metadata.properties') >> mockSwiftObject()
+      blobStore.init(config)
+      blobStore.doStart()
+      container.getObject('content/test.properties') >> mockSwiftObject(attributesContents)
+      def sourceObject = mockSwiftObject('hello world')
+      container.getObject('content/test.bytes') >> sourceObject
+      def targetObject = mockSwiftObject()
+      container.getObject('content/copy.bytes') >> targetObject
+      def targetPropertiesObject = mockSwiftObject()
+      container.getObject('content/copy.properties') >> targetPropertiesObject
+      locationResolver.fromHeaders(_) >> new BlobId('copy')
+      def headers = ['BlobStore.blob-name': 'copy', 'BlobStore.created-by': 'test-admin']
+
+    when: 'the blob is copied'
+      def blob = blobStore.copy(new BlobId('test'), headers)
+
+    then: 'swift copies the content together with the attributes of the copy'
+      1 * swiftApi.copyObject('myContainer', 'content/test.bytes', 'content/copy.bytes', { !it.isEmpty() })
+      0 * sourceObject.downloadObjectAsInputStream()
+      0 * targetObject.uploadObject(_)
+      0 * targetPropertiesObject.uploadObject(_)
+      blob.metrics.sha1Hash == 'eb4c2a5a1c04ca2d504c5e57e1f88cef08c75707'
+      blob.metrics.contentSize == 11
+  }
+
   def 'delete successful'() {
     given: 'blob exists'
       def container = mockContainer('myContainer')
@@ -115,14 +281,19 @@ class SwiftBlobStoreTest
       blobStore.doStart()
       def attributesS3Object = mockSwiftObject(attributesContents)
       container.getObject('content/soft-delete-success.properties') >> attributesS3Object
-      2 * container.getObject('content/soft-delete-success.bytes') >> mockSwiftObject("random")
-      1 * container.getObject('content/soft-delete-success.bytes').delete()
+      def contentSwiftObject = mockSwiftObject("random")
+      container.getObject('content/soft-delete-success.bytes') >> contentSwiftObject
 
     when: 'blob is deleted'
       def deleted = blobStore.delete(new BlobId('soft-delete-success'), 'successful test')
 
-    then: 'deleted is true'
+    then: 'deleted is true and the content is kept until the blob is hard deleted'
       deleted == true
+      1 * attributesS3Object.uploadObject(_)
+      0 * contentSwiftObject.delete()
+
+    and: 'the deletion is journaled'
+      1 * deletionJournal.append(new BlobId('soft-delete-success'))
   }
 
   def 'delete returns false when blob does not exist'() {
@@ -134,6 +305,7 @@ class SwiftBlobStoreTest
       blobStore.init(config)
       blobStore.doStart()
       container.getObject('content/soft-delete-fail.properties') >> mockSwiftObject()
+      container.getObject('content/soft-delete-fail.bytes') >> mockSwiftObject()
 
     when: 'nonexistent blob is deleted'
       def deleted = blobStore.delete(new BlobId('soft-delete-fail'), 'test')
@@ -142,6 +314,285 @@ class SwiftBlobStoreTest
       deleted == false
   }
 
+  def 'Hard delete blobs in bulk'() {
+    given: 'a blob with attributes in metadata and one with a sidecar'
+      SwiftApiClient swiftApi = Mock()
+      swiftClientFactory.createApiClient(swift, _) >> swiftApi
+      def container = mockContainer('myContainer')
+      swift.getContainer('myContainer') >> container
+      container.getObject('metadata.properties') >> mockSwiftObject()
+      blobStore.init(config)
+      blobStore.doStart()
+      def properties = new Properties()
+      properties.load(new StringReader(attributesContents))
+      def migrated = mockSwiftObject('hello world')
+      migrated.getMetadata() >> AttributesMetadata.encode(properties)
+      container.getObject('content/migrated.bytes') >> migrated
+      container.getObject('content/sidecar.bytes') >> mockSwiftObject('hello world')
+      container.getObject('content/sidecar.properties') >> mockSwiftObject(attributesContents)
+      swiftApi.getBulkDeleteLimit() >> 10000
+
+    when: 'both are hard deleted'
+      def deleted = blobStore.deleteHard([new BlobId('migrated'), new BlobId('sidecar')].stream())
+
+    then: 'their objects go in a single request and the metrics are updated once'
+      1 * swiftApi.bulkDelete('myContainer',
+          ['content/migrated.bytes', 'content/sidecar.bytes', 'content/sidecar.properties']) >>
+          new SwiftApiClient.BulkDeleteResult(3, 0, [:])
+      1 * storeMetrics.recordDeletions(2, 22)
+      0 * storeMetrics.recordDeletion(_)
+      deleted == 2
+  }
+
+  def 'Blobs already gone are not counted when hard deleted in bulk'() {
+    given: 'a blob with attributes in metadata and one whose objects are gone'
+      SwiftApiClient swiftApi = Mock()
+      swiftClientFactory.createApiClient(swift, _) >> swiftApi
+      def container = mockContainer('myContainer')
+      swift.getContainer('myContainer') >> container
+      container.getObject('metadata.properties') >> mockSwiftObject()
+      blobStore.init(config)
+      blobStore.doStart()
+      def properties = new Properties()
+      properties.load(new StringReader(attributesContents))
+      def present = mockSwiftObject('hello world')
+      present.getMetadata() >> AttributesMetadata.encode(properties)
+      container.getObject('content/present.bytes') >> present
+      def gone = mockSwiftObject()
+      gone.getMetadata() >> { throw new NotFoundException(404, CommandExceptionError.ENTITY_DOES_NOT_EXIST) }
+      container.getObject('content/gone.bytes') >> gone
+      container.getObject('content/gone.properties') >> mockSwiftObject()
+      swiftApi.getBulkDeleteLimit() >> 10000
+
+    when: 'both are hard deleted'
+      def deleted = blobStore.deleteHard([new BlobId('present'), new BlobId('gone')].stream())
+
+    then: 'only the blob whose content was deleted is counted'
+      1 * swiftApi.bulkDelete('myContainer',
+          ['content/present.bytes', 'content/gone.bytes', 'content/gone.properties']) >>
+          new SwiftApiClient.BulkDeleteResult(1, 2, [:])
+      1 * storeMetrics.recordDeletions(1, 11)
+      deleted == 1
+  }
+
+  def 'Compaction resumes from its checkpoint and hard deletes unused soft-deleted blobs'() {
+    given: 'a checkpoint, a soft-deleted blob in use, one not in use, a live blob and content a failed create left'
+      SwiftApiClient swiftApi = Mock()
+      swiftClientFactory.createApiClient(swift, _) >> swiftApi
+      def container = mockContainer('myContainer')
+      swift.getContainer('myContainer') >> container
+      container.getObject('metadata.properties') >> mockSwiftObject()
+      def checkpoint = mockSwiftObject('marker=content/a.bytes\n')
+      container.getObject('compaction.properties') >> checkpoint
+      blobStore.init(config)
+      blobStore.doStart()
+      def properties = new Properties()
+      properties.load(new StringReader(attributesContents))
+      def live = mockSwiftObject('hello world')
+      live.getMetadata() >> AttributesMetadata.encode(properties)
+      properties.setProperty(DELETED_ATTRIBUTE, 'true')
+      def used = mockSwiftObject('hello world')
+      used.getMetadata() >> AttributesMetadata.encode(properties)
+      def unused = mockSwiftObject('hello world')
+      unused.getMetadata() >> AttributesMetadata.encode(properties)
+      container.getObject('content/b-used.bytes') >> used
+      container.getObject('content/c-unused.bytes') >> unused
+      container.getObject('content/d-live.bytes') >> live
+      def abandoned = mockSwiftObject('hello world')
+      abandoned.getMetadata() >> ['Nexus-Pending': 'true']
+      abandoned.getLastModifiedAsDate() >> new Date(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2))
+      container.getObject('content/e-abandoned.bytes') >> abandoned
+      container.getObject('content/e-abandoned.properties') >> mockSwiftObject()
+      container.list('content/', 'content/a.bytes', _) >> [listedObject('content/b-used.bytes'),
+          listedObject('content/c-unused.bytes'), listedObject('content/d-live.bytes'),
+          listedObject('content/e-abandoned.bytes')]
+      container.list('content/', 'content/e-abandoned.bytes', _) >> []
+      swiftApi.getBulkDeleteLimit() >> 10000
+      BlobStoreUsageChecker inUseChecker = Mock()
+      inUseChecker.test(blobStore, { it.toString() == 'b-used' }, 'test') >> true
+      deletionJournal.segments(_) >> { Stream.empty() }
+
+    when: 'the blob store is compacted'
+      blobStore.compact(inUseChecker)
+
+    then: 'only the blob not in use and the abandoned content are hard deleted, the blob in use is undeleted'
+      1 * swiftApi.bulkDelete('myContainer',
+          ['content/c-unused.bytes', 'content/e-abandoned.bytes', 'content/e-abandoned.properties']) >>
+          new SwiftApiClient.BulkDeleteResult(3, 0, [:])
+      1 * used.setMetadata({ Map metadata ->
+        def undeleted = new Properties()
+        AttributesMetadata.decode(metadata, undeleted) && !undeleted.containsKey(DELETED_ATTRIBUTE)
+      })
+      0 * live.setMetadata(_)
+
+    and: 'progress is checkpointed, and the checkpoint removed once done'
+      1 * checkpoint.uploadObject({ new String(it as byte[]).contains('marker=content/e-abandoned.bytes') })
+      1 * checkpoint.delete()
+
+    cleanup:
+      blobStore.doStop()
+  }
+
+  def 'Reconciling metrics counts the live blobs'() {
+    given: 'a live and a soft-deleted blob'
+      def container = mockContainer('myContainer')
+      swift.getContainer('myContainer') >> container
+      container.getObject('metadata.properties') >> mockSwiftObject()
+      blobStore.init(config)
+      blobStore.doStart()
+      def properties = new Properties()
+      properties.load(new StringReader(attributesContents))
+      def live = mockSwiftObject('hello world')
+      live.getMetadata() >> AttributesMetadata.encode(properties)
+      properties.setProperty(DELETED_ATTRIBUTE, 'true')
+      def deleted = mockSwiftObject('hello world')
+      deleted.getMetadata() >> AttributesMetadata.encode(properties)
+      container.getObject('content/a-live.bytes') >> live
+      container.getObject('content/b-deleted.bytes') >> deleted
+      container.list('content/', null, _) >> [listedObject('content/a-live.bytes'),
+          listedObject('content/b-deleted.bytes')]
+      container.list('content/', 'content/b-deleted.bytes', _) >> []
+
+    when: 'the metrics are reconciled'
+      blobStore.reconcileMetrics()
+
+    then: 'only the live blob is counted'
+      1 * storeMetrics.reconcile(_, 1, 11)
+
+    cleanup:
+      blobStore.doStop()
+  }
+
+  def 'Compaction replays the deletion journal without sweeping all content'() {
+    given: 'a journal segment recording a soft-deleted blob and a blob since undeleted'
+      SwiftApiClient swiftApi = Mock()
+      swiftClientFactory.createApiClient(swift, _) >> swiftApi
+      def container = mockContainer('myContainer')
+      swift.getContainer('myContainer') >> container
+      container.getObject('metadata.properties') >> mockSwiftObject()
+      container.getObject('compaction.properties') >> mockSwiftObject()
+      blobStore.init(config)
+      blobStore.doStart()
+      def properties = new Properties()
+      properties.load(new StringReader(attributesContents))
+      def live = mockSwiftObject('hello world')
+      live.getMetadata() >> AttributesMetadata.encode(properties)
+      properties.setProperty(DELETED_ATTRIBUTE, 'true')
+      def deleted = mockSwiftObject('hello world')
+      deleted.getMetadata() >> AttributesMetadata.encode(properties)
+      container.getObject('content/deleted.bytes') >> deleted
+      container.getObject('content/live.bytes') >> live
+      swiftApi.getBulkDeleteLimit() >> 10000
+      def segment = 'journal/node/0000000000001-000001.journal'
+      deletionJournal.segments(_) >> { Stream.of(segment) }
+      deletionJournal.read(segment) >> [new BlobId('deleted'), new BlobId('live')]
+
+    when: 'the blob store is compacted'
+      blobStore.compact(null)
+
+    then: 'the soft-deleted blob is hard deleted and the replayed segment removed'
+      1 * deletionJournal.roll()
+      1 * swiftApi.bulkDelete('myContainer', ['content/deleted.bytes']) >> new SwiftApiClient.BulkDeleteResult(1, 0, [:])
+      1 * deletionJournal.delete(segment)
+      0 * container.list(*_)
+
+    cleanup:
+      blobStore.doStop()
+  }
+
+  def 'Blobs a compaction could not delete are written back to the journal before the segment is removed'() {
+    given: 'a journal segment recording a soft-deleted blob'
+      SwiftApiClient swiftApi = Mock()
+      swiftClientFactory.createApiClient(swift, _) >> swiftApi
+      def container = mockContainer('myContainer')
+      swift.getContainer('myContainer') >> container
+      container.getObject('metadata.properties') >> mockSwiftObject()
+      container.getObject('compaction.properties') >> mockSwiftObject()
+      blobStore.init(config)
+      blobStore.doStart()
+      def properties = new Properties()
+      properties.load(new StringReader(attributesContents))
+      properties.setProperty(DELETED_ATTRIBUTE, 'true')
+      def deleted = mockSwiftObject('hello world')
+      deleted.getMetadata() >> AttributesMetadata.encode(properties)
+      container.getObject('content/deleted.bytes') >> deleted
+      swiftApi.getBulkDeleteLimit() >> 10000
+      def segment = 'journal/node/0000000000001-000001.journal'
+      deletionJournal.segments(_) >> { Stream.of(segment) }
+      deletionJournal.read(segment) >> [new BlobId('deleted')]
+
+    when: 'the blob store is compacted and deleting the blob fails'
+      blobStore.compact(null)
+
+    then: 'the blob is recorded again before the replayed segment is removed'
+      1 * swiftApi.bulkDelete('myContainer', ['content/deleted.bytes']) >>
+          new SwiftApiClient.BulkDeleteResult(0, 0, ['content/deleted.bytes': '503 Service Unavailable'])
+      1 * deletionJournal.record({ it as List == [new BlobId('deleted')] })
+
+    then:
+      1 * deletionJournal.delete(segment)
+
+    cleanup:
+      blobStore.doStop()
+  }
+
+  def 'Blob ids are listed page by page'() {
+    given: 'blob store setup'
+      def container = mockContainer('myContainer')
+      swift.getContainer('myContainer') >> container
+      container.getObject('metadata.properties') >> mockSwiftObject()
+      blobStore.init(config)
+      blobStore.doStart()
+
+    when: 'the blob ids are listed'
+      def ids = blobStore.getBlobIdStream().map { it.toString() }.collect(Collectors.toList())
+
+    then: 'all levels below content are paged through with markers'
+      1 * container.list('content/', null, _) >>
+          [listedObject('content/vol-01/chap-01/a.bytes'), listedObject('content/vol-01/chap-01/a.properties')]
+      1 * container.list('content/', 'content/vol-01/chap-01/a.properties', _) >>
+          [listedObject('content/vol-02/chap-01/b.properties'), listedObject('content/vol-02/chap-01/tmp$c.bytes')]
+      1 * container.list('content/', 'content/vol-02/chap-01/tmp$c.bytes', _) >> []
+
+    and: 'a blob is listed once, also when only its sidecar is left'
+      ids == ['a', 'b']
+  }
+
+  def 'Blob ids are listed by volume and chapter concurrently'() {
+    given: 'blob store setup with a listing pool'
+      config.attributes = [swift: [container: 'myContainer', tries: '1', listingParallelism: '2']]
+      def container = mockContainer('myContainer')
+      swift.getContainer('myContainer') >> container
+      container.getObject('metadata.properties') >> mockSwiftObject()
+      blobStore.init(config)
+      blobStore.doStart()
+      container.listDirectory('content/', '/', null, _) >>
+          [new Directory('content/vol-01/', '/' as char), new Directory('content/vol-02/', '/' as char)]
+      container.listDirectory('content/vol-01/', '/', null, _) >> [new Directory('content/vol-01/chap-01/', '/' as char)]
+      container.listDirectory('content/vol-02/', '/', null, _) >> [new Directory('content/vol-02/chap-07/', '/' as char)]
+      container.list('content/vol-01/chap-01/', null, _) >>
+          [listedObject('content/vol-01/chap-01/a.bytes'), listedObject('content/vol-01/chap-01/a.properties')]
+      container.list('content/vol-02/chap-07/', null, _) >> [listedObject('content/vol-02/chap-07/b.bytes')]
+      container.listDirectory(_, '/', { it != null }, _) >> []
+      container.list(_, { it != null }, _) >> []
+
+    when: 'the blob ids are listed'
+      def ids = blobStore.getBlobIdStream().map { it.toString() }.collect(Collectors.toList())
+
+    then: 'every chapter is listed as a shard, in order'
+      ids == ['a', 'b']
+      1 * container.listDirectory('content/', '/', 'content/vol-020', _) >> []
+
+    cleanup:
+      blobStore.doStop()
+  }
+
+  private StoredObject listedObject(String name) {
+    StoredObject swiftObject = Mock()
+    swiftObject.getName() >> name
+    swiftObject
+  }
+
   private Container mockContainer(String s) {
     Container container = Mock()
     container.exists() >> true
@@ -155,6 +606,12 @@ class SwiftBlobStoreTest
   private mockSwiftObject(String contents) {
     StoredObject swiftObject = Mock()
     swiftObject.downloadObjectAsInputStream() >> ((contents == null) ? null : new ByteArrayInputStream(contents.bytes))
+    swiftObject.downloadObject(_ as DownloadInstructions) >> {
+      if (contents == null) {
+        throw new NotFoundException(404, CommandExceptionError.ENTITY_DOES_NOT_EXIST)
+      }
+      contents.bytes
+    }
     swiftObject.exists() >> (contents != null)
     swiftObject
   }
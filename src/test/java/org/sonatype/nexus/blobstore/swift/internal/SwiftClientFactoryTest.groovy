@@ -0,0 +1,57 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal
+
+import org.sonatype.nexus.blobstore.api.BlobStoreConfiguration
+import spock.lang.Specification
+
+/**
+ * {@link SwiftClientFactory} tests.
+ */
+class SwiftClientFactoryTest
+    extends Specification
+{
+
+  SwiftClientFactory factory = new SwiftClientFactory()
+
+  def 'Transport pool is sized from the blob store attributes'() {
+    given:
+      def config = new BlobStoreConfiguration()
+      config.attributes = [swift: [container: 'myContainer', maxConnections: '120', maxConnectionsPerRoute: '60']]
+
+    when:
+      def transport = factory.createTransport(config, new SwiftRetryPolicy(1))
+
+    then:
+      transport.poolStats.max == 120
+      transport.poolStats.leased == 0
+
+    cleanup:
+      transport?.close()
+  }
+
+  def 'Transport of a blob store configured before pooling uses the JOSS defaults'() {
+    given:
+      def config = new BlobStoreConfiguration()
+      config.attributes = [swift: [container: 'myContainer', socketTimeout: '']]
+
+    when:
+      def transport = factory.createTransport(config, new SwiftRetryPolicy(1))
+
+    then:
+      transport.poolStats.max == 50
+
+    cleanup:
+      transport?.close()
+  }
+}
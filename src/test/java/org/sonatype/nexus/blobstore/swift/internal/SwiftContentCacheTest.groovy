@@ -0,0 +1,132 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+import org.sonatype.nexus.blobstore.api.BlobId
+
+import com.google.common.hash.Hashing
+import spock.lang.Specification
+
+/**
+ * {@link SwiftContentCache} tests.
+ */
+class SwiftContentCacheTest
+    extends Specification
+{
+
+  Path directory = Files.createTempDirectory('swift-cache')
+
+  def cache = new SwiftContentCache(directory, 8000)
+
+  def setup() {
+    cache.start()
+  }
+
+  def cleanup() {
+    directory.toFile().deleteDir()
+  }
+
+  def 'Content read to its end is served from the cache for its SHA1 until invalidated'() {
+    given:
+      def blobId = new BlobId('a')
+      byte[] content = 'content' * 100
+
+    when: 'read from swift'
+      assert cache.get(blobId, sha1(content)) == null
+      def populating = cache.populate(blobId, sha1(content), content.length, new ByteArrayInputStream(content))
+      populating.bytes
+      populating.close()
+
+    then:
+      cache.get(blobId, sha1(content)).bytes == content
+      cache.get(blobId, 'other') == null
+      cache.hitCount == 1
+      cache.missCount == 2
+      cache.bytesSaved == content.length
+
+    when: 'cached again and deleted'
+      populating = cache.populate(blobId, sha1(content), content.length, new ByteArrayInputStream(content))
+      populating.bytes
+      populating.close()
+      cache.invalidate(blobId)
+
+    then:
+      cache.get(blobId, sha1(content)) == null
+      cache.size == 0
+      directory.toFile().list().length == 0
+  }
+
+  def 'Content not read to its end or not matching its SHA1 is not cached'() {
+    given:
+      byte[] content = 'content' * 100
+
+    when:
+      def partial = cache.populate(new BlobId('a'), sha1(content), content.length, new ByteArrayInputStream(content))
+      partial.read(new byte[10])
+      partial.close()
+      def corrupt = cache.populate(new BlobId('b'), sha1('other'.bytes), content.length,
+          new ByteArrayInputStream(content))
+      corrupt.bytes
+      corrupt.close()
+
+    then:
+      cache.size == 0
+      directory.toFile().list().length == 0
+  }
+
+  def 'Blobs read once are evicted before blobs read again'() {
+    given:
+      byte[] content = new byte[1000]
+
+    when: 'a blob read twice, then more blobs than fit'
+      cacheContent('hot', content)
+      cache.get(new BlobId('hot'), sha1(content)).close()
+      (1..10).each { cacheContent("cold-$it", content) }
+
+    then:
+      cache.get(new BlobId('hot'), sha1(content)) != null
+      cache.get(new BlobId('cold-1'), sha1(content)) == null
+      cache.get(new BlobId('cold-10'), sha1(content)) != null
+      cache.evictionCount == 3
+      cache.size == 8000
+  }
+
+  def 'Starting removes cached files but leaves directories alone'() {
+    given:
+      Files.write(directory.resolve('stale'), [1, 2, 3] as byte[])
+      def other = Files.createDirectory(directory.resolve('other'))
+      Files.write(other.resolve('kept'), [1] as byte[])
+
+    when:
+      cache.start()
+
+    then:
+      !Files.exists(directory.resolve('stale'))
+      Files.exists(other.resolve('kept'))
+  }
+
+  private void cacheContent(final String blobId, final byte[] content) {
+    def populating = cache.populate(new BlobId(blobId), sha1(content), content.length,
+        new ByteArrayInputStream(content))
+    populating.bytes
+    populating.close()
+  }
+
+  private static String sha1(final byte[] content) {
+    return Hashing.sha1().hashBytes(content).toString()
+  }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal
+
+import org.javaswift.joss.model.Account
+import org.javaswift.joss.model.Container
+import org.javaswift.joss.model.StoredObject
+import org.sonatype.nexus.blobstore.PeriodicJobService
+import org.sonatype.nexus.blobstore.api.BlobId
+import org.sonatype.nexus.common.node.NodeAccess
+import spock.lang.Specification
+
+/**
+ * {@link SwiftDeletionJournal} tests.
+ */
+class SwiftDeletionJournalTest
+    extends Specification
+{
+
+  PeriodicJobService jobService = Mock()
+  NodeAccess nodeAccess = Mock()
+  Account swift = Mock()
+  Container container = Mock()
+  StoredObject marker = Mock()
+  SwiftDeletionJournal journal = new SwiftDeletionJournal(jobService, nodeAccess)
+
+  def setup() {
+    nodeAccess.getId() >> 'node-a'
+    swift.getContainer('myContainer') >> container
+    container.getObject('journal/node-a/open') >> marker
+    jobService.schedule(_, _) >> Mock(PeriodicJobService.PeriodicJob)
+    journal.setContainer('myContainer')
+    journal.setSwift(swift)
+    journal.start()
+  }
+
+  def 'A full segment is rolled on append'() {
+    given:
+      StoredObject segment = Mock()
+
+    when: 'a segment worth of deletions is appended'
+      (1..1000).each { journal.append(new BlobId("blob-$it")) }
+
+    then: 'they are written as one segment of the node'
+      1 * container.getObject({ it ==~ /journal\/node-a\/\d{13}-\d{6}\.journal/ }) >> segment
+      1 * segment.uploadObject({ byte[] content ->
+        def lines = new String(content, 'UTF-8').readLines()
+        lines.size() == 1000 && lines[0] == 'blob-1' && lines[999] == 'blob-1000'
+      })
+  }
+
+  def 'Deletions of a segment that could not be written are rolled with the next one'() {
+    given:
+      StoredObject failed = Mock()
+      StoredObject written = Mock()
+      journal.append(new BlobId('first'))
+
+    when: 'the first roll fails'
+      journal.roll()
+
+    then:
+      thrown(IOException)
+      1 * container.getObject({ it.endsWith('.journal') }) >> failed
+      1 * failed.uploadObject(_) >> { throw new RuntimeException('unavailable') }
+
+    when: 'another deletion is rolled'
+      journal.append(new BlobId('second'))
+      journal.stop()
+
+    then: 'both deletions are written'
+      1 * container.getObject({ it.endsWith('.journal') }) >> written
+      1 * written.uploadObject({ new String(it as byte[], 'UTF-8').readLines() == ['first', 'second'] })
+  }
+
+  def 'The journal is marked open while started and closed once its deletions are rolled'() {
+    given:
+      StoredObject segment = Mock()
+      journal.append(new BlobId('pending'))
+
+    when: 'the journal is stopped'
+      journal.stop()
+
+    then: 'the pending deletion is rolled before the marker is removed'
+      1 * container.getObject({ it.endsWith('.journal') }) >> segment
+      1 * segment.uploadObject(_)
+
+    then:
+      1 * marker.delete()
+
+    when: 'the journal is started again'
+      journal.start()
+
+    then: 'it was stopped cleanly and is marked open again'
+      !journal.wasStoppedUncleanly()
+      1 * marker.exists() >> false
+      1 * marker.uploadObject(_ as byte[])
+  }
+
+  def 'A journal still marked open on start was stopped uncleanly'() {
+    given:
+      SwiftDeletionJournal restarted = new SwiftDeletionJournal(jobService, nodeAccess)
+      restarted.setContainer('myContainer')
+      restarted.setSwift(swift)
+      marker.exists() >> true
+
+    when:
+      restarted.start()
+
+    then:
+      restarted.wasStoppedUncleanly()
+  }
+}
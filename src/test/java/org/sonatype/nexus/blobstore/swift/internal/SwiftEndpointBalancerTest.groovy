@@ -0,0 +1,103 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal
+
+import org.apache.http.HttpHost
+import org.apache.http.HttpVersion
+import org.apache.http.client.methods.CloseableHttpResponse
+import org.apache.http.client.methods.HttpGet
+import org.apache.http.client.methods.HttpRequestWrapper
+import org.apache.http.client.protocol.HttpClientContext
+import org.apache.http.conn.routing.HttpRoute
+import org.apache.http.impl.execchain.ClientExecChain
+import org.apache.http.message.BasicStatusLine
+import spock.lang.Specification
+
+/**
+ * {@link SwiftEndpointBalancer} tests.
+ */
+class SwiftEndpointBalancerTest
+    extends Specification
+{
+
+  def balancer = new SwiftEndpointBalancer(['http://proxy1:8080', 'https://proxy2'])
+
+  def targets = []
+
+  def failing = [] as Set
+
+  def exec = { HttpRoute route, request, context, execAware ->
+    def target = route.targetHost.toURI()
+    targets << target
+    def response = Mock(CloseableHttpResponse)
+    response.getStatusLine() >> new BasicStatusLine(HttpVersion.HTTP_1_1, failing.contains(target) ? 503 : 200, '')
+    return response
+  } as ClientExecChain
+
+  def setup() {
+    balancer.setStorageUrl('http://swift/v1/AUTH_test')
+  }
+
+  def 'Storage requests are spread over the endpoints, others go where they were sent'() {
+    given:
+      def balancing = balancer.balancing(exec)
+
+    when:
+      100.times { send(balancing, 'http://swift/v1/AUTH_test/container') }
+      send(balancing, 'http://keystone:5000/v2.0/tokens')
+
+    then:
+      targets.count('http://proxy1:8080') > 0
+      targets.count('https://proxy2:443') > 0
+      targets.count('http://proxy1:8080') + targets.count('https://proxy2:443') == 100
+      targets.last() == 'http://keystone:5000'
+      balancer.endpointStats*.requests.sum() == 100
+  }
+
+  def 'An endpoint failing repeatedly is ejected and reinstated once it answers again'() {
+    given:
+      def balancing = balancer.balancing(exec)
+      failing << 'http://proxy1:8080'
+
+    when:
+      100.times { send(balancing, 'http://swift/v1/AUTH_test/container') }
+
+    then: 'five failures eject it'
+      targets.count('http://proxy1:8080') == 5
+      balancer.endpointStats[0].ejected
+      balancer.endpointStats[0].failures == 5
+      !balancer.endpointStats[1].ejected
+
+    when: 'its probation allows no further failure'
+      def proxy1 = balancer.@endpoints[0]
+      proxy1.ejectedUntil = 0
+      proxy1.failed()
+
+    then:
+      balancer.endpointStats[0].ejected
+
+    when: 'a success on probation reinstates it'
+      proxy1.ejectedUntil = 0
+      proxy1.succeeded(1000)
+      proxy1.failed()
+
+    then:
+      !balancer.endpointStats[0].ejected
+  }
+
+  private static void send(final ClientExecChain chain, final String url) {
+    def request = HttpRequestWrapper.wrap(new HttpGet(url))
+    def target = SwiftEndpointBalancer.host(url)
+    chain.execute(new HttpRoute(target), request, HttpClientContext.create(), null)
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal
+
+import org.sonatype.nexus.blobstore.swift.internal.SwiftOperationMetrics.ObjectKind
+import org.sonatype.nexus.blobstore.swift.internal.SwiftOperationMetrics.Operation
+import org.sonatype.nexus.blobstore.swift.internal.SwiftOperationMetrics.Outcome
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * {@link SwiftOperationMetrics} tests.
+ */
+class SwiftOperationMetricsTest
+    extends Specification
+{
+
+  def metrics = new SwiftOperationMetrics()
+
+  @Unroll
+  def 'A #method of #path is recorded as #operation #kind'() {
+    when:
+      metrics.record(method, path, '/v1/AUTH_test', Outcome.SUCCESS, 1000, 0, false)
+
+    then:
+      metrics.get(operation, kind).count == 1
+
+    where:
+      method   | path                                                     || operation        | kind
+      'GET'    | '/v1/AUTH_test/nexus/content/vol-01/chap-02/a.bytes'     || Operation.GET    | ObjectKind.CONTENT
+      'HEAD'   | '/v1/AUTH_test/nexus/content/vol-01/chap-02/a.properties' || Operation.HEAD   | ObjectKind.ATTRIBUTES
+      'PUT'    | '/v1/AUTH_test/nexus/segments/content/a.bytes/00000001'  || Operation.PUT    | ObjectKind.SEGMENT
+      'PUT'    | '/v1/AUTH_test/nexus/node/metrics.properties'            || Operation.PUT    | ObjectKind.METRICS
+      'DELETE' | '/v1/AUTH_test/nexus/journal/node/1-1.journal'           || Operation.DELETE | ObjectKind.JOURNAL
+      'GET'    | '/v1/AUTH_test/nexus/metadata.properties'                || Operation.GET    | ObjectKind.OBJECT
+      'GET'    | '/v1/AUTH_test/nexus'                                    || Operation.LIST   | ObjectKind.CONTAINER
+      'POST'   | '/v1/AUTH_test'                                          || Operation.POST   | ObjectKind.ACCOUNT
+      'POST'   | '/v2.0/tokens'                                           || Operation.POST   | ObjectKind.AUTH
+  }
+
+  def 'Latency percentiles, bytes, errors and retries are kept per operation'() {
+    given:
+      def stats = metrics.get(Operation.GET, ObjectKind.CONTENT)
+
+    when:
+      (1..1000).each {
+        metrics.record(Operation.GET, ObjectKind.CONTENT, it == 1000 ? Outcome.SERVER_ERROR : Outcome.SUCCESS,
+            it * 1000, 10, it > 990)
+      }
+
+    then:
+      stats.count == 1000
+      stats.getCount(Outcome.SERVER_ERROR) == 1
+      stats.bytes == 10000
+      stats.retryCount == 10
+      Math.abs(stats.p50Millis - 500) <= 500 / 32
+      Math.abs(stats.p99Millis - 990) <= 990 / 32
+      Math.abs(stats.p999Millis - 999) <= 999 / 32
+      metrics.operationStats == [stats]
+  }
+}
@@ -12,7 +12,23 @@
  */
 package org.sonatype.nexus.blobstore.swift.internal
 
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+import com.google.common.base.Stopwatch
+import com.google.common.hash.Hashing
 import org.apache.commons.io.IOUtils
+import org.apache.http.HttpVersion
+import org.apache.http.client.HttpClient
+import org.apache.http.client.methods.HttpGet
+import org.apache.http.entity.ByteArrayEntity
+import org.apache.http.message.BasicHttpResponse
+import org.javaswift.joss.exception.CommandExceptionError
+import org.javaswift.joss.exception.NotFoundException
+import org.javaswift.joss.exception.NotModifiedException
+import org.javaswift.joss.instructions.DownloadInstructions
+import org.javaswift.joss.model.Access
 import org.javaswift.joss.model.Account
 import org.javaswift.joss.model.Container
 import org.javaswift.joss.model.StoredObject
@@ -66,6 +82,86 @@ public class SwiftPropertiesFileTest
       }
   }
 
+  def "Conditional load reports a missing object and revalidates with the ETag"() {
+    given:
+      def container = mockContainer('myContainer')
+      swift.getContainer('myContainer') >> container
+      SwiftPropertiesFile propertiesFile = new SwiftPropertiesFile(swift, 'myContainer', null, 'mykey')
+      StoredObject swiftObject = Mock()
+      container.getObject('mykey') >> swiftObject
+      def conditionals = []
+
+    when: 'the object is missing'
+      def missing = propertiesFile.loadIfExists()
+
+    then:
+      !missing
+      1 * swiftObject.downloadObject(_ as DownloadInstructions) >> {
+        throw new NotFoundException(404, CommandExceptionError.ENTITY_DOES_NOT_EXIST)
+      }
+
+    when: 'it is loaded and then loaded again unchanged'
+      def loaded = propertiesFile.loadIfExists()
+      def reloaded = propertiesFile.loadIfExists()
+
+    then: 'the second load is answered with a 304 and keeps the properties'
+      loaded && reloaded
+      propertiesFile.getProperty('propertyName') == 'value'
+      2 * swiftObject.downloadObject(_ as DownloadInstructions) >> { DownloadInstructions instructions ->
+        conditionals << instructions.matchConditional?.headerValue
+        if (instructions.matchConditional) {
+          throw new NotModifiedException(304, CommandExceptionError.CONTENT_NOT_MODIFIED)
+        }
+        testProperties.bytes
+      }
+      conditionals == [null, Hashing.md5().hashBytes(testProperties.bytes).toString()]
+  }
+
+  def "A hedged load answered by the hedge aborts the first GET rather than waiting for it"() {
+    given:
+      SwiftPropertiesFile propertiesFile = new SwiftPropertiesFile(swift, 'myContainer', null, 'mykey')
+      def container = mockContainer('myContainer')
+      swift.getContainer('myContainer') >> container
+      container.getObject('mykey') >> Mock(StoredObject) {
+        getPublicURL() >> 'https://swift.example.com/v1/AUTH_test/myContainer/mykey'
+      }
+      swift.getAccess() >> Mock(Access) {
+        getToken() >> 'token'
+      }
+      def hedger = new SwiftReadHedger(50, 0, 0)
+      hedger.start(Executors.defaultThreadFactory())
+      def gets = new AtomicInteger()
+      // not a mock, as a mock answers one call at a time
+      def swiftApi = new SwiftApiClient(swift, { HttpGet get ->
+        if (gets.incrementAndGet() == 1) {
+          // the first GET only answers after 10 seconds, unless aborted
+          def stopwatch = Stopwatch.createStarted()
+          while (!get.aborted && stopwatch.elapsed(TimeUnit.SECONDS) < 10) {
+            sleep(10)
+          }
+          if (get.aborted) {
+            throw new IOException('Aborted')
+          }
+        }
+        def response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, 'OK')
+        response.entity = new ByteArrayEntity(testProperties.bytes)
+        response
+      } as HttpClient)
+      def stopwatch = Stopwatch.createStarted()
+
+    when:
+      def loaded = propertiesFile.loadIfExists(hedger, swiftApi)
+
+    then:
+      loaded
+      propertiesFile.getProperty('propertyName') == 'value'
+      gets.get() == 2
+      stopwatch.elapsed(TimeUnit.SECONDS) < 5
+
+    cleanup:
+      hedger.stop()
+  }
+
   private Container mockContainer(String s) {
     Container container = Mock()
     container.exists() >> true
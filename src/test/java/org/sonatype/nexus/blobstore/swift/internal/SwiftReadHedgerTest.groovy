@@ -0,0 +1,110 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Consumer
+
+import spock.lang.Specification
+
+/**
+ * {@link SwiftReadHedger} tests.
+ */
+class SwiftReadHedgerTest
+    extends Specification
+{
+
+  def 'A read slower than the hedge delay is answered by the hedge and cancelled'() {
+    given:
+      def hedger = new SwiftReadHedger(50, 0, 0)
+      hedger.start(Executors.defaultThreadFactory())
+      def reads = new AtomicInteger()
+      def stuck = new CountDownLatch(1)
+      def cancelled = new CountDownLatch(1)
+
+    when: 'the first read hangs'
+      def result = hedger.read({ Consumer<Runnable> onCancel ->
+        if (reads.incrementAndGet() == 1) {
+          onCancel.accept({ cancelled.countDown(); stuck.countDown() } as Runnable)
+          stuck.await()
+          return 'late'
+        }
+        return 'hedged'
+      } as SwiftReadHedger.Read<String>)
+
+    then:
+      result == 'hedged'
+      reads.get() == 2
+      cancelled.await(1, TimeUnit.SECONDS)
+      hedger.hedgeCount == 1
+      hedger.hedgeWinCount == 1
+
+    cleanup:
+      hedger.stop()
+  }
+
+  def 'A hedge answering after the caller gave up is discarded'() {
+    given:
+      def hedger = new SwiftReadHedger(20, 0, 0)
+      hedger.start(Executors.defaultThreadFactory())
+      def hedged = new CountDownLatch(1)
+      def release = new CountDownLatch(1)
+      def discarded = new CopyOnWriteArrayList<String>()
+      def discardedLatch = new CountDownLatch(1)
+
+    when: 'the first read fails once the hedge was sent, and the caller is interrupted waiting for the hedge'
+      hedger.read({ Consumer<Runnable> onCancel ->
+        if (Thread.currentThread().name.startsWith('pool')) {
+          hedged.countDown()
+          release.await()
+          return 'hedged'
+        }
+        hedged.await()
+        Thread.currentThread().interrupt()
+        throw new IOException('failed')
+      } as SwiftReadHedger.Read<String>, { discarded << it; discardedLatch.countDown() } as Consumer<String>)
+
+    then:
+      thrown(InterruptedIOException)
+      Thread.interrupted()
+
+    when: 'the hedge answers'
+      release.countDown()
+
+    then:
+      discardedLatch.await(1, TimeUnit.SECONDS)
+      discarded == ['hedged']
+
+    cleanup:
+      hedger.stop()
+  }
+
+  def 'An adaptive hedge delay follows the percentile of recent latencies'() {
+    given:
+      def hedger = SwiftReadHedger.forDelay('p90', 0)
+
+    expect: 'no hedging before enough reads were timed'
+      hedger.enabled
+      hedger.delay() == -1
+
+    when:
+      (1..128).each { hedger.recordLatency(it) }
+
+    then:
+      hedger.delay() == 116
+  }
+}
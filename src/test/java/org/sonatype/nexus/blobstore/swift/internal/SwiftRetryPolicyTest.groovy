@@ -0,0 +1,125 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal
+
+import org.apache.http.conn.ConnectionPoolTimeoutException
+import org.javaswift.joss.exception.CommandException
+import org.javaswift.joss.exception.CommandExceptionError
+import org.javaswift.joss.exception.NotFoundException
+import org.javaswift.joss.exception.UnauthorizedException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static org.sonatype.nexus.blobstore.swift.internal.SwiftRetryPolicy.Failure.CONNECT
+import static org.sonatype.nexus.blobstore.swift.internal.SwiftRetryPolicy.Failure.IO
+import static org.sonatype.nexus.blobstore.swift.internal.SwiftRetryPolicy.Failure.PERMANENT
+import static org.sonatype.nexus.blobstore.swift.internal.SwiftRetryPolicy.Failure.SERVER_ERROR
+import static org.sonatype.nexus.blobstore.swift.internal.SwiftRetryPolicy.Failure.THROTTLED
+import static org.sonatype.nexus.blobstore.swift.internal.SwiftRetryPolicy.Failure.TIMEOUT
+
+/**
+ * {@link SwiftRetryPolicy} tests.
+ */
+class SwiftRetryPolicyTest
+    extends Specification
+{
+
+  @Unroll
+  def 'Classifies #failure as #expected'() {
+    expect:
+      SwiftRetryPolicy.classify(failure) == expected
+
+    where:
+      failure                                                                  || expected
+      new CommandException('Unable to execute', new ConnectException())       || CONNECT
+      new CommandException('Unable to execute', new SocketTimeoutException()) || TIMEOUT
+      new CommandException('Unable to execute', new ConnectionPoolTimeoutException()) || IO
+      new CommandException(503, CommandExceptionError.UNKNOWN)                || SERVER_ERROR
+      new CommandException(429, CommandExceptionError.UNKNOWN)                || THROTTLED
+      new CommandException(498, CommandExceptionError.UNKNOWN)                || THROTTLED
+      new NotFoundException(404, CommandExceptionError.ENTITY_DOES_NOT_EXIST) || PERMANENT
+      new UnauthorizedException(401, CommandExceptionError.UNAUTHORIZED)      || PERMANENT
+      new IOException('short read')                                           || IO
+      new IllegalStateException('bug')                                        || PERMANENT
+  }
+
+  def 'Server errors are retried, missing objects are not'() {
+    given:
+      def policy = new SwiftRetryPolicy(3, 0, 0, 0, 0, 0)
+      def calls = 0
+
+    when:
+      def result = policy.call({ if (++calls < 3) throw new CommandException(503, CommandExceptionError.UNKNOWN); 'ok' })
+
+    then:
+      result == 'ok'
+      calls == 3
+      policy.retryCount == 2
+
+    when:
+      calls = 0
+      policy.call({ calls++; throw new NotFoundException(404, CommandExceptionError.ENTITY_DOES_NOT_EXIST) })
+
+    then:
+      thrown(NotFoundException)
+      calls == 1
+  }
+
+  def 'The circuit opens after failures in a row and closes once swift answers'() {
+    given:
+      def policy = new SwiftRetryPolicy(1, 0, 0, 0, 3, 100)
+      def unavailable = { throw new CommandException('Unable to execute', new ConnectException()) }
+
+    when: 'swift fails three requests in a row'
+      3.times {
+        try {
+          policy.call(unavailable)
+        }
+        catch (CommandException ignored) {
+        }
+      }
+      policy.call({ 'never sent' })
+
+    then: 'requests fail fast'
+      thrown(SwiftRetryPolicy.CircuitOpenException)
+      policy.circuitOpen
+      policy.rejectedCount == 1
+
+    when: 'swift answers the request let through after the delay'
+      sleep(150)
+      def result = policy.call({ 'ok' })
+
+    then:
+      result == 'ok'
+      !policy.circuitOpen
+  }
+
+  def 'Retries stop once the budget is spent'() {
+    given: 'a budget of 1% of requests'
+      def policy = new SwiftRetryPolicy(2, 0, 0, 1, 0, 0)
+      def calls = 0
+
+    when: 'every request fails'
+      200.times {
+        try {
+          policy.call({ calls++; throw new CommandException(500, CommandExceptionError.UNKNOWN) })
+        }
+        catch (CommandException ignored) {
+        }
+      }
+
+    then: 'the saved up retries and 1% of the requests are retried'
+      calls - 200 == 101
+      policy.budgetExhaustedCount == 99
+  }
+}
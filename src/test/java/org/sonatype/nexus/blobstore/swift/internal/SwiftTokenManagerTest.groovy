@@ -0,0 +1,80 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+
+import org.javaswift.joss.command.shared.identity.access.AccessTenant
+import org.javaswift.joss.command.shared.identity.access.Token
+import org.javaswift.joss.model.Access
+import org.javaswift.joss.model.Account
+import org.joda.time.DateTime
+import spock.lang.Specification
+
+/**
+ * {@link SwiftTokenManager} tests.
+ */
+class SwiftTokenManagerTest
+    extends Specification
+{
+
+  Account swift = Mock()
+
+  def 'Requests rejected with the same token authenticate once'() {
+    given:
+      def tokenManager = new SwiftTokenManager(0)
+      swift.getAccess() >> access('expired')
+      tokenManager.bind(swift)
+      def renewed = access('renewed')
+      def authentications = 0
+      swift.authenticate() >> { authentications++; Thread.sleep(100); renewed }
+      def start = new CountDownLatch(1)
+      def executor = Executors.newFixedThreadPool(8)
+
+    when: 'eight requests are rejected with the expired token at once'
+      def tokens = (1..8).collect {
+        executor.submit({ start.await(); tokenManager.reauthenticate('expired') } as Callable<String>)
+      }
+      start.countDown()
+
+    then: 'all of them retry with the one new token'
+      tokens*.get() == ['renewed'] * 8
+      authentications == 1
+      tokenManager.reauthenticationCount == 1
+      tokenManager.token == 'renewed'
+
+    cleanup:
+      executor.shutdownNow()
+  }
+
+  def 'A keystone token is refreshed once 80% of its validity has passed'() {
+    given:
+      def now = System.currentTimeMillis()
+      def tokenManager = new SwiftTokenManager(3600000)
+      swift.getAccess() >> new AccessTenant(token: new Token(id: 'keystone', expires: new DateTime(now + 100000).toString()))
+
+    when:
+      tokenManager.bind(swift)
+
+    then: 'the keystone expiry wins over the configured lifetime'
+      tokenManager.token == 'keystone'
+      Math.abs(tokenManager.refreshDelay(now) - 80000) < 1000
+      1 * swift.setAllowReauthenticate(false)
+  }
+
+  private static Access access(final String token) {
+    return new AccessTenant(token: new Token(id: token))
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.swift.internal
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+import org.sonatype.nexus.blobstore.api.BlobId
+
+import spock.lang.Specification
+
+/**
+ * {@link SwiftUploadSpool} tests.
+ */
+class SwiftUploadSpoolTest
+    extends Specification
+{
+
+  Path directory = Files.createTempDirectory('swift-spool')
+
+  def cleanup() {
+    directory.toFile().deleteDir()
+  }
+
+  def 'Spooled blobs are readable until uploaded, and uploaded after a restart'() {
+    given:
+      def spool = new SwiftUploadSpool(directory, 1000, 1)
+      def blobId = new BlobId('a')
+
+    when: 'a blob is spooled while uploads are stopped'
+      spool.spool(blobId, new ByteArrayInputStream('content'.bytes), { properties(size: '7') })
+
+    then:
+      spool.getContent(blobId).text == 'content'
+      spool.getAttributes(blobId).getProperty('size') == '7'
+      spool.queueDepth == 1
+      spool.spooledBytes == 7
+      spool.blobIds == [blobId] as Set
+
+    when: 'the spool starts again'
+      def restarted = new SwiftUploadSpool(directory, 1000, 1)
+      def uploaded = new CountDownLatch(1)
+      def uploads = []
+      restarted.start(Executors.defaultThreadFactory(), { id, content, attributes ->
+        uploads << [id, content.text, attributes.getProperty('size')]
+        uploaded.countDown()
+      } as SwiftUploadSpool.Uploader)
+
+    then:
+      uploaded.await(5, TimeUnit.SECONDS)
+      uploads == [[blobId, 'content', '7']]
+      waitFor { restarted.queueDepth == 0 }
+      restarted.getContent(blobId) == null
+      restarted.uploadLag == 0
+      directory.toFile().list().length == 0
+
+    cleanup:
+      restarted?.stop()
+  }
+
+  def 'Spooling waits for uploads while the spool is full'() {
+    given:
+      def spool = new SwiftUploadSpool(directory, 10, 1)
+      def release = new CountDownLatch(1)
+      spool.start(Executors.defaultThreadFactory(), { id, content, attributes ->
+        release.await()
+      } as SwiftUploadSpool.Uploader)
+      spool.spool(new BlobId('a'), new ByteArrayInputStream(new byte[10]), { properties() })
+
+    when:
+      def spooled = new CountDownLatch(1)
+      Thread.start {
+        spool.spool(new BlobId('b'), new ByteArrayInputStream(new byte[10]), { properties() })
+        spooled.countDown()
+      }
+
+    then: 'the second blob waits for the first to be uploaded'
+      !spooled.await(200, TimeUnit.MILLISECONDS)
+
+    when:
+      release.countDown()
+
+    then:
+      spooled.await(5, TimeUnit.SECONDS)
+      waitFor { spool.queueDepth == 0 }
+      spool.uploadCount == 2
+
+    cleanup:
+      spool.stop()
+  }
+
+  def 'Discarding a blob not uploaded yet removes it from the spool'() {
+    given:
+      def spool = new SwiftUploadSpool(directory, 1000, 1)
+      def blobId = new BlobId('a')
+      spool.spool(blobId, new ByteArrayInputStream('content'.bytes), { properties(size: '7') })
+
+    when:
+      def discarded = spool.discard(blobId)
+
+    then:
+      discarded.getProperty('size') == '7'
+      spool.discard(blobId) == null
+      spool.updateAttributes(blobId, properties()) == false
+      spool.spooledBytes == 0
+      directory.toFile().list().length == 0
+  }
+
+  def 'Discarding a blob being uploaded does not wait for the upload, which is deleted once over'() {
+    given:
+      def spool = new SwiftUploadSpool(directory, 1000, 1)
+      def blobId = new BlobId('a')
+      def uploading = new CountDownLatch(1)
+      def release = new CountDownLatch(1)
+      def deleted = new CountDownLatch(1)
+      spool.start(Executors.defaultThreadFactory(), [
+          upload: { id, content, attributes -> uploading.countDown(); release.await() },
+          delete: { id -> deleted.countDown() }
+      ] as SwiftUploadSpool.Uploader)
+      spool.spool(blobId, new ByteArrayInputStream('content'.bytes), { properties(size: '7') })
+      uploading.await(5, TimeUnit.SECONDS)
+
+    when:
+      def discarded = spool.discard(blobId)
+
+    then:
+      discarded.getProperty('size') == '7'
+      spool.blobIds.empty
+
+    when:
+      release.countDown()
+
+    then:
+      deleted.await(5, TimeUnit.SECONDS)
+      spool.uploadCount == 0
+
+    cleanup:
+      spool.stop()
+  }
+
+  private static Properties properties(final Map<String, String> values = [:]) {
+    def properties = new Properties()
+    properties.putAll(values)
+    return properties
+  }
+
+  private static boolean waitFor(final Closure<Boolean> condition) {
+    long deadline = System.currentTimeMillis() + 5000
+    while (!condition() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10)
+    }
+    return condition()
+  }
+}